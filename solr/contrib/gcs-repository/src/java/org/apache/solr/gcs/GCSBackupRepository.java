@@ -318,6 +318,19 @@ public class GCSBackupRepository implements BackupRepository {
         }
     }
 
+    @Override
+    public void moveIndexFile(URI dir, String sourceFileName, String destFileName) throws IOException {
+        final String prefix = appendTrailingSeparatorIfNecessary(dir.toString());
+        final BlobId source = BlobId.of(bucketName, prefix + sourceFileName);
+        // objects are replaced atomically, so readers never see a partial copy
+        try {
+            storage.copy(Storage.CopyRequest.of(source, BlobId.of(bucketName, prefix + destFileName))).getResult();
+            storage.delete(source);
+        } catch (StorageException e) {
+            throw new IOException("Unable to rename " + sourceFileName + " to " + destFileName, e);
+        }
+    }
+
     @Override
     public void copyIndexFileFrom(Directory sourceDir, String sourceFileName, URI destDir, String destFileName) throws IOException {
         String blobName = destDir.toString();
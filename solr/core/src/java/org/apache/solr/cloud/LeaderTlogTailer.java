@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.RealTimeGetComponent;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.TailedUpdatesOverlay;
+import org.apache.solr.update.UpdateCommand;
+import org.apache.solr.update.UpdateHandler;
+import org.apache.solr.update.UpdateLog;
+import org.apache.solr.update.VersionInfo;
+import org.apache.solr.util.RefCounted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.solr.common.params.CommonParams.DISTRIB;
+
+/**
+ * Tails the update log of the shard leader into a PULL replica, between the index fetches of
+ * {@link ReplicateFromLeader}, so that searches and real-time get on the replica see updates within
+ * the tail interval instead of after the leader's next commit has been fetched.
+ * <p>
+ * The updates are written to the replica's update log, like TLOG replicas do, and indexed into a
+ * {@link TailedUpdatesOverlay}, a small in-memory index that the replica's searchers show on top of the
+ * last commit fetched from the leader.  A new searcher is opened whenever tailing changed the overlay.
+ * The index itself stays an exact image of the leader's commit, so that index fetches keep copying
+ * segments incrementally, and whenever a new commit has been fetched the update log is rotated and the
+ * updates it contains are dropped from the overlay.
+ * <p>
+ * If the leader's update log no longer reaches back to the updates the replica has, some updates
+ * have been missed: the overlay is dropped and real-time get is refused until the next index fetch.
+ * <p>
+ * Enabled by setting the <code>solr.cloud.pullReplicas.tailLeaderTlogMs</code> system property to the
+ * interval, in milliseconds, at which the leader is polled for new updates.
+ */
+public class LeaderTlogTailer implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String TAIL_INTERVAL_PROP = "solr.cloud.pullReplicas.tailLeaderTlogMs";
+  public static final String MAX_UPDATES_PROP = "solr.cloud.pullReplicas.tailLeaderTlogMaxUpdates";
+
+  // how many times maxUpdates versions are asked for at most, to find where the replica left off
+  private static final int MAX_PAGES = 16;
+
+  private static final int FLAGS = UpdateCommand.PEER_SYNC | UpdateCommand.IGNORE_AUTOCOMMIT | UpdateCommand.IGNORE_INDEXWRITER;
+
+  private final CoreContainer cc;
+  private final String coreName;
+  private final TailedUpdatesOverlay overlay;
+  // number of versions and updates requested at a time
+  private final int maxUpdates = Integer.getInteger(MAX_UPDATES_PROP, 100);
+  private final ScheduledExecutorService executorService;
+  private final LongAdder tailedUpdates = new LongAdder();
+
+  // whether updates have been missed since the last index fetch
+  private volatile boolean missedUpdates;
+  // whether a new commit has been fetched, so the highest version has to be read from the replica again
+  private volatile boolean indexFetched = true;
+  // version of the last commit fetched from the leader
+  private volatile long fetchedVersion = -1;
+
+  // only accessed by the tailing thread
+  private long highestVersion = -1; // highest (absolute) version known to the replica
+  private long searcherGeneration = -1; // generation of the overlay when the last searcher was opened
+  private HttpSolrClient leaderClient;
+  private String leaderUrl;
+
+  /**
+   * @return true if PULL replicas should tail the update log of their leader
+   */
+  public static boolean isEnabled() {
+    return Integer.getInteger(TAIL_INTERVAL_PROP, -1) > 0;
+  }
+
+  public LeaderTlogTailer(CoreContainer cc, SolrCore core) throws IOException {
+    this.cc = cc;
+    this.coreName = core.getName();
+    final int interval = Integer.getInteger(TAIL_INTERVAL_PROP, -1);
+    if (interval <= 0) {
+      throw new IllegalStateException(TAIL_INTERVAL_PROP + " is not set");
+    }
+    this.overlay = new TailedUpdatesOverlay(core);
+    core.setReaderOverlay(overlay);
+    this.executorService = Executors.newSingleThreadScheduledExecutor(new SolrNamedThreadFactory("leaderTlogTailer"));
+    executorService.scheduleWithFixedDelay(this::tailSafely, interval, interval, TimeUnit.MILLISECONDS);
+    log.info("Will tail the update log of the leader of {} every {}ms", coreName, interval);
+  }
+
+  /** Number of updates copied from the leader. */
+  public long getTailedUpdates() {
+    return tailedUpdates.sum();
+  }
+
+  /**
+   * @return false if updates of the leader have been missed since the last index fetch, so
+   * real-time get on the replica can't be trusted
+   */
+  public boolean isComplete() {
+    return !missedUpdates;
+  }
+
+  /**
+   * Called when a new commit has been fetched from the leader, which includes any missed updates.
+   *
+   * @param commitVersion the version of the fetched commit
+   */
+  void indexFetched(long commitVersion) {
+    fetchedVersion = commitVersion;
+    indexFetched = true;
+    missedUpdates = false;
+    if (!executorService.isShutdown()) {
+      // drop the fetched updates from the overlay right away
+      executorService.execute(this::tailSafely);
+    }
+  }
+
+  private void tailSafely() {
+    try {
+      tail();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      // the next index fetch catches up anyway
+      log.warn("Could not tail the update log of the leader of {}", coreName, e);
+    }
+  }
+
+  private void tail() throws Exception {
+    try (SolrCore core = cc.getCore(coreName)) {
+      if (core == null) {
+        return;
+      }
+      final UpdateLog ulog = core.getUpdateHandler().getUpdateLog();
+      if (ulog == null) {
+        return;
+      }
+      try {
+        tail(core, ulog);
+      } finally {
+        openSearcherIfChanged(core);
+      }
+    }
+  }
+
+  private void tail(SolrCore core, UpdateLog ulog) throws Exception {
+    final CloudDescriptor cloudDescriptor = core.getCoreDescriptor().getCloudDescriptor();
+    final Replica leader = cc.getZkController().getZkStateReader()
+        .getLeaderRetry(cloudDescriptor.getCollectionName(), cloudDescriptor.getShardId(), 1000);
+    if (indexFetched) {
+      indexFetched = false;
+      overlay.retainNewerThan(fetchedVersion);
+      highestVersion = getHighestLocalVersion(core, ulog);
+    }
+    final long knownVersion = highestVersion;
+    final HttpSolrClient client = getLeaderClient(leader.getCoreUrl());
+
+    // ask for more and more of the leader's recent versions until they reach back to ours
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    List<Long> newVersions;
+    for (int numVersions = maxUpdates; ; numVersions *= 2) {
+      params.set("getVersions", numVersions);
+      @SuppressWarnings({"unchecked"})
+      final List<Long> leaderVersions = (List<Long>) request(client, params).get("versions");
+      if (leaderVersions == null) {
+        return;
+      }
+      newVersions = leaderVersions.stream()
+          .filter(v -> Math.abs(v) > knownVersion)
+          .collect(Collectors.toList());
+      if (newVersions.size() < leaderVersions.size() || (knownVersion == 0 && leaderVersions.size() < numVersions)) {
+        break;
+      }
+      if (leaderVersions.size() < numVersions || numVersions >= MAX_PAGES * maxUpdates) {
+        if (!missedUpdates) {
+          log.warn("The update log of the leader of {} no longer has all updates since version {}, "
+              + "recent updates are unavailable until the next index fetch", coreName, knownVersion);
+        }
+        missedUpdates = true;
+        overlay.clear();
+        return;
+      }
+    }
+    if (newVersions.isEmpty()) {
+      return;
+    }
+
+    // oldest first
+    newVersions.sort(Comparator.comparingLong(Math::abs));
+    for (int i = 0; i < newVersions.size(); i += maxUpdates) {
+      params.clear();
+      params.set("getUpdates", StrUtils.join(newVersions.subList(i, Math.min(newVersions.size(), i + maxUpdates)), ','));
+      @SuppressWarnings({"unchecked"})
+      final List<Object> updates = (List<Object>) request(client, params).get("updates");
+      if (updates != null) {
+        applyUpdates(core, ulog, updates);
+      }
+    }
+  }
+
+  /** Returns the client to the leader, creating a new one only when the leader has changed. */
+  private HttpSolrClient getLeaderClient(String url) throws IOException {
+    if (!url.equals(leaderUrl)) {
+      closeLeaderClient();
+      leaderClient = new HttpSolrClient.Builder(url)
+          .withHttpClient(cc.getUpdateShardHandler().getDefaultHttpClient()).build();
+      leaderUrl = url;
+    }
+    return leaderClient;
+  }
+
+  private void closeLeaderClient() throws IOException {
+    if (leaderClient != null) {
+      leaderClient.close();
+      leaderClient = null;
+      leaderUrl = null;
+    }
+  }
+
+  private NamedList<Object> request(HttpSolrClient client, ModifiableSolrParams params)
+      throws SolrServerException, IOException {
+    params.set("qt", "/get");
+    params.set(DISTRIB, false);
+    return client.request(new QueryRequest(params, SolrRequest.METHOD.POST));
+  }
+
+  /** Opens a new searcher if the overlay has changed since the last one was opened. */
+  private void openSearcherIfChanged(SolrCore core) {
+    final long generation = overlay.getGeneration();
+    if (generation != searcherGeneration) {
+      core.getSearcher(true, false, null);
+      searcherGeneration = generation;
+    }
+  }
+
+  /** Writes the updates, oldest first, to the update log and the overlay. */
+  private void applyUpdates(SolrCore core, UpdateLog ulog, List<Object> updates) throws IOException {
+    final List<List<Object>> entries = new ArrayList<>(updates.size());
+    for (Object update : updates) {
+      @SuppressWarnings({"unchecked"})
+      final List<Object> entry = (List<Object>) update;
+      entries.add(entry);
+    }
+    entries.sort(Comparator.comparingLong(entry -> Math.abs((Long) entry.get(1))));
+
+    final UpdateHandler uhandler = core.getUpdateHandler();
+    boolean deletedByQuery = false;
+    try (LocalSolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams())) {
+      for (List<Object> entry : entries) {
+        final int oper = (Integer) entry.get(0) & UpdateLog.OPERATION_MASK;
+        final long version = (Long) entry.get(1);
+        switch (oper) {
+          case UpdateLog.ADD: {
+            final AddUpdateCommand cmd = new AddUpdateCommand(req);
+            cmd.solrDoc = (SolrInputDocument) entry.get(entry.size() - 1);
+            cmd.setVersion(version);
+            cmd.setFlags(FLAGS);
+            uhandler.addDoc(cmd);
+            overlay.add(cmd);
+            break;
+          }
+          case UpdateLog.UPDATE_INPLACE: {
+            final AddUpdateCommand cmd = UpdateLog.convertTlogEntryToAddUpdateCommand(req, entry, oper, version);
+            cmd.setFlags(FLAGS);
+            uhandler.addDoc(cmd);
+            // the overlay only takes whole documents, resolved from the update log and the current searcher
+            final BytesRef id = cmd.getIndexedId();
+            final SolrInputDocument doc = RealTimeGetComponent.getInputDocument(core, id, id, null, null,
+                core.getLatestSchema().isUsableForChildDocs()
+                    ? RealTimeGetComponent.Resolution.ROOT_WITH_CHILDREN : RealTimeGetComponent.Resolution.DOC);
+            if (doc != null) {
+              final AddUpdateCommand full = new AddUpdateCommand(req);
+              full.solrDoc = doc;
+              full.setVersion(version);
+              overlay.add(full);
+            }
+            break;
+          }
+          case UpdateLog.DELETE: {
+            final DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
+            cmd.setIndexedId(new BytesRef((byte[]) entry.get(2)));
+            cmd.setVersion(version);
+            cmd.setFlags(FLAGS);
+            uhandler.delete(cmd);
+            overlay.delete(cmd);
+            break;
+          }
+          case UpdateLog.DELETE_BY_QUERY: {
+            final DeleteUpdateCommand cmd = new DeleteUpdateCommand(req);
+            cmd.query = (String) entry.get(2);
+            cmd.setVersion(version);
+            cmd.setFlags(FLAGS);
+            uhandler.deleteByQuery(cmd);
+            overlay.deleteByQuery(cmd);
+            deletedByQuery = true;
+            break;
+          }
+          default:
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown Operation! " + oper);
+        }
+        highestVersion = Math.max(highestVersion, Math.abs(version));
+        tailedUpdates.increment();
+      }
+    }
+    if (deletedByQuery) {
+      // the update log can't apply the query to the tailed documents, so have real-time get read them from
+      // a searcher over the overlay instead
+      ulog.openRealtimeSearcher();
+    }
+  }
+
+  private static long getHighestLocalVersion(SolrCore core, UpdateLog ulog) throws IOException {
+    long highest = 0;
+    try (UpdateLog.RecentUpdates recentUpdates = ulog.getRecentUpdates()) {
+      final List<Long> versions = recentUpdates.getVersions(1);
+      if (!versions.isEmpty()) {
+        highest = Math.abs(versions.get(0));
+      }
+    }
+    final VersionInfo versionInfo = ulog.getVersionInfo();
+    if (versionInfo != null) {
+      final RefCounted<SolrIndexSearcher> searcher = core.getSearcher();
+      try {
+        final Long maxFromIndex = versionInfo.getMaxVersionFromIndex(searcher.get());
+        if (maxFromIndex != null) {
+          highest = Math.max(highest, maxFromIndex);
+        }
+      } finally {
+        searcher.decref();
+      }
+    }
+    return highest;
+  }
+
+  @Override
+  public void close() {
+    ExecutorUtil.shutdownAndAwaitTermination(executorService);
+    try (SolrCore core = cc.getCore(coreName)) {
+      if (core != null) {
+        core.setReaderOverlay(null);
+      }
+    }
+    try {
+      closeLeaderClient();
+      // searchers still using the overlay keep their own reference to its reader
+      overlay.close();
+    } catch (IOException e) {
+      log.warn("Could not close the tailer of the leader of {}", coreName, e);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiConsumer;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.lucene.util.Version;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -75,6 +76,7 @@ import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.update.UpdateShardHandler;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -181,6 +183,9 @@ public class Overseer implements SolrCloseable {
     private final Stats zkStats;
 
     private SolrMetricsContext clusterStateUpdaterMetricContext;
+    // number of messages read from the state update queue at once, and how long they waited there
+    private final Histogram stateUpdateBatchSize;
+    private final Histogram stateUpdateQueueLag;
 
     private boolean isClosed = false;
 
@@ -197,6 +202,15 @@ public class Overseer implements SolrCloseable {
 
       clusterStateUpdaterMetricContext = solrMetricsContext.getChildContext(this);
       clusterStateUpdaterMetricContext.gauge(() -> stateUpdateQueue.getZkStats().getQueueLength(), true, "stateUpdateQueueSize", "queue" );
+      stateUpdateBatchSize = clusterStateUpdaterMetricContext.histogram("stateUpdateBatchSize", "queue");
+      stateUpdateQueueLag = clusterStateUpdaterMetricContext.histogram("stateUpdateQueueLagMs", "queue");
+    }
+
+    /** Records how long a state update message waited in the queue, based on its znode's creation time. */
+    private void recordQueueLag(Stat stat) {
+      if (stat != null && stat.getCtime() > 0) {
+        stateUpdateQueueLag.update(Math.max(0, System.currentTimeMillis() - stat.getCtime()));
+      }
     }
 
     public Stats getStateUpdateQueueStats() {
@@ -291,7 +305,7 @@ public class Overseer implements SolrCloseable {
           LinkedList<Pair<String, byte[]>> queue = null;
           try {
             // We do not need to filter any nodes here cause all processed nodes are removed once we flush clusterstate
-            queue = new LinkedList<>(stateUpdateQueue.peekElements(1000, 3000L, (x) -> true));
+            queue = new LinkedList<>(stateUpdateQueue.peekElements(1000, 3000L, (x) -> true, this::recordQueueLag));
           } catch (KeeperException.SessionExpiredException e) {
             log.warn("Solr cannot talk to ZK, exiting Overseer main queue loop", e);
             return;
@@ -306,6 +320,7 @@ public class Overseer implements SolrCloseable {
           try {
             Set<String> processedNodes = new HashSet<>();
             while (queue != null && !queue.isEmpty()) {
+              stateUpdateBatchSize.update(queue.size());
               for (Pair<String, byte[]> head : queue) {
                 byte[] data = head.second();
                 final ZkNodeProps message = ZkNodeProps.load(data);
@@ -330,7 +345,7 @@ public class Overseer implements SolrCloseable {
               }
               if (isClosed) break;
               // if an event comes in the next 100ms batch it together
-              queue = new LinkedList<>(stateUpdateQueue.peekElements(1000, 100, node -> !processedNodes.contains(node)));
+              queue = new LinkedList<>(stateUpdateQueue.peekElements(1000, 100, node -> !processedNodes.contains(node), this::recordQueueLag));
             }
             fallbackQueueSize = processedNodes.size();
             // we should force write all pending updates because the next iteration might sleep until there
@@ -405,7 +420,7 @@ public class Overseer implements SolrCloseable {
       if (zkController != null && (zkController.getCoreContainer().isShutDown() || zkController.isClosed())) {
         return;//shutting down no need to go further
       }
-      org.apache.zookeeper.data.Stat stat = new org.apache.zookeeper.data.Stat();
+      Stat stat = new Stat();
       final String path = OVERSEER_ELECT + "/leader";
       byte[] data;
       try {
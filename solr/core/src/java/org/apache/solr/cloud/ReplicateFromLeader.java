@@ -17,6 +17,7 @@
 
 package org.apache.solr.cloud;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 
 import org.apache.lucene.index.IndexCommit;
@@ -44,6 +45,7 @@ public class ReplicateFromLeader {
   private final String coreName;
 
   private volatile ReplicationHandler replicationProcess;
+  private volatile LeaderTlogTailer tlogTailer;
   private volatile long lastVersion = 0;
 
   public ReplicateFromLeader(CoreContainer cc, String coreName) {
@@ -91,17 +93,20 @@ public class ReplicateFromLeader {
 
       // don't commit on leader version zero for PULL replicas as PULL should only get its index state from leader
       boolean skipCommitOnLeaderVersionZero = switchTransactionLog;
-      if (!skipCommitOnLeaderVersionZero) {
-        CloudDescriptor cloudDescriptor = core.getCoreDescriptor().getCloudDescriptor();
-        if (cloudDescriptor != null) {
-          Replica replica =
-              cc.getZkController().getZkStateReader().getCollection(cloudDescriptor.getCollectionName())
-                  .getSlice(cloudDescriptor.getShardId()).getReplica(cloudDescriptor.getCoreNodeName());
-          if (replica != null && replica.getType() == Replica.Type.PULL) {
-            skipCommitOnLeaderVersionZero = true; // only set this to true if we're a PULL replica, otherwise use value of switchTransactionLog
-          }
-        }
+      boolean isPullReplica = false;
+      CloudDescriptor cloudDescriptor = core.getCoreDescriptor().getCloudDescriptor();
+      if (cloudDescriptor != null) {
+        Replica replica =
+            cc.getZkController().getZkStateReader().getCollection(cloudDescriptor.getCollectionName())
+                .getSlice(cloudDescriptor.getShardId()).getReplica(cloudDescriptor.getCoreNodeName());
+        isPullReplica = replica != null && replica.getType() == Replica.Type.PULL;
+      }
+      if (isPullReplica) {
+        skipCommitOnLeaderVersionZero = true; // only set this to true if we're a PULL replica, otherwise use value of switchTransactionLog
       }
+      // PULL replicas tailing the leader's update log rotate it on every fetched commit, just like TLOG replicas
+      boolean tailLeaderTlog = isPullReplica && LeaderTlogTailer.isEnabled()
+          && core.getUpdateHandler().getUpdateLog() != null;
       followerConfig.add(ReplicationHandler.SKIP_COMMIT_ON_LEADER_VERSION_ZERO, skipCommitOnLeaderVersionZero);
 
       followerConfig.add("pollInterval", pollIntervalStr);
@@ -114,7 +119,7 @@ public class ReplicateFromLeader {
       }
 
       replicationProcess = new ReplicationHandler();
-      if (switchTransactionLog) {
+      if (switchTransactionLog || tailLeaderTlog) {
         replicationProcess.setPollListener((solrCore, fetchResult) -> {
           if (fetchResult == IndexFetcher.IndexFetchResult.INDEX_FETCH_SUCCESS) {
             String commitVersion = getCommitVersion(core);
@@ -127,11 +132,22 @@ public class ReplicateFromLeader {
             cuc.setVersion(Long.parseLong(commitVersion));
             updateLog.commitAndSwitchToNewTlog(cuc);
             lastVersion = Long.parseLong(commitVersion);
+            final LeaderTlogTailer tailer = tlogTailer;
+            if (tailer != null) {
+              tailer.indexFetched(lastVersion);
+            }
           }
         });
       }
       replicationProcess.init(replicationConfig);
       replicationProcess.inform(core);
+      if (tailLeaderTlog) {
+        try {
+          tlogTailer = new LeaderTlogTailer(cc, core);
+        } catch (IOException e) {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Could not tail the update log of the leader", e);
+        }
+      }
     }
   }
 
@@ -156,7 +172,21 @@ public class ReplicateFromLeader {
     return hour + ":" + min + ":" + sec;
   }
 
+  /**
+   * @return true if the update log of the leader is tailed and none of its updates have been missed since
+   * the last index fetch, so the replica can answer real-time get requests
+   */
+  public boolean isTailingLeaderTlog() {
+    final LeaderTlogTailer tailer = tlogTailer;
+    return tailer != null && tailer.isComplete();
+  }
+
   public void stopReplication() {
+    final LeaderTlogTailer tailer = tlogTailer;
+    if (tailer != null) {
+      tlogTailer = null;
+      tailer.close();
+    }
     if (replicationProcess != null) {
       replicationProcess.shutdown();
     }
@@ -112,7 +112,12 @@ public class ZkConfigSetService extends ConfigSetService {
 
   @Override
   protected Long getCurrentSchemaModificationVersion(String configSet, SolrConfig solrConfig, String schemaFile) {
-    String zkPath = CONFIGS_ZKNODE + "/" + configSet + "/" + schemaFile;
+    return getCurrentConfigModificationVersion(configSet, solrConfig.getResourceLoader(), schemaFile);
+  }
+
+  @Override
+  protected Long getCurrentConfigModificationVersion(String configSet, SolrResourceLoader loader, String fileName) {
+    String zkPath = CONFIGS_ZKNODE + "/" + configSet + "/" + fileName;
     Stat stat;
     try {
       stat = zkClient.exists(zkPath, null, true);
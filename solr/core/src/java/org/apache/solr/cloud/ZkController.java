@@ -1218,7 +1218,9 @@ public class ZkController implements Closeable {
           }
         }
         // we will call register again after zk expiration and on reload
-        if (!afterExpiration && !core.isReloaded() && ulog != null && !isTlogReplicaAndNotLeader) {
+        // PULL replicas that tail the leader's update log only use it for real-time get, never replay it
+        if (!afterExpiration && !core.isReloaded() && ulog != null && !isTlogReplicaAndNotLeader
+            && replica.getType() != Replica.Type.PULL) {
           // disable recovery in case shard is in construction state (for shard splits)
           Slice slice = getClusterState().getCollection(collection).getSlice(shardId);
           if (slice.getState() != Slice.State.CONSTRUCTION || !isLeader) {
@@ -1291,6 +1293,16 @@ public class ZkController implements Closeable {
     }
   }
 
+  /**
+   * @return true if the given PULL replica core tails the update log of its leader without having
+   * missed any updates since its last index fetch
+   * @see ReplicateFromLeader#isTailingLeaderTlog()
+   */
+  public boolean isTailingLeaderTlog(String coreName) {
+    ReplicateFromLeader replicateFromLeader = replicateFromLeaders.get(coreName);
+    return replicateFromLeader != null && replicateFromLeader.isTailingLeaderTlog();
+  }
+
   public void stopReplicationFromLeader(String coreName) {
     log.info("{} stopping background replication from leader", coreName);
     ReplicateFromLeader replicateFromLeader = replicateFromLeaders.remove(coreName);
@@ -29,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import com.codahale.metrics.Timer;
@@ -44,6 +45,7 @@ import org.apache.solr.common.util.Pair;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.data.Stat;
@@ -67,6 +69,9 @@ public class ZkDistributedQueue implements DistributedQueue {
 
   static final String PREFIX = "qn-";
 
+  /** Max elements fetched by one multi-read in {@link #peekElements}; keeps responses well below jute.maxbuffer. */
+  static final int MULTI_READ_BATCH_SIZE = 100;
+
   /**
    * Theory of operation:
    * <p>
@@ -105,6 +110,9 @@ public class ZkDistributedQueue implements DistributedQueue {
 
   private boolean isDirty = true;
 
+  /** Whether {@link #peekElements} fetches with multi-reads; cleared if the ZooKeeper server rejects them. */
+  private volatile boolean useMultiRead = Boolean.parseBoolean(System.getProperty("solr.zkQueueMultiRead", "true"));
+
   private int watcherCount = 0;
 
   private final int maxQueueSize;
@@ -447,6 +455,15 @@ public class ZkDistributedQueue implements DistributedQueue {
    */
   @Override
   public Collection<Pair<String, byte[]>> peekElements(int max, long waitMillis, Predicate<String> acceptFilter) throws KeeperException, InterruptedException {
+    return peekElements(max, waitMillis, acceptFilter, null);
+  }
+
+  /**
+   * Like {@link #peekElements(int, long, Predicate)}, additionally passing the {@link Stat} of each returned element
+   * to {@code statConsumer} (if non-null), e.g. to measure how long elements waited in the queue.
+   */
+  public Collection<Pair<String, byte[]>> peekElements(int max, long waitMillis, Predicate<String> acceptFilter,
+                                                       Consumer<Stat> statConsumer) throws KeeperException, InterruptedException {
     List<String> foundChildren = new ArrayList<>();
     long waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
     boolean first = true;
@@ -488,26 +505,75 @@ public class ZkDistributedQueue implements DistributedQueue {
     // from ZK, but this is a super rare case, and the latency of the ZK fetches would require
     // much more sophisticated waitNanos tracking.
     List<Pair<String, byte[]>> result = new ArrayList<>();
+    boolean multiRead = useMultiRead;
+    if (multiRead) {
+      // fetch in batches with a single round trip each instead of one getData per element
+      int from = 0;
+      while (result.size() < max && from < foundChildren.size()) {
+        List<String> batch = foundChildren.subList(from, Math.min(from + Math.min(max - result.size(), MULTI_READ_BATCH_SIZE), foundChildren.size()));
+        from += batch.size();
+        List<OpResult> opResults;
+        try {
+          List<Op> ops = new ArrayList<>(batch.size());
+          for (String child : batch) {
+            ops.add(Op.getData(dir + "/" + child));
+          }
+          opResults = zookeeper.multi(ops, true);
+        } catch (KeeperException.ConnectionLossException | KeeperException.SessionExpiredException e) {
+          throw e;
+        } catch (KeeperException e) {
+          if (!(e instanceof KeeperException.NoNodeException)) {
+            // probably a ZooKeeper server that doesn't support multi-reads (added in 3.6)
+            log.warn("Reading {} with multi-reads failed, falling back to one read per element", dir, e);
+            useMultiRead = false;
+          }
+          // read the rest one by one
+          multiRead = false;
+          foundChildren = foundChildren.subList(from - batch.size(), foundChildren.size());
+          break;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          OpResult opResult = opResults.get(i);
+          if (opResult instanceof OpResult.GetDataResult) {
+            OpResult.GetDataResult dataResult = (OpResult.GetDataResult) opResult;
+            result.add(new Pair<>(batch.get(i), dataResult.getData()));
+            if (statConsumer != null) statConsumer.accept(dataResult.getStat());
+          } else {
+            // a read multi reports failures per op; typically another client deleted the node first
+            forgetChild(batch.get(i));
+          }
+        }
+      }
+      if (multiRead) {
+        return result;
+      }
+    }
     for (String child : foundChildren) {
       if (result.size() >= max) {
         break;
       }
       try {
-        byte[] data = zookeeper.getData(dir + "/" + child, null, null, true);
+        Stat stat = statConsumer == null ? null : new Stat();
+        byte[] data = zookeeper.getData(dir + "/" + child, null, stat, true);
         result.add(new Pair<>(child, data));
+        if (statConsumer != null) statConsumer.accept(stat);
       } catch (KeeperException.NoNodeException e) {
         // Another client deleted the node first, remove the in-memory and continue.
-        updateLock.lockInterruptibly();
-        try {
-          knownChildren.remove(child);
-        } finally {
-          updateLock.unlock();
-        }
+        forgetChild(child);
       }
     }
     return result;
   }
 
+  private void forgetChild(String child) throws InterruptedException {
+    updateLock.lockInterruptibly();
+    try {
+      knownChildren.remove(child);
+    } finally {
+      updateLock.unlock();
+    }
+  }
+
   /**
    * Return the head of the queue without modifying the queue.
    *
@@ -68,6 +68,15 @@ public class Assign {
   }
 
   public static int incAndGetId(DistribStateManager stateManager, String collection, int defaultValue) {
+    return incAndGetIds(stateManager, collection, defaultValue, 1);
+  }
+
+  /**
+   * Like {@link #incAndGetId(DistribStateManager, String, int)}, but reserves {@code count} consecutive ids
+   * with a single update of the counter.
+   * @return the first of the reserved ids
+   */
+  public static int incAndGetIds(DistribStateManager stateManager, String collection, int defaultValue, int count) {
     String path = ZkStateReader.COLLECTIONS_ZKNODE + "/"+collection;
     try {
       if (!stateManager.hasData(path)) {
@@ -101,9 +110,9 @@ public class Assign {
           currentId = NumberUtils.bytesToInt(data.getData());
           version = data.getVersion();
         }
-        byte[] bytes = NumberUtils.intToBytes(++currentId);
+        byte[] bytes = NumberUtils.intToBytes(currentId + count);
         stateManager.setData(path, bytes, version);
-        return currentId;
+        return currentId + 1;
       } catch (BadVersionException e) {
         continue;
       } catch (IOException | KeeperException e) {
@@ -213,6 +222,20 @@ public class Assign {
     return coreName;
   }
 
+  /**
+   * Builds the core names for all the replicas of a new collection, reserving their ids with one update of
+   * the collection's counter instead of one per replica.
+   */
+  public static List<String> buildSolrCoreNames(DistribStateManager stateManager, String collectionName, List<ReplicaPosition> positions) {
+    List<String> coreNames = new ArrayList<>(positions.size());
+    if (positions.isEmpty()) return coreNames;
+    int replicaNum = incAndGetIds(stateManager, collectionName, 0, positions.size());
+    for (ReplicaPosition position : positions) {
+      coreNames.add(buildSolrCoreName(collectionName, position.shard, position.type, replicaNum++));
+    }
+    return coreNames;
+  }
+
   public static String buildSolrCoreName(DistribStateManager stateManager, DocCollection collection, String shard, Replica.Type type) {
     return buildSolrCoreName(stateManager, collection, shard, type, false);
   }
@@ -258,20 +258,28 @@ public class CollectionHandlingUtils {
     Map<String, Replica> results = new ConcurrentHashMap<>();
 
     long maxWait = Long.getLong("solr.waitToSeeReplicasInStateTimeoutSeconds", 120); // could be a big cluster
-    try {
-      zkStateReader.waitForState(collectionName, maxWait, TimeUnit.SECONDS, c -> {
-        if (c == null) return false;
-
-        // We write into a ConcurrentHashMap, which will be ok if called multiple times by multiple threads
-        c.getSlices().stream().flatMap(slice -> slice.getReplicas().stream())
-            .filter(r -> coreNames.contains(r.getCoreName()))       // Only the elements that were asked for...
-            .forEach(r -> results.putIfAbsent(r.getCoreName(), r)); // ...get added to the map
-
-        log.debug("Expecting {} cores, found {}", coreNames, results);
-        return results.size() == coreNames.size();
-      });
-    } catch (TimeoutException e) {
-      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e.getMessage(), e);
+    // with thousands of replicas this may legitimately take longer; only give up when no new replica showed up for maxWait
+    int lastFound = 0;
+    while (true) {
+      try {
+        zkStateReader.waitForState(collectionName, maxWait, TimeUnit.SECONDS, c -> {
+          if (c == null) return false;
+
+          // We write into a ConcurrentHashMap, which will be ok if called multiple times by multiple threads
+          c.getSlices().stream().flatMap(slice -> slice.getReplicas().stream())
+              .filter(r -> coreNames.contains(r.getCoreName()))       // Only the elements that were asked for...
+              .forEach(r -> results.putIfAbsent(r.getCoreName(), r)); // ...get added to the map
+
+          log.debug("Expecting {} cores, found {}", coreNames, results);
+          return results.size() == coreNames.size();
+        });
+        break;
+      } catch (TimeoutException e) {
+        if (results.size() == lastFound) {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e.getMessage(), e);
+        }
+        lastFound = results.size();
+      }
     }
 
     return results;
@@ -60,6 +60,7 @@ import org.apache.solr.core.CoreContainer;
 import org.apache.solr.handler.admin.ConfigSetsHandler;
 import org.apache.solr.handler.component.ShardHandler;
 import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
 import org.apache.solr.util.TimeOut;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
@@ -228,12 +229,13 @@ public class CreateCollectionCmd implements CollApiCmds.CollectionApiCommand {
         scr = null;
       }
 
-      for (ReplicaPosition replicaPosition : replicaPositions) {
+      // one counter update for all the core names rather than one (or more) ZK round trips per replica
+      List<String> coreNames = Assign.buildSolrCoreNames(ccc.getSolrCloudManager().getDistribStateManager(),
+          collectionName, replicaPositions);
+      for (int i = 0; i < replicaPositions.size(); i++) {
+        ReplicaPosition replicaPosition = replicaPositions.get(i);
         String nodeName = replicaPosition.node;
-
-        String coreName = Assign.buildSolrCoreName(ccc.getSolrCloudManager().getDistribStateManager(),
-            ccc.getSolrCloudManager().getClusterStateProvider().getClusterState().getCollection(collectionName),
-            replicaPosition.shard, replicaPosition.type, true);
+        String coreName = coreNames.get(i);
         if (log.isDebugEnabled()) {
           log.debug(formatString("Creating core {0} as part of shard {1} of collection {2} on {3}"
               , coreName, replicaPosition.shard, collectionName, nodeName));
@@ -256,12 +258,9 @@ public class CreateCollectionCmd implements CollApiCmds.CollectionApiCommand {
           // to the overseer queue.
           // TODO: Consider doing this for all collections, not just the PRS collections.
 
-          // TODO: consider doing this once after the loop for all replicas rather than writing state.json repeatedly
+          // The replicas are added in memory here, and state.json is written once after the loop.
           // This PRS specific code is compatible with both Overseer and distributed cluster state update strategies
           ZkWriteCommand command = new SliceMutator(ccc.getSolrCloudManager()).addReplica(clusterState, props);
-          byte[] data = Utils.toJSON(Collections.singletonMap(collectionName, command.collection));
-//        log.info("collection updated : {}", new String(data, StandardCharsets.UTF_8));
-          ccc.getZkStateReader().getZkClient().setData(collectionPath, data, true);
           clusterState = clusterState.copyWith(collectionName, command.collection);
           newColl = command.collection;
         } else {
@@ -302,7 +301,12 @@ public class CreateCollectionCmd implements CollApiCmds.CollectionApiCommand {
         coresToCreate.put(coreName, sreq);
       }
 
-      // PRS collections updated ZK state.json in the loop above. When Overseer is managing cluster state updates, need to
+      if (isPRS) {
+        byte[] data = Utils.toJSON(Collections.singletonMap(collectionName, newColl));
+        ccc.getZkStateReader().getZkClient().setData(collectionPath, data, true);
+      }
+
+      // PRS collections updated ZK state.json above. When Overseer is managing cluster state updates, need to
       // tell it to refresh itself to know about the replicas and be able to execute nodes shard requests regarding the replicas.
       if (isPRS && !ccc.getDistributedClusterStateUpdater().isDistributedStateUpdate()) {
         ccc.submitIntraProcessMessage(new RefreshCollectionMessage(collectionName));
@@ -326,21 +330,39 @@ public class CreateCollectionCmd implements CollApiCmds.CollectionApiCommand {
         replicas = CollectionHandlingUtils.waitToSeeReplicasInState(ccc.getZkStateReader(), ccc.getSolrCloudManager().getTimeSource(), collectionName, coresToCreate.keySet());
       }
 
+      // Send the core creation requests to all nodes in parallel, but with at most maxConcurrentCoreCreations
+      // outstanding at a time so thousands of replicas don't overwhelm the nodes or the http client.
+      final int maxConcurrentCoreCreations = Integer.getInteger("solr.maxConcurrentCoreCreations", 100);
+      int inFlight = 0;
       for (Map.Entry<String, ShardRequest> e : coresToCreate.entrySet()) {
+        if (inFlight >= maxConcurrentCoreCreations) {
+          ShardResponse srsp = shardHandler.takeCompletedOrError();
+          if (srsp != null) {
+            CollectionHandlingUtils.processResponse(results, srsp, Collections.emptySet());
+            inFlight--;
+          }
+        }
         ShardRequest sreq = e.getValue();
         sreq.params.set(CoreAdminParams.CORE_NODE_NAME, replicas.get(e.getKey()).getName());
         shardHandler.submit(sreq, sreq.shards[0], sreq.params);
+        inFlight++;
       }
 
       shardRequestTracker.processResponses(results, shardHandler, false, null, Collections.emptySet());
       boolean failure = results.get("failure") != null && ((SimpleOrderedMap<?>)results.get("failure")).size() > 0;
       if (isPRS) {
-        TimeOut timeout = new TimeOut(Integer.getInteger("solr.waitToSeeReplicasInStateTimeoutSeconds", 120), TimeUnit.SECONDS, ccc.getSolrCloudManager().getTimeSource()); // could be a big cluster
+        // could be a big cluster, so only time out if no replica changed state for that long
+        int timeoutSeconds = Integer.getInteger("solr.waitToSeeReplicasInStateTimeoutSeconds", 120);
+        TimeOut timeout = new TimeOut(timeoutSeconds, TimeUnit.SECONDS, ccc.getSolrCloudManager().getTimeSource());
         PerReplicaStates prs = PerReplicaStates.fetch(collectionPath, ccc.getZkStateReader().getZkClient(), null);
         while (!timeout.hasTimedOut()) {
           if(prs.allActive()) break;
           Thread.sleep(100);
-          prs = PerReplicaStates.fetch(collectionPath, ccc.getZkStateReader().getZkClient(), null);
+          int lastCversion = prs.cversion;
+          prs = PerReplicaStates.fetch(collectionPath, ccc.getZkStateReader().getZkClient(), prs);
+          if (prs.cversion != lastCversion) {
+            timeout = new TimeOut(timeoutSeconds, TimeUnit.SECONDS, ccc.getSolrCloudManager().getTimeSource());
+          }
         }
         if (prs.allActive()) {
           // we have successfully found all replicas to be ACTIVE
@@ -26,6 +26,8 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 import com.github.benmanes.caffeine.cache.Cache;
@@ -42,6 +44,7 @@ import org.apache.solr.schema.IndexSchemaFactory;
 import org.apache.solr.servlet.SolrDispatchFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 
 /**
  * Service class used by the CoreContainer to load ConfigSets for use in SolrCore creation.
@@ -51,6 +54,7 @@ public abstract class ConfigSetService {
   public static final String UPLOAD_FILENAME_EXCLUDE_REGEX = "^\\..*$";
   public static final Pattern UPLOAD_FILENAME_EXCLUDE_PATTERN = Pattern.compile(UPLOAD_FILENAME_EXCLUDE_REGEX);
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final int CONFIG_CACHE_SIZE = 100;
 
   public static ConfigSetService createConfigSetService(CoreContainer coreContainer) {
     final ConfigSetService configSetService = instantiate(coreContainer);
@@ -213,8 +217,17 @@ public abstract class ConfigSetService {
               && !flags.getBooleanArg("trusted")
               ) ? false: true;
 
+      long start = System.nanoTime();
       SolrConfig solrConfig = createSolrConfig(dcore, coreLoader, trusted);
-      return new ConfigSet(configSetName(dcore), solrConfig, force -> createIndexSchema(dcore, solrConfig, force), properties, trusted);
+      configLoadNanos.add(System.nanoTime() - start);
+      return new ConfigSet(configSetName(dcore), solrConfig, force -> {
+        long schemaStart = System.nanoTime();
+        try {
+          return createIndexSchema(dcore, solrConfig, force);
+        } finally {
+          schemaLoadNanos.add(System.nanoTime() - schemaStart);
+        }
+      }, properties, trusted);
     } catch (Exception e) {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
           "Could not load conf for core " + dcore.getName() +
@@ -228,15 +241,46 @@ public abstract class ConfigSetService {
   /** Optional cache of schemas, key'ed by a bunch of concatenated things */
   private final Cache<String, IndexSchema> schemaCache;
 
+  /**
+   * Optional cache of parsed but unsubstituted solrconfig documents, key'ed by configSet, file and version.
+   * Each core still gets its own {@link SolrConfig}; only the XML parsing is shared.
+   */
+  private final Cache<String, ParsedConfig> configCache;
+
+  private final LongAdder configLoadNanos = new LongAdder();
+  private final LongAdder schemaLoadNanos = new LongAdder();
+
   /**
    * Create a new ConfigSetService
    *
    * @param loader the CoreContainer's resource loader
-   * @param shareSchema should we share the IndexSchema among cores of same config?
+   * @param shareSchema should we share the IndexSchema and parsed solrconfig among cores of same config?
    */
   public ConfigSetService(SolrResourceLoader loader, boolean shareSchema) {
     this.parentLoader = loader;
     this.schemaCache = shareSchema ? Caffeine.newBuilder().weakValues().build() : null;
+    // strong values: nothing but this cache references the shared documents
+    this.configCache = shareSchema ? Caffeine.newBuilder().maximumSize(CONFIG_CACHE_SIZE).build() : null;
+  }
+
+  private static final class ParsedConfig {
+    final Document doc;
+    final int zkVersion;
+
+    ParsedConfig(Document doc, int zkVersion) {
+      this.doc = doc;
+      this.zkVersion = zkVersion;
+    }
+  }
+
+  /** Total time spent building {@link SolrConfig}s for cores, including reloads, in milliseconds. */
+  public long getConfigLoadTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(configLoadNanos.sum());
+  }
+
+  /** Total time spent building (or looking up cached) {@link IndexSchema}s for cores, including reloads, in milliseconds. */
+  public long getSchemaLoadTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(schemaLoadNanos.sum());
   }
 
   /**
@@ -248,7 +292,30 @@ public abstract class ConfigSetService {
    * @return a SolrConfig object
    */
   protected SolrConfig createSolrConfig(CoreDescriptor cd, SolrResourceLoader loader, boolean isTrusted) {
-    return SolrConfig.readFromResourceLoader(loader, cd.getConfigName(), isTrusted, cd.getSubstitutableProperties());
+    String configSet = cd.getConfigSet();
+    String configName = cd.getConfigName();
+    if (configSet != null && configCache != null) {
+      Long modVersion = getCurrentConfigModificationVersion(configSet, loader, configName);
+      if (modVersion != null) {
+        String cacheKey = configSet + "/" + configName + "/" + modVersion;
+        ParsedConfig parsed = configCache.get(cacheKey, (key) -> parseConfig(loader, configName));
+        return SolrConfig.readFromResourceLoader(loader, configName, parsed.doc, parsed.zkVersion,
+            isTrusted, cd.getSubstitutableProperties());
+      } else {
+        log.warn("Unable to get config modification version, configSet={} config={}", configSet, configName);
+      }
+    }
+    return SolrConfig.readFromResourceLoader(loader, configName, isTrusted, cd.getSubstitutableProperties());
+  }
+
+  private static ParsedConfig parseConfig(SolrResourceLoader loader, String configName) {
+    try {
+      // no property substitution; that's done per core on a copy
+      XmlConfigFile config = new XmlConfigFile(loader, configName, null, "/config/", null);
+      return new ParsedConfig(config.getDocument(), config.getZnodeVersion());
+    } catch (Exception e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error loading solr config " + configName, e);
+    }
   }
 
   /**
@@ -292,6 +359,15 @@ public abstract class ConfigSetService {
    */
   protected abstract Long getCurrentSchemaModificationVersion(String configSet, SolrConfig solrConfig, String schemaFile);
 
+  /**
+   * Returns a modification version for a config file such as solrconfig.xml.
+   * Null may be returned if not known, and if so it defeats config caching.
+   * Files pulled in via XInclude are not considered.
+   */
+  protected Long getCurrentConfigModificationVersion(String configSet, SolrResourceLoader loader, String configFile) {
+    return null;
+  }
+
   /**
    * Return the ConfigSet properties or null if none.
    * @see ConfigSetProperties
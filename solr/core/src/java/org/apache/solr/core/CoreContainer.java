@@ -69,6 +69,7 @@ import org.apache.solr.filestore.PackageStoreAPI;
 import org.apache.solr.handler.ClusterAPI;
 import org.apache.solr.handler.CollectionBackupsAPI;
 import org.apache.solr.handler.CollectionsAPI;
+import org.apache.solr.handler.IncrementalShardBackup;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.handler.SnapShooter;
 import org.apache.solr.handler.admin.CollectionsHandler;
@@ -138,6 +139,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
@@ -196,6 +198,11 @@ public class CoreContainer {
 
   private volatile ConfigSetService coreConfigService;
 
+  private volatile long coreDiscoveryTimeMs = -1;
+  private volatile long initialCoreLoadTimeMs = -1;
+  private volatile long initialConfigLoadTimeMs = -1;
+  private volatile long initialSchemaLoadTimeMs = -1;
+
   protected final ZkContainer zkSys = new ZkContainer();
   protected volatile ShardHandlerFactory shardHandlerFactory;
 
@@ -206,6 +213,9 @@ public class CoreContainer {
 
   private final OrderedExecutor replayUpdatesExecutor;
 
+  // incremental backup uploads, by repository name
+  private final Map<String, ExecutorService> backupUploadExecutors = new ConcurrentHashMap<>();
+
   protected volatile LogWatcher<?> logging = null;
 
   private volatile CloserThread backgroundCloser = null;
@@ -295,6 +305,19 @@ public class CoreContainer {
     return repository;
   }
 
+  /**
+   * Returns the executor that uploads the index files of incremental backups to the given repository.  It is
+   * shared by all the shard backups of this node, so that {@link IncrementalShardBackup#UPLOAD_THREADS} bounds
+   * the concurrent uploads of the node rather than of each shard.
+   *
+   * @param repositoryName The name of the backup repository, null for the default one.
+   * @param repository an instance of this repository, used to read its configuration the first time.
+   */
+  public ExecutorService getBackupUploadExecutor(String repositoryName, BackupRepository repository) {
+    return backupUploadExecutors.computeIfAbsent(repositoryName == null ? "" : repositoryName,
+        name -> IncrementalShardBackup.newUploadExecutor(repository));
+  }
+
   public ExecutorService getCoreZkRegisterExecutorService() {
     return zkSys.getCoreZkRegisterExecutorService();
   }
@@ -830,6 +853,15 @@ public class CoreContainer {
         true, "specification", SolrInfoBean.Category.CONTAINER.toString(), "version");
     solrMetricsContext.gauge(() -> this.getClass().getPackage().getImplementationVersion(),
         true, "implementation", SolrInfoBean.Category.CONTAINER.toString(), "version");
+    // startup timings, to tell where the time goes on nodes with many cores; -1 until known
+    solrMetricsContext.gauge(() -> coreDiscoveryTimeMs,
+        true, "coreDiscoveryMs", SolrInfoBean.Category.CONTAINER.toString(), "startup");
+    solrMetricsContext.gauge(() -> initialCoreLoadTimeMs,
+        true, "initialCoreLoadMs", SolrInfoBean.Category.CONTAINER.toString(), "startup");
+    solrMetricsContext.gauge(() -> initialConfigLoadTimeMs,
+        true, "configLoadMs", SolrInfoBean.Category.CONTAINER.toString(), "startup");
+    solrMetricsContext.gauge(() -> initialSchemaLoadTimeMs,
+        true, "schemaLoadMs", SolrInfoBean.Category.CONTAINER.toString(), "startup");
 
     SolrFieldCacheBean fieldCacheBean = new SolrFieldCacheBean();
     fieldCacheBean.initializeMetrics(solrMetricsContext, null);
@@ -849,10 +881,12 @@ public class CoreContainer {
         metricManager.registry(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node)),
         SolrMetricManager.mkName("coreLoadExecutor", SolrInfoBean.Category.CONTAINER.toString(), "threadPool"));
     final List<Future<SolrCore>> futures = new ArrayList<>();
+    final long coreLoadStart = System.nanoTime();
     try {
       List<CoreDescriptor> cds = coresLocator.discover(this);
       cds = CoreSorter.sortCores(this, cds);
       checkForDuplicateCoreNames(cds);
+      coreDiscoveryTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - coreLoadStart);
       status |= CORE_DISCOVERY_COMPLETE;
 
       for (final CoreDescriptor cd : cds) {
@@ -907,10 +941,12 @@ public class CoreContainer {
             }
           } finally {
             ExecutorUtil.shutdownAndAwaitTermination(coreLoadExecutor);
+            recordInitialCoreLoadTime(coreLoadStart);
           }
         });
       } else {
         ExecutorUtil.shutdownAndAwaitTermination(coreLoadExecutor);
+        recordInitialCoreLoadTime(coreLoadStart);
       }
     }
 
@@ -949,6 +985,16 @@ public class CoreContainer {
     status |= LOAD_COMPLETE | INITIAL_CORE_LOAD_COMPLETE;
   }
 
+  /**
+   * Records the startup timings once the cores found on startup are loaded.  The config and schema load times
+   * of the config set service keep growing with later core creations and reloads, so they are copied here.
+   */
+  private void recordInitialCoreLoadTime(long coreLoadStart) {
+    initialConfigLoadTimeMs = coreConfigService.getConfigLoadTimeMs();
+    initialSchemaLoadTimeMs = coreConfigService.getSchemaLoadTimeMs();
+    initialCoreLoadTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - coreLoadStart);
+  }
+
   private void createUserFilesDirectory() {
     if (isZooKeeperAware()) {
       Path userFilesPath = getUserFilesPath(); // TODO make configurable on cfg?
@@ -1096,6 +1142,10 @@ public class CoreContainer {
         replayUpdatesExecutor.shutdownAndAwaitTermination();
       });
 
+      for (ExecutorService uploadExecutor : backupUploadExecutors.values()) {
+        customThreadPool.submit(() -> ExecutorUtil.shutdownNowAndAwaitTermination(uploadExecutor));
+      }
+
       if (metricManager != null) {
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node));
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.jvm));
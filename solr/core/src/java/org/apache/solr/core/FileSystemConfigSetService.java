@@ -20,6 +20,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -135,13 +136,18 @@ public class FileSystemConfigSetService extends ConfigSetService {
 
   @Override
   protected Long getCurrentSchemaModificationVersion(String configSet, SolrConfig solrConfig, String schemaFileName) {
-    Path schemaFile = solrConfig.getResourceLoader().getConfigPath().resolve(schemaFileName);
+    return getCurrentConfigModificationVersion(configSet, solrConfig.getResourceLoader(), schemaFileName);
+  }
+
+  @Override
+  protected Long getCurrentConfigModificationVersion(String configSet, SolrResourceLoader loader, String fileName) {
+    Path file = loader.getConfigPath().resolve(fileName);
     try {
-      return Files.getLastModifiedTime(schemaFile).toMillis();
-    } catch (FileNotFoundException e) {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (FileNotFoundException | NoSuchFileException e) {
       return null; // acceptable
     } catch (IOException e) {
-      log.warn("Unexpected exception when getting modification time of {}", schemaFile, e);
+      log.warn("Unexpected exception when getting modification time of {}", file, e);
       return null; // debatable; we'll see an error soon if there's a real problem
     }
   }
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RateLimiter;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A <code>firstSearcher</code> listener that reads the index files most queries need into the OS page cache, so that
+ * the first queries after a restart don't have to read them from disk. Files are read in the background, at a limited
+ * rate, while the core already serves requests.
+ * <p>
+ * Files are read by type, in the order of the <code>fileTypes</code> extensions (by default the terms index, then
+ * docValues, then norms, then compound files), and from the smallest to the largest for the same type so that as
+ * many segments as possible are warm early on.
+ * <pre>
+ * &lt;listener event="firstSearcher" class="solr.IndexFilePrewarmer"&gt;
+ *   &lt;str name="fileTypes"&gt;tip,tmd,dvm,dvd,nvm,nvd,cfs&lt;/str&gt;
+ *   &lt;double name="maxMBPerSec"&gt;50&lt;/double&gt;
+ *   &lt;long name="maxMB"&gt;-1&lt;/long&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ */
+public class IndexFilePrewarmer extends AbstractSolrEventListener {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String FILE_TYPES = "fileTypes";
+  public static final String MAX_MB_PER_SEC = "maxMBPerSec";
+  public static final String MAX_MB = "maxMB";
+
+  static final String DEFAULT_FILE_TYPES = "tip,tmd,dvm,dvd,nvm,nvd,cfs";
+  static final double DEFAULT_MAX_MB_PER_SEC = 50;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private Map<String, Integer> priorities;
+  private double maxMBPerSec;
+  private long maxBytes;
+
+  private ExecutorService executor;
+  private volatile boolean closed;
+  private Future<Long> prewarm;
+
+  public IndexFilePrewarmer(SolrCore core) {
+    super(core);
+  }
+
+  @Override
+  public void init(NamedList<?> args) {
+    super.init(args);
+    Object fileTypes = args.get(FILE_TYPES);
+    List<String> extensions = StrUtils.splitSmart(fileTypes == null ? DEFAULT_FILE_TYPES : fileTypes.toString(), ',');
+    priorities = new HashMap<>();
+    for (String extension : extensions) {
+      priorities.putIfAbsent(extension.trim(), priorities.size());
+    }
+    Object maxMBPerSecArg = args.get(MAX_MB_PER_SEC);
+    maxMBPerSec = maxMBPerSecArg == null ? DEFAULT_MAX_MB_PER_SEC : Double.parseDouble(maxMBPerSecArg.toString());
+    Object maxMBArg = args.get(MAX_MB);
+    long maxMB = maxMBArg == null ? -1 : Long.parseLong(maxMBArg.toString());
+    maxBytes = maxMB < 0 ? Long.MAX_VALUE : maxMB * 1024 * 1024;
+  }
+
+  @Override
+  public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+    if (currentSearcher != null || prewarm != null) {
+      // only the files of the index opened at startup are cold
+      return;
+    }
+    // the searcher can't be used once this method returns, but the directory stays open with the core
+    Directory dir = newSearcher.getIndexReader().directory();
+    List<String> files;
+    try {
+      files = getFilesToPrewarm(dir, newSearcher.getIndexReader().getIndexCommit().getFileNames());
+    } catch (IOException e) {
+      log.warn("Could not list the index files to prewarm", e);
+      return;
+    }
+    if (files.isEmpty()) {
+      return;
+    }
+
+    executor = ExecutorUtil.newMDCAwareSingleThreadExecutor(new SolrNamedThreadFactory("indexFilePrewarmer"));
+    getCore().addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        closed = true;
+        executor.shutdownNow();
+      }
+
+      @Override
+      public void postClose(SolrCore core) {
+      }
+    });
+    prewarm = executor.submit(() -> prewarm(dir, files));
+    executor.shutdown();
+  }
+
+  /**
+   * The files of the given types, in the order they should be prewarmed
+   */
+  List<String> getFilesToPrewarm(Directory dir, Collection<String> fileNames) throws IOException {
+    Map<String, Long> sizes = new HashMap<>();
+    for (String fileName : fileNames) {
+      if (priorities.containsKey(IndexFileNames.getExtension(fileName))) {
+        sizes.put(fileName, dir.fileLength(fileName));
+      }
+    }
+    List<String> files = new ArrayList<>(sizes.keySet());
+    files.sort(Comparator.comparingInt((String f) -> priorities.get(IndexFileNames.getExtension(f)))
+        .thenComparingLong(sizes::get));
+    return files;
+  }
+
+  private long prewarm(Directory dir, List<String> files) {
+    long start = System.nanoTime();
+    RateLimiter rateLimiter = new RateLimiter.SimpleRateLimiter(maxMBPerSec);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long bytesRead = 0;
+    long bytesBeforePause = 0;
+    try {
+      for (String file : files) {
+        try (IndexInput in = dir.openInput(file, IOContext.READONCE)) {
+          long length = in.length();
+          for (long pos = 0; pos < length && bytesRead < maxBytes; ) {
+            if (closed) {
+              return bytesRead;
+            }
+            int len = (int) Math.min(buffer.length, length - pos);
+            in.readBytes(buffer, 0, len);
+            pos += len;
+            bytesRead += len;
+            bytesBeforePause += len;
+            if (bytesBeforePause >= rateLimiter.getMinPauseCheckBytes()) {
+              rateLimiter.pause(bytesBeforePause);
+              bytesBeforePause = 0;
+            }
+          }
+        } catch (NoSuchFileException e) {
+          // merged away since the searcher was opened
+          log.debug("Index file {} no longer exists", file);
+        }
+        if (bytesRead >= maxBytes) {
+          break;
+        }
+      }
+      if (log.isInfoEnabled()) {
+        log.info("Prewarmed {} index files ({} bytes) in {} ms", files.size(), bytesRead,
+            (System.nanoTime() - start) / 1_000_000);
+      }
+    } catch (Exception e) {
+      if (!closed) {
+        log.warn("Error prewarming index files", e);
+      }
+    }
+    return bytesRead;
+  }
+
+  /**
+   * The background prewarming of the index files, returning the number of bytes read, or null if it wasn't started.
+   */
+  Future<Long> getPrewarm() {
+    return prewarm;
+  }
+}
@@ -66,6 +66,7 @@ import org.apache.solr.response.transform.TransformerFactory;
 import org.apache.solr.rest.RestManager;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.IndexSchemaFactory;
+import org.apache.solr.search.AdaptiveFilterPlanner;
 import org.apache.solr.search.CacheConfig;
 import org.apache.solr.search.CaffeineCache;
 import org.apache.solr.search.QParserPlugin;
@@ -81,6 +82,7 @@ import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
 import org.apache.solr.util.circuitbreaker.CircuitBreakerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -146,8 +148,17 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
   }
 
   public static SolrConfig readFromResourceLoader(SolrResourceLoader loader, String name, boolean isConfigsetTrusted, Properties substitutableProperties) {
+    return readFromResourceLoader(loader, name, null, -1, isConfigsetTrusted, substitutableProperties);
+  }
+
+  /**
+   * Like {@link #readFromResourceLoader(SolrResourceLoader, String, boolean, Properties)} but starts from an
+   * already parsed, unsubstituted solrconfig document (which is copied, not modified) when 'parsed' is non-null.
+   */
+  public static SolrConfig readFromResourceLoader(SolrResourceLoader loader, String name, Document parsed, int zkVersion,
+                                                  boolean isConfigsetTrusted, Properties substitutableProperties) {
     try {
-      return new SolrConfig(loader, name, isConfigsetTrusted, substitutableProperties);
+      return new SolrConfig(loader, name, parsed, zkVersion, isConfigsetTrusted, substitutableProperties);
     } catch (Exception e) {
       String resource;
       if (loader instanceof ZkSolrResourceLoader) {
@@ -170,8 +181,14 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
    */
   private SolrConfig(SolrResourceLoader loader, String name, boolean isConfigsetTrusted, Properties substitutableProperties)
       throws ParserConfigurationException, IOException, SAXException {
+    this(loader, name, null, -1, isConfigsetTrusted, substitutableProperties);
+  }
+
+  private SolrConfig(SolrResourceLoader loader, String name, Document parsed, int zkVersion, boolean isConfigsetTrusted,
+                     Properties substitutableProperties)
+      throws ParserConfigurationException, IOException, SAXException {
     // insist we have non-null substituteProperties; it might get overlayed
-    super(loader, name, null, "/config/", substitutableProperties == null ? new Properties() : substitutableProperties);
+    super(loader, name, parsed, zkVersion, "/config/", substitutableProperties == null ? new Properties() : substitutableProperties);
     getOverlay();//just in case it is not initialized
     getRequestParams();
     initLibs(loader, isConfigsetTrusted);
@@ -227,6 +244,11 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     queryResultWindowSize = Math.max(1, getInt("query/queryResultWindowSize", 1));
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    adaptiveFilters = getBool("query/adaptiveFilters/@enabled", false);
+    adaptiveFiltersMinRequestsToCache = getInt("query/adaptiveFilters/@minRequestsToCache",
+        AdaptiveFilterPlanner.DEFAULT_MIN_REQUESTS_TO_CACHE);
+    adaptiveFiltersMaxTracked = getInt("query/adaptiveFilters/@maxTrackedFilters",
+        AdaptiveFilterPlanner.DEFAULT_MAX_TRACKED_FILTERS);
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
@@ -521,6 +543,9 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  public final boolean adaptiveFilters;
+  public final int adaptiveFiltersMinRequestsToCache;
+  public final int adaptiveFiltersMaxTracked;
 
   // IndexConfig settings
   public final SolrIndexConfig indexConfig;
@@ -870,6 +895,7 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
+    m.put("adaptiveFilters", adaptiveFilters);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
 
     for (SolrPluginInfo plugin : plugins) {
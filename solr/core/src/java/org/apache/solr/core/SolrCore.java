@@ -140,6 +140,8 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
+import org.apache.solr.search.AdaptiveFilterPlanner;
+import org.apache.solr.search.OverlayDirectoryReader;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -232,6 +234,7 @@ public final class SolrCore implements SolrInfoBean, Closeable {
   //singleton listener for all packages used in schema
 
   private final CircuitBreakerManager circuitBreakerManager;
+  private final AdaptiveFilterPlanner adaptiveFilterPlanner;
 
   private final List<Runnable> confListeners = new CopyOnWriteArrayList<>();
 
@@ -961,6 +964,9 @@ public final class SolrCore implements SolrInfoBean, Closeable {
       // Initialize the metrics manager
       this.coreMetricManager = initCoreMetricManager(solrConfig);
       this.circuitBreakerManager = initCircuitBreakerManager();
+      this.adaptiveFilterPlanner = solrConfig.adaptiveFilters
+          ? new AdaptiveFilterPlanner(solrConfig.adaptiveFiltersMaxTracked, solrConfig.adaptiveFiltersMinRequestsToCache)
+          : null;
       solrMetricsContext = coreMetricManager.getSolrMetricsContext();
       this.coreMetricManager.loadReporters();
 
@@ -1510,6 +1516,11 @@ public final class SolrCore implements SolrInfoBean, Closeable {
     return circuitBreakerManager;
   }
 
+  /** Returns the planner for filters without explicit cache/cost params, or null if adaptive filters are disabled. */
+  public AdaptiveFilterPlanner getAdaptiveFilterPlanner() {
+    return adaptiveFilterPlanner;
+  }
+
   // this core current usage count
   private final AtomicInteger refCount = new AtomicInteger(1);
 
@@ -1873,6 +1884,7 @@ public final class SolrCore implements SolrInfoBean, Closeable {
 
   private RefCounted<SolrIndexSearcher> realtimeSearcher;
   private Callable<DirectoryReader> newReaderCreator;
+  private volatile OverlayDirectoryReader.Source readerOverlay;
 
   // For testing
   boolean areAllSearcherReferencesEmpty() {
@@ -2041,6 +2053,35 @@ public final class SolrCore implements SolrInfoBean, Closeable {
   }
 
 
+  /**
+   * Sets the overlay that new searchers show on top of the index, or removes it if null.  Searchers opened
+   * before are not affected, and a searcher is reopened even if the index hasn't changed when the overlay
+   * has.
+   *
+   * @see OverlayDirectoryReader
+   */
+  public void setReaderOverlay(OverlayDirectoryReader.Source overlay) {
+    readerOverlay = overlay;
+  }
+
+  /** Puts the overlay, if any, on top of a new reader of the index, taking over its reference. */
+  private DirectoryReader wrapWithOverlay(DirectoryReader reader) throws IOException {
+    final OverlayDirectoryReader.Source overlay = readerOverlay;
+    if (overlay == null) {
+      return reader;
+    }
+    boolean success = false;
+    try {
+      final DirectoryReader wrapped = overlay.wrap(reader);
+      success = true;
+      return wrapped;
+    } finally {
+      if (!success) {
+        reader.decRef();
+      }
+    }
+  }
+
   /**
    * Opens a new searcher and returns a RefCounted&lt;SolrIndexSearcher&gt; with its reference incremented.
    * <p>
@@ -2083,7 +2124,11 @@ public final class SolrCore implements SolrInfoBean, Closeable {
       if (newestSearcher != null && (updateHandlerReopens || indexDirFile.equals(newIndexDirFile))) {
 
         DirectoryReader newReader;
-        DirectoryReader currentReader = newestSearcher.get().getRawReader();
+        // reopen the main index, the overlay is put back on top of it below
+        DirectoryReader currentReader = OverlayDirectoryReader.unwrap(newestSearcher.get().getRawReader());
+        final OverlayDirectoryReader.Source overlay = readerOverlay;
+        final boolean overlayChanged = OverlayDirectoryReader.getGeneration(newestSearcher.get().getRawReader())
+            != (overlay == null ? -1 : overlay.getGeneration());
 
         // SolrCore.verbose("start reopen from",previousSearcher,"writer=",writer);
 
@@ -2106,12 +2151,13 @@ public final class SolrCore implements SolrInfoBean, Closeable {
 
         if (newReader == null) { // the underlying index has not changed at all
 
-          if (realtime) {
+          if (realtime && !overlayChanged) {
             // if this is a request for a realtime searcher, just return the same searcher
             newestSearcher.incref();
             return newestSearcher;
 
-          } else if (newestSearcher.get().isCachingEnabled() && newestSearcher.get().getSchema() == getLatestSchema()) {
+          } else if (!overlayChanged && newestSearcher.get().isCachingEnabled()
+              && newestSearcher.get().getSchema() == getLatestSchema()) {
             // absolutely nothing has changed, can use the same searcher
             // but log a message about it to minimize confusion
 
@@ -2130,6 +2176,7 @@ public final class SolrCore implements SolrInfoBean, Closeable {
         // (caches take a little while to instantiate)
         final boolean useCaches = !realtime;
         final String newName = realtime ? "realtime" : "main";
+        newReader = wrapWithOverlay(newReader);
         tmp = new SolrIndexSearcher(this, newIndexDir, getLatestSchema(), newName,
             newReader, true, useCaches, true, directoryFactory);
 
@@ -2140,7 +2187,7 @@ public final class SolrCore implements SolrInfoBean, Closeable {
           // this is set in the constructor if there is a currently open index writer
           // so that we pick up any uncommitted changes and so we don't go backwards
           // in time on a core reload
-          DirectoryReader newReader = newReaderCreator.call();
+          DirectoryReader newReader = wrapWithOverlay(newReaderCreator.call());
           tmp = new SolrIndexSearcher(this, newIndexDir, getLatestSchema(),
               (realtime ? "realtime" : "main"), newReader, true, !realtime, true, directoryFactory);
         } else {
@@ -2151,6 +2198,7 @@ public final class SolrCore implements SolrInfoBean, Closeable {
           } finally {
             writer.decref();
           }
+          newReader = wrapWithOverlay(newReader);
           tmp = new SolrIndexSearcher(this, newIndexDir, getLatestSchema(),
               (realtime ? "realtime" : "main"), newReader, true, !realtime, true, directoryFactory);
         }
@@ -104,6 +104,24 @@ public class XmlConfigFile { // formerly simply "Config"
    * @param substituteProps optional property substitution
    */
   public XmlConfigFile(SolrResourceLoader loader, String name, InputSource is, String prefix, Properties substituteProps) throws ParserConfigurationException, IOException, SAXException
+  {
+    this(loader, name, is, null, -1, prefix, substituteProps);
+  }
+
+  /**
+   * Builds a config from a document that has already been parsed, e.g. one shared by several cores
+   * using the same configset. The document is deep-copied before property substitution so the
+   * caller's instance is never modified. If 'parsed' is null the resource is read through the loader.
+   *
+   * @param parsed the unsubstituted document, or null
+   * @param zkVersion the znode version 'parsed' was read from, or -1
+   */
+  public XmlConfigFile(SolrResourceLoader loader, String name, Document parsed, int zkVersion, String prefix, Properties substituteProps) throws ParserConfigurationException, IOException, SAXException
+  {
+    this(loader, name, null, parsed, zkVersion, prefix, substituteProps);
+  }
+
+  private XmlConfigFile(SolrResourceLoader loader, String name, InputSource is, Document parsed, int zkVersion, String prefix, Properties substituteProps) throws ParserConfigurationException, IOException, SAXException
   {
     if (null == loader) throw new NullPointerException("loader");
     this.loader = loader;
@@ -111,6 +129,17 @@ public class XmlConfigFile { // formerly simply "Config"
     this.substituteProperties = substituteProps;
     this.name = name;
     this.prefix = (prefix != null && !prefix.endsWith("/"))? prefix + '/' : prefix;
+    if (parsed != null) {
+      synchronized (parsed) { // DOM implementations aren't thread-safe, even for reads
+        doc = (Document) parsed.cloneNode(true);
+      }
+      origDoc = parsed;
+      this.zkVersion = zkVersion;
+      if (substituteProps != null) {
+        DOMUtil.substituteProperties(doc, getSubstituteProperties());
+      }
+      return;
+    }
     try {
       javax.xml.parsers.DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 
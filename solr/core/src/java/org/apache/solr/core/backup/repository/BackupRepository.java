@@ -233,6 +233,18 @@ public interface BackupRepository extends NamedListInitializedPlugin, Closeable
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Atomically rename the file {@code sourceFileName} at {@code dir} to {@code destFileName}, so that readers of
+   * {@code destFileName} never see a partially written file.
+   * If {@code destFileName} already exists, it is either replaced or an {@link IOException} is thrown.
+   *
+   * @throws UnsupportedOperationException if the repository can't rename files atomically
+   * @since 9.0.0
+   */
+  default void moveIndexFile(URI dir, String sourceFileName, String destFileName) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * Get checksum of {@code fileName} at {@code dir}.
    * This method only be called on Lucene index files
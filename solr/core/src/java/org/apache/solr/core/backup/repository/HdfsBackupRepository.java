@@ -209,6 +209,15 @@ public class HdfsBackupRepository implements BackupRepository {
     }
   }
 
+  @Override
+  public void moveIndexFile(URI dir, String sourceFileName, String destFileName) throws IOException {
+    Path dirPath = new Path(dir);
+    // fails rather than replacing an existing destination
+    if (!fileSystem.rename(new Path(dirPath, sourceFileName), new Path(dirPath, destFileName))) {
+      throw new IOException("Unable to rename " + sourceFileName + " to " + destFileName + " at " + dir);
+    }
+  }
+
   @Override
   public void delete(URI path, Collection<String> files, boolean ignoreNoSuchFileException) throws IOException {
     if (files.isEmpty())
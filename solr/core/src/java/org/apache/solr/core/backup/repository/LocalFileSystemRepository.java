@@ -38,6 +38,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.Objects;
@@ -171,6 +172,13 @@ public class LocalFileSystemRepository implements BackupRepository {
     }
   }
 
+  @Override
+  public void moveIndexFile(URI dir, String sourceFileName, String destFileName) throws IOException {
+    Path dirPath = Paths.get(dir);
+    Files.move(dirPath.resolve(sourceFileName), dirPath.resolve(destFileName),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
   @Override
   public void delete(URI path, Collection<String> files, boolean ignoreNoSuchFileException) throws IOException {
     if (files.isEmpty())
@@ -23,6 +23,7 @@ import org.apache.solr.handler.loader.ContentStreamLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.SolrCoreState;
+import org.apache.solr.update.processor.PipelinedUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 
@@ -65,7 +66,7 @@ public abstract class ContentStreamHandlerBase extends RequestHandlerBase {
       UpdateRequestProcessorChain processorChain =
               req.getCore().getUpdateProcessorChain(params);
 
-      UpdateRequestProcessor processor = processorChain.createProcessor(req, rsp);
+      UpdateRequestProcessor processor = PipelinedUpdateProcessor.createProcessor(processorChain, req, rsp);
 
       try {
         ContentStreamLoader documentLoader = newLoader(req, processor);
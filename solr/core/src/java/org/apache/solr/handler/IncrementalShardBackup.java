@@ -18,11 +18,17 @@
 package org.apache.solr.handler;
 
 import org.apache.commons.math3.util.Precision;
+import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.StringHelper;
 import org.apache.solr.cloud.CloudDescriptor;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.core.DirectoryFactory;
 import org.apache.solr.core.IndexDeletionPolicyWrapper;
 import org.apache.solr.core.SolrCore;
@@ -39,17 +45,37 @@ import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Responsible for orchestrating the actual incremental backup process.
  *
  * If this is the first backup for a collection, all files are uploaded.  But if previous backups exist, uses the most recent
  * {@link ShardBackupMetadata} file to determine which files already exist in the repository and can be skipped.
+ *
+ * Index files are stored under a name derived from the id of their segment and their checksum, so a file already
+ * uploaded by another shard or backup of the collection (e.g. by another replica that copied the same segment)
+ * is not uploaded again.  Since that name is shared, a file is first uploaded under a name of its own and then renamed
+ * to the shared name, and failed uploads never delete the shared name.  Files are uploaded by an executor of
+ * {@link #UPLOAD_THREADS} threads, which is shared by the shard backups of the node to the same repository.
  */
 public class IncrementalShardBackup {
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Repository configuration property for the number of files uploaded concurrently by a node.
+     */
+    public static final String UPLOAD_THREADS = "uploadThreads";
+
     private SolrCore solrCore;
 
     private BackupFilePaths incBackupFiles;
@@ -58,22 +84,37 @@ public class IncrementalShardBackup {
     private ShardBackupId prevShardBackupId;
     private ShardBackupId shardBackupId;
     private Optional<String> commitNameOption;
+    private ExecutorService uploadExecutor;
 
     /**
      *
      * @param prevShardBackupId previous ShardBackupMetadata file which will be used for skipping
      *                             uploading index files already present in this file.
      * @param shardBackupId file where all meta data of this backup will be stored to.
+     * @param uploadExecutor executor uploading the index files, see {@link #newUploadExecutor(BackupRepository)}.
      */
     public IncrementalShardBackup(BackupRepository backupRepo, SolrCore solrCore, BackupFilePaths incBackupFiles,
                                   ShardBackupId prevShardBackupId, ShardBackupId shardBackupId,
-                                  Optional<String> commitNameOption) {
+                                  Optional<String> commitNameOption, ExecutorService uploadExecutor) {
         this.backupRepo = backupRepo;
         this.solrCore = solrCore;
         this.incBackupFiles = incBackupFiles;
         this.prevShardBackupId = prevShardBackupId;
         this.shardBackupId = shardBackupId;
         this.commitNameOption = commitNameOption;
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    /**
+     * Creates an executor of {@link #UPLOAD_THREADS} threads, whose idle threads are released.
+     */
+    public static ExecutorService newUploadExecutor(BackupRepository backupRepo) {
+        Object uploadThreads = backupRepo.getConfigProperty(UPLOAD_THREADS);
+        int threads = uploadThreads == null ? 1 : Integer.parseInt(uploadThreads.toString());
+        ExecutorUtil.MDCAwareThreadPoolExecutor executor = new ExecutorUtil.MDCAwareThreadPoolExecutor(threads, threads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new SolrNamedThreadFactory("incrementalBackupUpload"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public NamedList<Object> backup() throws Exception {
@@ -165,37 +206,147 @@ public class IncrementalShardBackup {
         return ShardBackupMetadata.from(backupRepo, incBackupFiles.getShardBackupMetadataDir(), prevShardBackupId);
     }
 
-    private BackupStats incrementalCopy(Collection<String> indexFiles, Directory dir) throws IOException {
+    private BackupStats incrementalCopy(Collection<String> indexFiles, Directory dir) throws Exception {
         ShardBackupMetadata oldBackupPoint = getPrevBackupPoint();
         ShardBackupMetadata currentBackupPoint = ShardBackupMetadata.empty();
         URI indexDir = incBackupFiles.getIndexDir();
         BackupStats backupStats = new BackupStats();
 
-        for(String fileName : indexFiles) {
-            Optional<ShardBackupMetadata.BackedFile> opBackedFile = oldBackupPoint.getFile(fileName);
-            Checksum originalFileCS = backupRepo.checksum(dir, fileName);
-
-            if (opBackedFile.isPresent()) {
-                ShardBackupMetadata.BackedFile backedFile = opBackedFile.get();
-                Checksum existedFileCS = backedFile.fileChecksum;
-                if (existedFileCS.equals(originalFileCS)) {
-                    currentBackupPoint.addBackedFile(opBackedFile.get());
-                    backupStats.skippedUploadingFile(existedFileCS);
-                    continue;
+        Map<String, Future<Upload>> uploads = new LinkedHashMap<>();
+        try {
+            Map<String, Checksum> uploadedChecksums = new LinkedHashMap<>();
+            for(String fileName : indexFiles) {
+                Optional<ShardBackupMetadata.BackedFile> opBackedFile = oldBackupPoint.getFile(fileName);
+                Checksum originalFileCS = backupRepo.checksum(dir, fileName);
+
+                if (opBackedFile.isPresent()) {
+                    ShardBackupMetadata.BackedFile backedFile = opBackedFile.get();
+                    Checksum existedFileCS = backedFile.fileChecksum;
+                    if (existedFileCS.equals(originalFileCS)) {
+                        currentBackupPoint.addBackedFile(opBackedFile.get());
+                        backupStats.skippedUploadingFile(existedFileCS);
+                        continue;
+                    }
                 }
-            }
 
-            String backedFileName = UUID.randomUUID().toString();
-            backupRepo.copyIndexFileFrom(dir, fileName, indexDir, backedFileName);
+                String segmentId = readSegmentId(dir, fileName);
+                uploads.put(fileName, uploadExecutor.submit(() -> {
+                    if (segmentId == null) {
+                        String backedFileName = UUID.randomUUID().toString();
+                        backupRepo.copyIndexFileFrom(dir, fileName, indexDir, backedFileName);
+                        return new Upload(backedFileName, true);
+                    }
+                    return uploadShared(dir, fileName, indexDir,
+                            segmentId + "-" + Long.toHexString(originalFileCS.checksum) + "-" + fileName, originalFileCS);
+                }));
+                uploadedChecksums.put(fileName, originalFileCS);
+            }
 
-            currentBackupPoint.addBackedFile(backedFileName, fileName, originalFileCS);
-            backupStats.uploadedFile(originalFileCS);
+            for (Map.Entry<String, Future<Upload>> upload : uploads.entrySet()) {
+                Checksum fileCS = uploadedChecksums.get(upload.getKey());
+                try {
+                    Upload result = upload.getValue().get();
+                    currentBackupPoint.addBackedFile(result.backedFileName, upload.getKey(), fileCS);
+                    if (result.uploaded) {
+                        backupStats.uploadedFile(fileCS);
+                    } else {
+                        backupStats.skippedUploadingFile(fileCS);
+                    }
+                } catch (ExecutionException e) {
+                    // the remaining uploads are interrupted below
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e.getCause());
+                }
+            }
+        } finally {
+            // the executor is shared, only interrupt the uploads of this backup (a no-op once they are done)
+            for (Future<Upload> upload : uploads.values()) {
+                upload.cancel(true);
+            }
         }
 
         currentBackupPoint.store(backupRepo, incBackupFiles.getShardBackupMetadataDir(), shardBackupId);
         return backupStats;
     }
 
+    /**
+     * Stores the file under the given content-addressed name, which other shards and backups may reference and
+     * upload concurrently.  The file is uploaded under a name of its own first, so that a failed upload only
+     * deletes that copy, and then atomically renamed to the shared name.  If the repository can't rename files,
+     * or the rename fails, the backup keeps referencing its own copy.
+     */
+    private Upload uploadShared(Directory dir, String fileName, URI indexDir, String sharedFileName,
+                                Checksum fileCS) throws IOException {
+        if (isBackedUp(indexDir, sharedFileName, fileCS)) {
+            log.debug("File {} was already uploaded as {}", fileName, sharedFileName);
+            return new Upload(sharedFileName, false);
+        }
+        String ownFileName = sharedFileName + "-" + UUID.randomUUID();
+        backupRepo.copyIndexFileFrom(dir, fileName, indexDir, ownFileName);
+        try {
+            backupRepo.moveIndexFile(indexDir, ownFileName, sharedFileName);
+            return new Upload(sharedFileName, true);
+        } catch (UnsupportedOperationException e) {
+            return new Upload(ownFileName, true);
+        } catch (IOException e) {
+            // e.g. the shared name was created concurrently, on a repository that doesn't replace files
+            if (isBackedUp(indexDir, sharedFileName, fileCS)) {
+                backupRepo.delete(indexDir, Collections.singleton(ownFileName), true);
+                return new Upload(sharedFileName, true);
+            }
+            log.warn("Could not rename {} to {}, keeping the file under its own name", ownFileName, sharedFileName, e);
+            return new Upload(ownFileName, true);
+        }
+    }
+
+    /**
+     * Returns the id of the segment an index file belongs to, read from its header, or null if the file
+     * doesn't have an index header.
+     */
+    private static String readSegmentId(Directory dir, String fileName) {
+        try (IndexInput in = dir.openInput(fileName, IOContext.READONCE)) {
+            if (in.length() < CodecUtil.footerLength() || CodecUtil.readBEInt(in) != CodecUtil.CODEC_MAGIC) {
+                return null;
+            }
+            in.readString(); // codec name
+            CodecUtil.readBEInt(in); // version
+            byte[] id = new byte[StringHelper.ID_LENGTH];
+            in.readBytes(id, 0, id.length);
+            return StringHelper.idToString(id);
+        } catch (IOException e) {
+            log.debug("Could not read the segment id of {}", fileName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether the repository has a complete copy of the file, i.e. with the expected size and checksum footer.
+     */
+    private boolean isBackedUp(URI indexDir, String backedFileName, Checksum fileCS) throws IOException {
+        if (!backupRepo.exists(backupRepo.resolve(indexDir, backedFileName))) {
+            return false;
+        }
+        try (IndexInput in = backupRepo.openInput(indexDir, backedFileName, IOContext.READONCE)) {
+            return in.length() == fileCS.size && CodecUtil.retrieveChecksum(in) == fileCS.checksum;
+        } catch (IOException e) {
+            // e.g. a partial upload
+            log.debug("Uploading {} again", backedFileName, e);
+            return false;
+        }
+    }
+
+    private static class Upload {
+        private final String backedFileName;
+        private final boolean uploaded;
+
+        Upload(String backedFileName, boolean uploaded) {
+            this.backedFileName = backedFileName;
+            this.uploaded = uploaded;
+        }
+    }
+
     private static class BackupStats {
         private int fileCount;
         private int uploadedFileCount;
@@ -35,11 +35,13 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,11 +50,14 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -72,6 +77,7 @@ import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
@@ -82,7 +88,9 @@ import org.apache.solr.cloud.ZkController;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.ExecutorUtil;
@@ -149,6 +157,9 @@ public class IndexFetcher {
 
   private volatile LocalFsFileFetcher localFileFetcher;
 
+  // files being fetched concurrently, by name
+  private final Map<String, FileProgress> filesInProgress = new ConcurrentHashMap<>();
+
   private volatile ExecutorService fsyncService;
 
   private volatile boolean stop = false;
@@ -171,6 +182,21 @@ public class IndexFetcher {
 
   private boolean clearLocalIndexFirst = false;
 
+  private int fetchThreads = 1;
+
+  private long fetchChunkSize = 0;
+
+  private RateLimiter fetchRateLimiter;
+
+  private boolean useFooterChecksum = false;
+
+  private boolean fetchFromPeers = false;
+
+  /** The leader, followed by the replicas that have the same commit as the leader, to fetch index files from */
+  private volatile List<String> sourceUrls;
+
+  private final AtomicInteger nextSource = new AtomicInteger();
+
   private static final String INTERRUPT_RESPONSE_MESSAGE = "Interrupted while waiting for modify lock";
 
   public static class IndexFetchResult {
@@ -261,6 +287,21 @@ public class IndexFetcher {
       soTimeout = getParameter(initArgs, HttpClientUtil.PROP_SO_TIMEOUT, 120000, null);
     }
 
+    String fetchThreadsParam = getStringParameter(initArgs, FETCH_THREADS);
+    if (fetchThreadsParam != null) {
+      fetchThreads = Integer.parseInt(fetchThreadsParam);
+    }
+    String fetchChunkSizeMB = getStringParameter(initArgs, FETCH_CHUNK_SIZE_MB);
+    if (fetchChunkSizeMB != null) {
+      fetchChunkSize = (long) (Double.parseDouble(fetchChunkSizeMB) * 1024 * 1024);
+    }
+    useFooterChecksum = Boolean.parseBoolean(getStringParameter(initArgs, USE_FOOTER_CHECKSUM));
+    fetchFromPeers = Boolean.parseBoolean(getStringParameter(initArgs, FETCH_FROM_PEERS));
+    String maxReadMBPerSec = getStringParameter(initArgs, MAX_READ_PER_SECOND);
+    if (maxReadMBPerSec != null) {
+      fetchRateLimiter = new RateLimiter.SimpleRateLimiter(Double.parseDouble(maxReadMBPerSec));
+    }
+
     String httpBasicAuthUser = (String) initArgs.get(HttpClientUtil.PROP_BASIC_AUTH_USER);
     String httpBasicAuthPassword = (String) initArgs.get(HttpClientUtil.PROP_BASIC_AUTH_PASS);
     myHttpClient = createHttpClient(solrCore, httpBasicAuthUser, httpBasicAuthPassword, useExternalCompression);
@@ -297,10 +338,52 @@ public class IndexFetcher {
     return toReturn;
   }
 
+  /**
+   * Whether the index file is verified with the checksum of its codec footer once downloaded,
+   * rather than with a checksum of each packet computed by the leader.
+   */
+  private boolean isFooterChecksummed(Map<String, Object> file) {
+    return useFooterChecksum && file.get(CHECKSUM) != null;
+  }
+
+  /**
+   * Checks a downloaded index file against the checksum of its codec footer, and the checksum
+   * the leader listed for it.
+   */
+  private void verifyFooterChecksum(Directory dir, Map<String, Object> file) throws IOException {
+    if (!isFooterChecksummed(file)) {
+      return;
+    }
+    String filename = (String) file.get(NAME);
+    try (IndexInput in = dir.openInput(filename, IOContext.READONCE)) {
+      long checksum = CodecUtil.checksumEntireFile(in);
+      if (checksum != (Long) file.get(CHECKSUM)) {
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Checksum of downloaded file " + filename + " is "
+            + checksum + ", expected " + file.get(CHECKSUM));
+      }
+    }
+  }
+
+  /**
+   * Reads a fetch setting from the init args, or from the <code>solr.indexfetcher.&lt;name&gt;</code>
+   * system property, so that it also applies to the fetches done by SolrCloud recoveries.
+   */
+  private static String getStringParameter(NamedList<?> initArgs, String configKey) {
+    Object value = initArgs.get(configKey);
+    if (value == null) {
+      return System.getProperty("solr.indexfetcher." + configKey);
+    }
+    return value.toString();
+  }
+
   /**
    * Gets the latest commit version and generation from the leader
    */
   NamedList<Object> getLatestVersion() throws IOException {
+    return getLatestVersion(leaderUrl);
+  }
+
+  private NamedList<Object> getLatestVersion(String url) throws IOException {
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.set(COMMAND, CMD_INDEX_VERSION);
     params.set(CommonParams.WT, JAVABIN);
@@ -308,7 +391,7 @@ public class IndexFetcher {
     QueryRequest req = new QueryRequest(params);
 
     // TODO modify to use shardhandler
-    try (HttpSolrClient client = new Builder(leaderUrl)
+    try (HttpSolrClient client = new Builder(url)
         .withHttpClient(myHttpClient)
         .withConnectionTimeout(connTimeout)
         .withSocketTimeout(soTimeout)
@@ -325,6 +408,22 @@ public class IndexFetcher {
    */
   @SuppressWarnings({"unchecked"})
   private void fetchFileList(long gen) throws IOException {
+    NamedList<?> response = requestFileList(leaderUrl, gen);
+
+    List<Map<String, Object>> files = (List<Map<String,Object>>) response.get(CMD_GET_FILE_LIST);
+    if (files != null)
+      filesToDownload = Collections.synchronizedList(files);
+    else {
+      filesToDownload = Collections.emptyList();
+      log.error("No files to download for index generation: {}", gen);
+    }
+
+    files = (List<Map<String,Object>>) response.get(CONF_FILES);
+    if (files != null)
+      confFilesToDownload = Collections.synchronizedList(files);
+  }
+
+  private NamedList<Object> requestFileList(String url, long gen) throws IOException {
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.set(COMMAND,  CMD_GET_FILE_LIST);
     params.set(GENERATION, String.valueOf(gen));
@@ -333,27 +432,73 @@ public class IndexFetcher {
     QueryRequest req = new QueryRequest(params);
 
     // TODO modify to use shardhandler
-    try (HttpSolrClient client = new HttpSolrClient.Builder(leaderUrl)
+    try (HttpSolrClient client = new HttpSolrClient.Builder(url)
         .withHttpClient(myHttpClient)
         .withConnectionTimeout(connTimeout)
         .withSocketTimeout(soTimeout)
         .build()) {
-      NamedList<?> response = client.request(req);
+      return client.request(req);
+    } catch (SolrServerException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Finds the active replicas of the shard whose latest commit is the one being fetched from the leader,
+   * so that index files can also be fetched from them. The replicas must have the same commit version
+   * and generation as the leader, and list the same files with the same checksums.
+   */
+  @SuppressWarnings({"unchecked"})
+  private List<String> findPeerUrls(long latestVersion, long latestGeneration) {
+    List<String> peerUrls = new ArrayList<>();
+    CloudDescriptor cd = solrCore.getCoreDescriptor().getCloudDescriptor();
+    ClusterState clusterState = solrCore.getCoreContainer().getZkController().getClusterState();
+    DocCollection collection = clusterState.getCollectionOrNull(cd.getCollectionName());
+    Slice slice = collection == null ? null : collection.getSlice(cd.getShardId());
+    if (slice == null) {
+      return peerUrls;
+    }
+    Set<String> leaderFiles = getFileKeys(filesToDownload);
+    for (Replica replica : slice.getReplicas()) {
+      String url = replica.getCoreUrl();
+      if (replica.getName().equals(cd.getCoreNodeName()) || url.equals(leaderUrl)
+          || replica.getState() != Replica.State.ACTIVE || !clusterState.liveNodesContain(replica.getNodeName())) {
+        continue;
+      }
+      try {
+        NamedList<?> version = getLatestVersion(url);
+        if (Long.valueOf(latestVersion).equals(version.get(CMD_INDEX_VERSION))
+            && Long.valueOf(latestGeneration).equals(version.get(GENERATION))
+            && leaderFiles.equals(getFileKeys((List<Map<String, Object>>) requestFileList(url, latestGeneration).get(CMD_GET_FILE_LIST)))) {
+          peerUrls.add(url);
+        }
+      } catch (Exception e) {
+        log.info("Not fetching index files from replica {}: {}", url, e.toString());
+      }
+    }
+    return peerUrls;
+  }
 
-      List<Map<String, Object>> files = (List<Map<String,Object>>) response.get(CMD_GET_FILE_LIST);
-      if (files != null)
-        filesToDownload = Collections.synchronizedList(files);
-      else {
-        filesToDownload = Collections.emptyList();
-        log.error("No files to download for index generation: {}", gen);
+  private static Set<String> getFileKeys(List<Map<String, Object>> files) {
+    Set<String> keys = new HashSet<>();
+    if (files != null) {
+      for (Map<String, Object> file : files) {
+        keys.add(file.get(NAME) + ":" + file.get(SIZE) + ":" + file.get(CHECKSUM));
       }
+    }
+    return keys;
+  }
 
-      files = (List<Map<String,Object>>) response.get(CONF_FILES);
-      if (files != null)
-        confFilesToDownload = Collections.synchronizedList(files);
-    } catch (SolrServerException e) {
-      throw new IOException(e);
+  /**
+   * The url to fetch the next index file (or range of a file) from, so that the files are spread
+   * over the leader and the peers found by {@link #findPeerUrls(long, long)}.
+   */
+  private String nextSourceUrl() {
+    List<String> urls = sourceUrls;
+    if (urls == null || urls.size() < 2) {
+      return leaderUrl;
     }
+    return urls.get(Math.floorMod(nextSource.getAndIncrement(), urls.size()));
   }
 
   IndexFetchResult fetchLatestIndex(boolean forceReplication) throws IOException, InterruptedException {
@@ -505,6 +650,13 @@ public class IndexFetcher {
       if (log.isInfoEnabled()) {
         log.info("Number of files in latest index in leader: {}", filesToDownload.size());
       }
+      if (fetchFromPeers && solrCore.getCoreContainer().isZooKeeperAware()) {
+        List<String> urls = new ArrayList<>();
+        urls.add(leaderUrl);
+        urls.addAll(findPeerUrls(latestVersion, latestGeneration));
+        log.info("Fetching index files from: {}", urls);
+        sourceUrls = urls;
+      }
 
       // Create the sync service
       fsyncService = ExecutorUtil.newMDCAwareSingleThreadExecutor(new SolrNamedThreadFactory("fsyncService"));
@@ -717,9 +869,11 @@ public class IndexFetcher {
       }
 
       filesToDownload = filesDownloaded = confFilesDownloaded = confFilesToDownload = null;
+      sourceUrls = null;
       markReplicationStop();
       dirFileFetcher = null;
       localFileFetcher = null;
+      filesInProgress.clear();
       if (fsyncService != null && !fsyncService.isShutdown()) fsyncService.shutdown();
       fsyncService = null;
       stop = false;
@@ -1012,6 +1166,7 @@ public class IndexFetcher {
       deleteFilesInAdvance(indexDir, indexDirPath, totalSpaceRequired, usableSpace);
     }
 
+    List<Map<String, Object>> filesToFetchInParallel = new ArrayList<>();
     for (Map<String,Object> file : filesToDownload) {
       String filename = (String) file.get(NAME);
       long size = (Long) file.get(SIZE);
@@ -1032,11 +1187,16 @@ public class IndexFetcher {
           // compared to a file copy. TODO: Maybe we could do a move safely here?
           Files.createLink(new File(tmpIndexDirPath, filename).toPath(), localFile.toPath());
           bytesSkippedCopying += localFile.length();
+        } else if (fetchThreads > 1) {
+          // fetched below, together with the other files
+          filesToFetchInParallel.add(file);
+          continue;
         } else {
           dirFileFetcher = new DirectoryFileFetcher(tmpIndexDir, file,
               (String) file.get(NAME), FILE, latestGeneration);
           currentFile = file;
           dirFileFetcher.fetchFile();
+          verifyFooterChecksum(tmpIndexDir, file);
           bytesDownloaded += dirFileFetcher.getBytesDownloaded();
         }
         filesDownloaded.add(new HashMap<>(file));
@@ -1046,10 +1206,95 @@ public class IndexFetcher {
         }
       }
     }
+    if (!filesToFetchInParallel.isEmpty()) {
+      bytesDownloaded += fetchFilesInParallel(filesToFetchInParallel, tmpIndexDir, latestGeneration);
+    }
     log.info("Bytes downloaded: {}, Bytes skipped downloading: {}", bytesDownloaded, bytesSkippedCopying);
     return bytesDownloaded;
   }
 
+  /**
+   * Downloads the files with {@link #fetchThreads} concurrent requests. Files larger than
+   * {@link #fetchChunkSize} are also split into byte ranges that are fetched concurrently, if the
+   * files can be written at arbitrary positions (i.e. the index is in a local file system directory).
+   * A range that fails is resumed from the last packet received, not from the start of the file.
+   *
+   * @return number of bytes downloaded
+   */
+  private long fetchFilesInParallel(List<Map<String, Object>> files, Directory tmpIndexDir, long latestGeneration)
+      throws Exception {
+    Path tmpIndexPath = null;
+    Directory unwrapped = FilterDirectory.unwrap(tmpIndexDir);
+    if (fetchChunkSize > 0 && unwrapped instanceof FSDirectory) {
+      tmpIndexPath = ((FSDirectory) unwrapped).getDirectory();
+    }
+    // the largest files first, so that they're not left for the end of the download
+    List<Map<String, Object>> sortedFiles = new ArrayList<>(files);
+    sortedFiles.sort(Comparator.comparingLong((Map<String, Object> f) -> (Long) f.get(SIZE)).reversed());
+
+    ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(fetchThreads, new SolrNamedThreadFactory("indexFetcher"));
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (Map<String, Object> file : sortedFiles) {
+        String filename = (String) file.get(NAME);
+        long size = (Long) file.get(SIZE);
+        if (tmpIndexPath != null && size > fetchChunkSize) {
+          Path path = tmpIndexPath.resolve(filename);
+          AtomicInteger remainingRanges = new AtomicInteger((int) ((size + fetchChunkSize - 1) / fetchChunkSize));
+          for (long start = 0; start < size; start += fetchChunkSize) {
+            long rangeStart = start;
+            long rangeLength = Math.min(fetchChunkSize, size - start);
+            futures.add(executor.submit(() -> {
+              RangeFileFetcher fetcher = new RangeFileFetcher(path, file, rangeStart, rangeLength, latestGeneration);
+              filesInProgress.computeIfAbsent(filename, n -> new FileProgress(file)).fetchers.add(fetcher);
+              fetcher.fetchFile();
+              if (remainingRanges.decrementAndGet() == 0) {
+                filesInProgress.remove(filename);
+                verifyFooterChecksum(tmpIndexDir, file);
+                fsyncService.submit(() -> {
+                  try {
+                    tmpIndexDir.sync(Collections.singleton(filename));
+                  } catch (IOException e) {
+                    fsyncException = e;
+                  }
+                });
+                filesDownloaded.add(new HashMap<>(file));
+              }
+              return fetcher.getBytesDownloaded();
+            }));
+          }
+        } else {
+          futures.add(executor.submit(() -> {
+            DirectoryFileFetcher fetcher = new DirectoryFileFetcher(tmpIndexDir, file, filename, FILE, latestGeneration);
+            filesInProgress.computeIfAbsent(filename, n -> new FileProgress(file)).fetchers.add(fetcher);
+            fetcher.fetchFile();
+            filesInProgress.remove(filename);
+            verifyFooterChecksum(tmpIndexDir, file);
+            filesDownloaded.add(new HashMap<>(file));
+            return fetcher.getBytesDownloaded();
+          }));
+        }
+      }
+
+      long bytesDownloaded = 0;
+      for (Future<Long> future : futures) {
+        try {
+          bytesDownloaded += future.get();
+        } catch (ExecutionException e) {
+          // the remaining fetches are interrupted below
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw new SolrException(ErrorCode.SERVER_ERROR, e.getCause());
+        }
+      }
+      return bytesDownloaded;
+    } finally {
+      ExecutorUtil.shutdownNowAndAwaitTermination(executor);
+      filesInProgress.clear();
+    }
+  }
+
   //only for testing purposes. do not use this anywhere else
   //-----------START----------------------
   static BooleanSupplier testWait = () -> true;
@@ -1510,8 +1755,27 @@ public class IndexFetcher {
     return tmp == null ? Collections.emptyList() : new ArrayList<>(tmp);
   }
 
+  /**
+   * Returns the file being downloaded with its progress. When files are fetched concurrently, the names, sizes
+   * and downloaded bytes of all the files in progress are aggregated; see {@link #getCurrentFiles()}.
+   */
   // TODO: currently does not reflect conf files
   Map<String, Object> getCurrentFile() {
+    List<Map<String, Object>> concurrentFiles = getCurrentFiles();
+    if (!concurrentFiles.isEmpty()) {
+      List<String> names = new ArrayList<>(concurrentFiles.size());
+      long size = 0, bytesDownloaded = 0;
+      for (Map<String, Object> file : concurrentFiles) {
+        names.add((String) file.get(NAME));
+        size += (Long) file.get(SIZE);
+        bytesDownloaded += (Long) file.get("bytesDownloaded");
+      }
+      Map<String, Object> tmp = new HashMap<>();
+      tmp.put(NAME, String.join(",", names));
+      tmp.put(SIZE, size);
+      tmp.put("bytesDownloaded", bytesDownloaded);
+      return tmp;
+    }
     Map<String, Object> tmp = currentFile;
     DirectoryFileFetcher tmpFileFetcher = dirFileFetcher;
     if (tmp == null)
@@ -1522,6 +1786,39 @@ public class IndexFetcher {
     return tmp;
   }
 
+  /**
+   * Returns the files being fetched concurrently, each with the bytes downloaded by all its fetchers,
+   * or an empty list if files are not fetched concurrently.
+   */
+  List<Map<String, Object>> getCurrentFiles() {
+    List<Map<String, Object>> files = new ArrayList<>();
+    for (FileProgress progress : filesInProgress.values()) {
+      Map<String, Object> file = new HashMap<>(progress.file);
+      file.put("bytesDownloaded", progress.getBytesDownloaded());
+      files.add(file);
+    }
+    files.sort(Comparator.comparing(f -> (String) f.get(NAME)));
+    return files;
+  }
+
+  /** Progress of a file fetched by one or more concurrent fetchers, one per byte range. */
+  private static class FileProgress {
+    final Map<String, Object> file;
+    final List<FileFetcher> fetchers = new CopyOnWriteArrayList<>();
+
+    FileProgress(Map<String, Object> file) {
+      this.file = file;
+    }
+
+    long getBytesDownloaded() {
+      long bytesDownloaded = 0;
+      for (FileFetcher fetcher : fetchers) {
+        bytesDownloaded += fetcher.getBytesDownloaded();
+      }
+      return bytesDownloaded;
+    }
+  }
+
   private static class ReplicationHandlerException extends InterruptedException {
     public ReplicationHandlerException(String message) {
       super(message);
@@ -1542,14 +1839,19 @@ public class IndexFetcher {
    */
   private class FileFetcher {
     private final FileInterface file;
-    private boolean includeChecksum = true;
+    private final boolean includeChecksum;
+    private String sourceUrl;
     private final String fileName;
     private final String saveAs;
     private final String solrParamOutput;
     private final Long indexGen;
 
     private final long size;
-    private long bytesDownloaded = 0;
+    private final long rangeStart;
+    private final boolean isRange;
+    // read by the replication details while the file is fetched
+    private volatile long bytesDownloaded = 0;
+    private long bytesBeforePause = 0;
     private byte[] buf;
     private final Checksum checksum;
     private int errorCount = 0;
@@ -1557,9 +1859,22 @@ public class IndexFetcher {
 
     FileFetcher(FileInterface file, Map<String, Object> fileDetails, String saveAs,
                 String solrParamOutput, long latestGen) throws IOException {
+      this(file, fileDetails, saveAs, solrParamOutput, latestGen, 0, (Long) fileDetails.get(SIZE), false);
+    }
+
+    /**
+     * Fetches the <code>rangeLength</code> bytes of the file starting at <code>rangeStart</code>
+     */
+    FileFetcher(FileInterface file, Map<String, Object> fileDetails, String saveAs,
+                String solrParamOutput, long latestGen, long rangeStart, long rangeLength, boolean isRange) throws IOException {
       this.file = file;
       this.fileName = (String) fileDetails.get(NAME);
-      this.size = (Long) fileDetails.get(SIZE);
+      this.size = rangeLength;
+      this.rangeStart = rangeStart;
+      this.isRange = isRange;
+      this.includeChecksum = !(FILE.equals(solrParamOutput) && isFooterChecksummed(fileDetails));
+      // only index files can be fetched from the peers
+      this.sourceUrl = FILE.equals(solrParamOutput) ? nextSourceUrl() : leaderUrl;
       buf = new byte[(int)Math.min(this.size, ReplicationHandler.PACKET_SZ)];
       this.solrParamOutput = solrParamOutput;
       this.saveAs = saveAs;
@@ -1585,12 +1900,17 @@ public class IndexFetcher {
       } catch(Exception e) {
         if (!aborted) {
           SolrException.log(IndexFetcher.log, "Error fetching file, doing one retry...", e);
+          // the peer may have moved on to a newer commit, the leader keeps this one reserved
+          sourceUrl = leaderUrl;
           // one retry
           fetch();
         } else {
           throw e;
         }
       }
+      if (!leaderUrl.equals(sourceUrl)) {
+        replicationHandler.recordFetchFromPeer(bytesDownloaded);
+      }
     }
     
     private void fetch() throws Exception {
@@ -1629,7 +1949,7 @@ public class IndexFetcher {
       try {
         while (true) {
           if (stop) {
-            stop = false;
+            // not reset here, so that all the concurrent fetches see it
             aborted = true;
             throw new ReplicationHandlerException("User aborted replication");
           }
@@ -1665,8 +1985,20 @@ public class IndexFetcher {
             }
           }
           //if everything is fine, write down the packet to the file
+          //(a leader that doesn't support ranges streams the rest of the file)
+          packetSize = (int) Math.min(packetSize, size - bytesDownloaded);
           file.write(buf, packetSize);
           bytesDownloaded += packetSize;
+          if (fetchRateLimiter != null) {
+            bytesBeforePause += packetSize;
+            if (bytesBeforePause >= fetchRateLimiter.getMinPauseCheckBytes()) {
+              // shared by all the concurrent fetches
+              synchronized (fetchRateLimiter) {
+                fetchRateLimiter.pause(bytesBeforePause);
+              }
+              bytesBeforePause = 0;
+            }
+          }
           log.debug("Fetched and wrote {} bytes of file: {}", bytesDownloaded, fileName);
           //errorCount is always set to zero after a successful packet
           errorCount = 0;
@@ -1761,8 +2093,11 @@ public class IndexFetcher {
       params.set(CommonParams.WT, FILE_STREAM);
       // This happen if there is a failure there is a retry. the offset=<sizedownloaded> ensures that
       // the server starts from the offset
-      if (bytesDownloaded > 0) {
-        params.set(OFFSET, Long.toString(bytesDownloaded));
+      if (rangeStart + bytesDownloaded > 0) {
+        params.set(OFFSET, Long.toString(rangeStart + bytesDownloaded));
+      }
+      if (isRange) {
+        params.set(END_OFFSET, Long.toString(rangeStart + size));
       }
 
 
@@ -1770,7 +2105,7 @@ public class IndexFetcher {
       InputStream is = null;
 
       // TODO use shardhandler
-      try (HttpSolrClient client = new Builder(leaderUrl)
+      try (HttpSolrClient client = new Builder(sourceUrl)
           .withHttpClient(myHttpClient)
           .withResponseParser(null)
           .withConnectionTimeout(connTimeout)
@@ -1826,6 +2161,54 @@ public class IndexFetcher {
     }
   }
 
+  /**
+   * Writes a byte range of a file, concurrently with the other ranges of the same file.
+   * The file is synced once all its ranges are written, and deleted with the temporary
+   * index directory if the download fails.
+   */
+  private static class RangeFile implements FileInterface {
+    private final Path path;
+    private long position;
+    private FileChannel channel;
+
+    RangeFile(Path path, long rangeStart) {
+      this.path = path;
+      this.position = rangeStart;
+    }
+
+    public void sync() throws IOException {
+    }
+
+    public void write(byte[] buf, int packetSize) throws IOException {
+      if (channel == null) {
+        // (re)opened lazily, so that a retry resumes at the current position
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      ByteBuffer bb = ByteBuffer.wrap(buf, 0, packetSize);
+      while (bb.hasRemaining()) {
+        position += channel.write(bb, position);
+      }
+    }
+
+    public void close() throws Exception {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    }
+
+    public void delete() throws Exception {
+    }
+  }
+
+  private class RangeFileFetcher extends FileFetcher {
+    RangeFileFetcher(Path path, Map<String, Object> fileDetails, long rangeStart, long rangeLength,
+                     long latestGen) throws IOException {
+      super(new RangeFile(path, rangeStart), fileDetails, (String) fileDetails.get(NAME), FILE, latestGen,
+          rangeStart, rangeLength, true);
+    }
+  }
+
   private static class LocalFsFile implements FileInterface {
     private File copy2Dir;
 
@@ -16,6 +16,7 @@
  */
 package org.apache.solr.handler;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -26,11 +27,14 @@ import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -47,6 +51,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
@@ -66,6 +71,8 @@ import org.apache.lucene.index.SegmentCommitInfo;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.RateLimiter;
@@ -434,6 +441,15 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
 
   private volatile IndexFetcher currentIndexFetcher;
 
+  // index files, or ranges of files, fetched from peer replicas rather than from the leader
+  private final LongAdder filesFetchedFromPeers = new LongAdder();
+  private final LongAdder bytesFetchedFromPeers = new LongAdder();
+
+  void recordFetchFromPeer(long bytes) {
+    filesFetchedFromPeers.increment();
+    bytesFetchedFromPeers.add(bytes);
+  }
+
   public IndexFetchResult doFetch(SolrParams solrParams, boolean forceReplication) {
     String leaderUrl = solrParams == null ? null : ReplicationHandler.getObjectWithBackwardCompatibility(solrParams, LEADER_URL, LEGACY_LEADER_URL, null);
     if (!indexFetchLock.tryLock())
@@ -913,6 +929,10 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
         Properties props = loadReplicationProperties();
         addReplicationProperties(map::putNoEx, props);
       }
+      if (filesFetchedFromPeers.sum() > 0) {
+        map.put("filesFetchedFromPeers", filesFetchedFromPeers.sum());
+        map.put("bytesFetchedFromPeers", bytesFetchedFromPeers.sum());
+      }
     });
     solrMetricsContext.gauge(fetcherMap, true, "fetcher", getCategory().toString(), scope);
     solrMetricsContext.gauge(() -> isLeader && includeConfFiles != null ? includeConfFiles : "",
@@ -1056,6 +1076,22 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
           follower.add("currentFileSize", NumberUtils.readableSize(currFileSize));
           follower.add("currentFileSizeDownloaded", NumberUtils.readableSize(currFileSizeDownloaded));
           follower.add("currentFileSizePercent", String.valueOf(percentDownloaded));
+          List<Map<String, Object>> currentFiles = fetcher.getCurrentFiles();
+          if (!currentFiles.isEmpty()) {
+            // per-file progress of the files fetched concurrently, aggregated in currentFile* above
+            List<NamedList<Object>> currentFilesDetails = new ArrayList<>(currentFiles.size());
+            for (Map<String, Object> file : currentFiles) {
+              long size = (Long) file.get(SIZE);
+              long downloaded = (Long) file.get("bytesDownloaded");
+              NamedList<Object> fileDetails = new SimpleOrderedMap<>();
+              fileDetails.add("name", file.get(NAME));
+              fileDetails.add("size", NumberUtils.readableSize(size));
+              fileDetails.add("sizeDownloaded", NumberUtils.readableSize(downloaded));
+              fileDetails.add("sizePercent", String.valueOf(size > 0 ? (downloaded * 100) / size : 0));
+              currentFilesDetails.add(fileDetails);
+            }
+            follower.add("currentFiles", currentFilesDetails);
+          }
           follower.add("bytesDownloaded", NumberUtils.readableSize(bytesDownloaded));
           follower.add("totalPercent", String.valueOf(totalPercent));
           follower.add("timeRemaining", String.valueOf(estimatedTimeRemaining) + "s");
@@ -1496,6 +1532,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     protected boolean useChecksum;
 
     protected long offset = -1;
+    protected long endOffset = -1;
     protected int len = -1;
 
     protected Checksum checksum;
@@ -1543,6 +1580,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
 
     protected void initWrite() throws IOException {
       if (sOffset != null) offset = Long.parseLong(sOffset);
+      if (params.get(END_OFFSET) != null) endOffset = Long.parseLong(params.get(END_OFFSET));
       if (sLen != null) len = Integer.parseInt(sLen);
       if (fileName == null && cfileName == null && tlogFileName == null) {
         // no filename do nothing
@@ -1585,11 +1623,19 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
         initWrite();
 
         Directory dir = core.withSearcher(searcher -> searcher.getIndexReader().directory());
+        Directory unwrapped = FilterDirectory.unwrap(dir);
+        if (!useChecksum && !compress && unwrapped instanceof FSDirectory) {
+          // no per-packet checksum to compute: the follower verifies the file with the checksum in its codec footer
+          transferFile(out, ((FSDirectory) unwrapped).getDirectory().resolve(fileName));
+          return;
+        }
         in = dir.openInput(fileName, IOContext.READONCE);
         // if offset is mentioned move the pointer to that point
         if (offset != -1) in.seek(offset);
 
         long filelen = dir.fileLength(fileName);
+        // only stream the requested range
+        if (endOffset != -1) filelen = Math.min(filelen, endOffset);
         long maxBytesBeforePause = 0;
 
         while (true) {
@@ -1632,6 +1678,53 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     }
 
 
+    /**
+     * Streams the file with {@link FileChannel#transferTo}, without the per-packet checksums. Packets have
+     * the same size and framing as in {@link #write(OutputStream)}.
+     * <p>
+     * This is not a zero-copy transfer: the servlet output stream is not a channel the kernel can send a file
+     * to, so the JDK still copies the bytes through a temporary buffer, and the container copies them again.
+     * What this saves compared to {@link #write(OutputStream)} is the Adler32 computation of every packet.
+     */
+    private void transferFile(OutputStream out, Path path) throws IOException {
+      WritableByteChannel target = Channels.newChannel(new CloseShieldOutputStream(out));
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        long filelen = channel.size();
+        if (endOffset != -1) filelen = Math.min(filelen, endOffset);
+        long maxBytesBeforePause = 0;
+        offset = offset == -1 ? 0 : offset;
+
+        while (true) {
+          int read = (int) Math.min(buf.length, filelen - offset);
+          fos.writeInt(read);
+          // the packet size must reach the stream before the packet itself
+          fos.flush();
+          long transferred = 0;
+          while (transferred < read) {
+            long n = channel.transferTo(offset + transferred, read - transferred, target);
+            if (n <= 0) {
+              throw new EOFException("Unexpected end of file " + fileName + " at " + (offset + transferred));
+            }
+            transferred += n;
+          }
+          log.debug("Wrote {} bytes for file {}", offset + read, fileName); // nowarn
+
+          //Pause if necessary
+          maxBytesBeforePause += read;
+          if (maxBytesBeforePause >= rateLimiter.getMinPauseCheckBytes()) {
+            rateLimiter.pause(maxBytesBeforePause);
+            maxBytesBeforePause = 0;
+          }
+          if (read != buf.length) {
+            writeNothingAndFlush();
+            fos.close();
+            break;
+          }
+          offset += read;
+        }
+      }
+    }
+
     /**
      * Used to write a marker for EOF
      */
@@ -1816,12 +1909,30 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
 
   public static final String LEN = "len";
 
+  /** Exclusive end of the byte range of a file to stream, the whole file after {@link #OFFSET} if absent */
+  public static final String END_OFFSET = "endOffset";
+
   public static final String FILE = "file";
 
   public static final String SIZE = "size";
 
   public static final String MAX_WRITE_PER_SECOND = "maxWriteMBPerSec";
 
+  /** Number of concurrent requests used by a follower to fetch index files */
+  public static final String FETCH_THREADS = "fetchThreads";
+
+  /** Size of the byte ranges of large files that a follower fetches concurrently */
+  public static final String FETCH_CHUNK_SIZE_MB = "fetchChunkSizeMB";
+
+  /** Maximum rate at which a follower fetches index files, over all its concurrent requests */
+  public static final String MAX_READ_PER_SECOND = "maxReadMBPerSec";
+
+  /** Whether a follower verifies index files with their codec footer checksum, rather than with per-packet checksums */
+  public static final String USE_FOOTER_CHECKSUM = "useFooterChecksum";
+
+  /** Whether a SolrCloud replica also fetches index files from the other replicas that have the leader's commit */
+  public static final String FETCH_FROM_PEERS = "fetchFromPeers";
+
   public static final String CONF_FILE_SHORT = "cf";
 
   public static final String TLOG_FILE = "tlogFile";
@@ -65,7 +65,8 @@ class BackupCoreOp implements CoreAdminHandler.CoreAdminOp {
         final ShardBackupId prevShardBackupId = prevShardBackupIdStr != null ? ShardBackupId.from(prevShardBackupIdStr) : null;
         BackupFilePaths incBackupFiles = new BackupFilePaths(repository, locationUri);
         IncrementalShardBackup incSnapShooter = new IncrementalShardBackup(repository, core, incBackupFiles,
-                prevShardBackupId, shardBackupId, Optional.ofNullable(commitName));
+                prevShardBackupId, shardBackupId, Optional.ofNullable(commitName),
+                it.handler.coreContainer.getBackupUploadExecutor(repoName, repository));
         NamedList<Object> rsp = incSnapShooter.backup();
         it.rsp.addResponse(rsp);
       } else {
@@ -130,6 +130,33 @@ public class HttpShardHandler extends ShardHandler {
 
     params.remove(CommonParams.WT); // use default (currently javabin)
     params.remove(CommonParams.VERSION);
+
+    final ShardResponseCache cache = httpShardHandlerFactory.getShardResponseCache();
+    final SolrRequestInfo currentRequestInfo = SolrRequestInfo.getRequestInfo();
+    final String cacheKey = cache != null ? cache.getKey(sreq, shard, params,
+        currentRequestInfo != null ? currentRequestInfo.getReq().getUserPrincipal() : null) : null;
+    final ShardResponseCache.Entry validated;
+    if (cacheKey != null) {
+      ShardResponse cached = cache.get(shard, cacheKey);
+      if (cached != null) {
+        if (sreq.nodeName != null) {
+          cached.setNodeName(sreq.nodeName);
+        }
+        cached.setShardRequest(sreq);
+        pending.incrementAndGet();
+        responses.add(cached);
+        return;
+      }
+      params.set(ShardParams.SHARDS_CACHE_VERSION, true);
+      validated = cache.lookup(shard, cacheKey);
+      if (validated != null) {
+        // the shard only executes the request if its index changed
+        params.set(ShardParams.SHARDS_CACHE_IF_VERSION, validated.version);
+      }
+    } else {
+      validated = null;
+    }
+
     QueryRequest req = makeQueryRequest(sreq, params, shard);
     req.setMethod(SolrRequest.METHOD.POST);
 
@@ -174,6 +201,14 @@ public class HttpShardHandler extends ShardHandler {
         ssr.nl = rsp.getResponse();
         srsp.setShardAddress(rsp.getServer());
         ssr.elapsedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        if (cacheKey != null) {
+          try {
+            ssr.nl = cache.onResponse(shard, cacheKey, ssr.nl, rsp.getServer(), validated);
+          } catch (SolrException e) {
+            srsp.setException(e);
+            srsp.setResponseCode(e.code());
+          }
+        }
         responses.add(srsp);
       }
 
@@ -51,6 +51,7 @@ import org.apache.solr.common.util.URLUtil;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.metrics.SolrMetricsContext;
@@ -101,6 +102,8 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
 
   private RequestReplicaListTransformerGenerator requestReplicaListTransformerGenerator = new RequestReplicaListTransformerGenerator();
 
+  private ShardResponseCache shardResponseCache;
+
   // URL scheme to be used in distributed search.
   static final String INIT_URL_SCHEME = "urlScheme";
 
@@ -125,6 +128,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // Maximum size of the coordinator's shard response cache, 0 disables the cache
+  static final String INIT_SHARD_RESPONSE_CACHE_MAX_RAM_MB = "shardResponseCacheMaxRamMB";
+
+  // How long the last index version reported by a shard is trusted without asking it again, 0 always asks
+  static final String INIT_SHARD_RESPONSE_CACHE_MAX_AGE = "shardResponseCacheMaxAgeSec";
+
   /**
    * Get {@link ShardHandler} that uses the default http client.
    */
@@ -223,6 +232,13 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         sb);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy,sb);
 
+    int shardResponseCacheMaxRamMB = getParameter(args, INIT_SHARD_RESPONSE_CACHE_MAX_RAM_MB, 0, sb);
+    int shardResponseCacheMaxAge = getParameter(args, INIT_SHARD_RESPONSE_CACHE_MAX_AGE, 0, sb);
+    if (shardResponseCacheMaxRamMB > 0) {
+      this.shardResponseCache = new ShardResponseCache(shardResponseCacheMaxRamMB * 1024L * 1024L,
+          TimeUnit.SECONDS.toNanos(shardResponseCacheMaxAge));
+    }
+
     if (args != null && args.get("shardsWhitelist") != null) {
       log.warn("Property 'shardsWhitelist' is deprecated, please use '{}' instead.", AllowListUrlChecker.URL_ALLOW_LIST);
     }
@@ -269,6 +285,13 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     log.debug("created with {}",sb);
   }
 
+  /**
+   * Returns the coordinator's shard response cache, or null if it's not enabled.
+   */
+  public ShardResponseCache getShardResponseCache() {
+    return shardResponseCache;
+  }
+
   @Override
   public void setSecurityBuilder(HttpClientBuilderPlugin clientBuilderPlugin) {
     clientBuilderPlugin.setup(defaultClient);
@@ -381,5 +404,8 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     commExecutor = MetricUtils.instrumentedExecutorService(commExecutor, null,
         solrMetricsContext.getMetricRegistry(),
         SolrMetricManager.mkName("httpShardExecutor", expandedScope, "threadPool"));
+    if (shardResponseCache != null) {
+      solrMetricsContext.gauge(new MetricsMap(map -> shardResponseCache.getMetrics(map::putNoEx)), true, "shardResponseCache", expandedScope);
+    }
   }
 }
@@ -30,6 +30,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.index.IndexReaderContext;
@@ -746,8 +747,10 @@ public class QueryComponent extends SearchComponent
     // one-pass algorithm if only id and score fields are requested, but not if fl=score since that's the same as fl=*,score
     ReturnFields fields = rb.rsp.getReturnFields();
 
-    // distrib.singlePass=true forces a one-pass query regardless of requested fields
-    boolean distribSinglePass = rb.req.getParams().getBool(ShardParams.DISTRIB_SINGLE_PASS, false);
+    // distrib.singlePass=true forces a one-pass query regardless of requested fields,
+    // otherwise small result windows of stored fields are fetched in one pass automatically
+    Boolean singlePassParam = rb.req.getParams().getBool(ShardParams.DISTRIB_SINGLE_PASS);
+    boolean distribSinglePass = singlePassParam != null ? singlePassParam : isSmallSinglePassQuery(rb, fields);
 
     if(distribSinglePass || (fields != null && fields.wantsField(keyFieldName)
         && fields.getRequestedFieldNames() != null  
@@ -824,6 +827,39 @@ public class QueryComponent extends SearchComponent
     rb.addRequest(this, sreq);
   }
   
+  /**
+   * Returns true if the shards can return the requested documents in the first phase
+   * cheaply enough to skip the GET_FIELDS phase: the number of documents requested from
+   * all shards must not exceed {@link ShardParams#DISTRIB_SINGLE_PASS_MAX_ROWS}, and 'fl'
+   * may only list stored fields and the score, without globs, aliases or transformers.
+   * Documents that don't make it into the final page are discarded by the coordinator.
+   */
+  protected boolean isSmallSinglePassQuery(ResponseBuilder rb, ReturnFields fields) {
+    int maxRows = rb.req.getParams().getInt(ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, 0);
+    if (maxRows <= 0 || rb.shards == null || fields == null) {
+      return false;
+    }
+    long shardRows = rb.shards_rows > -1 ? rb.shards_rows : (long) rb.getSortSpec().getOffset() + rb.getSortSpec().getCount();
+    if (shardRows < 0 || shardRows * rb.shards.length > maxRows) {
+      return false;
+    }
+    Set<String> requested = fields.getRequestedFieldNames();
+    if (requested == null || fields.hasPatternMatching()) {
+      return false;
+    }
+    IndexSchema schema = rb.req.getSchema();
+    for (String name : requested) {
+      if ("score".equals(name)) {
+        continue;
+      }
+      SchemaField sf = schema.getFieldOrNull(name);
+      if (sf == null || !sf.stored()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   protected boolean addFL(StringBuilder fl, String field, boolean additionalAdded) {
     if (additionalAdded) fl.append(",");
     fl.append(field);
@@ -123,7 +123,9 @@ public class RealTimeGetComponent extends SearchComponent
     if (cloudDesc != null) {
       Replica.Type replicaType = cloudDesc.getReplicaType();
       if (replicaType != null) {
-        if (replicaType == Replica.Type.PULL) {
+        // PULL replicas only have recent updates if they tail the leader's update log
+        if (replicaType == Replica.Type.PULL
+            && !req.getCore().getCoreContainer().getZkController().isTailingLeaderTlog(req.getCore().getName())) {
           throw new SolrException(ErrorCode.BAD_REQUEST, 
               String.format(Locale.ROOT, "%s can't handle realtime get requests. Replicas of type %s do not support these type of requests", 
                   cloudDesc.getCoreNodeName(),
@@ -324,6 +324,11 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware,
 
     final ShardHandler shardHandler1 = getAndPrepShardHandler(req, rb); // creates a ShardHandler object only if it's needed
 
+    if (!rb.isDistrib && ShardResponseCache.handleNotModified(req, rsp)) {
+      // the coordinator has the response of this request for the current index
+      return;
+    }
+
     tagRequestWithRequestId(rb);
 
     if (timer == null) {
@@ -404,6 +409,11 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware,
       } finally {
         SolrQueryTimeoutImpl.reset();
       }
+
+      if (req.getParams().getBool(ShardParams.SHARDS_CACHE_VERSION, false)) {
+        // lets the coordinator validate its cached copy of this response
+        rsp.getResponseHeader().add(ShardParams.SHARDS_CACHE_VERSION, ShardResponseCache.getIndexVersion(req));
+      }
     } else {
       // a distributed request
 
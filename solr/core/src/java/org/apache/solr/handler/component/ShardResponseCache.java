@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.solr.client.solrj.SolrResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.update.IndexFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinator-side cache of shard responses, shared by all the {@link HttpShardHandler}s created
+ * by one {@link HttpShardHandlerFactory}. Entries are keyed by the shard, the user principal of the
+ * request and the normalized shard request params, and are valid only for the index version of the
+ * shard that produced them.
+ * <p>
+ * Shards report their index version in the response header when asked with
+ * {@link ShardParams#SHARDS_CACHE_VERSION}, which the coordinator does for every cacheable request
+ * it actually sends. When a response is cached, the request is still sent to the shard, but with
+ * {@link ShardParams#SHARDS_CACHE_IF_VERSION}: if its index version didn't change, the shard answers
+ * with {@link ShardParams#SHARDS_CACHE_NOT_MODIFIED} without executing the request and the cached
+ * copy is used, so the responses of shards that don't change (e.g. older partitions of time-routed
+ * collections) are never stale. Optionally, the last version seen for a shard can be trusted for
+ * <code>maxAgeSec</code> seconds, during which cached responses are served without asking the shard,
+ * at the price of results that are stale for at most that delay after the shard committed.
+ * <p>
+ * Requests that depend on the current time (any param referring to <code>NOW</code>), debug requests,
+ * real-time get requests and requests with {@link ShardParams#SHARDS_CACHE}<code>=false</code> are
+ * never cached.
+ */
+public class ShardResponseCache {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // params that change with every request but don't affect the response
+  private static final Set<String> IGNORED_PARAMS = Set.of(
+      CommonParams.NOW, ShardParams.QUERY_ID, CommonParams.REQUEST_ID, ShardParams.SHARDS_CACHE_VERSION,
+      ShardParams.SHARDS_CACHE_IF_VERSION);
+
+  private static class ShardVersion {
+    final String version;
+    final long verifiedNanos;
+
+    ShardVersion(String version, long verifiedNanos) {
+      this.version = version;
+      this.verifiedNanos = verifiedNanos;
+    }
+  }
+
+  static class Entry {
+    final String version;
+    final String shardAddress;
+    final byte[] response;
+
+    Entry(String version, String shardAddress, byte[] response) {
+      this.version = version;
+      this.shardAddress = shardAddress;
+      this.response = response;
+    }
+  }
+
+  private final Cache<String, Entry> cache;
+  private final Map<String, ShardVersion> shardVersions = new ConcurrentHashMap<>();
+  private final long maxAgeNanos;
+
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder revalidations = new LongAdder();
+  private final LongAdder inserts = new LongAdder();
+
+  public ShardResponseCache(long maxRamBytes, long maxAgeNanos) {
+    this.maxAgeNanos = maxAgeNanos;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxRamBytes)
+        .weigher((String k, Entry e) -> 2 * k.length() + e.response.length)
+        .build();
+  }
+
+  /**
+   * Returns the cache key of a request to a shard, or null if the request can't be cached.
+   * @param principal the user the request is executed for, since the response may depend on its permissions
+   */
+  public String getKey(ShardRequest sreq, String shard, SolrParams params, Principal principal) {
+    if ((sreq.purpose & ShardRequest.PURPOSE_PRIVATE) != 0
+        || !params.getBool(ShardParams.SHARDS_CACHE, true)
+        || params.get(CommonParams.DEBUG) != null
+        || params.getBool(CommonParams.DEBUG_QUERY, false)
+        || "/get".equals(params.get(CommonParams.QT))) {
+      return null;
+    }
+    TreeMap<String, String[]> sorted = new TreeMap<>();
+    for (Iterator<String> it = params.getParameterNamesIterator(); it.hasNext(); ) {
+      String name = it.next();
+      if (IGNORED_PARAMS.contains(name)) {
+        continue;
+      }
+      String[] values = params.getParams(name);
+      for (String value : values) {
+        if (value != null && value.contains(CommonParams.NOW)) {
+          // date math relative to the request time
+          return null;
+        }
+      }
+      sorted.put(name, values);
+    }
+    StringBuilder sb = new StringBuilder(shard);
+    sb.append('#').append(principal == null ? "" : principal.getName());
+    for (Map.Entry<String, String[]> e : sorted.entrySet()) {
+      sb.append('&').append(e.getKey()).append('=').append(Arrays.toString(e.getValue()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns a private copy of the cached response if it can be used without asking the shard, i.e. if it
+   * has the version of the shard that was verified less than <code>maxAgeSec</code> ago, or null otherwise.
+   */
+  public ShardResponse get(String shard, String key) {
+    lookups.increment();
+    Entry entry = lookup(shard, key);
+    if (entry == null) {
+      return null;
+    }
+    ShardVersion shardVersion = shardVersions.get(shard);
+    if (shardVersion == null || System.nanoTime() - shardVersion.verifiedNanos > maxAgeNanos) {
+      return null;
+    }
+    NamedList<Object> rsp = decode(shard, key, entry);
+    if (rsp == null) {
+      return null;
+    }
+    hits.increment();
+    ShardResponse srsp = new ShardResponse();
+    srsp.setShard(shard);
+    srsp.setShardAddress(entry.shardAddress);
+    srsp.setSolrResponse(new CachedSolrResponse(rsp));
+    return srsp;
+  }
+
+  /**
+   * Returns the cached response of the request, or null if there is none or if it doesn't have the last
+   * known version of the shard. Its version can be sent to the shard to skip the request if it didn't change.
+   */
+  Entry lookup(String shard, String key) {
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+    ShardVersion shardVersion = shardVersions.get(shard);
+    if (shardVersion != null && !entry.version.equals(shardVersion.version)) {
+      cache.invalidate(key);
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the response to use for a request sent to a shard: a private copy of <code>validated</code> if the
+   * shard reported that it is still current, or the shard's response, which is cached.
+   * @param validated the entry whose version was sent to the shard, or null
+   */
+  NamedList<Object> onResponse(String shard, String key, NamedList<Object> rsp, String shardAddress, Entry validated) {
+    NamedList<?> header = (NamedList<?>) rsp.get("responseHeader");
+    if (validated != null && header != null && Boolean.TRUE.equals(header.get(ShardParams.SHARDS_CACHE_NOT_MODIFIED))) {
+      shardVersions.put(shard, new ShardVersion(validated.version, System.nanoTime()));
+      NamedList<Object> cached = decode(shard, key, validated);
+      if (cached != null) {
+        revalidations.increment();
+        return cached;
+      }
+      // can't happen unless the cached bytes are corrupt; the shard's response has no content
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unreadable cached response of shard " + shard);
+    }
+    put(shard, key, rsp, shardAddress);
+    return rsp;
+  }
+
+  private NamedList<Object> decode(String shard, String key, Entry entry) {
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      @SuppressWarnings({"unchecked"})
+      NamedList<Object> nl = (NamedList<Object>) codec.unmarshal(entry.response);
+      return nl;
+    } catch (IOException e) {
+      log.warn("Error reading cached shard response, shard={}", shard, e);
+      cache.invalidate(key);
+      return null;
+    }
+  }
+
+  /**
+   * Records the index version reported by the shard and caches its response.
+   */
+  public void put(String shard, String key, NamedList<Object> rsp, String shardAddress) {
+    NamedList<?> header = (NamedList<?>) rsp.get("responseHeader");
+    Object version = header != null ? header.get(ShardParams.SHARDS_CACHE_VERSION) : null;
+    if (version == null) {
+      // the shard doesn't support versioning, or responded without a searcher
+      return;
+    }
+    shardVersions.put(shard, new ShardVersion(version.toString(), System.nanoTime()));
+    if (header.get(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY) != null) {
+      return;
+    }
+    try (JavaBinCodec codec = new JavaBinCodec(); ByteArrayOutputStream out = new ByteArrayOutputStream(1024)) {
+      codec.marshal(rsp, out);
+      cache.put(key, new Entry(version.toString(), shardAddress, out.toByteArray()));
+      inserts.increment();
+    } catch (IOException e) {
+      log.warn("Error caching shard response, shard={}", shard, e);
+    }
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+    shardVersions.clear();
+  }
+
+  public void getMetrics(BiConsumer<String, Object> consumer) {
+    long lookupCount = lookups.sum();
+    long hitCount = hits.sum();
+    consumer.accept("lookups", lookupCount);
+    consumer.accept("hits", hitCount);
+    consumer.accept("revalidations", revalidations.sum());
+    consumer.accept("hitratio", lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount);
+    consumer.accept("inserts", inserts.sum());
+    consumer.accept("size", cache.estimatedSize());
+    consumer.accept("shards", shardVersions.size());
+  }
+
+  /**
+   * Answers a shard request with {@link ShardParams#SHARDS_CACHE_NOT_MODIFIED} if the coordinator already has
+   * its response for the current index version, given by {@link ShardParams#SHARDS_CACHE_IF_VERSION}.
+   * @return true if the request doesn't need to be executed
+   */
+  public static boolean handleNotModified(SolrQueryRequest req, SolrQueryResponse rsp) throws IOException {
+    String ifVersion = req.getParams().get(ShardParams.SHARDS_CACHE_IF_VERSION);
+    if (ifVersion == null) {
+      return false;
+    }
+    String version = getIndexVersion(req);
+    if (!ifVersion.equals(version)) {
+      return false;
+    }
+    rsp.getResponseHeader().add(ShardParams.SHARDS_CACHE_VERSION, version);
+    rsp.getResponseHeader().add(ShardParams.SHARDS_CACHE_NOT_MODIFIED, true);
+    return true;
+  }
+
+  /**
+   * Returns a version of the index used by the request that changes whenever its content changes.
+   * With an update log the version is derived from the index fingerprint, which is the same on all
+   * replicas with the same documents, otherwise it's the version of the index reader.
+   */
+  public static String getIndexVersion(SolrQueryRequest req) throws IOException {
+    SolrIndexSearcher searcher = req.getSearcher();
+    if (req.getCore().getUpdateHandler().getUpdateLog() != null) {
+      IndexFingerprint fingerprint = searcher.getIndexFingerprint(Long.MAX_VALUE);
+      return fingerprint.getMaxVersionEncountered() + "-" + fingerprint.getNumVersions()
+          + "-" + Long.toHexString(fingerprint.getVersionsHash());
+    }
+    return "r" + searcher.getIndexReader().getVersion();
+  }
+
+  private static class CachedSolrResponse extends SolrResponse {
+    private NamedList<Object> nl;
+
+    CachedSolrResponse(NamedList<Object> nl) {
+      this.nl = nl;
+    }
+
+    @Override
+    public long getElapsedTime() {
+      return 0;
+    }
+
+    @Override
+    public NamedList<Object> getResponse() {
+      return nl;
+    }
+
+    @Override
+    public void setResponse(NamedList<Object> rsp) {
+      nl = rsp;
+    }
+
+    @Override
+    public void setElapsedTime(long elapsedTime) {
+    }
+  }
+}
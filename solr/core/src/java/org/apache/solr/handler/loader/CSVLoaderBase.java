@@ -33,6 +33,7 @@ import org.apache.commons.io.IOUtils;
 import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.io.*;
@@ -53,6 +54,7 @@ public abstract class CSVLoaderBase extends ContentStreamLoader {
   public static final String LITERALS_PREFIX = "literal.";
   public static final String ROW_ID = "rowid";
   public static final String ROW_ID_OFFSET = "rowidOffset";
+  public static final String UPDATE = "update";
 
   private static Pattern colonSplit = Pattern.compile(":");
   private static Pattern commaSplit = Pattern.compile(",");
@@ -97,6 +99,40 @@ public abstract class CSVLoaderBase extends ContentStreamLoader {
     }
   }
 
+  /** add the value as an atomic update operation, such as <code>{"set":val}</code>, instead of a field value */
+  private class FieldUpdater extends CSVLoaderBase.FieldAdder {
+    private final String op;
+    private final boolean keepEmpty;
+    FieldUpdater(String op, boolean keepEmpty) {
+      this.op = op;
+      this.keepEmpty = keepEmpty;
+    }
+    @Override
+    @SuppressWarnings({"unchecked"})
+    void add(SolrInputDocument doc, int line, int column, String val) {
+      if (val.length() == 0 && !keepEmpty) return;
+      String name = fieldnames[column];
+      Object existing = doc.getFieldValue(name);
+      if (existing instanceof Map) {
+        // more than one value, e.g. after splitting
+        Map<String, Object> ops = (Map<String, Object>) existing;
+        Object vals = ops.get(op);
+        if (vals instanceof List) {
+          ((List<Object>) vals).add(val);
+        } else {
+          List<Object> list = new ArrayList<>();
+          list.add(vals);
+          list.add(val);
+          ops.put(op, list);
+        }
+      } else {
+        Map<String, Object> ops = new HashMap<>(2);
+        ops.put(op, val);
+        doc.setField(name, ops);
+      }
+    }
+  }
+
   /** trim fields */
   private class FieldTrimmer extends CSVLoaderBase.FieldAdder {
     private final CSVLoaderBase.FieldAdder base;
@@ -247,7 +283,12 @@ public abstract class CSVLoaderBase extends ContentStreamLoader {
       if (fname.length()==0 || (skipFields!=null && skipFields.contains(fname))) continue;
 
       boolean keepEmpty = params.getFieldBool(fname,EMPTY,false);
-      adders[i] = keepEmpty ? adderKeepEmpty : adder;
+      String updateOp = params.getFieldParam(fname,UPDATE);
+      if (updateOp != null) {
+        adders[i] = new CSVLoaderBase.FieldUpdater(updateOp, keepEmpty);
+      } else {
+        adders[i] = keepEmpty ? adderKeepEmpty : adder;
+      }
 
       // Order that operations are applied: split -> trim -> map -> add
       // so create in reverse order.
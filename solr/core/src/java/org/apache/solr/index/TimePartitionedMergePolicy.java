@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.FilterMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+
+/**
+ * A {@link MergePolicy} that only lets the wrapped policy merge segments that were written
+ * within the same time partition, so that time ordered data (e.g. documents expiring a fixed
+ * TTL after they were indexed) stays grouped by age.  Once every document of such a segment
+ * is deleted, Lucene drops the whole segment without having to merge it away.
+ * <p>
+ * The time of a flushed segment is its flush timestamp; merged segments record the oldest
+ * timestamp of the segments they were merged from.  Forced merges reduce every partition
+ * to at most the requested number of segments rather than the whole index.
+ */
+public final class TimePartitionedMergePolicy extends FilterMergePolicy {
+
+  /** Segment attribute recording the oldest source timestamp of a merged segment. */
+  static final String TIMESTAMP_ATTR = "solr.timePartitioned.timestamp";
+
+  private static final String TIMESTAMP_DIAGNOSTIC = "timestamp";
+
+  private long partitionMillis = 24L * 60 * 60 * 1000;
+
+  public TimePartitionedMergePolicy(MergePolicy in) {
+    super(in);
+  }
+
+  /** Sets the width of each time partition, in seconds.  Default is one day. */
+  public void setPartitionSeconds(long partitionSeconds) {
+    if (partitionSeconds <= 0) {
+      throw new IllegalArgumentException("partitionSeconds must be positive: " + partitionSeconds);
+    }
+    this.partitionMillis = partitionSeconds * 1000;
+  }
+
+  public long getPartitionSeconds() {
+    return partitionMillis / 1000;
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos,
+                                       MergeContext mergeContext) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos partition : partition(infos).values()) {
+      spec = addMerges(spec, in.findMerges(mergeTrigger, partition, mergeContext));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos infos, int maxSegmentCount,
+                                             Map<SegmentCommitInfo,Boolean> segmentsToMerge,
+                                             MergeContext mergeContext) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos partition : partition(infos).values()) {
+      spec = addMerges(spec, in.findForcedMerges(partition, maxSegmentCount, segmentsToMerge, mergeContext));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos infos,
+                                                    MergeContext mergeContext) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos partition : partition(infos).values()) {
+      spec = addMerges(spec, in.findForcedDeletesMerges(partition, mergeContext));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findFullFlushMerges(MergeTrigger mergeTrigger, SegmentInfos infos,
+                                                MergeContext mergeContext) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos partition : partition(infos).values()) {
+      spec = addMerges(spec, in.findFullFlushMerges(mergeTrigger, partition, mergeContext));
+    }
+    return spec;
+  }
+
+  /** Groups the segments by time partition, oldest partition first. */
+  private Map<Long,SegmentInfos> partition(SegmentInfos infos) {
+    final Map<Long,SegmentInfos> partitions = new TreeMap<>();
+    for (SegmentCommitInfo info : infos) {
+      final long timestamp = getTimestamp(info);
+      final Long key = timestamp < 0 ? -1L : timestamp / partitionMillis;
+      partitions.computeIfAbsent(key, k -> new SegmentInfos(infos.getIndexCreatedVersionMajor())).add(info);
+    }
+    return partitions;
+  }
+
+  private MergeSpecification addMerges(MergeSpecification spec, MergeSpecification toAdd) {
+    if (toAdd == null) {
+      return spec;
+    }
+    if (spec == null) {
+      spec = new MergeSpecification();
+    }
+    for (OneMerge merge : toAdd.merges) {
+      // custom merges of the wrapped policy are kept as is, at the cost of their
+      // result being partitioned by the time of the merge
+      spec.add(merge.getClass() == OneMerge.class ? new TimestampedMerge(merge.segments) : merge);
+    }
+    return spec;
+  }
+
+  /** Returns the time of the segment, or -1 if it is unknown. */
+  static long getTimestamp(SegmentCommitInfo info) {
+    String timestamp = info.info.getAttribute(TIMESTAMP_ATTR);
+    if (timestamp == null) {
+      timestamp = info.info.getDiagnostics().get(TIMESTAMP_DIAGNOSTIC);
+    }
+    if (timestamp == null) {
+      return -1L;
+    }
+    try {
+      return Long.parseLong(timestamp);
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  /** A merge that records the oldest timestamp of its segments on the merged segment. */
+  private static final class TimestampedMerge extends OneMerge {
+
+    private final long timestamp;
+
+    TimestampedMerge(List<SegmentCommitInfo> segments) {
+      super(new ArrayList<>(segments));
+      long min = Long.MAX_VALUE;
+      for (SegmentCommitInfo info : segments) {
+        final long t = getTimestamp(info);
+        if (t >= 0) {
+          min = Math.min(min, t);
+        }
+      }
+      this.timestamp = min == Long.MAX_VALUE ? -1L : min;
+    }
+
+    @Override
+    public void setMergeInfo(SegmentCommitInfo info) {
+      if (timestamp >= 0) {
+        info.info.putAttribute(TIMESTAMP_ATTR, Long.toString(timestamp));
+      }
+      super.setMergeInfo(info);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TimePartitionedMergePolicy(" + in + ", partitionSeconds=" + getPartitionSeconds() + ")";
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+
+/**
+ * Chooses how each filter query is executed when <code>&lt;adaptiveFilters&gt;</code> is enabled in the
+ * <code>&lt;query&gt;</code> section of solrconfig.xml, instead of relying on the <code>cache</code> and
+ * <code>cost</code> local params that clients rarely set correctly.
+ * <p>
+ * Only filters whose execution was left to Solr are planned, i.e. filters that are not an {@link ExtendedQuery}
+ * or that have the default <code>cache=true</code> and <code>cost=0</code>. Explicit local params always win.
+ * For every other filter:
+ * <ul>
+ *   <li>a filter that is already in the filterCache, or that was seen in at least
+ *   <code>minRequestsToCache</code> different requests, is {@link Execution#CACHE cached};</li>
+ *   <li>a {@link PostFilter} seen for the first time is run as a {@link Execution#POST_FILTER post filter}, so it
+ *   only needs to be evaluated on documents that match everything else;</li>
+ *   <li>any other filter seen for the first time is {@link Execution#LEAPFROG leap-frogged} with the main query
+ *   without building and caching a set over the whole index, ordered by its estimated number of matches.</li>
+ * </ul>
+ * This keeps one-off filters (e.g. per-user or per-timestamp ones) from evicting popular entries of the filterCache,
+ * while popular filters are still cached on their second use. Estimates come from the size and computation time of
+ * the filter's last cached set, or from the document frequency for term queries.
+ * <p>
+ * A single instance is kept per core so that the observations survive commits; it is thread-safe.
+ */
+public class AdaptiveFilterPlanner {
+
+  /** How a filter is executed. */
+  public enum Execution {
+    /** Compute a {@link DocSet} over the whole index, using and populating the filterCache. */
+    CACHE,
+    /** Don't cache; intersect the filter with the main query while iterating. */
+    LEAPFROG,
+    /** Run the filter as a {@link PostFilter} on the documents matching everything else. */
+    POST_FILTER
+  }
+
+  /** The execution chosen for one filter, and why. */
+  public static final class Decision {
+    final Query query;
+    final Execution execution;
+    final long estimatedHits;
+    final long computeNanos;
+    final String reason;
+
+    Decision(Query query, Execution execution, long estimatedHits, long computeNanos, String reason) {
+      this.query = query;
+      this.execution = execution;
+      this.estimatedHits = estimatedHits;
+      this.computeNanos = computeNanos;
+      this.reason = reason;
+    }
+
+    public Query getQuery() {
+      return query;
+    }
+
+    public Execution getExecution() {
+      return execution;
+    }
+
+    /** The estimated number of matching documents, or -1 if unknown. */
+    public long getEstimatedHits() {
+      return estimatedHits;
+    }
+
+    public String getReason() {
+      return reason;
+    }
+
+    NamedList<Object> toNamedList() {
+      NamedList<Object> nl = new SimpleOrderedMap<>();
+      nl.add("execution", execution.toString().toLowerCase(Locale.ROOT));
+      if (estimatedHits >= 0) {
+        nl.add("estimatedHits", estimatedHits);
+      }
+      if (computeNanos >= 0) {
+        nl.add("computeTimeMs", computeNanos / 1_000_000.0);
+      }
+      nl.add("reason", reason);
+      return nl;
+    }
+  }
+
+  /** Orders leap-frogged filters by ascending estimated hits, unknown estimates last. */
+  static final Comparator<Decision> BY_ESTIMATED_HITS =
+      Comparator.comparingLong(d -> d.estimatedHits < 0 ? Long.MAX_VALUE : d.estimatedHits);
+
+  /** What we know about a filter from previous requests. */
+  private static final class Observation {
+    final AtomicInteger requests = new AtomicInteger();
+    volatile long lastRequestId;
+    volatile long lastHits = -1;
+    volatile long lastComputeNanos = -1;
+
+    int markSeen(long requestId) {
+      // count each request only once even if it processes its filters more than once (e.g. for facets)
+      if (requestId != 0 && lastRequestId == requestId) {
+        return requests.get();
+      }
+      lastRequestId = requestId;
+      return requests.incrementAndGet();
+    }
+  }
+
+  private static final String REQUEST_ID_KEY = AdaptiveFilterPlanner.class.getName() + ".requestId";
+  private static final AtomicLong REQUEST_IDS = new AtomicLong();
+
+  public static final int DEFAULT_MAX_TRACKED_FILTERS = 10000;
+  public static final int DEFAULT_MIN_REQUESTS_TO_CACHE = 2;
+
+  private final Cache<Query, Observation> observations;
+  private final int minRequestsToCache;
+
+  public AdaptiveFilterPlanner(int maxTrackedFilters, int minRequestsToCache) {
+    this.observations = Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .maximumSize(maxTrackedFilters)
+        .build();
+    this.minRequestsToCache = minRequestsToCache;
+  }
+
+  /** Returns true if the execution of this filter is left to Solr, i.e. no explicit cache or cost was requested. */
+  public static boolean isAdaptive(Query q) {
+    if (q instanceof ExtendedQuery) {
+      ExtendedQuery eq = (ExtendedQuery) q;
+      return eq.getCache() && eq.getCost() == 0;
+    }
+    return true;
+  }
+
+  /**
+   * Decides how to execute filter <code>q</code>.
+   * @param posQuery the positive version of <code>q</code>, used as filterCache key
+   * @param cachedSet the cached set of <code>posQuery</code> if the filterCache already holds it, or null
+   */
+  public Decision decide(SolrIndexSearcher searcher, Query q, Query posQuery, DocSet cachedSet) throws IOException {
+    Observation obs = observations.get(posQuery, k -> new Observation());
+    int requests = obs.markSeen(currentRequestId());
+
+    if (cachedSet != null) {
+      return new Decision(q, Execution.CACHE, cachedSet.size(), obs.lastComputeNanos, "already cached");
+    }
+    long estimatedHits = obs.lastHits >= 0 ? obs.lastHits : estimateHits(searcher, posQuery);
+    if (requests >= minRequestsToCache) {
+      return new Decision(q, Execution.CACHE, estimatedHits, obs.lastComputeNanos,
+          "used by " + requests + " requests");
+    }
+    if (q instanceof PostFilter) {
+      return new Decision(q, Execution.POST_FILTER, estimatedHits, obs.lastComputeNanos,
+          "first use of a post filter; only evaluated on documents matching everything else");
+    }
+    return new Decision(q, Execution.LEAPFROG, estimatedHits, obs.lastComputeNanos,
+        "first use; not worth caching yet");
+  }
+
+  /** Records the cost of computing the set of a filter that was planned to be cached. */
+  public void recordComputation(Query posQuery, DocSet set, long nanos) {
+    Observation obs = observations.getIfPresent(posQuery);
+    if (obs != null) {
+      obs.lastHits = set.size();
+      obs.lastComputeNanos = nanos;
+    }
+  }
+
+  /**
+   * Adds the decisions to the debug section of the current request, if it asked for query debugging.
+   * A request may plan the same filters several times (e.g. for faceting); only the first decision for each filter
+   * is reported.
+   */
+  @SuppressWarnings({"unchecked"})
+  public static void addDebugInfo(List<Decision> decisions) {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    ResponseBuilder rb = requestInfo == null ? null : requestInfo.getResponseBuilder();
+    if (rb == null || !rb.isDebugQuery()) {
+      return;
+    }
+    NamedList<Object> nl = rb.getDebugInfo() == null ? null : (NamedList<Object>) rb.getDebugInfo().get("adaptiveFilters");
+    if (nl == null) {
+      nl = new SimpleOrderedMap<>();
+      rb.addDebugInfo("adaptiveFilters", nl);
+    }
+    for (Decision decision : decisions) {
+      String key = decision.query.toString();
+      if (nl.indexOf(key, 0) < 0) {
+        nl.add(key, decision.toNamedList());
+      }
+    }
+  }
+
+  private static long estimateHits(SolrIndexSearcher searcher, Query q) throws IOException {
+    if (q instanceof TermQuery) {
+      return searcher.getIndexReader().docFreq(((TermQuery) q).getTerm());
+    }
+    return -1;
+  }
+
+  /** Returns a unique id for the current request, assigned on first use and kept in the request context. */
+  private static long currentRequestId() {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    SolrQueryRequest req = requestInfo == null ? null : requestInfo.getReq();
+    if (req == null) {
+      return 0;
+    }
+    return (Long) req.getContext().computeIfAbsent(REQUEST_ID_KEY, k -> REQUEST_IDS.incrementAndGet());
+  }
+
+  /** Number of filters currently tracked; for tests. */
+  long trackedFilters() {
+    observations.cleanUp();
+    return observations.estimatedSize();
+  }
+}
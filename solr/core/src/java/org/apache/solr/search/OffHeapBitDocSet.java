@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A read-only {@link DocSet} over the words of a bitset held in direct (off-heap) memory, as cached by
+ * {@link OffHeapFilterCache}. Lookups, iteration and filtering read the words in place; only operations that
+ * produce a new set, and the internal {@link #getFixedBitSet()}, copy them onto the heap.
+ * <p>
+ * The buffer must not be modified or reused for as long as the set is reachable.
+ */
+final class OffHeapBitDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapBitDocSet.class)
+      // the bits view
+      + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF
+      // a direct buffer view is a small heap object pointing to native memory
+      + 64;
+
+  private final LongBuffer words;
+  private final int numWords;
+  private final int numBits;
+  private final int size;
+  private final Bits bits = new Bits() {
+    @Override
+    public boolean get(int index) {
+      return OffHeapBitDocSet.this.get(index);
+    }
+
+    @Override
+    public int length() {
+      return numBits;
+    }
+  };
+
+  /**
+   * @param buffer holds at least <code>bits2words(numBits)</code> words in native byte order
+   * @param numBits the length of the bitset
+   * @param size the number of set bits
+   */
+  OffHeapBitDocSet(ByteBuffer buffer, int numBits, int size) {
+    this.words = buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).asLongBuffer();
+    this.numWords = FixedBitSet.bits2words(numBits);
+    this.numBits = numBits;
+    this.size = size;
+  }
+
+  private boolean get(int index) {
+    return (words.get(index >> 6) & (1L << index)) != 0;
+  }
+
+  /** Returns the index of the first set bit starting at the given index, or NO_MORE_DOCS if there is none. */
+  private int nextSetBit(int index) {
+    if (index >= numBits) {
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+    int i = index >> 6;
+    long word = words.get(i) >> index;  // skip all the bits to the right of index
+    if (word != 0) {
+      return index + Long.numberOfTrailingZeros(word);
+    }
+    while (++i < numWords) {
+      word = words.get(i);
+      if (word != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  /** Copies the words onto the heap. */
+  BitDocSet toBitDocSet() {
+    return new BitDocSet(getFixedBitSetClone(), size);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    return doc < numBits && get(doc);
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private int pos = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = nextSetBit(old + 1);
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    if (size == 0) {
+      return null;
+    }
+    final int base = context.isTopLevel ? 0 : context.docBase;
+    final int maxDoc = context.isTopLevel ? numBits : context.reader().maxDoc();
+    if (maxDoc < 1) {
+      // entirely empty segment
+      return null;
+    }
+    final int max = Math.min(base + maxDoc, numBits); // one past the max doc in this segment
+
+    return new DocIdSetIterator() {
+      int adjustedDoc = -1;
+
+      @Override
+      public int docID() {
+        return adjustedDoc;
+      }
+
+      @Override
+      public int nextDoc() {
+        return advance(adjustedDoc + 1);
+      }
+
+      @Override
+      public int advance(int target) {
+        if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+        int adjusted = target + base;
+        if (adjusted >= max) {
+          return adjustedDoc = NO_MORE_DOCS;
+        }
+        int pos = nextSetBit(adjusted);
+        return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+      }
+
+      @Override
+      public long cost() {
+        // the size is known, pro-rate it for the segment
+        return (long) (size * (maxDoc / (float) numBits));
+      }
+    };
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof OffHeapBitDocSet || other instanceof BitDocSet) {
+      FixedBitSet newbits = getFixedBitSetClone();
+      long[] newWords = newbits.getBits();
+      for (int i = 0; i < numWords; i++) {
+        newWords[i] &= wordOf(other, i);
+      }
+      return new BitDocSet(newbits);
+    }
+    // the smaller sets are better at intersecting, so dispatch off of them
+    return other.intersection(this);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof OffHeapBitDocSet || other instanceof BitDocSet) {
+      int count = 0;
+      for (int i = 0; i < numWords; i++) {
+        count += Long.bitCount(words.get(i) & wordOf(other, i));
+      }
+      return count;
+    }
+    // they had better not call us back!
+    return other.intersectionSize(this);
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof OffHeapBitDocSet || other instanceof BitDocSet) {
+      for (int i = 0; i < numWords; i++) {
+        if ((words.get(i) & wordOf(other, i)) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+    // they had better not call us back!
+    return other.intersects(this);
+  }
+
+  /** Returns the given word of a bitset based set, 0 if it is shorter. */
+  private static long wordOf(DocSet set, int i) {
+    if (set instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet offHeap = (OffHeapBitDocSet) set;
+      return i < offHeap.numWords ? offHeap.words.get(i) : 0L;
+    }
+    long[] words = ((BitDocSet) set).getBits().getBits();
+    return i < words.length ? words[i] : 0L;
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    return toBitDocSet().union(other);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    return toBitDocSet().andNot(other);
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      final OffHeapBitDocSet set = OffHeapBitDocSet.this;
+
+      @Override
+      public DocIdSet getDocIdSet(final LeafReaderContext context, final Bits acceptDocs) {
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (context.reader().getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return OffHeapBitDocSet.this.iterator(context);
+          }
+
+          @Override
+          public long ramBytesUsed() {
+            return OffHeapBitDocSet.this.ramBytesUsed();
+          }
+
+          @Override
+          public Bits bits() {
+            if (context.isTopLevel) {
+              return bits;
+            }
+
+            final int base = context.docBase;
+            final int length = context.reader().maxDoc();
+
+            return new Bits() {
+              @Override
+              public boolean get(int index) {
+                return exists(index + base);
+              }
+
+              @Override
+              public int length() {
+                return length;
+              }
+            };
+          }
+
+        }, acceptDocs2);
+      }
+
+      @Override
+      public String toString(String field) {
+        return "OffHeapBitSetDocTopFilter";
+      }
+
+      @Override
+      public boolean equals(Object other) {
+        return sameClassAs(other) &&
+               Objects.equals(set, getClass().cast(other).set);
+      }
+
+      @Override
+      public int hashCode() {
+        return classHash() * 31 + set.hashCode();
+      }
+    };
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    long[] targetWords = target.getBits();
+    int n = Math.min(numWords, targetWords.length);
+    for (int i = 0; i < n; i++) {
+      targetWords[i] |= words.get(i);
+    }
+  }
+
+  @Override
+  public BitDocSet clone() {
+    return toBitDocSet();
+  }
+
+  @Override
+  public Bits getBits() {
+    return bits;
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    long[] copy = new long[numWords];
+    words.duplicate().get(copy);
+    return new FixedBitSet(copy, numBits);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapBitDocSet{" +
+        "size=" + size +
+        ",offHeapBytes=" + RamUsageEstimator.humanReadableUnits((long) numWords * Long.BYTES) +
+        '}';
+  }
+}
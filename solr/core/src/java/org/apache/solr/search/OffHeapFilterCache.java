@@ -0,0 +1,615 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SolrCache} for {@link DocSet} values (i.e. the <code>filterCache</code>) that keeps the words of
+ * large cached bitsets in direct (off-heap) memory instead of in long-lived <code>long[]</code> arrays on the heap.
+ * Small sets, including all {@link SortedIntDocSet}s, stay on the heap.
+ * <p>
+ * Cached bitsets are the largest long-lived objects of a searcher and end up in the old generation, where
+ * evicting and replacing them on every commit causes expensive (mixed) collections. This cache instead serves
+ * hits with an {@link OffHeapBitDocSet} that reads the words in place, so a hit allocates no more than a few
+ * small objects however large the index is. Only operations that produce a new set, such as a union, copy the
+ * words onto the heap, as they would for any other set.
+ * <p>
+ * Each off-heap entry is reference counted: the cache holds one reference that is released when the entry is
+ * evicted, replaced or when the cache is closed together with its searcher, and every lookup holds another
+ * reference while it hands out the set. When the last reference is released, the direct buffer of an entry that
+ * was never handed out is returned to a {@link BufferPool} that is shared by the filter caches of all searchers of
+ * a core, so buffers are recycled across commits instead of being allocated and left for the garbage collector to
+ * free. The buffer of an entry that was handed out may still be read by a request, so it is left to the garbage
+ * collector.
+ * <p>
+ * Eviction is identical to {@link CaffeineCache}. When <code>maxRamMB</code> is set it limits the combined heap and
+ * off-heap footprint of the cached values; the {@link #ramBytesUsed()} of this cache reports heap memory only and
+ * the off-heap memory is reported separately by the <code>offHeapBytesUsed</code> metric.
+ * <p>Additional configuration parameters:</p>
+ * <ul>
+ *   <li><code>minOffHeapBytes</code> - bitsets smaller than this many bytes are kept on the heap (default 4096).</li>
+ *   <li><code>maxPooledBuffers</code> - maximum number of released buffers kept for reuse (default 32).</li>
+ * </ul>
+ */
+public class OffHeapFilterCache<K> extends SolrCacheBase implements SolrCache<K, DocSet>, Accountable, RemovalListener<K, OffHeapFilterCache.CachedDocSet> {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String MIN_OFF_HEAP_BYTES_PARAM = "minOffHeapBytes";
+  public static final String MAX_POOLED_BUFFERS_PARAM = "maxPooledBuffers";
+  public static final String OFF_HEAP_BYTES_USED_PARAM = "offHeapBytesUsed";
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapFilterCache.class)
+      + RamUsageEstimator.shallowSizeOfInstance(CacheStats.class)
+      + 3 * RamUsageEstimator.shallowSizeOfInstance(LongAdder.class);
+
+  private Executor executor;
+
+  private CacheStats priorStats;
+  private long priorInserts;
+
+  private String description = "Off-heap Filter Cache";
+  private LongAdder inserts;
+  private Cache<K, CachedDocSet> cache;
+  private BufferPool pool;
+  private long warmupTime;
+  private int maxSize;
+  private long maxRamBytes;
+  private int initialSize;
+  private int maxIdleTimeSec;
+  private int minOffHeapBytes;
+
+  private MetricsMap cacheMap;
+  private SolrMetricsContext solrMetricsContext;
+
+  private final LongAdder ramBytes = new LongAdder();
+  private final LongAdder offHeapBytes = new LongAdder();
+
+  public OffHeapFilterCache() {
+    this.priorStats = CacheStats.empty();
+  }
+
+  @Override
+  public Object init(Map<String, String> args, Object persistence, CacheRegenerator regenerator) {
+    super.init(args, regenerator);
+    String str = args.get(SIZE_PARAM);
+    maxSize = (str == null) ? 1024 : Integer.parseInt(str);
+    str = args.get(INITIAL_SIZE_PARAM);
+    initialSize = Math.min((str == null) ? 1024 : Integer.parseInt(str), maxSize);
+    str = args.get(MAX_IDLE_TIME_PARAM);
+    maxIdleTimeSec = str == null ? -1 : Integer.parseInt(str);
+    str = args.get(MAX_RAM_MB_PARAM);
+    int maxRamMB = str == null ? -1 : Double.valueOf(str).intValue();
+    maxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
+    str = args.get(MIN_OFF_HEAP_BYTES_PARAM);
+    minOffHeapBytes = str == null ? 4096 : Integer.parseInt(str);
+    str = args.get(CLEANUP_THREAD_PARAM);
+    if (str != null && Boolean.parseBoolean(str)) {
+      executor = ForkJoinPool.commonPool();
+    } else {
+      executor = Runnable::run;
+    }
+
+    if (persistence == null) {
+      str = args.get(MAX_POOLED_BUFFERS_PARAM);
+      persistence = new BufferPool(str == null ? 32 : Integer.parseInt(str));
+    }
+    pool = (BufferPool) persistence;
+
+    description = generateDescription(maxSize, initialSize);
+    cache = buildCache(null);
+    inserts = new LongAdder();
+    return persistence;
+  }
+
+  private Cache<K, CachedDocSet> buildCache(Cache<K, CachedDocSet> prev) {
+    Caffeine<K, CachedDocSet> builder = Caffeine.newBuilder()
+        .initialCapacity(initialSize)
+        .executor(executor)
+        .removalListener(this)
+        .recordStats();
+    if (maxIdleTimeSec > 0) {
+      builder.expireAfterAccess(Duration.ofSeconds(maxIdleTimeSec));
+    }
+    if (maxRamBytes != Long.MAX_VALUE) {
+      builder.maximumWeight(maxRamBytes);
+      builder.weigher((k, v) -> (int) (RamUsageEstimator.sizeOfObject(k) + v.ramBytesUsed() + v.offHeapBytesUsed()));
+    } else {
+      builder.maximumSize(maxSize);
+    }
+    Cache<K, CachedDocSet> newCache = builder.build();
+    if (prev != null) {
+      newCache.putAll(prev.asMap());
+    }
+    return newCache;
+  }
+
+  /** Wraps a freshly computed value for storage, moving large bitsets off the heap. */
+  private CachedDocSet toCached(DocSet value) {
+    if (value instanceof OffHeapBitDocSet) {
+      // e.g. a value of the previous searcher's cache put back while warming; it can't share its buffer
+      value = ((OffHeapBitDocSet) value).toBitDocSet();
+    }
+    if (value instanceof BitDocSet) {
+      FixedBitSet bits = ((BitDocSet) value).getBits();
+      int numWords = FixedBitSet.bits2words(bits.length());
+      long numBytes = (long) numWords * Long.BYTES;
+      if (numBytes >= minOffHeapBytes) {
+        ByteBuffer buffer = pool.acquire(numWords * Long.BYTES);
+        buffer.duplicate().order(ByteOrder.nativeOrder()).asLongBuffer().put(bits.getBits(), 0, numWords);
+        return new CachedDocSet(null, buffer, bits.length(), value.size(), pool);
+      }
+    }
+    return new CachedDocSet(value, null, 0, 0, null);
+  }
+
+  /** Returns the set of a cached value, or null if it was released concurrently. */
+  private static DocSet toDocSet(CachedDocSet cached) {
+    if (cached.heapValue != null) {
+      return cached.heapValue;
+    }
+    if (!cached.tryIncRef()) {
+      return null;
+    }
+    try {
+      return cached.share();
+    } finally {
+      cached.decRef();
+    }
+  }
+
+  private void onInsert(K key, CachedDocSet cached) {
+    inserts.increment();
+    ramBytes.add(RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED) +
+        cached.ramBytesUsed() + RamUsageEstimator.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY);
+    offHeapBytes.add(cached.offHeapBytesUsed());
+  }
+
+  @Override
+  public void onRemoval(K key, CachedDocSet cached, RemovalCause cause) {
+    if (cached == null) {
+      return;
+    }
+    ramBytes.add(- (RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED) +
+        cached.ramBytesUsed() + RamUsageEstimator.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY));
+    offHeapBytes.add(- cached.offHeapBytesUsed());
+    // drop the reference held by the cache; readers still copying keep the buffer alive
+    cached.decRef();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + ramBytes.sum();
+  }
+
+  /** Returns the number of bytes of direct memory held by the entries of this cache. */
+  public long offHeapBytesUsed() {
+    return offHeapBytes.sum();
+  }
+
+  @Override
+  public DocSet get(K key) {
+    CachedDocSet cached = cache.getIfPresent(key);
+    return cached == null ? null : toDocSet(cached);
+  }
+
+  @Override
+  public DocSet computeIfAbsent(K key, Function<? super K, ? extends DocSet> mappingFunction) {
+    DocSet[] computed = new DocSet[1];
+    CachedDocSet cached = cache.get(key, k -> {
+      DocSet value = mappingFunction.apply(k);
+      if (value == null) {
+        return null;
+      }
+      computed[0] = value;
+      CachedDocSet newCached = toCached(value);
+      onInsert(k, newCached);
+      return newCached;
+    });
+    if (computed[0] != null) {
+      return computed[0];
+    }
+    return cached == null ? null : toDocSet(cached);
+  }
+
+  @Override
+  public DocSet put(K key, DocSet value) {
+    CachedDocSet newCached = toCached(value);
+    onInsert(key, newCached);
+    // take a reference on the old value before the removal listener releases the cache's reference
+    CachedDocSet[] old = new CachedDocSet[1];
+    cache.asMap().compute(key, (k, prev) -> {
+      if (prev != null && prev.tryIncRef()) {
+        old[0] = prev;
+      }
+      return newCached;
+    });
+    if (old[0] == null) {
+      return null;
+    }
+    try {
+      return old[0].heapValue != null ? old[0].heapValue : old[0].share();
+    } finally {
+      old[0].decRef();
+    }
+  }
+
+  @Override
+  public DocSet remove(K key) {
+    CachedDocSet[] old = new CachedDocSet[1];
+    cache.asMap().computeIfPresent(key, (k, prev) -> {
+      if (prev.tryIncRef()) {
+        old[0] = prev;
+      }
+      return null;
+    });
+    if (old[0] == null) {
+      return null;
+    }
+    try {
+      return old[0].heapValue != null ? old[0].heapValue : old[0].share();
+    } finally {
+      old[0].decRef();
+    }
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+
+  @Override
+  public int size() {
+    return cache.asMap().size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    SolrCache.super.close();
+    // releases the off-heap buffers back to the pool
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+
+  @Override
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public void setMaxSize(int maxSize) {
+    if (this.maxSize == maxSize) {
+      return;
+    }
+    Optional<Eviction<K, CachedDocSet>> evictionOpt = cache.policy().eviction();
+    if (evictionOpt.isPresent()) {
+      evictionOpt.get().setMaximum(maxSize);
+      this.maxSize = maxSize;
+      initialSize = Math.min(1024, this.maxSize);
+      description = generateDescription(this.maxSize, initialSize);
+      cache.cleanUp();
+    }
+  }
+
+  @Override
+  public int getMaxRamMB() {
+    return maxRamBytes != Long.MAX_VALUE ? (int) (maxRamBytes / 1024L / 1024L) : -1;
+  }
+
+  @Override
+  public void setMaxRamMB(int maxRamMB) {
+    long newMaxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
+    if (newMaxRamBytes != maxRamBytes) {
+      maxRamBytes = newMaxRamBytes;
+      Optional<Eviction<K, CachedDocSet>> evictionOpt = cache.policy().eviction();
+      if (evictionOpt.isPresent()) {
+        Eviction<K, CachedDocSet> eviction = evictionOpt.get();
+        if (!eviction.isWeighted() || maxRamBytes == Long.MAX_VALUE) {
+          // rebuild the cache with the other kind of limit; entries move over without being released
+          cache = buildCache(cache);
+          return;
+        }
+        eviction.setMaximum(newMaxRamBytes);
+        description = generateDescription(this.maxSize, initialSize);
+        cache.cleanUp();
+      }
+    }
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher, SolrCache<K, DocSet> old) {
+    if (regenerator == null) {
+      return;
+    }
+
+    long warmingStartTime = System.nanoTime();
+    Map<K, CachedDocSet> hottest = Collections.emptyMap();
+    OffHeapFilterCache<K> other = (OffHeapFilterCache<K>) old;
+
+    // warm entries
+    if (isAutowarmingOn()) {
+      Eviction<K, CachedDocSet> policy = other.cache.policy().eviction().get();
+      int size = autowarm.getWarmCount(other.cache.asMap().size());
+      hottest = policy.hottest(size);
+    }
+
+    for (Entry<K, CachedDocSet> entry : hottest.entrySet()) {
+      try {
+        DocSet oldValue = toDocSet(entry.getValue());
+        if (oldValue == null) {
+          continue;
+        }
+        boolean continueRegen = regenerator.regenerateItem(
+            searcher, this, old, entry.getKey(), oldValue);
+        if (!continueRegen) {
+          break;
+        }
+      }
+      catch (Exception e) {
+        SolrException.log(log, "Error during auto-warming of key:" + entry.getKey(), e);
+      }
+    }
+
+    inserts.reset();
+    priorStats = other.cache.stats().plus(other.priorStats);
+    priorInserts = other.inserts.sum() + other.priorInserts;
+    warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns the description of this cache. */
+  private String generateDescription(int limit, int initialSize) {
+    return String.format(Locale.ROOT, "Off-heap TinyLfu Cache(maxSize=%d, initialSize=%d, minOffHeapBytes=%d%s)",
+        limit, initialSize, minOffHeapBytes, isAutowarmingOn() ? (", " + getAutowarmDescription()) : "");
+  }
+
+  //////////////////////// SolrInfoBean methods //////////////////////
+
+  @Override
+  public String getName() {
+    return OffHeapFilterCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  MetricsMap getMetricsMap() {
+    return cacheMap;
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  BufferPool getBufferPool() {
+    return pool;
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
+
+  @Override
+  public String toString() {
+    return name() + (cacheMap != null ? cacheMap.getValue().toString() : "");
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    solrMetricsContext = parentContext.getChildContext(this);
+    cacheMap = new MetricsMap(map -> {
+      if (cache != null) {
+        CacheStats stats = cache.stats();
+        long insertCount = inserts.sum();
+
+        map.put(LOOKUPS_PARAM, stats.requestCount());
+        map.put(HITS_PARAM, stats.hitCount());
+        map.put(HIT_RATIO_PARAM, stats.hitRate());
+        map.put(INSERTS_PARAM, insertCount);
+        map.put(EVICTIONS_PARAM, stats.evictionCount());
+        map.put(SIZE_PARAM, cache.asMap().size());
+        map.put("warmupTime", warmupTime);
+        map.put(RAM_BYTES_USED_PARAM, ramBytesUsed());
+        map.put(MAX_RAM_MB_PARAM, getMaxRamMB());
+        map.put(OFF_HEAP_BYTES_USED_PARAM, offHeapBytesUsed());
+        map.put("pooledBuffers", pool.size());
+        map.put("pooledBytes", pool.pooledBytes());
+
+        CacheStats cumulativeStats = priorStats.plus(stats);
+        map.put("cumulative_lookups", cumulativeStats.requestCount());
+        map.put("cumulative_hits", cumulativeStats.hitCount());
+        map.put("cumulative_hitratio", cumulativeStats.hitRate());
+        map.put("cumulative_inserts", priorInserts + insertCount);
+        map.put("cumulative_evictions", cumulativeStats.evictionCount());
+      }
+    });
+    solrMetricsContext.gauge(cacheMap, true, scope, getCategory().toString());
+  }
+
+  /**
+   * A cached value: either an on-heap {@link DocSet} or a reference counted off-heap copy of the words of a bitset.
+   */
+  static final class CachedDocSet implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CachedDocSet.class)
+        + RamUsageEstimator.shallowSizeOfInstance(AtomicInteger.class);
+    // a direct buffer is a small heap object pointing to native memory
+    private static final long BUFFER_RAM_BYTES_USED = 64;
+
+    final DocSet heapValue;
+    private final ByteBuffer buffer;
+    private final int numBits;
+    private final int size;
+    private final BufferPool pool;
+    // starts out with the reference held by the cache
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    // whether the buffer was handed out, so it can't be reused
+    private volatile boolean shared;
+
+    CachedDocSet(DocSet heapValue, ByteBuffer buffer, int numBits, int size, BufferPool pool) {
+      this.heapValue = heapValue;
+      this.buffer = buffer;
+      this.numBits = numBits;
+      this.size = size;
+      this.pool = pool;
+    }
+
+    /** Acquires a reference, unless the last reference was already released. */
+    boolean tryIncRef() {
+      for (;;) {
+        int count = refCount.get();
+        if (count <= 0) {
+          return false;
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void decRef() {
+      int count = refCount.decrementAndGet();
+      assert count >= 0 : "released too often";
+      if (count == 0 && buffer != null && !shared) {
+        pool.release(buffer);
+      }
+    }
+
+    /**
+     * Returns a set that reads the off-heap words in place. The buffer is never reused afterwards, so the set
+     * stays valid for as long as it is reachable. The caller must hold a reference.
+     */
+    OffHeapBitDocSet share() {
+      assert refCount.get() > 0;
+      shared = true;
+      return new OffHeapBitDocSet(buffer, numBits, size);
+    }
+
+    long offHeapBytesUsed() {
+      return buffer == null ? 0 : buffer.capacity();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + (heapValue != null ? heapValue.ramBytesUsed() : BUFFER_RAM_BYTES_USED);
+    }
+  }
+
+  /**
+   * Direct buffers released by the filter caches of one core, kept for reuse by the caches of later searchers.
+   * This is the persistence object shared by all instances of the cache, so it must be thread-safe and must not
+   * reference any cache instance. Buffer capacities are rounded up to whole pages so that a slightly grown index
+   * can still reuse the buffers of the previous searcher; buffers of any other capacity are left to the garbage
+   * collector.
+   */
+  static final class BufferPool {
+    private static final int PAGE_SIZE = 4096;
+
+    private final int maxPooledBuffers;
+    private final Deque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private volatile int capacity = -1;
+
+    BufferPool(int maxPooledBuffers) {
+      this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    ByteBuffer acquire(int numBytes) {
+      int wanted = (numBytes + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+      if (capacity != wanted) {
+        // the index changed size; buffers of the old capacity are no use anymore
+        capacity = wanted;
+        drain();
+      } else {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer != null) {
+          freeCount.decrementAndGet();
+          pooledBytes.addAndGet(-buffer.capacity());
+          if (buffer.capacity() == wanted) {
+            return buffer;
+          }
+        }
+      }
+      return ByteBuffer.allocateDirect(wanted);
+    }
+
+    void release(ByteBuffer buffer) {
+      if (buffer.capacity() != capacity) {
+        return;
+      }
+      if (freeCount.incrementAndGet() > maxPooledBuffers) {
+        freeCount.decrementAndGet();
+        return;
+      }
+      pooledBytes.addAndGet(buffer.capacity());
+      free.offerFirst(buffer);
+    }
+
+    private void drain() {
+      ByteBuffer buffer;
+      while ((buffer = free.pollFirst()) != null) {
+        freeCount.decrementAndGet();
+        pooledBytes.addAndGet(-buffer.capacity());
+      }
+    }
+
+    int size() {
+      return freeCount.get();
+    }
+
+    long pooledBytes() {
+      return pooledBytes.get();
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link DirectoryReader} showing the documents of a small in-memory overlay index on top of a main index:
+ * the documents of the main index that the overlay replaces or deletes are hidden, and the segments of the
+ * overlay are added after those of the main index.
+ * <p>
+ * PULL replicas use it to search the updates tailed from their leader before the commit that contains them
+ * has been fetched, see {@link org.apache.solr.core.SolrCore#setReaderOverlay(Source)}.  Everything about the
+ * index itself, such as {@link #getIndexCommit()} and {@link #getVersion()}, is the main index's, and
+ * {@link #getDelegate()} returns the main index's reader.
+ */
+public final class OverlayDirectoryReader extends FilterDirectoryReader {
+
+  /**
+   * The overlay of the searchers of a core.
+   */
+  public interface Source {
+    /**
+     * Returns the given reader of the main index with the current overlay on top, or the reader itself if
+     * the overlay is empty.  The reference to the reader is taken over in both cases, unless an exception
+     * is thrown.
+     */
+    DirectoryReader wrap(DirectoryReader reader) throws IOException;
+
+    /**
+     * Returns a number that changes whenever the content of the overlay changes, -1 when it's empty.
+     */
+    long getGeneration();
+  }
+
+  private final DirectoryReader overlay;
+  private final long generation;
+
+  /**
+   * @param in the reader of the main index, whose reference is taken over
+   * @param overlay the reader of the overlay index, whose reference is taken over
+   * @param hiddenTerms the documents of the main index containing any of these terms are hidden
+   * @param hiddenQueries the documents of the main index matching any of these queries are hidden
+   * @param generation the {@link Source#getGeneration()} of the overlay
+   */
+  public OverlayDirectoryReader(DirectoryReader in, DirectoryReader overlay, Collection<Term> hiddenTerms,
+                                List<Query> hiddenQueries, long generation) throws IOException {
+    super(in, new OverlayWrapper(overlay, hiddenTerms, hiddenQueries));
+    this.overlay = overlay;
+    this.generation = generation;
+  }
+
+  /**
+   * @return the {@link Source#getGeneration()} of the overlay of the reader, -1 if it has none
+   */
+  public static long getGeneration(DirectoryReader reader) {
+    return reader instanceof OverlayDirectoryReader ? ((OverlayDirectoryReader) reader).generation : -1;
+  }
+
+  /**
+   * @return the reader of the main index if the reader has an overlay, else the reader itself
+   */
+  public static DirectoryReader unwrap(DirectoryReader reader) {
+    return reader instanceof OverlayDirectoryReader ? ((OverlayDirectoryReader) reader).getDelegate() : reader;
+  }
+
+  @Override
+  protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) {
+    // a reopened main index brings its own overlay, see Source
+    return in;
+  }
+
+  @Override
+  protected void doClose() throws IOException {
+    // the main index's reader may be shared with other searchers, so only release our reference
+    try {
+      in.decRef();
+    } finally {
+      overlay.decRef();
+    }
+  }
+
+  @Override
+  public CacheHelper getReaderCacheHelper() {
+    // the content differs from the main index's
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "OverlayDirectoryReader(" + in + ", overlay=" + overlay + ", generation=" + generation + ")";
+  }
+
+  private static final class OverlayWrapper extends SubReaderWrapper {
+    private final DirectoryReader overlay;
+    private final Collection<Term> hiddenTerms;
+    private final List<Query> hiddenQueries;
+
+    OverlayWrapper(DirectoryReader overlay, Collection<Term> hiddenTerms, List<Query> hiddenQueries) {
+      this.overlay = overlay;
+      this.hiddenTerms = hiddenTerms;
+      this.hiddenQueries = hiddenQueries;
+    }
+
+    @Override
+    protected LeafReader[] wrap(List<? extends LeafReader> readers) {
+      final LeafReader[] main = super.wrap(readers);
+      final List<LeafReaderContext> overlayLeaves = overlay.leaves();
+      final LeafReader[] all = Arrays.copyOf(main, main.length + overlayLeaves.size());
+      for (int i = 0; i < overlayLeaves.size(); i++) {
+        all[main.length + i] = overlayLeaves.get(i).reader();
+      }
+      return all;
+    }
+
+    @Override
+    public LeafReader wrap(LeafReader reader) {
+      try {
+        final FixedBitSet hidden = getHiddenDocs(reader);
+        return hidden == null ? reader : new HidingLeafReader(reader, hidden);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /** Returns the documents of the segment that are hidden by the overlay, or null if there are none. */
+    private FixedBitSet getHiddenDocs(LeafReader reader) throws IOException {
+      FixedBitSet hidden = null;
+      String field = null;
+      TermsEnum termsEnum = null;
+      PostingsEnum postings = null;
+      for (Term term : hiddenTerms) {
+        if (!term.field().equals(field)) {
+          field = term.field();
+          final Terms terms = reader.terms(field);
+          termsEnum = terms == null ? null : terms.iterator();
+        }
+        if (termsEnum == null || !termsEnum.seekExact(term.bytes())) {
+          continue;
+        }
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+          if (hidden == null) {
+            hidden = new FixedBitSet(reader.maxDoc());
+          }
+          hidden.set(doc);
+        }
+      }
+      if (!hiddenQueries.isEmpty()) {
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setQueryCache(null);
+        for (Query query : hiddenQueries) {
+          final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1);
+          final Scorer scorer = weight.scorer(searcher.getIndexReader().leaves().get(0));
+          if (scorer == null) {
+            continue;
+          }
+          final DocIdSetIterator it = scorer.iterator();
+          for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+            if (hidden == null) {
+              hidden = new FixedBitSet(reader.maxDoc());
+            }
+            hidden.set(doc);
+          }
+        }
+      }
+      return hidden;
+    }
+  }
+
+  /** A segment of the main index, with the documents hidden by the overlay marked as deleted. */
+  private static final class HidingLeafReader extends FilterLeafReader {
+    private final Bits liveDocs;
+    private final int numDocs;
+
+    HidingLeafReader(LeafReader in, FixedBitSet hidden) {
+      super(in);
+      final Bits inLiveDocs = in.getLiveDocs();
+      final FixedBitSet liveDocs = new FixedBitSet(in.maxDoc());
+      liveDocs.set(0, in.maxDoc());
+      liveDocs.andNot(hidden);
+      if (inLiveDocs != null) {
+        for (int doc = 0; doc < in.maxDoc(); doc++) {
+          if (!inLiveDocs.get(doc)) {
+            liveDocs.clear(doc);
+          }
+        }
+      }
+      this.liveDocs = liveDocs;
+      this.numDocs = liveDocs.cardinality();
+    }
+
+    @Override
+    public Bits getLiveDocs() {
+      return liveDocs;
+    }
+
+    @Override
+    public int numDocs() {
+      return numDocs;
+    }
+
+    @Override
+    public CacheHelper getCoreCacheHelper() {
+      return in.getCoreCacheHelper();
+    }
+
+    @Override
+    public CacheHelper getReaderCacheHelper() {
+      // the deletions differ from the segment's
+      return null;
+    }
+  }
+}
@@ -116,6 +116,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final int queryResultWindowSize;
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
+  private final AdaptiveFilterPlanner filterPlanner;
+  private static final ThreadLocal<Boolean> COMPUTING_PLANNED_FILTER = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
@@ -282,6 +284,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     this.queryResultWindowSize = solrConfig.queryResultWindowSize;
     this.queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     this.useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
+    this.filterPlanner = core.getAdaptiveFilterPlanner();
 
     this.docFetcher = new SolrDocumentFetcher(this, solrConfig, enableCache);
 
@@ -785,6 +788,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (answer instanceof BitDocSet) {
       return (BitDocSet) answer;
     }
+    if (answer instanceof OffHeapBitDocSet) {
+      return ((OffHeapBitDocSet) answer).toBitDocSet();
+    }
     FixedBitSet bs = new FixedBitSet(maxDoc());
     DocIterator iter = answer.iterator();
     while (iter.hasNext()) {
@@ -937,6 +943,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     DocSet[] sets = new DocSet[queries.size() + 1];
     List<ExtendedQuery> notCached = null;
     List<PostFilter> postFilters = null;
+    List<AdaptiveFilterPlanner.Decision> decisions = null;
+    List<ExtendedQuery> leapfrogged = null;
 
     int end = 0;
     int smallestIndex = -1;
@@ -972,7 +980,23 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
 
       Query posQuery = QueryUtils.getAbs(q);
-      sets[end] = getPositiveDocSet(posQuery);
+      if (filterPlanner != null && AdaptiveFilterPlanner.isAdaptive(q)) {
+        DocSet cachedSet = filterCache.get(posQuery);
+        AdaptiveFilterPlanner.Decision decision = filterPlanner.decide(this, q, posQuery, cachedSet);
+        if (decisions == null) decisions = new ArrayList<>(queries.size());
+        decisions.add(decision);
+        if (decision.getExecution() == AdaptiveFilterPlanner.Execution.POST_FILTER) {
+          if (postFilters == null) postFilters = new ArrayList<>(sets.length - end);
+          postFilters.add((PostFilter) q);
+          continue;
+        } else if (decision.getExecution() == AdaptiveFilterPlanner.Execution.LEAPFROG) {
+          // added to notCached below, ordered by estimated hits
+          continue;
+        }
+        sets[end] = cachedSet != null ? cachedSet : computePlannedFilter(posQuery);
+      } else {
+        sets[end] = getPositiveDocSet(posQuery);
+      }
       // Negative query if absolute value different from original
       if (q == posQuery) {
         neg[end] = false;
@@ -992,6 +1016,19 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       end++;
     }
 
+    if (decisions != null) {
+      decisions.sort(AdaptiveFilterPlanner.BY_ESTIMATED_HITS);
+      for (AdaptiveFilterPlanner.Decision decision : decisions) {
+        if (decision.getExecution() == AdaptiveFilterPlanner.Execution.LEAPFROG) {
+          if (leapfrogged == null) leapfrogged = new ArrayList<>(decisions.size());
+          WrappedQuery uncached = new WrappedQuery(decision.getQuery());
+          uncached.setCache(false);
+          leapfrogged.add(uncached);
+        }
+      }
+      AdaptiveFilterPlanner.addDebugInfo(decisions);
+    }
+
     // Are all of our normal cached filters negative?
     if (end > 0 && answer == null) {
       answer = getLiveDocSet();
@@ -1014,7 +1051,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // answer is done.
 
     // If no notCached nor postFilters, we can return now.
-    if (notCached == null && postFilters == null) {
+    if (notCached == null && leapfrogged == null && postFilters == null) {
       // "answer" is the only part of the filter, so set it.
       if (answer != null) {
         pf.answer = answer;
@@ -1025,19 +1062,27 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // pf.answer will remain null ...  (our local "answer" var is not the complete answer)
 
     // Set pf.filter based on combining "answer" and "notCached"
-    if (notCached == null) {
+    if (notCached == null && leapfrogged == null) {
       if (answer != null) {
         pf.filter = answer.getTopFilter();
       }
     } else {
-      notCached.sort(sortByCost); // pointless?
       final BooleanQuery.Builder builder = new BooleanQuery.Builder();
       if (answer != null) {
         builder.add(answer.getTopFilter(), Occur.FILTER);
       }
-      for (ExtendedQuery eq : notCached) {
-        Query q = eq.getCostAppliedQuery();
-        builder.add(q, Occur.FILTER);
+      // leap-frogged filters keep the planner's order by estimated hits, so they are added as is
+      if (leapfrogged != null) {
+        for (ExtendedQuery eq : leapfrogged) {
+          builder.add(eq.getCostAppliedQuery(), Occur.FILTER);
+        }
+      }
+      if (notCached != null) {
+        notCached.sort(sortByCost); // pointless?
+        for (ExtendedQuery eq : notCached) {
+          Query q = eq.getCostAppliedQuery();
+          builder.add(q, Occur.FILTER);
+        }
       }
       pf.filter = builder.build();
     }
@@ -1055,6 +1100,41 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return pf;
   }
 
+  /**
+   * Computes and caches the set of a filter that the {@link AdaptiveFilterPlanner} decided to cache, so that
+   * concurrent requests that all decide to cache it compute it only once.
+   */
+  private DocSet computePlannedFilter(Query posQuery) throws IOException {
+    if (COMPUTING_PLANNED_FILTER.get()) {
+      // the filterCache doesn't allow nested computations (e.g. a join filter on this core); fall back to get/put
+      DocSet set = getDocSetNC(posQuery, null);
+      filterCache.put(posQuery, set);
+      return set;
+    }
+    AtomicReference<IOException> exceptionRef = new AtomicReference<>();
+    COMPUTING_PLANNED_FILTER.set(Boolean.TRUE);
+    DocSet set;
+    try {
+      set = filterCache.computeIfAbsent(posQuery, k -> {
+        try {
+          long start = System.nanoTime();
+          DocSet computed = getDocSetNC(k, null);
+          filterPlanner.recordComputation(k, computed, System.nanoTime() - start);
+          return computed;
+        } catch (IOException e) {
+          exceptionRef.set(e);
+          return null;
+        }
+      });
+    } finally {
+      COMPUTING_PLANNED_FILTER.set(Boolean.FALSE);
+    }
+    if (exceptionRef.get() != null) {
+      throw exceptionRef.get();
+    }
+    return set;
+  }
+
   /** @lucene.internal */
   public DocSet getDocSet(DocsEnumState deState) throws IOException {
     int largestPossible = deState.termsEnum.docFreq();
@@ -1991,7 +2071,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
 
     // bit of a hack to tell if a set is sorted - do it better in the future.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet || set instanceof OffHeapBitDocSet;
 
     TopDocsCollector<? extends ScoreDoc> topCollector = buildTopDocsCollector(nDocs, cmd);
 
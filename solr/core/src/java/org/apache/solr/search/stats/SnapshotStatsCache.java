@@ -0,0 +1,551 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.stats;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.client.solrj.SolrResponse;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This implementation keeps a compact snapshot of global term statistics, together with the collection
+ * statistics of the tokenized fields, and uses it to score queries without the additional
+ * {@link ShardRequest#PURPOSE_GET_TERM_STATS} round-trip.
+ * <p>The snapshot covers two kinds of terms: the top {@link #DEFAULT_SNAPSHOT_TERMS} terms by document
+ * frequency in each tokenized field, and up to {@link #DEFAULT_QUERY_TERMS} terms that queries actually
+ * used. The shards build their top-N tables in the background, the first time they are asked for them;
+ * the statistics of the query terms are looked up exactly on every shard.</p>
+ * <p>The snapshot is built by piggy-backing on a regular {@link ExactStatsCache} stats request: when there
+ * is no snapshot, when it's older than {@link #DEFAULT_MAX_AGE_SEC} seconds, or when queries used terms it
+ * doesn't cover and it's older than a tenth of that, one request asks the shards to also return their
+ * tables and the statistics of these query terms, which are summed into the global snapshot. Top-N terms
+ * are only kept if they're in the table of every shard, since the sum of the other ones would miss the
+ * shards where they didn't make the top-N. Concurrent requests keep using the current snapshot while it's
+ * refreshed. Both the shard-side tables and the global snapshot have the same life-cycle as the
+ * SolrIndexSearcher, so they are rebuilt after each commit.</p>
+ * <p>By default, terms that are not in the snapshot yet are scored with the local term statistics scaled
+ * by the ratio of the global and local <code>maxDoc</code>, which is a good approximation when documents
+ * are distributed randomly across shards. With <code>exactFallback="true"</code>, queries containing such
+ * terms retrieve the exact per-request statistics instead.</p>
+ */
+public class SnapshotStatsCache extends ExactStatsCache {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Request parameter that asks the shards to return their local snapshot tables.
+   */
+  public static final String SNAPSHOT_KEY = "solr.stats.snapshot";
+  /**
+   * Request parameter with the query terms whose stats the shards should add to their tables.
+   */
+  public static final String SNAPSHOT_QUERY_TERMS_KEY = "solr.stats.snapshotQueryTerms";
+  /**
+   * Top-N and query term stats of a shard.
+   */
+  public static final String SNAPSHOT_TERM_STATS_KEY = "solr.stats.snapshotTerm";
+  /**
+   * Collection stats of the snapshot fields of a shard.
+   */
+  public static final String SNAPSHOT_COL_STATS_KEY = "solr.stats.snapshotCol";
+
+  public static final String SNAPSHOT_TERMS_PARAM = "snapshotTerms";
+  public static final String QUERY_TERMS_PARAM = "queryTerms";
+  public static final String MAX_AGE_PARAM = "maxAgeSec";
+  public static final String FIELDS_PARAM = "fields";
+  public static final String EXACT_FALLBACK_PARAM = "exactFallback";
+
+  public static final int DEFAULT_SNAPSHOT_TERMS = 1000;
+  public static final int DEFAULT_QUERY_TERMS = 1000;
+  public static final int DEFAULT_MAX_AGE_SEC = 300;
+
+  // a refresh that didn't complete within this time is considered lost
+  private static final long REFRESH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  private static final String CURRENT_SNAPSHOT_COL_STATS = "solr.stats.snapshotGlobalCol";
+  private static final String CURRENT_SNAPSHOT_TERM_STATS = "solr.stats.snapshotGlobalTerm";
+
+  private int snapshotTerms = DEFAULT_SNAPSHOT_TERMS;
+  private int maxQueryTerms = DEFAULT_QUERY_TERMS;
+  private long maxAgeNanos = TimeUnit.SECONDS.toNanos(DEFAULT_MAX_AGE_SEC);
+  private Set<String> snapshotFields = Collections.emptySet();
+  private boolean exactFallback = false;
+
+  // global snapshot, aggregated from the shard tables
+  private volatile Snapshot globalSnapshot;
+  // query terms that the global snapshot doesn't cover yet
+  private final Set<Term> pendingQueryTerms = ConcurrentHashMap.newKeySet();
+  // start time of the refresh in progress, if any
+  private final AtomicReference<Long> refreshStarted = new AtomicReference<>();
+
+  // top-N table of the local shard, built in the background
+  private volatile Snapshot localSnapshot;
+  private final AtomicBoolean localSnapshotStarted = new AtomicBoolean();
+
+  @Override
+  public void init(PluginInfo info) {
+    super.init(info);
+    if (info == null || info.attributes == null) {
+      return;
+    }
+    Map<String,String> args = info.attributes;
+    if (args.get(SNAPSHOT_TERMS_PARAM) != null) {
+      snapshotTerms = Integer.parseInt(args.get(SNAPSHOT_TERMS_PARAM));
+    }
+    if (args.get(QUERY_TERMS_PARAM) != null) {
+      maxQueryTerms = Integer.parseInt(args.get(QUERY_TERMS_PARAM));
+    }
+    if (args.get(MAX_AGE_PARAM) != null) {
+      maxAgeNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(args.get(MAX_AGE_PARAM)));
+    }
+    if (args.get(FIELDS_PARAM) != null) {
+      snapshotFields = new LinkedHashSet<>(StrUtils.splitSmart(args.get(FIELDS_PARAM), ','));
+    }
+    if (args.get(EXACT_FALLBACK_PARAM) != null) {
+      exactFallback = Boolean.parseBoolean(args.get(EXACT_FALLBACK_PARAM));
+    }
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    globalSnapshot = null;
+    pendingQueryTerms.clear();
+    localSnapshot = null;
+    localSnapshotStarted.set(false);
+    refreshStarted.set(null);
+  }
+
+  @Override
+  protected StatsSource doGet(SolrQueryRequest req) {
+    @SuppressWarnings({"unchecked"})
+    Map<String,CollectionStats> currentGlobalColStats = (Map<String,CollectionStats>) req.getContext().getOrDefault(CURRENT_SNAPSHOT_COL_STATS, Collections.emptyMap());
+    @SuppressWarnings({"unchecked"})
+    Map<String,TermStats> currentGlobalTermStats = (Map<String,TermStats>) req.getContext().getOrDefault(CURRENT_SNAPSHOT_TERM_STATS, Collections.emptyMap());
+    return new SnapshotStatsSource(statsCacheMetrics, currentGlobalTermStats, currentGlobalColStats);
+  }
+
+  @Override
+  protected ShardRequest doRetrieveStatsRequest(ResponseBuilder rb) {
+    Snapshot snapshot = globalSnapshot;
+    boolean covered = true;
+    for (Term t : queryTerms(rb.getQuery())) {
+      if (snapshot == null || !snapshot.contains(t)) {
+        covered = false;
+        if (pendingQueryTerms.size() < maxQueryTerms) {
+          pendingQueryTerms.add(t);
+        }
+      }
+    }
+    boolean refresh = (snapshot == null || needsRefresh(snapshot)) && startRefresh();
+    if (!refresh && snapshot != null && (covered || !exactFallback)) {
+      // since we already incremented the stats decrement it here
+      statsCacheMetrics.retrieveStats.decrement();
+      statsCacheMetrics.useCachedGlobalStats.increment();
+      return null;
+    }
+    ShardRequest sreq = super.doRetrieveStatsRequest(rb);
+    if (refresh) {
+      // the pending terms first, then the ones the current snapshot was asked for
+      Set<Term> requested = new LinkedHashSet<>(pendingQueryTerms);
+      if (snapshot != null) {
+        requested.addAll(snapshot.queryTerms);
+      }
+      requested = requested.stream().limit(maxQueryTerms).collect(Collectors.toCollection(LinkedHashSet::new));
+      sreq.params.set(SNAPSHOT_KEY, true);
+      if (!requested.isEmpty()) {
+        sreq.params.set(SNAPSHOT_QUERY_TERMS_KEY, StatsUtil.termsToEncodedString(requested));
+      }
+      rb.req.getContext().put(SNAPSHOT_KEY, requested);
+    }
+    return sreq;
+  }
+
+  private boolean needsRefresh(Snapshot snapshot) {
+    long age = snapshot.age();
+    return age > maxAgeNanos || (!pendingQueryTerms.isEmpty() && age > maxAgeNanos / 10);
+  }
+
+  private boolean startRefresh() {
+    long now = System.nanoTime();
+    Long started = refreshStarted.get();
+    if (started != null && now - started < REFRESH_TIMEOUT_NANOS) {
+      // another request is already refreshing the snapshot
+      return false;
+    }
+    return refreshStarted.compareAndSet(started, now);
+  }
+
+  @Override
+  protected void doReturnLocalStats(ResponseBuilder rb, SolrIndexSearcher searcher) {
+    super.doReturnLocalStats(rb, searcher);
+    if (!rb.req.getParams().getBool(SNAPSHOT_KEY, false)) {
+      return;
+    }
+    Map<String,TermStats> termStats = new HashMap<>();
+    Map<String,CollectionStats> colStats = new HashMap<>();
+    try {
+      Snapshot top = getLocalSnapshot(searcher);
+      if (top != null) {
+        termStats.putAll(top.termStats);
+        colStats.putAll(top.colStats);
+      } else {
+        // the table isn't built yet, the collection stats are still needed to score with the query terms
+        addColStats(searcher, getSnapshotFields(searcher), colStats);
+      }
+      // unlike the top-N, every shard reports these, even when the term doesn't exist there
+      Set<Term> queryTerms = StatsUtil.termsFromEncodedString(rb.req.getParams().get(SNAPSHOT_QUERY_TERMS_KEY));
+      DirectoryReader reader = searcher.getIndexReader();
+      for (Term t : queryTerms) {
+        termStats.put(t.toString(), new TermStats(t.toString(), reader.docFreq(t), reader.totalTermFreq(t)));
+      }
+      addColStats(searcher, queryTerms.stream().map(Term::field).collect(Collectors.toSet()), colStats);
+    } catch (IOException e) {
+      // not fatal - the exact stats for this request were already collected
+      log.warn("Error collecting local stats snapshot", e);
+      return;
+    }
+    if (!termStats.isEmpty()) {
+      rb.rsp.add(SNAPSHOT_TERM_STATS_KEY, StatsUtil.termStatsMapToString(termStats));
+    }
+    // always present, so that the coordinator knows this shard took part in the snapshot
+    rb.rsp.add(SNAPSHOT_COL_STATS_KEY, StatsUtil.colStatsMapToString(colStats));
+  }
+
+  private static void addColStats(SolrIndexSearcher searcher, Set<String> fields, Map<String,CollectionStats> colStats)
+      throws IOException {
+    for (String field : fields) {
+      if (!colStats.containsKey(field)) {
+        CollectionStatistics cs = searcher.localCollectionStatistics(field);
+        if (cs != null) {
+          colStats.put(field, new CollectionStats(cs));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the top-N table of the local shard, or null if it isn't built yet, in which case the
+   * build is started in the background so that this request doesn't wait for the terms to be scanned.
+   */
+  private Snapshot getLocalSnapshot(SolrIndexSearcher searcher) {
+    Snapshot snapshot = localSnapshot;
+    if (snapshot == null && localSnapshotStarted.compareAndSet(false, true)) {
+      searcher.getCore().runAsync(() -> {
+        DirectoryReader reader = searcher.getIndexReader();
+        if (!reader.tryIncRef()) {
+          // the searcher was closed in the meantime
+          return;
+        }
+        try {
+          localSnapshot = buildLocalSnapshot(searcher);
+        } catch (IOException e) {
+          log.warn("Error building local stats snapshot", e);
+          localSnapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet());
+        } finally {
+          try {
+            reader.decRef();
+          } catch (IOException e) {
+            log.warn("Error releasing the reader of the local stats snapshot", e);
+          }
+        }
+      });
+    }
+    return snapshot;
+  }
+
+  private Snapshot buildLocalSnapshot(SolrIndexSearcher searcher) throws IOException {
+    Map<String,TermStats> termStats = new HashMap<>();
+    Map<String,CollectionStats> colStats = new HashMap<>();
+    for (String field : getSnapshotFields(searcher)) {
+      Terms terms = searcher.getSlowAtomicReader().terms(field);
+      CollectionStatistics cs = searcher.localCollectionStatistics(field);
+      if (terms == null || cs == null) {
+        continue;
+      }
+      colStats.put(field, new CollectionStats(cs));
+      // min-heap of the terms with the highest docFreq seen so far
+      PriorityQueue<TermStats> top = new PriorityQueue<>(snapshotTerms + 1, Comparator.comparingLong(ts -> ts.docFreq));
+      TermsEnum te = terms.iterator();
+      for (BytesRef term = te.next(); term != null; term = te.next()) {
+        int docFreq = te.docFreq();
+        if (top.size() >= snapshotTerms && docFreq <= top.peek().docFreq) {
+          continue;
+        }
+        top.add(new TermStats(field, new TermStatistics(BytesRef.deepCopyOf(term), docFreq, te.totalTermFreq())));
+        if (top.size() > snapshotTerms) {
+          top.poll();
+        }
+      }
+      for (TermStats ts : top) {
+        termStats.put(ts.term, ts);
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Built local stats snapshot, fields={}, terms={}", colStats.keySet(), termStats.size());
+    }
+    return new Snapshot(termStats, colStats, Collections.emptySet());
+  }
+
+  private Set<String> getSnapshotFields(SolrIndexSearcher searcher) {
+    if (!snapshotFields.isEmpty()) {
+      return snapshotFields;
+    }
+    // by default all indexed and tokenized fields, including the dynamic ones
+    IndexSchema schema = searcher.getSchema();
+    Set<String> fields = new LinkedHashSet<>();
+    for (FieldInfo fi : searcher.getFieldInfos()) {
+      if (fi.getIndexOptions() == IndexOptions.NONE) {
+        continue;
+      }
+      SchemaField sf = schema.getFieldOrNull(fi.name);
+      if (sf != null && sf.indexed() && sf.getType().isTokenized()) {
+        fields.add(fi.name);
+      }
+    }
+    return fields;
+  }
+
+  @Override
+  protected void doMergeToGlobalStats(SolrQueryRequest req, List<ShardResponse> responses) {
+    super.doMergeToGlobalStats(req, responses);
+    @SuppressWarnings({"unchecked"})
+    Set<Term> requested = (Set<Term>) req.getContext().get(SNAPSHOT_KEY);
+    if (requested == null) {
+      return;
+    }
+    try {
+      Map<String,TermStats> termStats = new HashMap<>();
+      Map<String,CollectionStats> colStats = new HashMap<>();
+      // number of shards whose table contains each term
+      Map<String,Integer> reportedBy = new HashMap<>();
+      Set<String> shards = new HashSet<>();
+      for (ShardResponse r : responses) {
+        SolrResponse res = r.getSolrResponse();
+        if (r.getException() != null || res == null || res.getException() != null) {
+          // the statistics of the other shards alone would under-count every term
+          log.debug("Not updating the global stats snapshot, shard {} failed", r.getShard());
+          return;
+        }
+        NamedList<Object> nl = res.getResponse();
+        String shard = nl.get(ShardParams.SHARD_NAME) != null ? (String) nl.get(ShardParams.SHARD_NAME) : r.getShard();
+        Map<String,CollectionStats> shardColStats = StatsUtil.colStatsMapFromString((String) nl.get(SNAPSHOT_COL_STATS_KEY));
+        if (shardColStats == null && nl.get(SNAPSHOT_COL_STATS_KEY) == null) {
+          log.debug("Not updating the global stats snapshot, shard {} didn't return its table", shard);
+          return;
+        }
+        // replicas of the same shard may both respond when a shard is requested more than once
+        if (!shards.add(shard)) {
+          continue;
+        }
+        if (shardColStats != null) {
+          for (Map.Entry<String,CollectionStats> e : shardColStats.entrySet()) {
+            colStats.computeIfAbsent(e.getKey(), f -> new CollectionStats(f)).add(e.getValue());
+          }
+        }
+        Map<String,TermStats> shardTermStats = StatsUtil.termStatsMapFromString((String) nl.get(SNAPSHOT_TERM_STATS_KEY));
+        if (shardTermStats != null) {
+          for (Map.Entry<String,TermStats> e : shardTermStats.entrySet()) {
+            termStats.computeIfAbsent(e.getKey(), t -> new TermStats(t)).add(e.getValue());
+            reportedBy.merge(e.getKey(), 1, Integer::sum);
+          }
+        }
+      }
+      // a term missing from the table of some shard has an unknown docFreq there, so its sum isn't exact
+      termStats.keySet().removeIf(t -> reportedBy.get(t) < shards.size());
+      // query terms that don't exist anywhere are covered, but have no stats to send
+      termStats.values().removeIf(ts -> ts.docFreq == 0);
+      if (!colStats.isEmpty()) {
+        globalSnapshot = new Snapshot(termStats, colStats, requested);
+        pendingQueryTerms.removeAll(requested);
+        if (log.isDebugEnabled()) {
+          log.debug("Updated global stats snapshot, shards={}, fields={}, terms={}", shards, colStats.keySet(), termStats.size());
+        }
+      }
+    } finally {
+      refreshStarted.set(null);
+    }
+  }
+
+  @Override
+  protected void doSendGlobalStats(ResponseBuilder rb, ShardRequest outgoing) {
+    if (rb.req.getContext().get(TERMS_KEY) != null) {
+      // exact stats were retrieved for this request
+      super.doSendGlobalStats(rb, outgoing);
+      return;
+    }
+    Snapshot snapshot = globalSnapshot;
+    if (snapshot == null) {
+      return;
+    }
+    Map<String,TermStats> termStats = new HashMap<>();
+    Map<String,CollectionStats> colStats = new HashMap<>();
+    for (Term t : queryTerms(rb.getQuery())) {
+      TermStats ts = snapshot.termStats.get(t.toString());
+      if (ts != null) {
+        termStats.put(ts.term, ts);
+      }
+      CollectionStats cs = snapshot.colStats.get(t.field());
+      if (cs != null) {
+        colStats.put(t.field(), cs);
+      }
+    }
+    ModifiableSolrParams params = outgoing.params;
+    if (!colStats.isEmpty()) {
+      params.add(COL_STATS_KEY, StatsUtil.colStatsMapToString(colStats));
+    }
+    if (!termStats.isEmpty()) {
+      params.add(TERM_STATS_KEY, StatsUtil.termStatsMapToString(termStats));
+    }
+    log.debug("terms={}, snapshot termStats={}", termStats.keySet(), termStats);
+  }
+
+  private static Set<Term> queryTerms(Query q) {
+    Set<Term> terms = new HashSet<>();
+    if (q != null) {
+      q.visit(QueryVisitor.termCollector(terms));
+    }
+    return terms;
+  }
+
+  @Override
+  protected void addToGlobalColStats(SolrQueryRequest req, Map.Entry<String,CollectionStats> e) {
+    @SuppressWarnings({"unchecked"})
+    Map<String,CollectionStats> currentGlobalColStats = (Map<String,CollectionStats>) req.getContext().computeIfAbsent(CURRENT_SNAPSHOT_COL_STATS, o -> new HashMap<>());
+    currentGlobalColStats.put(e.getKey(), e.getValue());
+  }
+
+  @Override
+  protected void addToGlobalTermStats(SolrQueryRequest req, Map.Entry<String,TermStats> e) {
+    @SuppressWarnings({"unchecked"})
+    Map<String,TermStats> currentGlobalTermStats = (Map<String,TermStats>) req.getContext().computeIfAbsent(CURRENT_SNAPSHOT_TERM_STATS, o -> new HashMap<>());
+    currentGlobalTermStats.put(e.getKey(), e.getValue());
+  }
+
+  private static class Snapshot {
+    final Map<String,TermStats> termStats;
+    final Map<String,CollectionStats> colStats;
+    // query terms whose stats were requested from every shard, including those that don't exist
+    final Set<Term> queryTerms;
+    final long createdNanos = System.nanoTime();
+
+    Snapshot(Map<String,TermStats> termStats, Map<String,CollectionStats> colStats, Set<Term> queryTerms) {
+      this.termStats = termStats;
+      this.colStats = colStats;
+      this.queryTerms = queryTerms;
+    }
+
+    long age() {
+      return System.nanoTime() - createdNanos;
+    }
+
+    boolean contains(Term t) {
+      return termStats.containsKey(t.toString()) || queryTerms.contains(t);
+    }
+  }
+
+  /**
+   * Uses the global stats sent with the request and approximates the missing term stats
+   * by scaling the local ones to the size of the collection.
+   */
+  protected static class SnapshotStatsSource extends StatsSource {
+    private final Map<String,TermStats> termStatsCache;
+    private final Map<String,CollectionStats> colStatsCache;
+    private final StatsCacheMetrics metrics;
+
+    public SnapshotStatsSource(StatsCacheMetrics metrics, Map<String,TermStats> termStatsCache,
+                               Map<String,CollectionStats> colStatsCache) {
+      this.metrics = metrics;
+      this.termStatsCache = termStatsCache;
+      this.colStatsCache = colStatsCache;
+    }
+
+    @Override
+    public TermStatistics termStatistics(SolrIndexSearcher localSearcher, Term term, int docFreq, long totalTermFreq)
+        throws IOException {
+      TermStats termStats = termStatsCache.get(term.toString());
+      if (termStats != null) {
+        return termStats.toTermStatistics();
+      }
+      metrics.missingGlobalTermStats.increment();
+      if (localSearcher == null) {
+        return null;
+      }
+      TermStatistics local = localSearcher.localTermStatistics(term, docFreq, totalTermFreq);
+      CollectionStats colStats = colStatsCache.get(term.field());
+      long localMaxDoc = localSearcher.maxDoc();
+      if (local == null || colStats == null || localMaxDoc == 0 || colStats.maxDoc <= localMaxDoc) {
+        return local;
+      }
+      double ratio = (double) colStats.maxDoc / localMaxDoc;
+      long scaledDocFreq = Math.max(1, Math.min(colStats.docCount, Math.round(local.docFreq() * ratio)));
+      long scaledTotalTermFreq = Math.max(scaledDocFreq, Math.round(local.totalTermFreq() * ratio));
+      return new TermStatistics(local.term(), scaledDocFreq, scaledTotalTermFreq);
+    }
+
+    @Override
+    public CollectionStatistics collectionStatistics(SolrIndexSearcher localSearcher, String field)
+        throws IOException {
+      CollectionStats colStats = colStatsCache.get(field);
+      if (colStats == null) {
+        log.debug("Missing global colStats info for field={}, using local", field);
+        metrics.missingGlobalFieldStats.increment();
+        return localSearcher != null ? localSearcher.localCollectionStatistics(field) : null;
+      } else {
+        return colStats.toCollectionStatistics();
+      }
+    }
+  }
+}
@@ -62,6 +62,7 @@ import org.apache.http.entity.InputStreamEntity;
 import org.apache.solr.api.ApiBag;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.routing.RoutedAliasCollectionPruner;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.annotation.SolrThreadSafe;
@@ -90,6 +91,7 @@ import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.ContentStreamHandlerBase;
+import org.apache.solr.handler.component.SearchHandler;
 import org.apache.solr.logging.MDCLoggingContext;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
@@ -330,6 +332,9 @@ public class HttpSolrCall {
 
         invalidStates = checkStateVersionsAreValid(solrReq.getParams().get(CloudSolrClient.STATE_VERSION));
 
+        if (handler instanceof SearchHandler) {
+          collectionsList = pruneRoutedAliasCollections(getCollectionsList());
+        }
         addCollectionParamIfNeeded(getCollectionsList());
 
         action = PROCESS;
@@ -405,6 +410,23 @@ public class HttpSolrCall {
     }
   }
 
+  /**
+   * Narrows the collections of a time routed alias being searched down to those whose time span
+   * overlaps the request's range filters on the router field.
+   * @see RoutedAliasCollectionPruner
+   */
+  protected List<String> pruneRoutedAliasCollections(List<String> collections) {
+    if (collections.size() < 2) {
+      return collections;
+    }
+    Aliases aliases = getAliases();
+    String aliasName = solrReq.getParams().get(COLLECTION_PROP, origCorename);
+    if (aliasName == null || !aliases.isRoutedAlias(aliasName)) {
+      return collections;
+    }
+    return RoutedAliasCollectionPruner.prune(aliases, aliasName, collections, solrReq.getParams());
+  }
+
   /**
    * Extract handler from the URL path if not set.
    */
@@ -293,14 +293,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
       }
 
       if ((cmd.getFlags() & UpdateCommand.IGNORE_AUTOCOMMIT) == 0) {
-        long currentTlogSize = getCurrentTLogSize();
-        if (commitWithinSoftCommit) {
-          commitTracker.addedDocument(-1, currentTlogSize);
-          softCommitTracker.addedDocument(cmd.commitWithin);
-        } else {
-          softCommitTracker.addedDocument(-1);
-          commitTracker.addedDocument(cmd.commitWithin, currentTlogSize);
-        }
+        trackAddedDocument(cmd, getCurrentTLogSize());
       }
 
       rc = 1;
@@ -316,6 +309,69 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     return rc;
   }
 
+  private void trackAddedDocument(AddUpdateCommand cmd, long currentTlogSize) {
+    if (commitWithinSoftCommit) {
+      commitTracker.addedDocument(-1, currentTlogSize);
+      softCommitTracker.addedDocument(cmd.commitWithin);
+    } else {
+      softCommitTracker.addedDocument(-1);
+      commitTracker.addedDocument(cmd.commitWithin, currentTlogSize);
+    }
+  }
+
+  /**
+   * Adds documents that don't replace existing ones (<code>overwrite=false</code>) with a single
+   * {@link IndexWriter#addDocuments} call. Only cores without an update log batch adds; with one,
+   * every add must be logged while the caller holds its version bucket lock, so the documents are
+   * added one at a time, as are batches with commands that may replace or update documents in
+   * place. If the batch can't be indexed, nothing of it is, and it is retried one document at a
+   * time so that the failing document is reported.
+   */
+  @Override
+  public int addDocs(List<AddUpdateCommand> cmds) throws IOException {
+    if (ulog != null || cmds.size() < 2 || !canAddAsBatch(cmds)) {
+      return super.addDocs(cmds);
+    }
+    TestInjection.injectDirectUpdateLatch();
+
+    RefCounted<IndexWriter> iw = solrCoreState.getIndexWriter(core);
+    try {
+      List<Document> docs = new ArrayList<>(cmds.size());
+      for (AddUpdateCommand cmd : cmds) {
+        for (Document doc : cmd.makeLuceneDocs()) {
+          docs.add(doc);
+        }
+      }
+      iw.get().addDocuments(docs);
+    } catch (RuntimeException e) {
+      log.debug("Adding batch of {} documents failed, adding them one at a time", cmds.size(), e);
+      return super.addDocs(cmds);
+    } finally {
+      iw.decref();
+    }
+
+    addCommands.add(cmds.size());
+    addCommandsCumulative.mark(cmds.size());
+    numDocsPending.add(cmds.size());
+    long currentTlogSize = getCurrentTLogSize();
+    for (AddUpdateCommand cmd : cmds) {
+      if ((cmd.getFlags() & UpdateCommand.IGNORE_AUTOCOMMIT) == 0) {
+        trackAddedDocument(cmd, currentTlogSize);
+      }
+    }
+    return cmds.size();
+  }
+
+  private boolean canAddAsBatch(List<AddUpdateCommand> cmds) {
+    for (AddUpdateCommand cmd : cmds) {
+      if ((idField != null && cmd.overwrite) || cmd.updateTerm != null || cmd.isInPlaceUpdate()
+          || (cmd.getFlags() & UpdateCommand.IGNORE_INDEXWRITER) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void allowDuplicateUpdate(AddUpdateCommand cmd) throws IOException {
     RefCounted<IndexWriter> iw = solrCoreState.getIndexWriter(core);
     try {
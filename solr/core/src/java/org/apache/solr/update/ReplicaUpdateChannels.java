@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.update.SolrCmdDistributor.Error;
+import org.apache.solr.update.SolrCmdDistributor.ForwardNode;
+import org.apache.solr.update.SolrCmdDistributor.Req;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived update channels from a shard leader to its replicas, shared by all the
+ * {@link SolrCmdDistributor}s of a node.
+ * <p>
+ * Instead of every leader request streaming its updates to a replica on a request of its own, the
+ * adds and deletes by id of all concurrent leader requests are queued on one channel per replica
+ * core and sent in batches, as separate streams over the node's HTTP/2 connection to the replica.
+ * Updates are only batched together when they have the same parameters and user principal, so
+ * the replica processes them just like the individual requests.  Several batches to the same replica
+ * may be in flight at once, but never two of the same leader request, so the updates of each leader
+ * request reach the replica in the order they were submitted.
+ * Each update is acknowledged to the {@link Acks} of the leader request that submitted it.
+ * <p>
+ * Enabled with the <code>solr.cloud.replication.sharedChannels</code> system property.
+ */
+public class ReplicaUpdateChannels implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String ENABLED_PROP = "solr.cloud.replication.sharedChannels";
+
+  private final Http2SolrClient httpClient;
+  private final ExecutorService executor;
+  // concurrent requests per replica; a leader request only ever has one of them in flight
+  private final int maxSenders = Integer.getInteger("solr.cloud.replication.sharedChannels.senders", 4);
+  private final int maxBatchSize = Integer.getInteger("solr.cloud.replication.sharedChannels.maxBatchSize", 1000);
+
+  private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+  private final LongAdder batchesSent = new LongAdder();
+  private final LongAdder updatesSent = new LongAdder();
+  private volatile boolean closed;
+
+  public ReplicaUpdateChannels(Http2SolrClient httpClient, ExecutorService executor) {
+    this.httpClient = httpClient;
+    this.executor = executor;
+  }
+
+  /**
+   * @return true if the request can be sent on a shared channel: an asynchronous add or
+   * delete by id from a leader to one of its replicas
+   */
+  static boolean accepts(Req req) {
+    if (req.synchronous || req.node instanceof ForwardNode) {
+      return false;
+    }
+    final UpdateRequest uReq = req.uReq;
+    final boolean hasDocs = uReq.getDocumentsMap() != null && !uReq.getDocumentsMap().isEmpty();
+    final boolean hasDeletes = uReq.getDeleteByIdMap() != null && !uReq.getDeleteByIdMap().isEmpty();
+    return hasDocs != hasDeletes
+        && (uReq.getDeleteQuery() == null || uReq.getDeleteQuery().isEmpty())
+        && uReq.getAction() == null
+        && uReq.getDocIterator() == null;
+  }
+
+  /**
+   * Queues the request on the channel to its node.  The outcome is reported to <code>acks</code>.
+   *
+   * @return false if the channels have been closed and the request must be sent another way
+   */
+  boolean submit(Req req, Acks acks) {
+    if (closed) {
+      return false;
+    }
+    final String url = StreamingSolrClients.getFullUrl(req.node.getUrl());
+    final Entry entry = new Entry(req, acks);
+    acks.add(entry);
+    channels.computeIfAbsent(url, Channel::new).submit(entry);
+    return true;
+  }
+
+  /** Number of requests sent to replicas by all channels. */
+  public long getBatchesSent() {
+    return batchesSent.sum();
+  }
+
+  /** Number of updates (leader requests) sent to replicas by all channels. */
+  public long getUpdatesSent() {
+    return updatesSent.sum();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (Channel channel : channels.values()) {
+      channel.failAll(new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "Replica update channels are closed"));
+    }
+    channels.clear();
+  }
+
+  /**
+   * Tracks the outstanding updates, and the errors, of one {@link SolrCmdDistributor}.
+   */
+  static class Acks {
+    private final Set<Entry> pending = new HashSet<>();
+    private final List<Error> errors = new ArrayList<>();
+
+    private synchronized void add(Entry entry) {
+      pending.add(entry);
+    }
+
+    private synchronized void success(Entry entry, NamedList<Object> rsp) {
+      if (pending.remove(entry)) {
+        entry.req.trackRequestResult(rsp, true);
+        signalIfDone();
+      }
+    }
+
+    private synchronized void failure(Entry entry, Exception e) {
+      if (pending.remove(entry)) {
+        errors.add(toError(entry.req, e));
+        signalIfDone();
+      }
+    }
+
+    private void signalIfDone() {
+      if (pending.isEmpty()) {
+        notifyAll();
+      }
+    }
+
+    private static Error toError(Req req, Exception e) {
+      final Error error = new Error();
+      error.e = e;
+      if (e instanceof SolrException) {
+        error.statusCode = ((SolrException) e).code();
+      }
+      error.req = req;
+      if (!req.shouldRetry(error)) {
+        // only track the error if we are not retrying the request
+        req.trackRequestResult(null, false);
+      }
+      return error;
+    }
+
+    /**
+     * Blocks until all updates submitted so far have been acknowledged.  If interrupted, the updates
+     * that are still outstanding are reported as failed, since they may never reach their replica.
+     */
+    synchronized void await() {
+      try {
+        while (!pending.isEmpty()) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Interrupted while waiting for {} replica updates to be acknowledged", pending.size(), e);
+        final SolrException failure = new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+            "Interrupted while waiting for the replica to acknowledge the update", e);
+        for (Entry entry : pending) {
+          errors.add(toError(entry.req, failure));
+        }
+        pending.clear();
+      }
+    }
+
+    /** Returns, and forgets, the errors reported so far. */
+    synchronized List<Error> takeErrors() {
+      final List<Error> taken = new ArrayList<>(errors);
+      errors.clear();
+      return taken;
+    }
+  }
+
+  private static class Entry {
+    final Req req;
+    final Acks acks;
+    final String batchKey;
+
+    Entry(Req req, Acks acks) {
+      this.req = req;
+      this.acks = acks;
+      // only updates of the same kind, commitWithin, user and parameters can share a request
+      final UpdateRequest uReq = req.uReq;
+      final Principal principal = uReq.getUserPrincipal();
+      this.batchKey = (uReq.getDocumentsMap() != null ? "add" : "delete")
+          + '|' + uReq.getCommitWithin()
+          + '|' + (principal == null ? "" : principal.getName())
+          + '|' + (uReq.getParams() == null ? "" : uReq.getParams().toQueryString());
+    }
+  }
+
+  private class Channel {
+    private final String url;
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    // leader requests with a batch in flight; their other updates wait for it, to stay in order
+    private final Set<Acks> sending = new HashSet<>();
+    private int senders;
+
+    Channel(String url) {
+      this.url = url;
+    }
+
+    void submit(Entry entry) {
+      synchronized (this) {
+        queue.add(entry);
+        if (senders >= maxSenders) {
+          return;
+        }
+        senders++;
+      }
+      try {
+        executor.execute(this::send);
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          senders--;
+        }
+        failAll(e);
+      }
+    }
+
+    private void send() {
+      List<Entry> batch = null;
+      while ((batch = nextBatch(batch)) != null) {
+        sendBatch(batch);
+      }
+    }
+
+    /**
+     * Releases the leader requests of the previous batch, and takes the next entries that can share a
+     * request, skipping leader requests with a batch in flight.  Returns null if there are none.
+     */
+    private synchronized List<Entry> nextBatch(List<Entry> previous) {
+      if (previous != null) {
+        for (Entry entry : previous) {
+          sending.remove(entry.acks);
+        }
+      }
+      final List<Entry> batch = new ArrayList<>();
+      final Set<Acks> blocked = new HashSet<>(sending);
+      String batchKey = null;
+      for (Iterator<Entry> it = queue.iterator(); it.hasNext() && batch.size() < maxBatchSize; ) {
+        final Entry entry = it.next();
+        if (blocked.contains(entry.acks)) {
+          continue;
+        }
+        if (batchKey == null) {
+          batchKey = entry.batchKey;
+        } else if (!batchKey.equals(entry.batchKey)) {
+          // the later updates of this leader request must not overtake this one
+          blocked.add(entry.acks);
+          continue;
+        }
+        batch.add(entry);
+        it.remove();
+      }
+      if (batch.isEmpty()) {
+        senders--;
+        return null;
+      }
+      for (Entry entry : batch) {
+        sending.add(entry.acks);
+      }
+      return batch;
+    }
+
+    private void sendBatch(List<Entry> batch) {
+      final UpdateRequest first = batch.get(0).req.uReq;
+      final UpdateRequest uReq = new UpdateRequest();
+      uReq.setParams(first.getParams() == null ? null : new ModifiableSolrParams(first.getParams()));
+      uReq.setCommitWithin(first.getCommitWithin());
+      uReq.setUserPrincipal(first.getUserPrincipal());
+      if (first.getHeaders() != null) {
+        first.getHeaders().forEach(uReq::addHeader);
+      }
+      uReq.setBasePath(url);
+      for (Entry entry : batch) {
+        final UpdateRequest update = entry.req.uReq;
+        if (update.getDocumentsMap() != null) {
+          for (Map.Entry<SolrInputDocument, Map<String, Object>> doc : update.getDocumentsMap().entrySet()) {
+            final Map<String, Object> docParams = doc.getValue();
+            uReq.add(doc.getKey(),
+                docParams == null ? null : (Integer) docParams.get(UpdateRequest.COMMIT_WITHIN),
+                docParams == null ? null : (Boolean) docParams.get(UpdateRequest.OVERWRITE));
+          }
+        } else {
+          for (Map.Entry<String, Map<String, Object>> delete : update.getDeleteByIdMap().entrySet()) {
+            final Map<String, Object> deleteParams = delete.getValue();
+            uReq.deleteById(delete.getKey(),
+                deleteParams == null ? null : (String) deleteParams.get(ShardParams._ROUTE_),
+                deleteParams == null ? null : (Long) deleteParams.get(UpdateRequest.VER));
+          }
+        }
+      }
+
+      final NamedList<Object> rsp;
+      try {
+        rsp = httpClient.request(uReq);
+      } catch (Exception e) {
+        final Map<Acks, List<Entry>> byLeaderRequest = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+          byLeaderRequest.computeIfAbsent(entry.acks, k -> new ArrayList<>()).add(entry);
+        }
+        if (e instanceof SolrException && byLeaderRequest.size() > 1) {
+          // the replica rejected an update; resend per leader request so that only its own
+          // updates fail.  Updates the replica already applied are ignored by their version.
+          log.warn("Error when sending {} updates to {}, resending them per leader request", batch.size(), url, e);
+          for (List<Entry> entries : byLeaderRequest.values()) {
+            sendBatch(entries);
+          }
+          return;
+        }
+        log.error("Error when sending {} updates to {}", batch.size(), url, e);
+        for (Entry entry : batch) {
+          entry.acks.failure(entry, e);
+        }
+        return;
+      }
+      batchesSent.increment();
+      updatesSent.add(batch.size());
+      for (Entry entry : batch) {
+        entry.acks.success(entry, rsp);
+      }
+    }
+
+    void failAll(Exception e) {
+      final List<Entry> failed;
+      synchronized (this) {
+        failed = new ArrayList<>(queue);
+        queue.clear();
+      }
+      for (Entry entry : failed) {
+        entry.acks.failure(entry, e);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Channel{url=" + url + '}';
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicaUpdateChannels{channels=" + channels.keySet() + '}';
+  }
+}
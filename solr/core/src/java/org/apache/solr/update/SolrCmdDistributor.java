@@ -64,6 +64,9 @@ public class SolrCmdDistributor implements Closeable {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   
   private StreamingSolrClients clients;
+  private final ReplicaUpdateChannels channels; // null unless shared channels are enabled
+  private final ReplicaUpdateChannels.Acks channelAcks = new ReplicaUpdateChannels.Acks();
+  private boolean streamedDeleteByQuery; // see submit()
   private boolean finished = false; // see finish()
 
   private int retryPause = 500;
@@ -80,12 +83,14 @@ public class SolrCmdDistributor implements Closeable {
   
   public SolrCmdDistributor(UpdateShardHandler updateShardHandler) {
     this.clients = new StreamingSolrClients(updateShardHandler);
+    this.channels = updateShardHandler.getReplicaUpdateChannels();
     this.completionService = new ExecutorCompletionService<>(updateShardHandler.getUpdateExecutor());
   }
   
   /* For tests only */
   SolrCmdDistributor(StreamingSolrClients clients, int retryPause) {
     this.clients = clients;
+    this.channels = null;
     this.retryPause = retryPause;
     completionService = new ExecutorCompletionService<>(clients.getUpdateExecutor());
   }
@@ -112,6 +117,7 @@ public class SolrCmdDistributor implements Closeable {
     
     List<Error> errors = new ArrayList<>(this.errors);
     errors.addAll(clients.getErrors());
+    errors.addAll(channelAcks.takeErrors());
     List<Error> resubmitList = new ArrayList<>();
     
     if (log.isInfoEnabled() && errors.size() > 0) {
@@ -264,6 +270,7 @@ public class SolrCmdDistributor implements Closeable {
 
   public void blockAndDoRetries() throws IOException {
     clients.blockUntilFinished();
+    channelAcks.await();
     
     // wait for any async commits to complete
     while (pending != null && pending.size() > 0) {
@@ -325,6 +332,21 @@ public class SolrCmdDistributor implements Closeable {
           , req.node.getUrl(), req.retries, req.cmd, req.uReq.getParams());
     }
     
+    if (channels != null && !isCommit && ReplicaUpdateChannels.accepts(req)) {
+      if (streamedDeleteByQuery) {
+        // don't let updates on the shared channels overtake a streamed DBQ
+        clients.blockUntilFinished();
+        streamedDeleteByQuery = false;
+      }
+      if (channels.submit(req, channelAcks)) {
+        return;
+      }
+    }
+
+    if (req.uReq.getDeleteQuery() != null && !req.uReq.getDeleteQuery().isEmpty()) {
+      streamedDeleteByQuery = true;
+    }
+
     if (isCommit) {
       // a commit using ConncurrentUpdateSolrServer is not async,
       // so we make it async to prevent commits from happening
@@ -406,11 +428,17 @@ public class SolrCmdDistributor implements Closeable {
     // In the case of a leaderTracker and rollupTracker both being present, then we need to take care when assembling
     // the final response to check both the rollup and leader trackers on the aggregator node.
     public void trackRequestResult(org.eclipse.jetty.client.api.Response resp, InputStream respBody, boolean success) {
+      trackRequestResult(getRfFromResponse(respBody), success);
+    }
+
+    // Same as above, for a response that has already been parsed.
+    void trackRequestResult(NamedList<Object> rsp, boolean success) {
+      trackRequestResult(getRfFromResponse(rsp), success);
+    }
 
+    private void trackRequestResult(int rfFromResp, boolean success) {
       // Returning Integer.MAX_VALUE here means there was no "rf" on the response, therefore we just need to increment
       // our achieved rf if we are a leader, i.e. have a leaderTracker.
-      int rfFromResp = getRfFromResponse(respBody);
-
       if (leaderTracker != null && rfFromResp == Integer.MAX_VALUE) {
         leaderTracker.trackRequestResult(node, success);
       }
@@ -424,22 +452,28 @@ public class SolrCmdDistributor implements Closeable {
       if (inputStream != null) {
         try {
           BinaryResponseParser brp = new BinaryResponseParser();
-          NamedList<Object> nl = brp.processResponse(inputStream, null);
-          Object hdr = nl.get("responseHeader");
-          if (hdr != null && hdr instanceof NamedList) {
-            @SuppressWarnings({"unchecked"})
-            NamedList<Object> hdrList = (NamedList<Object>) hdr;
-            Object rfObj = hdrList.get(UpdateRequest.REPFACT);
-            if (rfObj != null && rfObj instanceof Integer) {
-              return (Integer) rfObj;
-            }
-          }
+          return getRfFromResponse(brp.processResponse(inputStream, null));
         } catch (Exception e) {
           log.warn("Failed to parse response from {} during replication factor accounting", node, e);
         }
       }
       return Integer.MAX_VALUE;
     }
+
+    private int getRfFromResponse(NamedList<Object> nl) {
+      if (nl != null) {
+        Object hdr = nl.get("responseHeader");
+        if (hdr != null && hdr instanceof NamedList) {
+          @SuppressWarnings({"unchecked"})
+          NamedList<Object> hdrList = (NamedList<Object>) hdr;
+          Object rfObj = hdrList.get(UpdateRequest.REPFACT);
+          if (rfObj != null && rfObj instanceof Integer) {
+            return (Integer) rfObj;
+          }
+        }
+      }
+      return Integer.MAX_VALUE;
+    }
   }
 
   public static Diagnostics.Callable testing_errorHook;  // called on error when forwarding request.  Currently data=[this, Request]
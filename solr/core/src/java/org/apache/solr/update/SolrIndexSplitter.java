@@ -31,13 +31,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.CodecReader;
 import org.apache.lucene.index.FilterCodecReader;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.SlowCodecReaderWrapper;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
@@ -60,6 +62,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.StringHelper;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.cloud.CompositeIdRouter;
 import org.apache.solr.common.cloud.DocRouter;
@@ -83,8 +86,17 @@ public class SolrIndexSplitter {
 
   private static final String INDEX_PREFIX = "index.";
 
+  /**
+   * How sub-indexes are created. There is deliberately no mode that hard-links the parent segments and then
+   * drops the other partitions' documents from them: segments can't be truncated in place, so reclaiming their
+   * space always means writing new segments, which is what {@link #REWRITE} does.
+   */
   public enum SplitMethod {
+    /** Adds each parent segment to the sub-index through a reader exposing only the partition's documents,
+     * producing compact sub-indexes. */
     REWRITE,
+    /** Hard-links the parent index files and deletes the other partitions' documents. Fast, but the sub-indexes
+     * are as large as the parent until merges reclaim the deleted documents. */
     LINK;
 
     public static SplitMethod get(String p) {
@@ -221,18 +233,23 @@ public class SolrIndexSplitter {
     // this tracks round-robin assignment of docs to partitions
     AtomicInteger currentPartition = new AtomicInteger();
 
-    if (splitMethod != SplitMethod.LINK) {
-      t = timings.sub("findDocSetsPerLeaf");
-      for (LeafReaderContext readerContext : leaves) {
+    // docsets to delete per segment per partition, used by LINK. Every hard-linked sub-index opens its own
+    // readers over the same segment files, so the cache is keyed by segment identity and not by reader core key.
+    Map<Object, FixedBitSet[]> docsToDeleteCache = new ConcurrentHashMap<>();
+
+    t = timings.sub("findDocSetsPerLeaf");
+    for (LeafReaderContext readerContext : leaves) {
+      if (splitMethod == SplitMethod.LINK) {
+        // scan each parent segment once, all partitions then only apply the precomputed deletions
+        docsToDeleteCache.put(segmentKey(readerContext.reader()),
+            split(readerContext, numPieces, field, rangesArr, splitKey, hashRouter, currentPartition, true));
+      } else {
         assert readerContext.ordInParent == segmentDocSets.size();  // make sure we're going in order
         FixedBitSet[] docSets = split(readerContext, numPieces, field, rangesArr, splitKey, hashRouter, currentPartition, false);
         segmentDocSets.add(docSets);
       }
-      t.stop();
     }
-
-
-    Map<IndexReader.CacheKey, FixedBitSet[]> docsToDeleteCache = new ConcurrentHashMap<>();
+    t.stop();
 
     // would it be more efficient to write segment-at-a-time to each new index?
     // - need to worry about number of open descriptors
@@ -302,8 +319,7 @@ public class SolrIndexSplitter {
         if (splitMethod == SplitMethod.LINK) {
           t = timings.sub("deleteDocuments");
           t.resume();
-          // apply deletions specific to this partition. As a side-effect on the first call this also populates
-          // a cache of docsets to delete per leaf reader per partition, which is reused for subsequent partitions.
+          // apply deletions specific to this partition, using the docsets computed above from the parent segments.
           iw.deleteDocuments(new SplittingQuery(partitionNumber, field, rangesArr, hashRouter, splitKey, docsToDeleteCache, currentPartition));
           t.pause();
         } else {
@@ -445,11 +461,11 @@ public class SolrIndexSplitter {
     private final DocRouter.Range[] rangesArr;
     private final HashBasedRouter hashRouter;
     private final String splitKey;
-    private final Map<IndexReader.CacheKey, FixedBitSet[]> docsToDelete;
+    private final Map<Object, FixedBitSet[]> docsToDelete;
     private final AtomicInteger currentPartition;
 
     SplittingQuery(int partition, SchemaField field, DocRouter.Range[] rangesArr, HashBasedRouter hashRouter, String splitKey,
-                   Map<IndexReader.CacheKey, FixedBitSet[]> docsToDelete, AtomicInteger currentPartition) {
+                   Map<Object, FixedBitSet[]> docsToDelete, AtomicInteger currentPartition) {
       this.partition = partition;
       this.field = field;
       this.rangesArr = rangesArr;
@@ -500,19 +516,20 @@ public class SolrIndexSplitter {
     }
 
     private FixedBitSet findDocsToDelete(LeafReaderContext readerContext) throws IOException {
-      // check whether a cached copy of bitsets already exists for this reader
-      FixedBitSet[] perPartition = docsToDelete.get(readerContext.reader().getCoreCacheHelper().getKey());
+      // check whether a cached copy of bitsets already exists for this segment
+      Object key = segmentKey(readerContext.reader());
+      FixedBitSet[] perPartition = docsToDelete.get(key);
       if (perPartition != null) {
         return perPartition[partition];
       }
       synchronized (docsToDelete) {
-        perPartition = docsToDelete.get(readerContext.reader().getCoreCacheHelper().getKey());
+        perPartition = docsToDelete.get(key);
         if (perPartition != null) {
           return perPartition[partition];
         }
 
         perPartition = split(readerContext, numPieces, field, rangesArr, splitKey, hashRouter, currentPartition, true);
-        docsToDelete.put(readerContext.reader().getCoreCacheHelper().getKey(), perPartition);
+        docsToDelete.put(key, perPartition);
         return perPartition[partition];
       }
     }
@@ -548,6 +565,20 @@ public class SolrIndexSplitter {
     }
   }
 
+  /**
+   * Returns a key that identifies the segment behind the given reader, including its deletions generation.
+   * Readers opened over hard-linked copies of the same segment return equal keys. Readers that don't
+   * expose their segment fall back to the core cache key.
+   */
+  static Object segmentKey(LeafReader reader) {
+    LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+    if (unwrapped instanceof SegmentReader) {
+      SegmentCommitInfo info = ((SegmentReader) unwrapped).getSegmentInfo();
+      return info.info.name + "_" + StringHelper.idToString(info.info.getId()) + "_" + info.getDelGen();
+    }
+    return reader.getCoreCacheHelper().getKey();
+  }
+
   static FixedBitSet[] split(LeafReaderContext readerContext, int numPieces, SchemaField field, DocRouter.Range[] rangesArr,
                              String splitKey, HashBasedRouter hashRouter, AtomicInteger currentPartition, boolean delete) throws IOException {
     LeafReader reader = readerContext.reader();
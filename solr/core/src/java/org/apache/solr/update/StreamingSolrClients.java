@@ -94,7 +94,7 @@ public class StreamingSolrClients {
     }
   }
 
-  private String getFullUrl(String url) {
+  static String getFullUrl(String url) {
     String fullUrl;
     if (!url.startsWith("http://") && !url.startsWith("https://")) {
       fullUrl = "http://" + url;
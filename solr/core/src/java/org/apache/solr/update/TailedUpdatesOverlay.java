@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.OverlayDirectoryReader;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryUtils;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * An in-memory index of the updates a PULL replica tailed from the update log of its leader, which the
+ * searchers of the replica show on top of the last commit fetched from the leader, see
+ * {@link OverlayDirectoryReader}.
+ * <p>
+ * The updates must be applied in the order of their versions.  Added documents replace the documents with
+ * the same id (the same root id if the schema supports nested documents) of the main index, deletes by id
+ * hide them, and deletes by query hide the documents of the main index they match.  Once a commit has been
+ * fetched from the leader, {@link #retainNewerThan(long)} drops the updates it contains, so the overlay
+ * never holds more than the updates of the leader's commit interval.
+ */
+public class TailedUpdatesOverlay implements OverlayDirectoryReader.Source, Closeable {
+
+  private final IndexSchema schema;
+  private final String idField;
+  private final IndexWriter writer;
+
+  // version of the latest add or delete of each id
+  private final Map<BytesRef, Long> versions = new HashMap<>();
+  private final List<DeleteByQuery> deletesByQuery = new ArrayList<>();
+  private long generation;
+  private DirectoryReader reader;
+
+  private static final class DeleteByQuery {
+    final long version;
+    final Query query;
+
+    DeleteByQuery(long version, Query query) {
+      this.version = version;
+      this.query = query;
+    }
+  }
+
+  public TailedUpdatesOverlay(SolrCore core) throws IOException {
+    this.schema = core.getLatestSchema();
+    if (schema.getUniqueKeyField() == null) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Tailed updates require a uniqueKey field");
+    }
+    this.idField = schema.isUsableForChildDocs() ? IndexSchema.ROOT_FIELD_NAME : schema.getUniqueKeyField().getName();
+    final IndexWriterConfig iwc = new IndexWriterConfig(schema.getIndexAnalyzer());
+    iwc.setCodec(core.getCodec());
+    iwc.setSimilarity(schema.getSimilarity());
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    iwc.setCommitOnClose(false);
+    this.writer = new IndexWriter(new ByteBuffersDirectory(), iwc);
+  }
+
+  /**
+   * Adds a whole document, replacing the previous one with the same id.
+   */
+  public synchronized void add(AddUpdateCommand cmd) throws IOException {
+    final BytesRef id = BytesRef.deepCopyOf(cmd.getIndexedId());
+    writer.updateDocuments(new Term(idField, id), cmd.makeLuceneDocs());
+    versions.put(id, Math.abs(cmd.getVersion()));
+    generation++;
+  }
+
+  public synchronized void delete(DeleteUpdateCommand cmd) throws IOException {
+    final BytesRef id = BytesRef.deepCopyOf(cmd.getIndexedId());
+    writer.deleteDocuments(new Term(idField, id));
+    versions.put(id, Math.abs(cmd.getVersion()));
+    generation++;
+  }
+
+  public synchronized void deleteByQuery(DeleteUpdateCommand cmd) throws IOException {
+    final Query query;
+    try {
+      query = new DeleteByQueryWrapper(QueryUtils.makeQueryable(QParser.getParser(cmd.getQuery(), cmd.req).getQuery()), schema);
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
+    writer.deleteDocuments(query);
+    deletesByQuery.add(new DeleteByQuery(Math.abs(cmd.getVersion()), query));
+    generation++;
+  }
+
+  /**
+   * Drops the updates with a version up to the given one, which are part of the index now.
+   */
+  public synchronized void retainNewerThan(long version) throws IOException {
+    boolean changed = deletesByQuery.removeIf(dbq -> dbq.version <= version);
+    for (Iterator<Map.Entry<BytesRef, Long>> it = versions.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<BytesRef, Long> entry = it.next();
+      if (entry.getValue() <= version) {
+        writer.deleteDocuments(new Term(idField, entry.getKey()));
+        it.remove();
+        changed = true;
+      }
+    }
+    if (versions.isEmpty()) {
+      // release the memory of the deleted documents right away
+      writer.deleteAll();
+    }
+    if (changed) {
+      generation++;
+    }
+  }
+
+  /**
+   * Drops all updates, e.g. when some of them have been missed.
+   */
+  public synchronized void clear() throws IOException {
+    if (isEmpty()) {
+      return;
+    }
+    versions.clear();
+    deletesByQuery.clear();
+    writer.deleteAll();
+    generation++;
+  }
+
+  /** Highest version of the updates, 0 if there are none. */
+  public synchronized long getHighestVersion() {
+    long highest = 0;
+    for (long version : versions.values()) {
+      highest = Math.max(highest, version);
+    }
+    for (DeleteByQuery dbq : deletesByQuery) {
+      highest = Math.max(highest, dbq.version);
+    }
+    return highest;
+  }
+
+  private boolean isEmpty() {
+    return versions.isEmpty() && deletesByQuery.isEmpty();
+  }
+
+  @Override
+  public synchronized long getGeneration() {
+    return isEmpty() ? -1 : generation;
+  }
+
+  @Override
+  public synchronized DirectoryReader wrap(DirectoryReader main) throws IOException {
+    if (isEmpty()) {
+      return main;
+    }
+    if (reader == null) {
+      reader = DirectoryReader.open(writer);
+    } else {
+      final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer);
+      if (newReader != null) {
+        reader.decRef();
+        reader = newReader;
+      }
+    }
+    final List<Term> hiddenTerms = new ArrayList<>(versions.size());
+    for (BytesRef id : versions.keySet()) {
+      hiddenTerms.add(new Term(idField, id));
+    }
+    final List<Query> hiddenQueries = new ArrayList<>(deletesByQuery.size());
+    for (DeleteByQuery dbq : deletesByQuery) {
+      hiddenQueries.add(dbq.query);
+    }
+    reader.incRef();
+    boolean success = false;
+    try {
+      final DirectoryReader wrapped = new OverlayDirectoryReader(main, reader, hiddenTerms, hiddenQueries, generation);
+      success = true;
+      return wrapped;
+    } finally {
+      if (!success) {
+        reader.decRef();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      if (reader != null) {
+        reader.decRef();
+        reader = null;
+      }
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -18,8 +18,12 @@ package org.apache.solr.update;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
+import org.apache.solr.cloud.LeaderTlogTailer;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.core.*;
 import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.schema.FieldType;
@@ -111,8 +115,9 @@ public abstract class UpdateHandler implements SolrInfoBean {
     parseEventListeners();
     PluginInfo ulogPluginInfo = core.getSolrConfig().getPluginInfo(UpdateLog.class.getName());
 
-    // If this is a replica of type PULL, don't create the update log
-    boolean skipUpdateLog = core.getCoreDescriptor().getCloudDescriptor() != null && !core.getCoreDescriptor().getCloudDescriptor().requiresTransactionLog();
+    // If this is a replica of type PULL, don't create the update log, unless it tails the leader's
+    boolean skipUpdateLog = core.getCoreDescriptor().getCloudDescriptor() != null && !core.getCoreDescriptor().getCloudDescriptor().requiresTransactionLog()
+        && !LeaderTlogTailer.isEnabled();
     if (updateLog == null && ulogPluginInfo != null && ulogPluginInfo.isEnabled() && !skipUpdateLog) {
       DirectoryFactory dirFactory = core.getDirectoryFactory();
       if (dirFactory instanceof HdfsDirectoryFactory) {
@@ -149,6 +154,69 @@ public abstract class UpdateHandler implements SolrInfoBean {
   public abstract SolrCoreState getSolrCoreState();
 
   public abstract int addDoc(AddUpdateCommand cmd) throws IOException;
+
+  /**
+   * Adds a batch of documents. Every command is attempted even if an earlier one fails; once the whole
+   * batch has been handled, the documents that failed are reported with an {@link AddDocsException}.
+   * The default implementation adds the documents one at a time.
+   *
+   * @return the number of documents added
+   */
+  public int addDocs(List<AddUpdateCommand> cmds) throws IOException {
+    int added = 0;
+    List<AddUpdateCommand> failedCmds = new ArrayList<>();
+    List<Exception> failures = new ArrayList<>();
+    for (AddUpdateCommand cmd : cmds) {
+      try {
+        added += addDoc(cmd);
+      } catch (IOException | RuntimeException e) {
+        failedCmds.add(cmd);
+        failures.add(e);
+      }
+    }
+    if (!failedCmds.isEmpty()) {
+      throw new AddDocsException(failedCmds, failures);
+    }
+    return added;
+  }
+
+  /**
+   * The documents of a batch passed to {@link #addDocs} that could not be added, each with its own error.
+   * The message and code are those of the first failure, naming its document.
+   */
+  public static class AddDocsException extends SolrException {
+    private final List<AddUpdateCommand> failedCmds;
+    private final List<Exception> failures;
+
+    public AddDocsException(List<AddUpdateCommand> failedCmds, List<Exception> failures) {
+      super(failures.get(0) instanceof SolrException ? ErrorCode.getErrorCode(((SolrException) failures.get(0)).code())
+              : ErrorCode.SERVER_ERROR, describe(failedCmds.get(0), failures.get(0))
+              + (failures.size() > 1 ? " (and " + (failures.size() - 1) + " more documents of the batch)" : ""),
+          failures.get(0));
+      this.failedCmds = failedCmds;
+      this.failures = failures;
+      for (int i = 1; i < failures.size(); i++) {
+        addSuppressed(failures.get(i));
+      }
+    }
+
+    /** The commands that failed, in batch order. */
+    public List<AddUpdateCommand> getFailedCommands() {
+      return failedCmds;
+    }
+
+    /** The error of each of {@link #getFailedCommands()}. */
+    public List<Exception> getFailures() {
+      return failures;
+    }
+
+    /** Returns the message of the failure, prefixed with the id of its document unless it names it already. */
+    public static String describe(AddUpdateCommand cmd, Exception failure) {
+      String docId = "[doc=" + cmd.getPrintableId() + "]";
+      String msg = String.valueOf(failure.getMessage());
+      return msg.contains(docId) ? msg : "ERROR: " + docId + " " + msg;
+    }
+  }
   public abstract void delete(DeleteUpdateCommand cmd) throws IOException;
   public abstract void deleteByQuery(DeleteUpdateCommand cmd) throws IOException;
   public abstract int mergeIndexes(MergeIndexesCommand cmd) throws IOException;
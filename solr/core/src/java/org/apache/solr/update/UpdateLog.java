@@ -206,9 +206,18 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected int numRecordsToKeep;
   protected int maxNumLogsToKeep;
   protected int numVersionBuckets; // This should only be used to initialize VersionInfo... the actual number of buckets may be rounded up to a power of two.
+  protected int recentDocsCacheSize;
   protected Long maxVersionFromIndex = null;
   protected boolean existOldBufferLog = false;
 
+  // full documents produced by recent atomic updates, guarded by its own monitor
+  protected final LinkedHashMap<BytesRef, RecentDocument> recentDocs = new LinkedHashMap<BytesRef, RecentDocument>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<BytesRef, RecentDocument> eldest) {
+      return size() > recentDocsCacheSize;
+    }
+  };
+
   // keep track of deletes only... this is not updated on an add
   protected LinkedHashMap<BytesRef, LogPtr> oldDeletes = new LinkedHashMap<>(numDeletesToKeep) {
     @Override
@@ -345,9 +354,10 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     if (numVersionBuckets <= 0)
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
           "Number of version buckets must be greater than 0!");
+    recentDocsCacheSize = objToInt(info.initArgs.get("recentDocsCacheSize"), 0);
 
-    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={}",
-        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets);
+    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={} recentDocsCacheSize={}",
+        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets, recentDocsCacheSize);
   }
 
   /* Note, when this is called, uhandler is not completely constructed.
@@ -1043,6 +1053,59 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
   }
 
+  /**
+   * Remembers the full document produced by an atomic update so that the next atomic update of the
+   * same document doesn't have to read it back from the transaction log or the index.
+   * Does nothing unless <code>recentDocsCacheSize</code> is configured.
+   *
+   * @param version the version the document was indexed with
+   */
+  public void cacheRecentInputDocument(BytesRef indexedId, long version, SolrInputDocument doc) {
+    if (recentDocsCacheSize <= 0) {
+      return;
+    }
+    RecentDocument recent = new RecentDocument(version, doc.deepCopy());
+    synchronized (recentDocs) {
+      recentDocs.put(BytesRef.deepCopyOf(indexedId), recent);
+    }
+  }
+
+  /**
+   * Returns a copy of the document cached by {@link #cacheRecentInputDocument} for the given id, if that is
+   * still the latest version of the document. Callers must hold the version bucket lock of the id.
+   */
+  public SolrInputDocument getRecentInputDocument(BytesRef indexedId) {
+    if (recentDocsCacheSize <= 0) {
+      return null;
+    }
+    RecentDocument recent;
+    synchronized (recentDocs) {
+      recent = recentDocs.get(indexedId);
+    }
+    if (recent == null) {
+      return null;
+    }
+    // any later add, in-place update or delete of the document changes its version
+    Long version = lookupVersion(indexedId);
+    if (version == null || version != recent.version) {
+      synchronized (recentDocs) {
+        recentDocs.remove(indexedId);
+      }
+      return null;
+    }
+    return recent.doc.deepCopy();
+  }
+
+  protected static class RecentDocument {
+    final long version;
+    final SolrInputDocument doc;
+
+    RecentDocument(long version, SolrInputDocument doc) {
+      this.version = version;
+      this.doc = doc;
+    }
+  }
+
   // This method works like realtime-get... it only guarantees to return the latest
   // version of the *completed* update.  There can be updates in progress concurrently
   // that have already grabbed higher version numbers.  Higher level coordination or
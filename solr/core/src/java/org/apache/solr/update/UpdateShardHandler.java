@@ -42,6 +42,7 @@ import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.security.HttpClientBuilderPlugin;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
 import org.apache.solr.update.processor.DistributingUpdateProcessorFactory;
+import org.apache.solr.update.processor.PipelinedUpdateProcessor;
 import org.apache.solr.util.stats.HttpClientMetricNameStrategy;
 import org.apache.solr.util.stats.InstrumentedHttpListenerFactory;
 import org.apache.solr.util.stats.InstrumentedHttpRequestExecutor;
@@ -70,8 +71,17 @@ public class UpdateShardHandler implements SolrInfoBean {
       false);
   
   private ExecutorService recoveryExecutor;
+
+  /*
+   * Bounded, unlike the updateExecutor: it only runs the workers of pipelined update requests, which hand
+   * their queues back to it when they are drained, so requests beyond its size just wait for a thread.
+   */
+  private ExecutorService pipelineExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(
+      PipelinedUpdateProcessor.MAX_THREADS, new SolrNamedThreadFactory("updatePipeline"));
   
   private final Http2SolrClient updateOnlyClient;
+
+  private final ReplicaUpdateChannels replicaUpdateChannels;
   
   private final CloseableHttpClient recoveryOnlyClient;
   
@@ -135,6 +145,8 @@ public class UpdateShardHandler implements SolrInfoBean {
     queryParams.add(DistributedUpdateProcessor.DISTRIB_FROM);
     queryParams.add(DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM);
     updateOnlyClient.setQueryParams(queryParams);
+    replicaUpdateChannels = Boolean.getBoolean(ReplicaUpdateChannels.ENABLED_PROP)
+        ? new ReplicaUpdateChannels(updateOnlyClient, updateExecutor) : null;
 
     ThreadFactory recoveryThreadFactory = new SolrNamedThreadFactory("recoveryExecutor");
     if (cfg != null && cfg.getMaxRecoveryThreads() > 0) {
@@ -189,6 +201,8 @@ public class UpdateShardHandler implements SolrInfoBean {
         SolrMetricManager.mkName("updateOnlyExecutor", expandedScope, "threadPool"));
     recoveryExecutor = MetricUtils.instrumentedExecutorService(recoveryExecutor, this, solrMetricsContext.getMetricRegistry(),
         SolrMetricManager.mkName("recoveryExecutor", expandedScope, "threadPool"));
+    pipelineExecutor = MetricUtils.instrumentedExecutorService(pipelineExecutor, this, solrMetricsContext.getMetricRegistry(),
+        SolrMetricManager.mkName("updatePipelineExecutor", expandedScope, "threadPool"));
   }
 
   @Override
@@ -216,6 +230,13 @@ public class UpdateShardHandler implements SolrInfoBean {
     return updateOnlyClient;
   }
   
+  /**
+   * @return the update channels to replicas shared by all leader requests, or null if not enabled
+   */
+  public ReplicaUpdateChannels getReplicaUpdateChannels() {
+    return replicaUpdateChannels;
+  }
+
   // don't introduce a bug, this client is for recovery ops only!
   public HttpClient getRecoveryOnlyHttpClient() {
     return recoveryOnlyClient;
@@ -231,6 +252,14 @@ public class UpdateShardHandler implements SolrInfoBean {
     return updateExecutor;
   }
 
+  /**
+   * @return the bounded executor running the workers of all pipelined update requests
+   * @see PipelinedUpdateProcessor
+   */
+  public ExecutorService getPipelineExecutor() {
+    return pipelineExecutor;
+  }
+
   public PoolingHttpClientConnectionManager getDefaultConnectionManager() {
     return defaultConnectionManager;
   }
@@ -249,9 +278,13 @@ public class UpdateShardHandler implements SolrInfoBean {
 
   public void close() {
     try {
+      if (replicaUpdateChannels != null) {
+        replicaUpdateChannels.close();
+      }
       // do not interrupt, do not interrupt
       ExecutorUtil.shutdownAndAwaitTermination(updateExecutor);
       ExecutorUtil.shutdownAndAwaitTermination(recoveryExecutor);
+      ExecutorUtil.shutdownAndAwaitTermination(pipelineExecutor);
     } catch (Exception e) {
       throw new RuntimeException(e);
     } finally {
@@ -56,6 +56,7 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.NumericValueFieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.UpdateLog;
 import org.apache.solr.util.DateMathParser;
 import org.apache.solr.util.RefCounted;
 import org.slf4j.Logger;
@@ -388,6 +389,10 @@ public class AtomicUpdateDocumentMerger {
     BytesRef rootIdBytes = cmd.getIndexedId();
     BytesRef idBytes = schema.indexableUniqueKey(cmd.getChildDocIdStr());
 
+    if (idBytes.equals(rootIdBytes) && isSetOnly(inputDoc, updatedFields)) {
+      return doInPlaceSetMerge(cmd, idBytes);
+    }
+
     updatedFields.add(CommonParams.VERSION_FIELD); // add the version field so that it is fetched too
     SolrInputDocument oldDocument = RealTimeGetComponent.getInputDocument
       (cmd.getReq().getCore(), idBytes, rootIdBytes,
@@ -445,6 +450,44 @@ public class AtomicUpdateDocumentMerger {
     return true;
   }
 
+  /**
+   * In-place update that replaces every updated field. The previous values don't matter then, only the
+   * version the update depends on, so the old document isn't fetched: a version lookup, which doesn't
+   * need to resolve earlier in-place updates from the update log, is enough.
+   */
+  private boolean doInPlaceSetMerge(AddUpdateCommand cmd, BytesRef idBytes) {
+    UpdateLog ulog = cmd.getReq().getCore().getUpdateHandler().getUpdateLog();
+    Long lastVersion = ulog == null ? null : ulog.lookupVersion(idBytes);
+    if (lastVersion == null || lastVersion < 0) {
+      // missing or recently deleted document, let a full atomic update handle it
+      return false;
+    }
+    SolrInputDocument inputDoc = cmd.getSolrInputDocument();
+    SolrInputDocument partialDoc = new SolrInputDocument();
+    partialDoc.addField(idField.getName(), inputDoc.getField(idField.getName()).getFirstValue());
+    mergeDocHavingSameId(inputDoc, partialDoc);
+
+    cmd.prevVersion = lastVersion;
+    cmd.solrDoc = partialDoc;
+    return true;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static boolean isSetOnly(SolrInputDocument inputDoc, Set<String> updatedFields) {
+    for (String fieldName : updatedFields) {
+      Object value = inputDoc.getFieldValue(fieldName);
+      if (!(value instanceof Map)) {
+        return false;
+      }
+      for (String op : ((Map<String, Object>) value).keySet()) {
+        if (!"set".equals(op)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   protected void doSet(SolrInputDocument toDoc, SolrInputField sif, Object fieldVal) {
     String name = sif.getName();
     toDoc.setField(name, getNativeFieldValue(name, fieldVal));
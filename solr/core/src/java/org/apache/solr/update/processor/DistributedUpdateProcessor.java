@@ -47,6 +47,7 @@ import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.handler.component.RealTimeGetComponent;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
@@ -127,6 +128,8 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
   VersionInfo vinfo;
   private final boolean versionsStored;
   private boolean returnVersions;
+  // set by getUpdatedDocument when the merged document may be cached in the update log
+  private boolean cacheMergedDocument;
 
   private NamedList<Object> addsResponse = null;
   private NamedList<Object> deleteResponse = null;
@@ -348,6 +351,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
   private boolean doVersionAdd(AddUpdateCommand cmd, long versionOnUpdate, boolean isReplayOrPeersync,
       boolean leaderLogic, boolean forwardedFromCollection, VersionBucket bucket) throws IOException {
+    cacheMergedDocument = false;
     try {
       BytesRef idBytes = cmd.getIndexedId();
       bucket.signalAll();
@@ -501,6 +505,10 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
       // TODO: possibly set checkDeleteByQueries as a flag on the command?
       doLocalAdd(cmd);
 
+      if (leaderLogic && cacheMergedDocument) {
+        ulog.cacheRecentInputDocument(idBytes, cmd.getVersion(), toRecentInputDocument(cmd.solrDoc));
+      }
+
       if (clonedDoc != null) {
         cmd.solrDoc = clonedDoc;
       }
@@ -674,6 +682,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
   // TODO: may want to switch to using optimistic locking in the future for better concurrency
   // that's why this code is here... need to retry in a loop closely around/in versionAdd
   boolean getUpdatedDocument(AddUpdateCommand cmd, long versionOnUpdate) throws IOException {
+    cacheMergedDocument = false;
     if (!AtomicUpdateDocumentMerger.isAtomicUpdate(cmd)) return false;
 
     if (idField == null) {
@@ -701,14 +710,20 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     
     // full (non-inplace) atomic update
 
-    final SolrInputDocument oldRootDocWithChildren =
-        RealTimeGetComponent.getInputDocument(
-            req.getCore(),
-            rootIdBytes,
-            rootIdBytes,
-            null,
-            null,
-            RealTimeGetComponent.Resolution.ROOT_WITH_CHILDREN); // when no children, just fetches the doc
+    // a document produced by a recent atomic update saves reading it back from the tlog or the index
+    final boolean updatesRootDoc = rootDocIdString.equals(cmd.getChildDocIdStr());
+    SolrInputDocument oldRootDocWithChildren = updatesRootDoc && ulog != null
+        ? ulog.getRecentInputDocument(rootIdBytes) : null;
+    if (oldRootDocWithChildren == null) {
+      oldRootDocWithChildren =
+          RealTimeGetComponent.getInputDocument(
+              req.getCore(),
+              rootIdBytes,
+              rootIdBytes,
+              null,
+              null,
+              RealTimeGetComponent.Resolution.ROOT_WITH_CHILDREN); // when no children, just fetches the doc
+    }
 
     SolrInputDocument sdoc = cmd.getSolrInputDocument();
     SolrInputDocument mergedDoc;
@@ -727,9 +742,42 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     }
 
     cmd.solrDoc = mergedDoc;
+    cacheMergedDocument = updatesRootDoc && !hasNestedDocuments(mergedDoc);
     return true;
   }
 
+  /**
+   * Returns the fields of the merged document that realtime get would return for it, i.e. without
+   * copy-field targets and fields that are neither stored nor docValues, so that the next atomic update
+   * merges with the same document whether or not it comes from the update log's cache.
+   */
+  private SolrInputDocument toRecentInputDocument(SolrInputDocument doc) {
+    final IndexSchema schema = req.getSchema();
+    SolrInputDocument out = new SolrInputDocument();
+    for (SolrInputField field : doc) {
+      SchemaField sf = schema.getFieldOrNull(field.getName());
+      if (sf != null && ((!sf.hasDocValues() && !sf.stored()) || schema.isCopyFieldTarget(sf))) {
+        continue;
+      }
+      out.put(field.getName(), field);
+    }
+    return out;
+  }
+
+  private static boolean hasNestedDocuments(SolrInputDocument doc) {
+    if (doc.hasChildDocuments()) {
+      return true;
+    }
+    for (SolrInputField field : doc) {
+      for (Object value : field) {
+        if (value instanceof SolrInputDocument) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   @Override
   public void processDelete(DeleteUpdateCommand cmd) throws IOException {
     
@@ -1124,6 +1172,14 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     // no-op for derived classes to implement
   }
 
+  /**
+   * Waits until the updates this processor has forwarded to other nodes so far are done, retrying the
+   * failed ones. Errors are still reported by {@link #finish()}.
+   */
+  protected void blockAndDoRetries() {
+    // no-op for derived classes to implement
+  }
+
   /**
    * Returns a boolean indicating whether or not the caller should behave as
    * if this is the "leader" even when ZooKeeper is not enabled.  
@@ -1049,6 +1049,11 @@ public class DistributedZkUpdateProcessor extends DistributedUpdateProcessor {
     super.processRollback(cmd);
   }
 
+  @Override
+  protected void blockAndDoRetries() {
+    cmdDistrib.blockAndDoRetries();
+  }
+
   // TODO: optionally fail if n replicas are not reached...
   protected void doDistribFinish() {
     clusterState = zkController.getClusterState();
@@ -19,36 +19,59 @@ package org.apache.solr.update.processor;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.text.ParseException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.Query;
 import org.apache.solr.cloud.CloudDescriptor;
 import org.apache.solr.cloud.ZkController;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.ImplicitDocRouter;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.legacy.LegacyNumericUtils;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SyntaxError;
 import org.apache.solr.security.PKIAuthenticationPlugin;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.processor.DistributedUpdateProcessor.DistribPhase;
 import org.apache.solr.util.DateMathParser;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.util.plugin.SolrCoreAware;
@@ -56,7 +79,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.apache.solr.common.SolrException.ErrorCode.BAD_REQUEST;
+import static org.apache.solr.common.SolrException.ErrorCode.CONFLICT;
 import static org.apache.solr.common.SolrException.ErrorCode.SERVER_ERROR;
+import static org.apache.solr.update.processor.DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM;
 
 /**
  * <p>
@@ -120,6 +145,32 @@ import static org.apache.solr.common.SolrException.ErrorCode.SERVER_ERROR;
  *      This option is ignored unless <code>autoDeletePeriodSeconds</code> is configured 
  *      and is non-negative.
  *  </li>
+ *  <li><code>autoDeleteById</code> - Optional boolean, defaulting to <code>false</code>.
+ *      If <code>true</code>, the periodic delete does not send a <code>deleteByQuery</code>;
+ *      instead the expired documents are resolved against the currently open searcher 
+ *      and removed using one versioned delete by id per document.  This avoids the 
+ *      realtime searcher re-open that every <code>deleteByQuery</code> forces, and the 
+ *      re-ordering bookkeeping replicas keep for recent <code>deleteByQuery</code> commands, 
+ *      at the cost of only removing documents that are visible to that searcher.  A document 
+ *      that is updated after it was resolved is left alone, because its version no longer 
+ *      matches.  In cloud mode every shard leader removes the expired documents of its own 
+ *      shard.  This option is ignored unless <code>autoDeletePeriodSeconds</code> is 
+ *      configured and is non-negative.
+ *  </li>
+ *  <li><code>autoDeleteWholeSegments</code> - Optional boolean, defaulting to 
+ *      <code>false</code>.  If <code>true</code>, the periodic delete only runs once there 
+ *      are index segments in which every document has an expiration value and all of those 
+ *      values have passed, and then sends a single <code>deleteByQuery</code> for the range 
+ *      of expiration values of those segments, instead of one for everything up to 
+ *      <code>NOW</code>.  Expired documents of other segments outside of that range are left 
+ *      in place until the rest of their segment expires.  Lucene drops a segment as a whole 
+ *      once all of its documents are deleted, so no merging is needed to reclaim the space.  This works 
+ *      best together with {@link org.apache.solr.index.TimePartitionedMergePolicyFactory}, 
+ *      which keeps segments of different ages apart.  The <code>expirationFieldName</code> 
+ *      must be a date field.  In cloud mode every shard leader removes the expired documents 
+ *      of its own shard, sending the delete only to its own replicas.  This option is ignored unless <code>autoDeletePeriodSeconds</code> 
+ *      is configured and is non-negative.
+ *  </li>
  * </ul>
  *
  * <p>
@@ -178,6 +229,8 @@ public final class DocExpirationUpdateProcessorFactory
   private static final String TTL_PARAM_NAME_CONF = "ttlParamName";
   private static final String DEL_CHAIN_NAME_CONF = "autoDeleteChainName";
   private static final String DEL_PERIOD_SEC_CONF = "autoDeletePeriodSeconds";
+  private static final String DEL_BY_ID_CONF = "autoDeleteById";
+  private static final String DEL_WHOLE_SEGMENTS_CONF = "autoDeleteWholeSegments";
   
   private SolrCore core;
   private ScheduledThreadPoolExecutor executor;
@@ -188,6 +241,8 @@ public final class DocExpirationUpdateProcessorFactory
 
   private String deleteChainName = null;
   private long deletePeriodSeconds = -1L;
+  private boolean deleteById = false;
+  private boolean deleteWholeSegments = false;
 
   private SolrException confErr(final String msg) {
     return confErr(msg, null);
@@ -232,6 +287,22 @@ public final class DocExpirationUpdateProcessorFactory
       }
       deletePeriodSeconds = ((Number)tmp).longValue();
     }
+
+    tmp = args.remove(DEL_BY_ID_CONF);
+    if (null != tmp) {
+      if (! (tmp instanceof Boolean)) {
+        throw confErr(DEL_BY_ID_CONF + " must be a <bool>");
+      }
+      deleteById = (Boolean) tmp;
+    }
+
+    tmp = args.remove(DEL_WHOLE_SEGMENTS_CONF);
+    if (null != tmp) {
+      if (! (tmp instanceof Boolean)) {
+        throw confErr(DEL_WHOLE_SEGMENTS_CONF + " must be a <bool>");
+      }
+      deleteWholeSegments = (Boolean) tmp;
+    }
     
     super.init(args);
   }
@@ -244,6 +315,10 @@ public final class DocExpirationUpdateProcessorFactory
       // TODO: check for managed schema and auto-add as a date field?
       throw confErr(EXP_FIELD_NAME_CONF + " does not exist in schema: " + expireField);
     }
+    if (deleteWholeSegments && 
+        NumberType.DATE != core.getLatestSchema().getFieldType(expireField).getNumberType()) {
+      throw confErr(DEL_WHOLE_SEGMENTS_CONF + " requires a date " + EXP_FIELD_NAME_CONF + ": " + expireField);
+    }
 
     if (0 < deletePeriodSeconds) {
       // validate that we have a chain we can work with
@@ -294,6 +369,11 @@ public final class DocExpirationUpdateProcessorFactory
 
   }
 
+  /** Runs the periodic deletion of expired documents right away, on the calling thread */
+  void deleteExpiredDocsNow() {
+    new DeleteExpiredDocsRunnable(this).run();
+  }
+
   @Override
   public UpdateRequestProcessor getInstance(SolrQueryRequest req, 
                                             SolrQueryResponse rsp, 
@@ -356,6 +436,12 @@ public final class DocExpirationUpdateProcessorFactory
    * <code>expireField</code>) followed by a soft commit to re-open searchers (if needed)
    * </p>
    * <p>
+   * If <code>autoDeleteById</code> is configured, the query is instead resolved against 
+   * the request's searcher and each match is deleted by id, conditional on the version 
+   * it had in that searcher.  If <code>autoDeleteWholeSegments</code> is configured, the 
+   * query only covers the expiration values of the fully expired segments.
+   * </p>
+   * <p>
    * This logic is all wrapped up in a new SolrRequestInfo context with 
    * some logging to help make it obvious this background activity is happening.
    * </p>
@@ -372,11 +458,15 @@ public final class DocExpirationUpdateProcessorFactory
     final SolrCore core;
     final String deleteChainName;
     final String expireField;
+    final boolean deleteById;
+    final boolean deleteWholeSegments;
     public DeleteExpiredDocsRunnable(final DocExpirationUpdateProcessorFactory factory) {
       this.factory = factory;
       this.core = factory.core; 
       this.deleteChainName = factory.deleteChainName;
       this.expireField = factory.expireField;
+      this.deleteById = factory.deleteById;
+      this.deleteWholeSegments = factory.deleteWholeSegments;
    }
 
     public void run() {
@@ -400,6 +490,28 @@ public final class DocExpirationUpdateProcessorFactory
           }
           log.info("Beginning periodic deletion of expired docs");
 
+          final String route = factory.getLocalShardRoute();
+          if (null != route) {
+            req.setParams(new ModifiableSolrParams().set(ShardParams._ROUTE_, route));
+          }
+
+          final Date now = SolrRequestInfo.getRequestInfo().getNOW();
+          String query = "{!cache=false}" + expireField + ":[* TO " + now.toInstant() + "]";
+          if (deleteWholeSegments) {
+            final long[] range = getFullyExpiredRange(req.getSearcher(), now.getTime());
+            if (null == range) {
+              log.info("No fully expired segments, skipping periodic deletion of expired docs");
+              return;
+            }
+            query = "{!cache=false}" + expireField + ":[" + Instant.ofEpochMilli(range[0]) +
+              " TO " + Instant.ofEpochMilli(range[1]) + "]";
+            if (null != core.getCoreContainer().getZkController()) {
+              // we are the leader of our shard, and only in charge of the segments of our shard
+              req.setParams(new ModifiableSolrParams(req.getParams())
+                            .set(DISTRIB_UPDATE_PARAM, DistribPhase.TOLEADER.toString()));
+            }
+          }
+
           UpdateRequestProcessorChain chain = core.getUpdateProcessingChain(deleteChainName);
           UpdateRequestProcessor proc = chain.createProcessor(req, rsp);
           if (null == proc) {
@@ -408,11 +520,13 @@ public final class DocExpirationUpdateProcessorFactory
             return;
           }
           try {
-            DeleteUpdateCommand del = new DeleteUpdateCommand(req);
-            del.setQuery("{!cache=false}" + expireField + ":[* TO " +
-                SolrRequestInfo.getRequestInfo().getNOW().toInstant()
-                         + "]");
-            proc.processDelete(del);
+            if (deleteById && ! deleteWholeSegments) {
+              deleteMatchesById(req, proc, query);
+            } else {
+              DeleteUpdateCommand del = new DeleteUpdateCommand(req);
+              del.setQuery(query);
+              proc.processDelete(del);
+            }
             
             // TODO: should this be more configurable? 
             // TODO: in particular: should hard commit be optional?
@@ -430,6 +544,9 @@ public final class DocExpirationUpdateProcessorFactory
           }
 
           log.info("Finished periodic deletion of expired docs");
+        } catch (SyntaxError se) {
+          log.error("Unable to parse query for periodic deletion of expired docs: ", se);
+          // DO NOT RETHROW: ScheduledExecutor will suppress subsequent executions
         } catch (IOException ioe) {
           log.error("IOException in periodic deletion of expired docs: ", ioe);
           // DO NOT RETHROW: ScheduledExecutor will suppress subsequent executions
@@ -443,6 +560,133 @@ public final class DocExpirationUpdateProcessorFactory
         req.close();
       }
     }
+
+    /**
+     * Returns the lowest and highest expiration value (in ms) of the segments of 
+     * <code>searcher</code> in which every document has an expiration value and all of 
+     * those values are at or before <code>now</code>, or null if there are none.
+     */
+    private long[] getFullyExpiredRange(final SolrIndexSearcher searcher,
+                                        final long now) throws IOException {
+      final boolean points = searcher.getSchema().getField(expireField).getType().isPointField();
+      long[] range = null;
+      int numLeaves = 0;
+      for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+        if (0 == leaf.reader().numDocs()) {
+          continue;
+        }
+        final int docsWithValue;
+        final long min;
+        final long max;
+        if (points) {
+          final PointValues values = leaf.reader().getPointValues(expireField);
+          if (null == values || 0 == values.size()) {
+            continue;
+          }
+          docsWithValue = values.getDocCount();
+          min = LongPoint.decodeDimension(values.getMinPackedValue(), 0);
+          max = LongPoint.decodeDimension(values.getMaxPackedValue(), 0);
+        } else {
+          final Terms terms = leaf.reader().terms(expireField);
+          final Long maxTerm = null == terms ? null : LegacyNumericUtils.getMaxLong(terms);
+          if (null == maxTerm) {
+            continue;
+          }
+          docsWithValue = terms.getDocCount();
+          min = LegacyNumericUtils.getMinLong(terms);
+          max = maxTerm;
+        }
+        // a document without an expiration value never expires, so neither does its segment
+        if (docsWithValue == leaf.reader().maxDoc() && max <= now) {
+          range = null == range
+            ? new long[] {min, max}
+            : new long[] {Math.min(range[0], min), Math.max(range[1], max)};
+          numLeaves++;
+        }
+      }
+      if (null != range) {
+        log.info("Found {} fully expired segments", numLeaves);
+      }
+      return range;
+    }
+
+    /**
+     * Deletes the document with the given (top level) docid by id, conditional on 
+     * <code>version</code> if it is not null.  Returns false if the document has no id 
+     * or has been updated since it was resolved.
+     */
+    private boolean deleteDocById(final SolrQueryRequest req,
+                                  final UpdateRequestProcessor proc,
+                                  final int docid,
+                                  final Long version) throws IOException {
+      final SchemaField uniqueKey = req.getSchema().getUniqueKeyField();
+      final Document doc = req.getSearcher().doc(docid, Collections.singleton(uniqueKey.getName()));
+      if (null == doc.getField(uniqueKey.getName())) {
+        return false;
+      }
+      DeleteUpdateCommand del = new DeleteUpdateCommand(req);
+      del.setId(uniqueKey.getType().toExternal(doc.getField(uniqueKey.getName())));
+      if (null != version) {
+        del.setVersion(version);
+      }
+      try {
+        proc.processDelete(del);
+        return true;
+      } catch (SolrException e) {
+        if (CONFLICT.code != e.code()) {
+          throw e;
+        }
+        // updated since we resolved it, so it may no longer be expired
+        return false;
+      }
+    }
+
+    /**
+     * Resolves <code>query</code> against the searcher of <code>req</code> and sends a
+     * delete by id for every match, carrying the version the document has in that searcher
+     * (when known) so that documents updated in the meantime are not removed.
+     */
+    private void deleteMatchesById(final SolrQueryRequest req,
+                                   final UpdateRequestProcessor proc,
+                                   final String query) throws IOException, SyntaxError {
+      final SolrIndexSearcher searcher = req.getSearcher();
+      final Query q = QParser.getParser(query, req).getQuery();
+      final DocSet expired = searcher.getDocSet(q);
+      if (0 == expired.size()) {
+        return;
+      }
+
+      final NumericDocValues versions =
+        DocValues.getNumeric(searcher.getSlowAtomicReader(), CommonParams.VERSION_FIELD);
+      int deleted = 0;
+      int skipped = 0;
+      for (DocIterator it = expired.iterator(); it.hasNext(); ) {
+        final int docid = it.nextDoc();
+        final Long version = versions.advanceExact(docid) ? versions.longValue() : null;
+        if (deleteDocById(req, proc, docid, version)) {
+          deleted++;
+        } else {
+          skipped++;
+        }
+      }
+      log.info("Deleted {} expired docs by id, skipped {} that changed since resolved",
+               deleted, skipped);
+    }
+  }
+
+  /**
+   * In cloud mode with <code>autoDeleteById</code> or <code>autoDeleteWholeSegments</code>, 
+   * returns the shard whose leader we are if the collection uses the implicit router, so 
+   * that deletes stay on this shard; <code>null</code> otherwise.
+   */
+  private String getLocalShardRoute() {
+    if (! deletesLocalShardOnly()) return null;
+    ZkController zk = core.getCoreContainer().getZkController();
+    if (null == zk) return null;
+
+    CloudDescriptor desc = core.getCoreDescriptor().getCloudDescriptor();
+    DocCollection docCollection = zk.getClusterState().getCollection(desc.getCollectionName());
+    return (docCollection.getRouter() instanceof ImplicitDocRouter) ? desc.getShardId() : null;
   }
 
   /**
@@ -453,7 +697,10 @@ public final class DocExpirationUpdateProcessorFactory
    * <p>
    * In simple standalone installations this method always returns true, 
    * but in cloud mode it will be true if and only if we are currently the leader 
-   * of the (active) slice with the first name (lexicographically).
+   * of the (active) slice with the first name (lexicographically).  When 
+   * <code>autoDeleteById</code> or <code>autoDeleteWholeSegments</code> is configured, 
+   * deletes only ever touch the local shard,
+   * so it is true if and only if we are currently the leader of our own slice.
    * </p>
    * <p>
    * If this method returns false, it may have also logged a message letting the user 
@@ -482,9 +729,18 @@ public final class DocExpirationUpdateProcessorFactory
       log.error("Collection {} has no active Slices?", col);
       return false;
     }
-    List<Slice> slices = new ArrayList<>(Arrays.asList(docCollection.getActiveSlicesArr()));
-    Collections.sort(slices, COMPARE_SLICES_BY_NAME);
-    Replica firstSliceLeader = slices.get(0).getLeader();
+    final Slice sliceInCharge;
+    if (deletesLocalShardOnly()) {
+      sliceInCharge = docCollection.getActiveSlicesMap().get(desc.getShardId());
+      if (null == sliceInCharge) {
+        return false;
+      }
+    } else {
+      List<Slice> slices = new ArrayList<>(Arrays.asList(docCollection.getActiveSlicesArr()));
+      Collections.sort(slices, COMPARE_SLICES_BY_NAME);
+      sliceInCharge = slices.get(0);
+    }
+    Replica firstSliceLeader = sliceInCharge.getLeader();
     if (null == firstSliceLeader) {
       log.warn("Slice in charge of periodic deletes for {} does not currently have a leader",
                col);
@@ -506,6 +762,10 @@ public final class DocExpirationUpdateProcessorFactory
     return inChargeOfDeletesRightNow;
   }
 
+  private boolean deletesLocalShardOnly() {
+    return deleteById || deleteWholeSegments;
+  }
+
   /** @see #iAmInChargeOfPeriodicDeletes */
   private volatile boolean previouslyInChargeOfDeletes = true;
 
@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.MergeIndexesCommand;
+import org.apache.solr.update.RollbackUpdateCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the commands of a single update request to a bounded pool of worker threads, so that the
+ * request thread only parses while field mutation, analysis and indexing run in parallel.
+ * <p>
+ * Every worker owns its own instance of the update processor chain. Adds and deletes by id are
+ * assigned to a worker by the hash of the document id, which keeps the updates of one id in request
+ * order. Deletes by query, commits, rollbacks and index merges wait until all workers are idle and
+ * then run on worker 0, once the updates every worker has forwarded to other nodes are done. The first error raised by a worker is rethrown to the loader on the
+ * next command or from {@link #finish()}; commands already handed to other workers may still be applied.
+ * Workers run with the {@link SolrRequestInfo} of the request, so that forwarded updates carry the user
+ * principal and all workers use the same NOW.
+ * <p>
+ * Enabled per request with {@link UpdateParams#PIPELINE_THREADS}; the number of workers is capped by
+ * the <code>solr.update.maxPipelineThreads</code> system property, which defaults to the number of processors.
+ * Workers don't own a thread: whenever a worker has queued commands it runs on the
+ * {@link org.apache.solr.update.UpdateShardHandler#getPipelineExecutor() pipeline executor} shared by all
+ * requests, which is bounded by the same property, until its queue is empty.
+ */
+public class PipelinedUpdateProcessor extends UpdateRequestProcessor {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int MAX_THREADS = Integer.getInteger("solr.update.maxPipelineThreads", Runtime.getRuntime().availableProcessors());
+  static final int QUEUE_SIZE = Integer.getInteger("solr.update.pipelineQueueSize", 1000);
+
+  private final SolrQueryResponse rsp;
+  private final SchemaField uniqueKeyField;
+  private final Worker[] workers;
+  private final Executor executor;
+  private final SolrRequestInfo requestInfo;
+  private volatile Throwable failure;
+  private boolean failureThrown;
+  private boolean finished;
+  private int nextWorker;
+
+  /**
+   * Returns a pipelined processor if the request asks for more than one pipeline thread, or a plain
+   * processor created from the chain otherwise.
+   */
+  public static UpdateRequestProcessor createProcessor(UpdateRequestProcessorChain chain, SolrQueryRequest req, SolrQueryResponse rsp) {
+    int threads = Math.min(req.getParams().getInt(UpdateParams.PIPELINE_THREADS, 1), MAX_THREADS);
+    // javabin multistream requests swap the request params per stream, which workers can't follow
+    if (threads < 2 || req.getParams().getBool("multistream", false)) {
+      return chain.createProcessor(req, rsp);
+    }
+    return new PipelinedUpdateProcessor(chain, req, rsp, threads);
+  }
+
+  PipelinedUpdateProcessor(UpdateRequestProcessorChain chain, SolrQueryRequest req, SolrQueryResponse rsp, int numWorkers) {
+    super(null);
+    this.rsp = rsp;
+    this.uniqueKeyField = req.getSchema().getUniqueKeyField();
+    // make the lazily initialized state shared by all workers visible before they start
+    req.getSearcher();
+    requestInfo = SolrRequestInfo.getRequestInfo();
+    if (requestInfo != null) {
+      requestInfo.getNOW();
+    }
+    workers = new Worker[numWorkers];
+    executor = req.getCore().getCoreContainer().getUpdateShardHandler().getPipelineExecutor();
+    boolean success = false;
+    try {
+      for (int i = 0; i < numWorkers; i++) {
+        workers[i] = new Worker(chain, req);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        doClose();
+      }
+    }
+  }
+
+  @Override
+  public void processAdd(AddUpdateCommand cmd) throws IOException {
+    // loaders may reuse the command object once this call returns
+    AddUpdateCommand copy = (AddUpdateCommand) cmd.clone();
+    Object id = null;
+    SolrInputDocument doc = copy.getSolrInputDocument();
+    if (uniqueKeyField != null && doc != null) {
+      id = doc.getFieldValue(uniqueKeyField.getName());
+    }
+    dispatch(id, processor -> processor.processAdd(copy));
+  }
+
+  @Override
+  public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+    DeleteUpdateCommand copy = (DeleteUpdateCommand) cmd.clone();
+    if (copy.isDeleteById()) {
+      dispatch(copy.getId(), processor -> processor.processDelete(copy));
+    } else {
+      awaitForwarded();
+      workers[0].processor.processDelete(copy);
+    }
+  }
+
+  @Override
+  public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
+    awaitForwarded();
+    workers[0].processor.processMergeIndexes(cmd);
+  }
+
+  @Override
+  public void processCommit(CommitUpdateCommand cmd) throws IOException {
+    awaitForwarded();
+    workers[0].processor.processCommit(cmd);
+  }
+
+  @Override
+  public void processRollback(RollbackUpdateCommand cmd) throws IOException {
+    awaitForwarded();
+    workers[0].processor.processRollback(cmd);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    try {
+      awaitWorkers();
+      for (Worker worker : workers) {
+        worker.processor.finish();
+      }
+    } finally {
+      finished = true;
+      for (Worker worker : workers) {
+        mergeResponse(worker.rsp);
+      }
+    }
+    throwFailure();
+  }
+
+  @Override
+  protected void doClose() {
+    for (Worker worker : workers) {
+      if (worker != null) {
+        worker.queue.clear();
+      }
+    }
+    try {
+      // workers must be done with their processors before they are closed
+      awaitWorkers();
+    } catch (SolrException e) {
+      log.warn("Interrupted while closing pipelined update processor", e);
+    }
+    for (Worker worker : workers) {
+      if (worker != null) {
+        try {
+          worker.processor.close();
+        } catch (IOException e) {
+          log.warn("Exception closing pipelined update processor", e);
+        }
+        if (!finished) {
+          mergeResponse(worker.rsp);
+        }
+      }
+    }
+  }
+
+  private void dispatch(Object id, Task task) throws IOException {
+    throwFailure();
+    int workerNum;
+    if (id == null) {
+      workerNum = nextWorker;
+      nextWorker = (nextWorker + 1) % workers.length;
+    } else {
+      workerNum = Math.floorMod(id.toString().hashCode(), workers.length);
+    }
+    enqueue(workers[workerNum], task);
+  }
+
+  private void enqueue(Worker worker, Task task) {
+    try {
+      worker.queue.put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while queueing update", e);
+    }
+    worker.schedule();
+  }
+
+  /** Waits until every worker has processed all the commands queued so far. */
+  private void awaitWorkers() {
+    CountDownLatch latch = new CountDownLatch(workers.length);
+    for (Worker worker : workers) {
+      if (worker != null) {
+        enqueue(worker, new Barrier(latch));
+      } else {
+        latch.countDown();
+      }
+    }
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while waiting for queued updates", e);
+    }
+  }
+
+  private void awaitIdle() throws IOException {
+    throwFailure();
+    awaitWorkers();
+    throwFailure();
+  }
+
+  /**
+   * Waits until every worker has processed all the commands queued so far, and the updates it has
+   * forwarded to other nodes are done, so that they can't arrive after the next command.
+   */
+  private void awaitForwarded() throws IOException {
+    throwFailure();
+    for (Worker worker : workers) {
+      enqueue(worker, PipelinedUpdateProcessor::blockAndDoRetries);
+    }
+    awaitIdle();
+  }
+
+  private static void blockAndDoRetries(UpdateRequestProcessor processor) {
+    for (UpdateRequestProcessor p = processor; p != null; p = p.next) {
+      if (p instanceof DistributedUpdateProcessor) {
+        ((DistributedUpdateProcessor) p).blockAndDoRetries();
+      }
+    }
+  }
+
+  /** A copy of the request info for a worker thread, so that close hooks registered by a worker stay with it. */
+  private SolrRequestInfo newWorkerRequestInfo() {
+    SolrRequestInfo info = new SolrRequestInfo(requestInfo.getReq(), requestInfo.getRsp());
+    info.setAction(requestInfo.getAction());
+    info.httpRequest = requestInfo.httpRequest;
+    info.setUseServerToken(requestInfo.useServerToken());
+    return info;
+  }
+
+  private void throwFailure() throws IOException {
+    Throwable t = failure;
+    if (t == null || failureThrown) {
+      return;
+    }
+    failureThrown = true;
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+    throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, t);
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private void mergeResponse(SolrQueryResponse from) {
+    mergeNamedList(rsp.getValues(), from.getValues());
+    mergeNamedList(rsp.getToLog(), from.getToLog());
+    if (rsp.getResponseHeader() != null && from.getResponseHeader() != null) {
+      mergeNamedList((NamedList<Object>) rsp.getResponseHeader(), (NamedList<Object>) from.getResponseHeader());
+    }
+    if (rsp.getException() == null && from.getException() != null) {
+      rsp.setException(from.getException());
+    }
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static void mergeNamedList(NamedList<Object> to, NamedList<Object> from) {
+    for (Map.Entry<String, Object> entry : from) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+      int idx = to.indexOf(key, 0);
+      if (idx < 0) {
+        to.add(key, value);
+        continue;
+      }
+      Object existing = to.getVal(idx);
+      if (existing instanceof NamedList && value instanceof NamedList) {
+        ((NamedList<Object>) existing).addAll((NamedList<Object>) value);
+      } else if (existing instanceof Collection && value instanceof Collection) {
+        ((Collection<Object>) existing).addAll((Collection<Object>) value);
+      } else if (UpdateRequest.REPFACT.equals(key) && existing instanceof Number && value instanceof Number) {
+        // the achieved replication factor of the request is the lowest one of its parts
+        to.setVal(idx, Math.min(((Number) existing).intValue(), ((Number) value).intValue()));
+      }
+    }
+  }
+
+  private interface Task {
+    void apply(UpdateRequestProcessor processor) throws IOException;
+  }
+
+  private static class Barrier implements Task {
+    private final CountDownLatch latch;
+
+    Barrier(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void apply(UpdateRequestProcessor processor) {
+      latch.countDown();
+    }
+  }
+
+  /**
+   * The commands of one worker, applied in order by at most one thread of the shared executor at a time.
+   */
+  private class Worker implements Runnable {
+    final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    final SolrQueryResponse rsp = new SolrQueryResponse();
+    final UpdateRequestProcessor processor;
+
+    Worker(UpdateRequestProcessorChain chain, SolrQueryRequest req) {
+      rsp.addResponseHeader(new SimpleOrderedMap<>());
+      processor = chain.createProcessor(req, rsp);
+    }
+
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException e) {
+          // the executor is shut down with the container; don't leave the request waiting
+          run();
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      if (requestInfo != null) {
+        SolrRequestInfo.setRequestInfo(newWorkerRequestInfo());
+      }
+      try {
+        drain();
+      } finally {
+        if (requestInfo != null) {
+          SolrRequestInfo.clearRequestInfo();
+        }
+      }
+    }
+
+    private void drain() {
+      do {
+        Task task;
+        while ((task = queue.poll()) != null) {
+          if (failure != null && !(task instanceof Barrier)) {
+            // stop applying updates after the first error, like a single-threaded loader would
+            continue;
+          }
+          try {
+            task.apply(processor);
+          } catch (Throwable t) {
+            synchronized (PipelinedUpdateProcessor.this) {
+              if (failure == null) {
+                failure = t;
+              }
+            }
+          }
+        }
+        scheduled.set(false);
+        // commands queued after the last poll but before the flag was cleared
+      } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+  }
+}
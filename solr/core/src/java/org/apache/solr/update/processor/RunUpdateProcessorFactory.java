@@ -17,7 +17,11 @@
 package org.apache.solr.update.processor;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.*;
@@ -52,6 +56,8 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
   static class RunUpdateProcessor extends UpdateRequestProcessor {
     private final SolrQueryRequest req;
     private final UpdateHandler updateHandler;
+    private final int addBatchSize;
+    private final List<AddUpdateCommand> pendingAdds;
 
     private boolean changesSinceCommit = false;
 
@@ -59,6 +65,12 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
       super(next);
       this.req = req;
       this.updateHandler = req.getCore().getUpdateHandler();
+      this.addBatchSize = req.getParams().getInt(UpdateParams.ADD_BATCH_SIZE, 1);
+      // With an update log, every add is versioned and logged by DistributedUpdateProcessor while it holds the
+      // version bucket lock and the update lock, which buffering, deletes by query and splits rely on to see
+      // all lower-versioned adds in the index and the log. A buffered add would reach them after the locks are
+      // released, so adds are only batched without an update log.
+      this.pendingAdds = addBatchSize > 1 && updateHandler.getUpdateLog() == null ? new ArrayList<>(addBatchSize) : null;
     }
 
     @Override
@@ -70,13 +82,64 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
                         "RunUpdateProcessor has received an AddUpdateCommand containing a document that appears to still contain Atomic document update operations, most likely because DistributedUpdateProcessorFactory was explicitly disabled from this updateRequestProcessorChain");
       }
 
+      if (pendingAdds != null && isAppendOnly(cmd)) {
+        // loaders may reuse the command object once this call returns
+        pendingAdds.add((AddUpdateCommand) cmd.clone());
+        changesSinceCommit = true;
+        if (pendingAdds.size() >= addBatchSize) {
+          throwIfFailed(flushPendingAdds());
+        }
+        return;
+      }
+      UpdateHandler.AddDocsException failed = flushPendingAdds();
+
       updateHandler.addDoc(cmd);
       super.processAdd(cmd);
       changesSinceCommit = true;
+      throwIfFailed(failed);
+    }
+
+    private static boolean isAppendOnly(AddUpdateCommand cmd) {
+      return !cmd.overwrite && cmd.updateTerm == null && !cmd.isInPlaceUpdate()
+          && (cmd.getFlags() & UpdateCommand.IGNORE_INDEXWRITER) == 0;
+    }
+
+    /**
+     * Writes the buffered append-only adds in one batch. Any other command flushes the buffer first,
+     * so the order of updates within a request is preserved.
+     *
+     * @return the documents of the batch that failed, which the caller throws once it has handled its own
+     * command, so that they are reported against those documents rather than against the current command
+     */
+    private UpdateHandler.AddDocsException flushPendingAdds() throws IOException {
+      if (pendingAdds == null || pendingAdds.isEmpty()) {
+        return null;
+      }
+      List<AddUpdateCommand> batch = new ArrayList<>(pendingAdds);
+      pendingAdds.clear();
+      UpdateHandler.AddDocsException failed = null;
+      try {
+        updateHandler.addDocs(batch);
+      } catch (UpdateHandler.AddDocsException e) {
+        failed = e;
+      }
+      for (AddUpdateCommand cmd : batch) {
+        if (failed == null || !failed.getFailedCommands().contains(cmd)) {
+          super.processAdd(cmd);
+        }
+      }
+      return failed;
+    }
+
+    private static void throwIfFailed(UpdateHandler.AddDocsException failed) {
+      if (failed != null) {
+        throw failed;
+      }
     }
 
     @Override
     public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+      UpdateHandler.AddDocsException failed = flushPendingAdds();
       if (cmd.isDeleteById()) {
         updateHandler.delete(cmd);
       } else {
@@ -84,22 +147,27 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
       }
       super.processDelete(cmd);
       changesSinceCommit = true;
+      throwIfFailed(failed);
     }
 
     @Override
     public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
+      UpdateHandler.AddDocsException failed = flushPendingAdds();
       updateHandler.mergeIndexes(cmd);
       super.processMergeIndexes(cmd);
+      throwIfFailed(failed);
     }
 
     @Override
     public void processCommit(CommitUpdateCommand cmd) throws IOException {
+      UpdateHandler.AddDocsException failed = flushPendingAdds();
       updateHandler.commit(cmd);
       super.processCommit(cmd);
       if (!cmd.softCommit) {
         // a hard commit means we don't need to flush the transaction log
         changesSinceCommit = false;
       }
+      throwIfFailed(failed);
     }
 
     /**
@@ -107,6 +175,10 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
      */
     @Override
     public void processRollback(RollbackUpdateCommand cmd) throws IOException {
+      if (pendingAdds != null) {
+        // rolling back discards uncommitted adds anyway
+        pendingAdds.clear();
+      }
       updateHandler.rollback(cmd);
       super.processRollback(cmd);
       changesSinceCommit = false;
@@ -115,10 +187,12 @@ public class RunUpdateProcessorFactory extends UpdateRequestProcessorFactory {
 
     @Override
     public void finish() throws IOException {
+      UpdateHandler.AddDocsException failed = flushPendingAdds();
       if (changesSinceCommit && updateHandler.getUpdateLog() != null) {
         updateHandler.getUpdateLog().finish(null);
       }
       super.finish();
+      throwIfFailed(failed);
     }
   }
 }
@@ -39,6 +39,7 @@ import org.apache.solr.update.CommitUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
 import org.apache.solr.update.MergeIndexesCommand;
 import org.apache.solr.update.RollbackUpdateCommand;
+import org.apache.solr.update.UpdateHandler;
 import org.apache.solr.update.SolrCmdDistributor.Error;
 import org.apache.solr.update.processor.DistributedUpdateProcessor.DistribPhase;
 
@@ -149,6 +150,14 @@ public class TolerantUpdateProcessor extends UpdateRequestProcessor {
       
       super.processAdd(cmd);
 
+    } catch (UpdateHandler.AddDocsException e) {
+      // earlier adds of a batch failed when it was written, not this one
+      firstErrTracker.caught(e);
+      addBatchErrors(e);
+
+      if (knownErrors.size() > maxErrors) {
+        firstErrTracker.throwFirst();
+      }
     } catch (Throwable t) { 
       firstErrTracker.caught(t);
       knownErrors.add(new ToleratedUpdateError
@@ -169,6 +178,14 @@ public class TolerantUpdateProcessor extends UpdateRequestProcessor {
 
       super.processDelete(cmd);
 
+    } catch (UpdateHandler.AddDocsException e) {
+      // the delete was applied, but buffered adds written before it failed
+      firstErrTracker.caught(e);
+      addBatchErrors(e);
+
+      if (knownErrors.size() > maxErrors) {
+        firstErrTracker.throwFirst();
+      }
     } catch (Throwable t) {
       firstErrTracker.caught(t);
 
@@ -191,6 +208,14 @@ public class TolerantUpdateProcessor extends UpdateRequestProcessor {
     }
   }
 
+  /** Records an error for each document of a batch that couldn't be added. */
+  private void addBatchErrors(UpdateHandler.AddDocsException e) {
+    for (int i = 0; i < e.getFailedCommands().size(); i++) {
+      AddUpdateCommand failedCmd = e.getFailedCommands().get(i);
+      knownErrors.add(new ToleratedUpdateError(CmdType.ADD, failedCmd.getPrintableId(), e.getFailures().get(i).getMessage()));
+    }
+  }
+
   @Override
   public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
     try {
@@ -236,6 +261,10 @@ public class TolerantUpdateProcessor extends UpdateRequestProcessor {
 
     try {
       super.finish();
+    } catch (UpdateHandler.AddDocsException e) {
+      // buffered adds written on finish failed
+      firstErrTracker.caught(e);
+      addBatchErrors(e);
     } catch (DistributedUpdateProcessor.DistributedUpdatesAsyncException duae) {
       firstErrTracker.caught(duae);
 
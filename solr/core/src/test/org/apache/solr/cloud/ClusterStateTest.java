@@ -16,6 +16,7 @@
  */
 package org.apache.solr.cloud;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -83,4 +84,47 @@ public class ClusterStateTest extends SolrTestCaseJ4 {
     assertEquals("Should not have collections", 0, loadedClusterState.getCollectionsMap().size());
   }
 
+  @Test
+  @SuppressWarnings({"unchecked"})
+  public void testReuseUnchangedSlices() throws Exception {
+    Set<String> liveNodes = new HashSet<>();
+    liveNodes.add("node1:10000_solr");
+    Map<String,Slice> slices = new HashMap<>();
+    for (String shard : new String[] {"shard1", "shard2"}) {
+      Map<String,Replica> replicas = new HashMap<>();
+      for (int i = 1; i <= 2; i++) {
+        Map<String,Object> props = new HashMap<>();
+        props.put("node_name", "node1:10000_solr");
+        props.put("core", "collection1_" + shard + "_replica" + i);
+        String name = "core_node_" + shard + "_" + i;
+        replicas.put(name, new Replica(name, props, "collection1", shard));
+      }
+      slices.put(shard, new Slice(shard, replicas, null, "collection1"));
+    }
+    Map<String,Object> collProps = new HashMap<>();
+    collProps.put(ZkStateReader.CONFIGNAME_PROP, ConfigSetsHandler.DEFAULT_CONFIGSET_NAME);
+    ClusterState clusterState = new ClusterState(liveNodes,
+        Collections.singletonMap("collection1", new DocCollection("collection1", slices, collProps, DocRouter.DEFAULT)));
+    byte[] bytes = Utils.toJSON(clusterState);
+    DocCollection v1 = ClusterState.createFromJson(1, bytes, liveNodes).getCollection("collection1");
+
+    // the same state again: everything is reused
+    DocCollection same = ClusterState.createFromJson(2, bytes, liveNodes, v1).getCollection("collection1");
+    assertSame(v1.getSlice("shard1"), same.getSlice("shard1"));
+    assertSame(v1.getSlice("shard2"), same.getSlice("shard2"));
+
+    // one replica of shard2 goes down: shard1 and the other replica of shard2 are reused
+    Map<String,Object> json = (Map<String,Object>) Utils.fromJSON(bytes);
+    Map<String,Object> shards = (Map<String,Object>) ((Map<String,Object>) json.get("collection1")).get(DocCollection.SHARDS);
+    Map<String,Object> replicas = (Map<String,Object>) ((Map<String,Object>) shards.get("shard2")).get(Slice.REPLICAS);
+    ((Map<String,Object>) replicas.get("core_node_shard2_1")).put(ZkStateReader.STATE_PROP, Replica.State.DOWN.toString());
+    DocCollection v2 = ClusterState.createFromJson(3, Utils.toJSON(json), liveNodes, v1).getCollection("collection1");
+    assertSame(v1.getSlice("shard1"), v2.getSlice("shard1"));
+    assertNotSame(v1.getSlice("shard2"), v2.getSlice("shard2"));
+    assertEquals(Replica.State.DOWN, v2.getReplica("core_node_shard2_1").getState());
+    assertEquals(Replica.State.ACTIVE, v1.getReplica("core_node_shard2_1").getState());
+    assertSame(v1.getReplica("core_node_shard2_2"), v2.getReplica("core_node_shard2_2"));
+    assertEquals(3, v2.getZNodeVersion());
+  }
+
 }
@@ -17,17 +17,21 @@
 package org.apache.solr.cloud;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.cloud.DistributedQueue;
 import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.Pair;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.util.TimeOut;
@@ -278,6 +282,33 @@ public class DistributedQueueTest extends SolrTestCaseJ4 {
     assertTrue("Time was " + timeTaken + "ms, expected 250-1500ms", timeTaken > 250 && timeTaken < 1500);
   }
 
+  @Test
+  public void testPeekElementsInBatches() throws Exception {
+    String dqZNode = "/distqueue/test";
+    ZkDistributedQueue dq = makeDistributedQueue(dqZNode);
+    int numElements = ZkDistributedQueue.MULTI_READ_BATCH_SIZE * 2 + 5;
+    for (int i = 0; i < numElements; i++) {
+      dq.offer(String.valueOf(i).getBytes(UTF8));
+    }
+
+    AtomicInteger stats = new AtomicInteger();
+    List<Pair<String, byte[]>> elements = new ArrayList<>(dq.peekElements(numElements + 10, 0, s -> true, stat -> {
+      assertTrue(stat.getCtime() > 0);
+      stats.incrementAndGet();
+    }));
+    assertEquals(numElements, elements.size());
+    assertEquals(numElements, stats.get());
+    for (int i = 0; i < numElements; i++) {
+      assertEquals(String.valueOf(i), new String(elements.get(i).second(), UTF8));
+    }
+
+    // elements deleted by someone else are skipped
+    zkClient.delete(dqZNode + "/" + elements.get(1).first(), -1, true);
+    zkClient.delete(dqZNode + "/" + elements.get(numElements - 1).first(), -1, true);
+    assertEquals(numElements - 2, dq.peekElements(numElements, 0, s -> true).size());
+    assertEquals(3, dq.peekElements(3, 0, s -> true).size());
+  }
+
   private void forceSessionExpire() throws InterruptedException, TimeoutException {
     long sessionId = zkClient.getSolrZooKeeper().getSessionId();
     zkServer.expire(sessionId);
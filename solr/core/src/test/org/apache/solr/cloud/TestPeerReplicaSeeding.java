@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.cloud;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that replicas fetching the leader's index can also fetch its files from the other replicas
+ * that have the same commit.
+ */
+public class TestPeerReplicaSeeding extends SolrCloudTestCase {
+  private static final String COLLECTION = "peer_seeding";
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    System.setProperty("solr.indexfetcher.fetchFromPeers", "true");
+    System.setProperty("solr.indexfetcher.fetchThreads", "2");
+
+    configureCluster(3)
+        .addConfig("conf", configset("cloud-minimal"))
+        .configure();
+
+    CollectionAdminRequest.createCollection(COLLECTION, "conf", 1, 1, 0, 1)
+        .process(cluster.getSolrClient());
+    cluster.waitForActiveCollection(COLLECTION, 1, 2);
+  }
+
+  @AfterClass
+  public static void clearProperties() {
+    System.clearProperty("solr.indexfetcher.fetchFromPeers");
+    System.clearProperty("solr.indexfetcher.fetchThreads");
+  }
+
+  @Test
+  public void testNewReplicaFetchesFromPeers() throws Exception {
+    UpdateRequest req = new UpdateRequest();
+    for (int i = 0; i < 100; i++) {
+      req.add("id", Integer.toString(i));
+    }
+    req.commit(cluster.getSolrClient(), COLLECTION);
+
+    DocCollection collection = getCollectionState(COLLECTION);
+    TestPullReplica.waitForNumDocsInAllReplicas(100, collection.getReplicas(), "*:*", null, null);
+    Set<String> initialReplicas = collection.getReplicas().stream().map(Replica::getName).collect(Collectors.toSet());
+
+    // the pull replica has the leader's commit, so the new replica can fetch files from both
+    CollectionAdminRequest.addReplicaToShard(COLLECTION, "shard1", Replica.Type.PULL)
+        .process(cluster.getSolrClient());
+    cluster.waitForActiveCollection(COLLECTION, 1, 3);
+
+    collection = getCollectionState(COLLECTION);
+    TestPullReplica.waitForNumDocsInAllReplicas(100, collection.getReplicas(), "*:*", null, null);
+    Replica newReplica = collection.getReplicas().stream()
+        .filter(r -> !initialReplicas.contains(r.getName())).findFirst().orElseThrow(AssertionError::new);
+    Map<String, Object> fetcherMetrics = getFetcherMetrics(newReplica);
+    assertNotNull("no files were fetched from the peer: " + fetcherMetrics, fetcherMetrics.get("filesFetchedFromPeers"));
+    assertTrue(fetcherMetrics.toString(), (Long) fetcherMetrics.get("filesFetchedFromPeers") > 0);
+    assertTrue(fetcherMetrics.toString(), (Long) fetcherMetrics.get("bytesFetchedFromPeers") > 0);
+
+    // a new commit on the leader is still fetched when the peers don't have it yet
+    new UpdateRequest().add("id", "100").commit(cluster.getSolrClient(), COLLECTION);
+    TestPullReplica.waitForNumDocsInAllReplicas(101, collection.getReplicas(EnumSet.of(Replica.Type.PULL)),
+        "*:*", null, null);
+  }
+
+  private static Map<String, Object> getFetcherMetrics(Replica replica) {
+    try (SolrCore core = cluster.getReplicaJetty(replica).getCoreContainer().getCore(replica.getCoreName())) {
+      MetricsMap fetcher = (MetricsMap) ((SolrMetricManager.GaugeWrapper<?>) core.getSolrMetricsContext().getMetricRegistry()
+          .getMetrics().get("REPLICATION./replication.fetcher")).getGauge();
+      return fetcher.getValue();
+    }
+  }
+}
@@ -52,6 +52,7 @@ import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.util.LogLevel;
@@ -399,6 +400,69 @@ public class TestPullReplica extends SolrCloudTestCase {
     }
   }
 
+  public void testRealTimeGetWithLeaderTlogTailing() throws Exception {
+    System.setProperty(LeaderTlogTailer.TAIL_INTERVAL_PROP, "100");
+    try {
+      CollectionAdminRequest.createCollection(collectionName, "conf", 1, 1, 0, 1)
+        .process(cluster.getSolrClient());
+      waitForState("Unexpected replica count", collectionName, activeReplicaCount(1, 0, 1));
+      DocCollection docCollection = assertNumberOfReplicas(1, 0, 1, false, true);
+      Replica pullReplica = docCollection.getReplicas(EnumSet.of(Replica.Type.PULL)).get(0);
+
+      // not committed, so only the leader's update log has it
+      cluster.getSolrClient().add(collectionName, new SolrInputDocument("id", "1", "foo_s", "bar"));
+
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set("distrib", false);
+      try (HttpSolrClient pullReplicaClient = getHttpSolrClient(pullReplica.getCoreUrl())) {
+        TimeOut t = new TimeOut(REPLICATION_TIMEOUT_SECS, TimeUnit.SECONDS, TimeSource.NANO_TIME);
+        SolrDocument doc = pullReplicaClient.getById("1", params);
+        while (doc == null && !t.hasTimedOut()) {
+          Thread.sleep(100);
+          doc = pullReplicaClient.getById("1", params);
+        }
+        assertNotNull("Document was not tailed from the leader's update log", doc);
+        assertEquals("bar", doc.getFieldValue("foo_s"));
+      }
+    } finally {
+      System.clearProperty(LeaderTlogTailer.TAIL_INTERVAL_PROP);
+    }
+  }
+
+  public void testSearchWithLeaderTlogTailing() throws Exception {
+    System.setProperty(LeaderTlogTailer.TAIL_INTERVAL_PROP, "100");
+    try {
+      CollectionAdminRequest.createCollection(collectionName, "conf", 1, 1, 0, 1)
+        .process(cluster.getSolrClient());
+      waitForState("Unexpected replica count", collectionName, activeReplicaCount(1, 0, 1));
+      DocCollection docCollection = assertNumberOfReplicas(1, 0, 1, false, true);
+      Replica pullReplica = docCollection.getReplicas(EnumSet.of(Replica.Type.PULL)).get(0);
+
+      cluster.getSolrClient().add(collectionName, new SolrInputDocument("id", "1", "foo_s", "bar"));
+      cluster.getSolrClient().commit(collectionName);
+      waitForNumDocsInAllReplicas(1, docCollection.getReplicas(EnumSet.of(Replica.Type.PULL)));
+
+      // not committed, so only searches over the tailed updates see them
+      cluster.getSolrClient().add(collectionName, new SolrInputDocument("id", "2", "foo_s", "bar"));
+      cluster.getSolrClient().deleteById(collectionName, "1");
+
+      try (HttpSolrClient pullReplicaClient = getHttpSolrClient(pullReplica.getCoreUrl())) {
+        SolrQuery query = new SolrQuery("foo_s:bar");
+        query.set("distrib", false);
+        TimeOut t = new TimeOut(REPLICATION_TIMEOUT_SECS, TimeUnit.SECONDS, TimeSource.NANO_TIME);
+        SolrDocumentList results = pullReplicaClient.query(query).getResults();
+        while (!(results.getNumFound() == 1 && "2".equals(results.get(0).getFieldValue("id"))) && !t.hasTimedOut()) {
+          Thread.sleep(100);
+          results = pullReplicaClient.query(query).getResults();
+        }
+        assertEquals("Tailed updates are not searchable on the PULL replica", 1, results.getNumFound());
+        assertEquals("2", results.get(0).getFieldValue("id"));
+      }
+    } finally {
+      System.clearProperty(LeaderTlogTailer.TAIL_INTERVAL_PROP);
+    }
+  }
+
   /*
    * validate that replication still happens on a new leader
    */
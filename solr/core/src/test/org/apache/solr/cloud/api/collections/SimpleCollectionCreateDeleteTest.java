@@ -20,6 +20,8 @@ import org.apache.solr.client.solrj.embedded.JettySolrRunner;
 import org.apache.solr.client.solrj.request.CollectionAdminRequest;
 import org.apache.solr.cloud.AbstractFullDistribZkTestBase;
 import org.apache.solr.cloud.OverseerCollectionConfigSetProcessor;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.util.NamedList;
@@ -30,6 +32,8 @@ import org.apache.solr.util.TimeOut;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -176,6 +180,34 @@ public class SimpleCollectionCreateDeleteTest extends AbstractFullDistribZkTestB
         }
     }
 
+    @Test
+    @ShardsFixed(num = 1)
+    public void testCreateManyShardsWithBoundedConcurrency() throws Exception {
+        System.setProperty("solr.maxConcurrentCoreCreations", "2");
+        try {
+            for (boolean prs : new boolean[] {false, true}) {
+                String collectionName = "SimpleCollectionCreateDeleteTest.manyShards" + (prs ? "PRS" : "");
+                int numShards = 7;
+                CollectionAdminRequest.Create create = CollectionAdminRequest.createCollection(collectionName, numShards, 1)
+                        .setPerReplicaState(prs);
+                NamedList<Object> request = create.process(cloudClient).getResponse();
+                assertTrue("Collection creation should not have failed", request.get("success") != null);
+
+                DocCollection coll = cloudClient.getClusterStateProvider().getCollection(collectionName);
+                assertEquals(numShards, coll.getSlices().size());
+                Set<String> coreNames = new HashSet<>();
+                for (Replica replica : coll.getReplicas()) {
+                    coreNames.add(replica.getCoreName());
+                }
+                assertEquals("core names should be unique", numShards, coreNames.size());
+
+                cloudClient.request(CollectionAdminRequest.deleteCollection(collectionName));
+            }
+        } finally {
+            System.clearProperty("solr.maxConcurrentCoreCreations");
+        }
+    }
+
     public SolrZkClient getZkClient() {
         return cloudClient.getZkStateReader().getZkClient();
     }
@@ -70,6 +70,8 @@ public class ZkStateReaderTest extends SolrTestCaseJ4 {
       assertTrue(reader.getClusterState().getCollectionRef("c1").isLazilyLoaded());
       reader.registerCore("c1");
       assertFalse(reader.getClusterState().getCollectionRef("c1").isLazilyLoaded());
+      // state.json didn't change, so the watched state is returned without parsing it again
+      assertSame(reader.getClusterState().getCollection("c1"), reader.getCollectionLive("c1"));
       reader.unregisterCore("c1");
       assertTrue(reader.getClusterState().getCollectionRef("c1").isLazilyLoaded());
 
@@ -31,6 +31,7 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.regex.Pattern;
 
+import com.codahale.metrics.Gauge;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import org.apache.commons.exec.OS;
@@ -42,6 +43,7 @@ import org.apache.solr.handler.admin.CollectionsHandler;
 import org.apache.solr.handler.admin.ConfigSetsHandler;
 import org.apache.solr.handler.admin.CoreAdminHandler;
 import org.apache.solr.handler.admin.InfoHandler;
+import org.apache.solr.metrics.SolrMetricManager;
 import org.junit.AfterClass;
 import org.junit.Assume;
 import org.junit.BeforeClass;
@@ -115,10 +117,22 @@ public class TestCoreContainer extends SolrTestCaseJ4 {
     CoreContainer cores = init(CONFIGSETS_SOLR_XML);
 
     try {
+      Gauge<?> configLoadMs = (Gauge<?>) cores.getMetricManager().registry(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node))
+          .getMetrics().get("CONTAINER.startup.configLoadMs");
+      Object initialConfigLoadMs = configLoadMs.getValue();
+
       SolrCore core1 = cores.create("core1", ImmutableMap.of("configSet", "minimal"));
       SolrCore core2 = cores.create("core2", ImmutableMap.of("configSet", "minimal"));
       
       assertSame(core1.getLatestSchema(), core2.getLatestSchema());
+      // the parsed solrconfig is shared, but each core gets its own copy to substitute properties into
+      assertNotSame(core1.getSolrConfig(), core2.getSolrConfig());
+      assertNotSame(core1.getSolrConfig().getDocument(), core2.getSolrConfig().getDocument());
+      assertEquals(core1.getSolrConfig().luceneMatchVersion, core2.getSolrConfig().luceneMatchVersion);
+      assertTrue(cores.getConfigSetService().getConfigLoadTimeMs() >= 0);
+      // only the cores loaded on startup are reported
+      cores.reload("core1");
+      assertEquals(initialConfigLoadMs, configLoadMs.getValue());
 
     } finally {
       cores.shutdown();
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestIndexFilePrewarmer extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  private IndexFilePrewarmer createPrewarmer(Object... args) {
+    IndexFilePrewarmer prewarmer = new IndexFilePrewarmer(h.getCore());
+    NamedList<Object> nl = new NamedList<>();
+    for (int i = 0; i < args.length; i += 2) {
+      nl.add((String) args[i], args[i + 1]);
+    }
+    prewarmer.init(nl);
+    return prewarmer;
+  }
+
+  @Test
+  public void testPrewarmFirstSearcher() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "name", "name " + i));
+    }
+    assertU(commit());
+
+    IndexFilePrewarmer prewarmer = createPrewarmer(IndexFilePrewarmer.FILE_TYPES, "tip,tim,cfs,si",
+        IndexFilePrewarmer.MAX_MB_PER_SEC, "100");
+    long expectedBytes = h.getCore().withSearcher(searcher -> {
+      List<String> files = prewarmer.getFilesToPrewarm(searcher.getIndexReader().directory(),
+          searcher.getIndexReader().getIndexCommit().getFileNames());
+      assertFalse(files.isEmpty());
+      long bytes = 0;
+      String previousExtension = null;
+      for (String file : files) {
+        String extension = IndexFileNames.getExtension(file);
+        assertTrue(file, Arrays.asList("tip", "tim", "cfs", "si").contains(extension));
+        if (previousExtension != null && !previousExtension.equals(extension)) {
+          List<String> order = Arrays.asList("tip", "tim", "cfs", "si");
+          assertTrue("files should be sorted by type: " + files, order.indexOf(previousExtension) < order.indexOf(extension));
+        }
+        previousExtension = extension;
+        bytes += searcher.getIndexReader().directory().fileLength(file);
+      }
+
+      prewarmer.newSearcher(searcher, null);
+      return bytes;
+    });
+    assertNotNull(prewarmer.getPrewarm());
+    assertEquals(expectedBytes, (long) prewarmer.getPrewarm().get(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNoPrewarmOnNewSearcher() throws Exception {
+    assertU(adoc("id", "100"));
+    assertU(commit());
+
+    IndexFilePrewarmer prewarmer = createPrewarmer();
+    h.getCore().withSearcher(searcher -> {
+      // a current searcher means the core was already serving
+      prewarmer.newSearcher(searcher, searcher);
+      return null;
+    });
+    assertNull(prewarmer.getPrewarm());
+  }
+}
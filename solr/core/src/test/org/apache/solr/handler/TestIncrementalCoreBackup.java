@@ -16,10 +16,14 @@
  */
 package org.apache.solr.handler;
 
+import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.backup.BackupFilePaths;
 import org.apache.solr.core.backup.BackupId;
@@ -34,9 +38,12 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 @LuceneTestCase.SuppressCodecs({"SimpleText"}) // Backups do checksum validation against a footer value not present in 'SimpleText'
 public class TestIncrementalCoreBackup extends SolrTestCaseJ4 {
@@ -83,6 +90,122 @@ public class TestIncrementalCoreBackup extends SolrTestCaseJ4 {
         }
     }
 
+    @Test
+    public void testBackupSkipsFilesUploadedByOtherShards() throws Exception {
+        assertU(adoc("id", "1"));
+        assertU(adoc("id", "2"));
+        assertU(commit());
+
+        final Path locationPath = createBackupLocation();
+        final URI locationUri = bootstrapBackupLocation(locationPath);
+        final ShardBackupId firstShardBackupId = new ShardBackupId("shard1", BackupId.zero());
+        final ShardBackupId secondShardBackupId = new ShardBackupId("shard2", BackupId.zero());
+
+        final CoreContainer cores = h.getCoreContainer();
+        cores.getAllowPaths().add(Paths.get(locationUri));
+        try (final CoreAdminHandler admin = new CoreAdminHandler(cores)) {
+            SolrQueryResponse resp = new SolrQueryResponse();
+            admin.handleRequestBody
+                    (req(CoreAdminParams.ACTION, CoreAdminParams.CoreAdminAction.BACKUPCORE.toString(),
+                            "core", DEFAULT_TEST_COLLECTION_NAME,
+                            "location", locationPath.toString(),
+                            CoreAdminParams.SHARD_BACKUP_ID, firstShardBackupId.getIdAsString())
+                            , resp);
+            assertNull("Backup should have succeeded", resp.getException());
+            assertTrue((Integer) ((NamedList<?>) resp.getResponse()).get("uploadedIndexFileCount") > 0);
+
+            // no previous backup point, but the same segments were already uploaded by the first backup
+            resp = new SolrQueryResponse();
+            admin.handleRequestBody
+                    (req(CoreAdminParams.ACTION, CoreAdminParams.CoreAdminAction.BACKUPCORE.toString(),
+                            "core", DEFAULT_TEST_COLLECTION_NAME,
+                            "location", locationPath.toString(),
+                            CoreAdminParams.SHARD_BACKUP_ID, secondShardBackupId.getIdAsString())
+                            , resp);
+            assertNull("Backup should have succeeded", resp.getException());
+            assertEquals(0, ((NamedList<?>) resp.getResponse()).get("uploadedIndexFileCount"));
+            simpleBackupCheck(locationUri, secondShardBackupId);
+
+            try (BackupRepository backupRepository = cores.newBackupRepository(null)) {
+                final BackupFilePaths backupFilePaths = new BackupFilePaths(backupRepository, locationUri);
+                final ShardBackupMetadata first = ShardBackupMetadata.from(backupRepository,
+                        backupFilePaths.getShardBackupMetadataDir(), firstShardBackupId);
+                final ShardBackupMetadata second = ShardBackupMetadata.from(backupRepository,
+                        backupFilePaths.getShardBackupMetadataDir(), secondShardBackupId);
+                assertEquals(new HashSet<>(first.listUniqueFileNames()), new HashSet<>(second.listUniqueFileNames()));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentShardsSharingSegments() throws Exception {
+        assertU(adoc("id", "1"));
+        assertU(adoc("id", "2"));
+        assertU(commit());
+
+        final Path locationPath = createBackupLocation();
+        final URI locationUri = bootstrapBackupLocation(locationPath);
+        final ShardBackupId firstShardBackupId = new ShardBackupId("shard1", BackupId.zero());
+        final ShardBackupId secondShardBackupId = new ShardBackupId("shard2", BackupId.zero());
+        final ShardBackupId thirdShardBackupId = new ShardBackupId("shard3", BackupId.zero());
+
+        final CoreContainer cores = h.getCoreContainer();
+        cores.getAllowPaths().add(Paths.get(locationUri));
+        try (final CoreAdminHandler admin = new CoreAdminHandler(cores);
+             BackupRepository backupRepository = cores.newBackupRepository(null)) {
+            assertNull("Backup should have succeeded", backupCore(admin, locationPath, firstShardBackupId).getException());
+
+            // leave a partial copy behind under one of the shared names, as an interrupted upload would
+            final BackupFilePaths backupFilePaths = new BackupFilePaths(backupRepository, locationUri);
+            final ShardBackupMetadata first = ShardBackupMetadata.from(backupRepository,
+                    backupFilePaths.getShardBackupMetadataDir(), firstShardBackupId);
+            final String sharedFileName = first.listUniqueFileNames().stream()
+                    .filter(name -> name.endsWith(".si")).findFirst().get();
+            final Path sharedFile = Paths.get(backupFilePaths.getIndexDir()).resolve(sharedFileName);
+            final byte[] bytes = Files.readAllBytes(sharedFile);
+            Files.write(sharedFile, Arrays.copyOf(bytes, bytes.length / 2));
+
+            // two shards referencing the same segments back up concurrently
+            final Thread second = new Thread(() -> assertNull(backupCore(admin, locationPath, secondShardBackupId).getException()));
+            final Thread third = new Thread(() -> assertNull(backupCore(admin, locationPath, thirdShardBackupId).getException()));
+            second.start();
+            third.start();
+            second.join();
+            third.join();
+
+            final Set<String> referenced = new HashSet<>();
+            for (ShardBackupId shardBackupId : Arrays.asList(firstShardBackupId, secondShardBackupId, thirdShardBackupId)) {
+                simpleBackupCheck(locationUri, shardBackupId);
+                final ShardBackupMetadata metadata = ShardBackupMetadata.from(backupRepository,
+                        backupFilePaths.getShardBackupMetadataDir(), shardBackupId);
+                for (String name : metadata.listUniqueFileNames()) {
+                    try (IndexInput in = backupRepository.openInput(backupFilePaths.getIndexDir(), name, IOContext.READONCE)) {
+                        CodecUtil.checksumEntireFile(in);
+                    }
+                    referenced.add(name);
+                }
+            }
+            assertTrue(referenced.contains(sharedFileName));
+            // the uploads under names of their own were all renamed to the shared names
+            assertEquals(referenced, new HashSet<>(Arrays.asList(backupRepository.listAll(backupFilePaths.getIndexDir()))));
+        }
+    }
+
+    private static SolrQueryResponse backupCore(CoreAdminHandler admin, Path locationPath, ShardBackupId shardBackupId) {
+        final SolrQueryResponse resp = new SolrQueryResponse();
+        try {
+            admin.handleRequestBody
+                    (req(CoreAdminParams.ACTION, CoreAdminParams.CoreAdminAction.BACKUPCORE.toString(),
+                            "core", DEFAULT_TEST_COLLECTION_NAME,
+                            "location", locationPath.toString(),
+                            CoreAdminParams.SHARD_BACKUP_ID, shardBackupId.getIdAsString())
+                            , resp);
+        } catch (Exception e) {
+            resp.setException(e);
+        }
+        return resp;
+    }
+
     public void testBackupBeforeFirstCommit() throws Exception {
 
         // even w/o a user sending any data, the SolrCore initialiation logic should have automatically created
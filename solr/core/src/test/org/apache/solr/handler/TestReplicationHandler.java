@@ -34,8 +34,11 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -1586,6 +1589,61 @@ public class TestReplicationHandler extends SolrTestCaseJ4 {
     assertTrue(timeTakenInSeconds - approximateTimeInSeconds > 0);
   }
 
+  @Test
+  public void testParallelChunkedReplication() throws Exception {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("solr.indexfetcher.fetchThreads", "3");
+    properties.put("solr.indexfetcher.fetchChunkSizeMB", "0.01");
+    doTestReplicationWithFetcherProperties(properties);
+  }
+
+  @Test
+  public void testFooterChecksumReplication() throws Exception {
+    doTestReplicationWithFetcherProperties(Collections.singletonMap("solr.indexfetcher.useFooterChecksum", "true"));
+  }
+
+  private void doTestReplicationWithFetcherProperties(Map<String, String> properties) throws Exception {
+    //clean index
+    leaderClient.deleteByQuery("*:*");
+    leaderClient.commit();
+
+    followerJetty.stop();
+
+    //index docs large enough for the files to be sent in several packets
+    final int totalDocs = TestUtil.nextInt(random(), 17, 53);
+    for (int i = 0; i < totalDocs; i++)
+      index(leaderClient, "id", i, "name", TestUtil.randomSimpleString(random(), 1000 , 5000));
+    leaderClient.commit();
+
+    NamedList<Object> leaderQueryRsp = rQuery(totalDocs, "*:*", leaderClient);
+    SolrDocumentList leaderQueryResult = (SolrDocumentList) leaderQueryRsp.get("response");
+    assertEquals(totalDocs, leaderQueryResult.getNumFound());
+
+    properties.forEach(System::setProperty);
+    try {
+      //start follower
+      follower.setTestPort(leaderJetty.getLocalPort());
+      follower.copyConfigFile(CONF_DIR + "solrconfig-follower1.xml", "solrconfig.xml");
+      useFactory(null);
+      followerJetty = createAndStartJetty(follower);
+      followerClient.close();
+      followerClient = createNewSolrClient(followerJetty.getLocalPort());
+
+      pullFromLeaderToFollower();
+
+      NamedList<Object> followerQueryRsp = rQuery(totalDocs, "*:*", followerClient);
+      SolrDocumentList followerQueryResult = (SolrDocumentList) followerQueryRsp.get("response");
+      assertEquals(totalDocs, followerQueryResult.getNumFound());
+
+      String cmp = BaseDistributedSearchTestCase.compare(leaderQueryResult, followerQueryResult, 0, null);
+      assertEquals(null, cmp);
+      assertVersions(leaderClient, followerClient);
+      checkForSingleIndex(followerJetty, true);
+    } finally {
+      properties.keySet().forEach(System::clearProperty);
+    }
+  }
+
   @Test
   public void doTestIllegalFilePaths() throws Exception {
     // Loop through the file=, cf=, tlogFile= params and prove that it throws exception for path traversal attempts
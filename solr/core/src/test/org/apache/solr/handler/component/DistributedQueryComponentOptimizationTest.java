@@ -135,6 +135,46 @@ public class DistributedQueryComponentOptimizationTest extends SolrCloudTestCase
 
   }
 
+  @Test
+  public void testAutomaticSinglePass() throws Exception {
+    // 5 rows from each of the 3 shards is within the threshold
+    QueryResponse rsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery("q", "*:*", "fl", "id,test_sS",
+        "sort", "payload asc", "rows", "5", "debug", "track", ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, "20"));
+    assertFieldValues(rsp.getResults(), id, "7", "1", "6", "4", "2");
+    assertFieldValues(rsp.getResults(), "test_sS", "27", "21", "26", "24", "22");
+    assertNull("A small request should not have a GET_FIELDS phase", getTrack(rsp).get("GET_FIELDS"));
+
+    rsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery("q", "*:*", "fl", "id,test_sS",
+        "sort", "payload asc", "rows", "5", ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, "20"));
+    QueryResponse twoPassRsp = cluster.getSolrClient().query(COLLECTION,
+        new SolrQuery("q", "*:*", "fl", "id,test_sS", "sort", "payload asc", "rows", "5"));
+    compareResponses(rsp, twoPassRsp);
+
+    // too many rows
+    rsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery("q", "*:*", "fl", "id,test_sS",
+        "sort", "payload asc", "rows", "10", "debug", "track", ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, "20"));
+    assertNotNull(getTrack(rsp).get("GET_FIELDS"));
+
+    // not only stored fields
+    rsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery("q", "*:*", "fl", "id,test_sS,[docid]",
+        "sort", "payload asc", "rows", "5", "debug", "track", ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, "20"));
+    assertNotNull(getTrack(rsp).get("GET_FIELDS"));
+
+    // explicitly disabled
+    rsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery("q", "*:*", "fl", "id,test_sS",
+        "sort", "payload asc", "rows", "5", "debug", "track", ShardParams.DISTRIB_SINGLE_PASS_MAX_ROWS, "20",
+        ShardParams.DISTRIB_SINGLE_PASS, "false"));
+    assertNotNull(getTrack(rsp).get("GET_FIELDS"));
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static SimpleOrderedMap<Object> getTrack(QueryResponse rsp) {
+    SimpleOrderedMap<Object> track = (SimpleOrderedMap<Object>) rsp.getDebugMap().get("track");
+    assertNotNull(track);
+    assertNotNull(track.get("EXECUTE_QUERY"));
+    return track;
+  }
+
   @Test
   public void testOptimizations() throws Exception {
 
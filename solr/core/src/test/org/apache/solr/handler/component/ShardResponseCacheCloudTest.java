@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.cloud.MiniSolrCloudCluster;
+import org.apache.solr.cloud.SolrCloudTestCase;
+import org.apache.solr.common.cloud.DocCollection;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the coordinator's {@link ShardResponseCache} reuses shard responses while the shards don't change,
+ * and never serves them once a shard committed.
+ */
+public class ShardResponseCacheCloudTest extends SolrCloudTestCase {
+
+  private static final String COLLECTION = "shardResponseCache";
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    String connTimeout = "<int name=\"connTimeout\">${connTimeout:15000}</int>";
+    assertTrue(MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML.contains(connTimeout));
+    configureCluster(2)
+        .withSolrXml(MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML.replace(connTimeout,
+            connTimeout + "\n    <int name=\"shardResponseCacheMaxRamMB\">16</int>"))
+        .addConfig("conf", configset("cloud-minimal"))
+        .configure();
+
+    CollectionAdminRequest.createCollection(COLLECTION, "conf", 2, 1)
+        .processAndWait(cluster.getSolrClient(), DEFAULT_TIMEOUT);
+    cluster.getSolrClient().waitForState(COLLECTION, DEFAULT_TIMEOUT, TimeUnit.SECONDS,
+        (n, c) -> DocCollection.isFullyActive(n, c, 2, 1));
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 10; i++) {
+      update.add(sdoc("id", Integer.toString(i)));
+    }
+    update.commit(cluster.getSolrClient(), COLLECTION);
+  }
+
+  private static Map<String, Object> metrics(JettySolrRunner jetty) {
+    ShardResponseCache cache = ((HttpShardHandlerFactory) jetty.getCoreContainer().getShardHandlerFactory()).getShardResponseCache();
+    assertNotNull(cache);
+    Map<String, Object> metrics = new HashMap<>();
+    cache.getMetrics(metrics::put);
+    return metrics;
+  }
+
+  @Test
+  public void testRevalidatedUntilCommit() throws Exception {
+    JettySolrRunner coordinator = cluster.getJettySolrRunner(0);
+    SolrQuery query = new SolrQuery("q", "*:*", "fl", "id", "sort", "id asc");
+    try (SolrClient client = coordinator.newClient()) {
+      assertEquals(10, client.query(COLLECTION, query).getResults().getNumFound());
+      long revalidations = (Long) metrics(coordinator).get("revalidations");
+
+      // same request, unchanged shards: the shards confirm the cached responses instead of executing them
+      assertEquals(10, client.query(COLLECTION, query).getResults().getNumFound());
+      assertTrue(metrics(coordinator).toString(), (Long) metrics(coordinator).get("revalidations") >= revalidations + 2);
+
+      // a commit changes the index version of the shard that got the document: its cached response is not used
+      new UpdateRequest().add(sdoc("id", "10")).commit(cluster.getSolrClient(), COLLECTION);
+      revalidations = (Long) metrics(coordinator).get("revalidations");
+      assertEquals(11, client.query(COLLECTION, query).getResults().getNumFound());
+      assertTrue((Long) metrics(coordinator).get("revalidations") <= revalidations + 1);
+
+      assertEquals(11, client.query(COLLECTION, query).getResults().getNumFound());
+      assertTrue((Long) metrics(coordinator).get("revalidations") > revalidations);
+    }
+  }
+}
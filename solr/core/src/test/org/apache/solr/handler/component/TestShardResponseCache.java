@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.BasicUserPrincipal;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.Test;
+
+public class TestShardResponseCache extends SolrTestCaseJ4 {
+
+  private static final String SHARD = "host1:8983/solr/c_shard1_replica_n1|host2:8983/solr/c_shard1_replica_n2";
+
+  private static ShardRequest sreq(int purpose) {
+    ShardRequest sreq = new ShardRequest();
+    sreq.purpose = purpose;
+    return sreq;
+  }
+
+  private static NamedList<Object> response(String version, Object value) {
+    NamedList<Object> header = new NamedList<>();
+    header.add("status", 0);
+    if (version != null) {
+      header.add(ShardParams.SHARDS_CACHE_VERSION, version);
+    }
+    NamedList<Object> rsp = new NamedList<>();
+    rsp.add("responseHeader", header);
+    rsp.add("value", value);
+    return rsp;
+  }
+
+  @Test
+  public void testKey() {
+    ShardResponseCache cache = new ShardResponseCache(1024 * 1024, TimeUnit.SECONDS.toNanos(60));
+    ShardRequest sreq = sreq(ShardRequest.PURPOSE_GET_TOP_IDS);
+
+    String key = cache.getKey(sreq, SHARD, params("q", "foo", "rows", "10", CommonParams.NOW, "1000", CommonParams.REQUEST_ID, "a"), null);
+    assertNotNull(key);
+    // param order and per-request params don't matter
+    assertEquals(key, cache.getKey(sreq, SHARD, params("rows", "10", "q", "foo", CommonParams.NOW, "2000", CommonParams.REQUEST_ID, "b"), null));
+    assertNotEquals(key, cache.getKey(sreq, SHARD, params("q", "foo", "rows", "20"), null));
+    assertNotEquals(key, cache.getKey(sreq, "host3:8983/solr/c_shard2_replica_n1", params("q", "foo", "rows", "10"), null));
+
+    // not cacheable
+    assertNull(cache.getKey(sreq, SHARD, params("q", "foo", "fq", "date:[NOW-1DAY TO NOW]"), null));
+    assertNull(cache.getKey(sreq, SHARD, params("q", "foo", CommonParams.DEBUG, "track"), null));
+    assertNull(cache.getKey(sreq, SHARD, params("q", "foo", ShardParams.SHARDS_CACHE, "false"), null));
+    assertNull(cache.getKey(sreq, SHARD, params("ids", "1", CommonParams.QT, "/get"), null));
+    assertNull(cache.getKey(sreq(ShardRequest.PURPOSE_PRIVATE), SHARD, params("q", "foo"), null));
+  }
+
+  @Test
+  public void testVersions() {
+    ShardResponseCache cache = new ShardResponseCache(1024 * 1024, TimeUnit.SECONDS.toNanos(60));
+    String key = cache.getKey(sreq(ShardRequest.PURPOSE_GET_TOP_IDS), SHARD, params("q", "foo"), null);
+    assertNull(cache.get(SHARD, key));
+
+    // no version reported, nothing cached
+    cache.put(SHARD, key, response(null, "a"), "http://host1:8983/solr/c_shard1_replica_n1");
+    assertNull(cache.get(SHARD, key));
+
+    cache.put(SHARD, key, response("v1", "a"), "http://host1:8983/solr/c_shard1_replica_n1");
+    ShardResponse srsp = cache.get(SHARD, key);
+    assertNotNull(srsp);
+    assertEquals(SHARD, srsp.getShard());
+    assertEquals("http://host1:8983/solr/c_shard1_replica_n1", srsp.getShardAddress());
+    assertEquals("a", srsp.getSolrResponse().getResponse().get("value"));
+
+    // each hit gets its own copy
+    srsp.getSolrResponse().getResponse().setVal(1, "modified");
+    assertEquals("a", cache.get(SHARD, key).getSolrResponse().getResponse().get("value"));
+
+    // any response with a new version invalidates the responses of the old one
+    String otherKey = cache.getKey(sreq(ShardRequest.PURPOSE_GET_TOP_IDS), SHARD, params("q", "bar"), null);
+    cache.put(SHARD, otherKey, response("v2", "b"), "http://host2:8983/solr/c_shard1_replica_n2");
+    assertNull(cache.get(SHARD, key));
+    assertEquals("b", cache.get(SHARD, otherKey).getSolrResponse().getResponse().get("value"));
+
+    // partial results are not cached
+    NamedList<Object> partial = response("v2", "c");
+    @SuppressWarnings({"unchecked"})
+    NamedList<Object> header = (NamedList<Object>) partial.get("responseHeader");
+    header.add(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY, true);
+    cache.put(SHARD, key, partial, "http://host2:8983/solr/c_shard1_replica_n2");
+    assertNull(cache.get(SHARD, key));
+  }
+
+  @Test
+  public void testKeyPerUser() {
+    ShardResponseCache cache = new ShardResponseCache(1024 * 1024, TimeUnit.SECONDS.toNanos(60));
+    ShardRequest sreq = sreq(ShardRequest.PURPOSE_GET_TOP_IDS);
+    String anonymous = cache.getKey(sreq, SHARD, params("q", "foo"), null);
+    String alice = cache.getKey(sreq, SHARD, params("q", "foo"), new BasicUserPrincipal("alice"));
+    String bob = cache.getKey(sreq, SHARD, params("q", "foo"), new BasicUserPrincipal("bob"));
+    assertNotEquals(anonymous, alice);
+    assertNotEquals(alice, bob);
+    assertEquals(alice, cache.getKey(sreq, SHARD, params("q", "foo"), new BasicUserPrincipal("alice")));
+  }
+
+  @Test
+  public void testRevalidation() {
+    ShardResponseCache cache = new ShardResponseCache(1024 * 1024, 0);
+    String key = cache.getKey(sreq(ShardRequest.PURPOSE_GET_TOP_IDS), SHARD, params("q", "foo"), null);
+    assertNull(cache.lookup(SHARD, key));
+    assertEquals("a", cache.onResponse(SHARD, key, response("v1", "a"), "http://host1:8983/solr/c_shard1_replica_n1", null).get("value"));
+
+    // not trusted without asking the shard, but can be validated by it
+    assertNull(cache.get(SHARD, key));
+    ShardResponseCache.Entry validated = cache.lookup(SHARD, key);
+    assertNotNull(validated);
+    NamedList<Object> notModified = response("v1", null);
+    @SuppressWarnings({"unchecked"})
+    NamedList<Object> header = (NamedList<Object>) notModified.get("responseHeader");
+    header.add(ShardParams.SHARDS_CACHE_NOT_MODIFIED, true);
+    assertEquals("a", cache.onResponse(SHARD, key, notModified, "http://host1:8983/solr/c_shard1_replica_n1", validated).get("value"));
+
+    // the shard's index changed: its new response replaces the cached one
+    assertEquals("b", cache.onResponse(SHARD, key, response("v2", "b"), "http://host1:8983/solr/c_shard1_replica_n1", validated).get("value"));
+    assertEquals("v2", cache.lookup(SHARD, key).version);
+  }
+
+  @Test
+  public void testMaxAge() {
+    ShardResponseCache cache = new ShardResponseCache(1024 * 1024, 0);
+    String key = cache.getKey(sreq(ShardRequest.PURPOSE_GET_TOP_IDS), SHARD, params("q", "foo"), null);
+    cache.put(SHARD, key, response("v1", "a"), "http://host1:8983/solr/c_shard1_replica_n1");
+    // the shard version must be verified again before the response can be reused
+    assertNull(cache.get(SHARD, key));
+  }
+}
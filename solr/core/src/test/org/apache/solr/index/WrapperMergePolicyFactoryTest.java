@@ -65,6 +65,25 @@ public class WrapperMergePolicyFactoryTest extends SolrTestCaseJ4 {
     assertEquals("maxMergedSegmentMB", testMaxMergedSegmentMB, tmp.getMaxMergedSegmentMB(), 0.0d);
   }
 
+  public void testTimePartitionedMergePolicyFactory() {
+    final MergePolicyFactoryArgs args = new MergePolicyFactoryArgs();
+    args.add("partitionSeconds", 3600);
+    args.add(WrapperMergePolicyFactory.WRAPPED_PREFIX, "wrapped");
+    args.add("wrapped.class", TieredMergePolicyFactory.class.getName());
+
+    final MergePolicyFactory mpf = new TimePartitionedMergePolicyFactory(resourceLoader, args, null);
+    final MergePolicy mp = mpf.getMergePolicy();
+    assertSame(mp.getClass(), TimePartitionedMergePolicy.class);
+    final TimePartitionedMergePolicy tpmp = (TimePartitionedMergePolicy) mp;
+    assertEquals(3600, tpmp.getPartitionSeconds());
+    assertTrue(tpmp.toString(), tpmp.toString().contains("TieredMergePolicy"));
+
+    final MergePolicyFactoryArgs badArgs = new MergePolicyFactoryArgs();
+    badArgs.add("partitionSeconds", 0);
+    expectThrows(RuntimeException.class,
+        () -> new TimePartitionedMergePolicyFactory(resourceLoader, badArgs, null).getMergePolicy());
+  }
+
   public void testUpgradeIndexMergePolicyFactory() {
     final int N = 10;
     final Double wrappingNoCFSRatio = random().nextBoolean() ? null : random().nextInt(N+1)/((double)N); // must be: 0.0 <= value <= 1.0
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests {@link AdaptiveFilterPlanner} as used by {@link SolrIndexSearcher#getProcessedFilter}.
+ */
+public class TestAdaptiveFilters extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    System.setProperty("solr.test.adaptiveFilters", "true");
+    System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    initCore("solrconfig.xml", "schema_latest.xml");
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "foo_s", i % 2 == 0 ? "foo" : "bar", "val_i", Integer.toString(i)));
+    }
+    assertU(commit());
+  }
+
+  @AfterClass
+  public static void afterTests() {
+    System.clearProperty("solr.test.adaptiveFilters");
+  }
+
+  @Test
+  public void testCachedOnSecondUse() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertNotNull(h.getCore().getAdaptiveFilterPlanner());
+      SolrCache<Query, DocSet> filterCache = searcher.getFilterCache();
+
+      Query q = QParser.getParser("val_i:[0 TO 9]", null, req).getQuery();
+      assertEquals(10, searcher.getDocSet(Collections.singletonList(q)).size());
+      // a filter used once is not worth a cached bitset
+      assertNull(filterCache.get(q));
+
+      assertEquals(10, searcher.getDocSet(Collections.singletonList(q)).size());
+      assertNotNull(filterCache.get(q));
+
+      // explicit local params are respected
+      Query uncached = QParser.getParser("{!cache=false}val_i:[0 TO 4]", null, req).getQuery();
+      assertFalse(AdaptiveFilterPlanner.isAdaptive(uncached));
+      assertEquals(5, searcher.getDocSet(Collections.singletonList(uncached)).size());
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testPostFilterOnFirstUse() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      Query frange = QParser.getParser("{!frange l=5 u=10}val_i", null, req).getQuery();
+      assertTrue(frange instanceof PostFilter);
+
+      SolrIndexSearcher.ProcessedFilter pf = searcher.getProcessedFilter(null, Collections.singletonList(frange));
+      assertNotNull(pf.postFilter);
+      assertNull(pf.answer);
+      assertEquals(6, searcher.getDocSet(Collections.singletonList(frange)).size());
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testLeapfrogOrder() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      Query common = QParser.getParser("foo_s:bar", null, req).getQuery();
+      Query rare = QParser.getParser("id:7", null, req).getQuery();
+      Query explicit = QParser.getParser("{!cache=false}val_i:[0 TO 15]", null, req).getQuery();
+
+      SolrIndexSearcher.ProcessedFilter pf = searcher.getProcessedFilter(null, Arrays.asList(explicit, common, rare));
+      assertNull(pf.answer);
+      List<BooleanClause> clauses = ((BooleanQuery) pf.filter).clauses();
+      assertEquals(3, clauses.size());
+      // first-use filters are ordered by estimated hits, ahead of the explicitly uncached one
+      assertEquals(rare, clauses.get(0).getQuery());
+      assertEquals(common, clauses.get(1).getQuery());
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testDebugOutput() throws Exception {
+    assertJQ(req("q", "*:*", "fq", "foo_s:foo", "fq", "{!cache=false}val_i:[0 TO 4]", "debugQuery", "true")
+        , "/response/numFound==3"
+        , "/debug/adaptiveFilters/foo_s:foo/execution=='leapfrog'"
+        , "/debug/adaptiveFilters/foo_s:foo/estimatedHits==10"
+    );
+    // faceting plans the filters again; each filter is reported once
+    String response = h.query(req("q", "*:*", "fq", "foo_s:foo", "fq", "val_i:[0 TO 17]", "debugQuery", "true",
+        "facet", "true", "facet.field", "foo_s", "facet.query", "val_i:[0 TO 3]", "wt", "xml"));
+    assertEquals(response, response.indexOf("name=\"val_i:[0 TO 17]\""),
+        response.lastIndexOf("name=\"val_i:[0 TO 17]\""));
+  }
+}
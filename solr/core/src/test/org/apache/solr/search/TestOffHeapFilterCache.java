@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.TestUtil;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.junit.Test;
+
+/**
+ * Test for {@link OffHeapFilterCache}.
+ */
+public class TestOffHeapFilterCache extends SolrTestCase {
+
+  SolrMetricManager metricManager = new SolrMetricManager();
+  String registry = TestUtil.randomSimpleString(random(), 2, 10);
+  String scope = TestUtil.randomSimpleString(random(), 2, 10);
+
+  private BitDocSet randomBitDocSet(int maxDoc) {
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (int i = 0; i < maxDoc / 10; i++) {
+      bits.set(random().nextInt(maxDoc));
+    }
+    return new BitDocSet(bits);
+  }
+
+  private OffHeapFilterCache<String> newCache(Map<String, String> params, Object persistence, String suffix) {
+    OffHeapFilterCache<String> cache = new OffHeapFilterCache<>();
+    cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope + suffix);
+    cache.init(params, persistence, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  @Test
+  public void testOffHeapRoundTrip() throws IOException {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    OffHeapFilterCache<String> cache = newCache(params, null, "-1");
+
+    int maxDoc = TestUtil.nextInt(random(), 100_000, 200_000);
+    BitDocSet large = randomBitDocSet(maxDoc);
+    DocSet small = new SortedIntDocSet(new int[] {1, 5, 42});
+    cache.put("large", large);
+    cache.put("small", small);
+
+    DocSet fromCache = cache.get("large");
+    assertNotSame(large, fromCache);
+    // hits read the words in place instead of copying them onto the heap
+    assertTrue(fromCache instanceof OffHeapBitDocSet);
+    assertTrue(fromCache.ramBytesUsed() < maxDoc / 8);
+    assertEquals(large.getBits(), fromCache.getFixedBitSet());
+    assertEquals(large.size(), fromCache.size());
+    // small sets stay on heap and are returned as is
+    assertSame(small, cache.get("small"));
+    assertNull(cache.get("missing"));
+
+    assertTrue(cache.offHeapBytesUsed() >= maxDoc / 8);
+    Map<String, Object> nl = cache.getMetricsMap().getValue();
+    assertEquals(3L, nl.get("lookups"));
+    assertEquals(2L, nl.get("hits"));
+    assertEquals(cache.offHeapBytesUsed(), nl.get(OffHeapFilterCache.OFF_HEAP_BYTES_USED_PARAM));
+    // the heap footprint does not include the bitset
+    assertTrue(cache.ramBytesUsed() < maxDoc / 8);
+
+    DocSet computed = cache.computeIfAbsent("computed", k -> randomBitDocSet(maxDoc));
+    assertEquals(((BitDocSet) computed).getBits(), cache.get("computed").getFixedBitSet());
+    cache.put("unread", randomBitDocSet(maxDoc));
+
+    DocSet removed = cache.remove("large");
+    assertEquals(large.getBits(), removed.getFixedBitSet());
+    assertNull(cache.get("large"));
+    // the buffer of a set that was handed out may still be read, so it is not reused
+    assertEquals(0, cache.getBufferPool().size());
+    cache.close();
+    assertEquals(0, cache.offHeapBytesUsed());
+    assertEquals(1, cache.getBufferPool().size());
+    // sets handed out stay valid after the cache is closed
+    assertEquals(large.getBits(), fromCache.getFixedBitSet());
+  }
+
+  @Test
+  public void testOffHeapSetOperations() throws IOException {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    OffHeapFilterCache<String> cache = newCache(params, null, "-ops");
+
+    int maxDoc = TestUtil.nextInt(random(), 100_000, 200_000);
+    BitDocSet a = randomBitDocSet(maxDoc);
+    BitDocSet b = randomBitDocSet(maxDoc);
+    DocSet small = new SortedIntDocSet(new int[] {1, 5, 42, maxDoc - 1});
+    cache.put("a", a);
+    cache.put("b", b);
+    DocSet offA = cache.get("a");
+    DocSet offB = cache.get("b");
+    assertTrue(offA instanceof OffHeapBitDocSet);
+
+    for (DocSet other : new DocSet[] {b, offB, small}) {
+      assertEquals(a.intersectionSize(other), offA.intersectionSize(other));
+      assertEquals(a.intersects(other), offA.intersects(other));
+      assertEquals(a.unionSize(other), offA.unionSize(other));
+      assertEquals(a.andNotSize(other), offA.andNotSize(other));
+      assertEquals(a.intersection(other).getFixedBitSet(), offA.intersection(other).getFixedBitSet());
+      assertEquals(a.union(other).getFixedBitSet(), offA.union(other).getFixedBitSet());
+      assertEquals(a.andNot(other).getFixedBitSet(), offA.andNot(other).getFixedBitSet());
+      assertEquals(other.intersectionSize(a), other.intersectionSize(offA));
+    }
+
+    DocIterator expected = a.iterator();
+    DocIterator actual = offA.iterator();
+    while (expected.hasNext()) {
+      assertTrue(actual.hasNext());
+      assertEquals(expected.nextDoc(), actual.nextDoc());
+    }
+    assertFalse(actual.hasNext());
+    for (int i = 0; i < 1000; i++) {
+      int doc = random().nextInt(maxDoc);
+      assertEquals(a.exists(doc), offA.exists(doc));
+      assertEquals(a.getBits().get(doc), offA.getBits().get(doc));
+    }
+    cache.close();
+  }
+
+  @Test
+  public void testBuffersReusedAcrossSearchers() throws IOException {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    params.put(OffHeapFilterCache.MAX_POOLED_BUFFERS_PARAM, "3");
+    OffHeapFilterCache<String> cache = newCache(params, null, "-1");
+    Object persistence = cache.getBufferPool();
+
+    int maxDoc = 100_000;
+    for (int i = 0; i < 5; i++) {
+      cache.put("q" + i, randomBitDocSet(maxDoc));
+    }
+    // a slightly larger index still fits in the pooled buffers
+    OffHeapFilterCache<String> newCache = newCache(params, persistence, "-2");
+    assertSame(persistence, newCache.getBufferPool());
+    cache.close();
+    assertEquals(3, newCache.getBufferPool().size());
+
+    BitDocSet set = randomBitDocSet(maxDoc + 10);
+    newCache.put("grown", set);
+    assertEquals(2, newCache.getBufferPool().size());
+    assertEquals(set.getBits(), newCache.get("grown").getFixedBitSet());
+
+    // a differently sized index drops buffers of the old size
+    newCache.put("other", randomBitDocSet(maxDoc * 4));
+    assertEquals(0, newCache.getBufferPool().size());
+    newCache.close();
+  }
+
+  @Test
+  public void testPutReplacesAndReleases() throws IOException {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    OffHeapFilterCache<String> cache = newCache(params, null, "-1");
+
+    int maxDoc = 50_000;
+    BitDocSet first = randomBitDocSet(maxDoc);
+    BitDocSet second = randomBitDocSet(maxDoc);
+    assertNull(cache.put("q", first));
+    DocSet old = cache.put("q", second);
+    assertEquals(first.getBits(), old.getFixedBitSet());
+    assertEquals(second.getBits(), cache.get("q").getFixedBitSet());
+    assertEquals(1, cache.size());
+    // the replaced set was handed out, so its buffer is not reused
+    assertEquals(0, cache.getBufferPool().size());
+    cache.put("r", randomBitDocSet(maxDoc));
+    cache.remove("r");
+    assertEquals(0, cache.getBufferPool().size());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.offHeapBytesUsed());
+    cache.close();
+  }
+}
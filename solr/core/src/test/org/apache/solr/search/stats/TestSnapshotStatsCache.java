@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.stats;
+
+public class TestSnapshotStatsCache extends TestBaseStatsCache {
+  @Override
+  public void distribSetUp() throws Exception {
+    super.distribSetUp();
+    // the scores are compared with the control core, so terms missing from the snapshot can't be approximated
+    System.setProperty("solr.statsCache.exactFallback", "true");
+  }
+
+  @Override
+  public void distribTearDown() throws Exception {
+    super.distribTearDown();
+    System.clearProperty("solr.statsCache.exactFallback");
+  }
+
+  @Override
+  protected String getStatsCacheClassName() {
+    return SnapshotStatsCache.class.getName();
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.stats;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.response.SimpleSolrResponse;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests how {@link SnapshotStatsCache} builds its global snapshot from the tables of the shards.
+ */
+public class TestSnapshotStatsCacheMerge extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @Test
+  public void testOnlyTermsOfEveryShardAreExact() throws Exception {
+    SnapshotStatsCache cache = new SnapshotStatsCache();
+    cache.init(new PluginInfo("statsCache", Collections.emptyMap(), null, null));
+
+    // no snapshot yet: the first request retrieves exact stats and asks for the shard tables
+    SolrQueryRequest req = req();
+    try {
+      assertNotNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common")));
+      cache.mergeToGlobalStats(req, Arrays.asList(
+          shardResponse("shard1", new TermStats("text:common", 5, 7), new TermStats("text:rare1", 3, 3)),
+          shardResponse("shard2", new TermStats("text:common", 4, 6))));
+    } finally {
+      req.close();
+    }
+
+    // snapshot path: a term in the table of every shard is scored with the summed stats
+    req = req();
+    try {
+      ResponseBuilder rb = newResponseBuilder(req, "common");
+      assertNull(cache.retrieveStatsRequest(rb));
+      ShardRequest outgoing = new ShardRequest();
+      outgoing.params = new ModifiableSolrParams();
+      cache.doSendGlobalStats(rb, outgoing);
+      Map<String,TermStats> sent = StatsUtil.termStatsMapFromString(outgoing.params.get(StatsCache.TERM_STATS_KEY));
+      assertEquals(9, sent.get("text:common").docFreq);
+      assertEquals(13, sent.get("text:common").totalTermFreq);
+    } finally {
+      req.close();
+    }
+
+    // rare1 was only in the top-N of shard1, its docFreq on shard2 is unknown: it's approximated by default
+    req = req();
+    try {
+      assertNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common", "rare1")));
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testExactFallback() throws Exception {
+    SnapshotStatsCache cache = new SnapshotStatsCache();
+    cache.init(new PluginInfo("statsCache", Collections.singletonMap(SnapshotStatsCache.EXACT_FALLBACK_PARAM, "true"), null, null));
+
+    SolrQueryRequest req = req();
+    try {
+      assertNotNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common")));
+      cache.mergeToGlobalStats(req, Arrays.asList(
+          shardResponse("shard1", new TermStats("text:common", 5, 7), new TermStats("text:rare1", 3, 3)),
+          shardResponse("shard2", new TermStats("text:common", 4, 6))));
+    } finally {
+      req.close();
+    }
+
+    req = req();
+    try {
+      assertNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common")));
+    } finally {
+      req.close();
+    }
+    req = req();
+    try {
+      assertNotNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common", "rare1")));
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testQueryTermsAreRequestedFromTheShards() throws Exception {
+    SnapshotStatsCache cache = new SnapshotStatsCache();
+    // every request finds the snapshot expired
+    cache.init(new PluginInfo("statsCache", Collections.singletonMap(SnapshotStatsCache.MAX_AGE_PARAM, "0"), null, null));
+
+    SolrQueryRequest req = req();
+    try {
+      ShardRequest sreq = cache.retrieveStatsRequest(newResponseBuilder(req, "common"));
+      assertEquals(Collections.singleton(new Term("text", "common")),
+          StatsUtil.termsFromEncodedString(sreq.params.get(SnapshotStatsCache.SNAPSHOT_QUERY_TERMS_KEY)));
+      // rare2 isn't in any top-N, but the shards report it since it was requested, absent being 0
+      cache.mergeToGlobalStats(req, Arrays.asList(
+          shardResponse("shard1", new TermStats("text:common", 5, 7)),
+          shardResponse("shard2", new TermStats("text:common", 4, 6))));
+    } finally {
+      req.close();
+    }
+
+    req = req();
+    try {
+      ShardRequest sreq = cache.retrieveStatsRequest(newResponseBuilder(req, "common", "rare2"));
+      assertEquals(new HashSet<>(Arrays.asList(new Term("text", "common"), new Term("text", "rare2"))),
+          StatsUtil.termsFromEncodedString(sreq.params.get(SnapshotStatsCache.SNAPSHOT_QUERY_TERMS_KEY)));
+      cache.mergeToGlobalStats(req, Arrays.asList(
+          shardResponse("shard1", new TermStats("text:common", 5, 7), new TermStats("text:rare2", 1, 2)),
+          shardResponse("shard2", new TermStats("text:common", 4, 6), new TermStats("text:rare2", 0, 0))));
+    } finally {
+      req.close();
+    }
+
+    req = req();
+    try {
+      ResponseBuilder rb = newResponseBuilder(req, "rare2");
+      ShardRequest outgoing = new ShardRequest();
+      outgoing.params = new ModifiableSolrParams();
+      cache.doSendGlobalStats(rb, outgoing);
+      Map<String,TermStats> sent = StatsUtil.termStatsMapFromString(outgoing.params.get(StatsCache.TERM_STATS_KEY));
+      assertEquals(1, sent.get("text:rare2").docFreq);
+      assertEquals(2, sent.get("text:rare2").totalTermFreq);
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testShardReportsRequestedQueryTerms() throws Exception {
+    assertU(adoc("id", "1", "text", "common rare3"));
+    assertU(adoc("id", "2", "text", "common"));
+    assertU(commit());
+
+    SnapshotStatsCache cache = new SnapshotStatsCache();
+    cache.init(new PluginInfo("statsCache", Collections.emptyMap(), null, null));
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set(SnapshotStatsCache.SNAPSHOT_KEY, true);
+    params.set(SnapshotStatsCache.SNAPSHOT_QUERY_TERMS_KEY, StatsUtil.termsToEncodedString(
+        new HashSet<>(Arrays.asList(new Term("text", "rare3"), new Term("text", "missing")))));
+    SolrQueryRequest req = req(params);
+    try {
+      ResponseBuilder rb = newResponseBuilder(req, "common");
+      h.getCore().withSearcher(searcher -> {
+        cache.returnLocalStats(rb, searcher);
+        return null;
+      });
+      // the top-N table is built in the background, the requested terms are always there
+      Map<String,TermStats> termStats = StatsUtil.termStatsMapFromString((String) rb.rsp.getValues().get(SnapshotStatsCache.SNAPSHOT_TERM_STATS_KEY));
+      assertEquals(1, termStats.get("text:rare3").docFreq);
+      assertEquals(0, termStats.get("text:missing").docFreq);
+      Map<String,CollectionStats> colStats = StatsUtil.colStatsMapFromString((String) rb.rsp.getValues().get(SnapshotStatsCache.SNAPSHOT_COL_STATS_KEY));
+      assertEquals(2, colStats.get("text").docCount);
+    } finally {
+      req.close();
+      assertU(delQ("*:*"));
+      assertU(commit());
+    }
+  }
+
+  @Test
+  public void testFailedShardDoesNotPublishSnapshot() throws Exception {
+    SnapshotStatsCache cache = new SnapshotStatsCache();
+    cache.init(new PluginInfo("statsCache", Collections.emptyMap(), null, null));
+
+    SolrQueryRequest req = req();
+    try {
+      assertNotNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common")));
+      NamedList<Object> exception = new NamedList<>();
+      exception.add("msg", "shard2 is down");
+      NamedList<Object> nl = new NamedList<>();
+      nl.add("exception", exception);
+      SimpleSolrResponse failed = new SimpleSolrResponse();
+      failed.setResponse(nl);
+      ShardResponse failedResponse = new ShardResponse();
+      failedResponse.setSolrResponse(failed);
+      cache.mergeToGlobalStats(req, Arrays.asList(
+          shardResponse("shard1", new TermStats("text:common", 5, 7)), failedResponse));
+    } finally {
+      req.close();
+    }
+
+    req = req();
+    try {
+      assertNotNull(cache.retrieveStatsRequest(newResponseBuilder(req, "common")));
+    } finally {
+      req.close();
+    }
+  }
+
+  private static ResponseBuilder newResponseBuilder(SolrQueryRequest req, String... terms) {
+    ResponseBuilder rb = new ResponseBuilder(req, new SolrQueryResponse(), Collections.emptyList());
+    BooleanQuery.Builder query = new BooleanQuery.Builder();
+    for (String term : terms) {
+      query.add(new TermQuery(new Term("text", term)), BooleanClause.Occur.SHOULD);
+    }
+    rb.setQuery(query.build());
+    return rb;
+  }
+
+  private static ShardResponse shardResponse(String shard, TermStats... tableTerms) {
+    Map<String,TermStats> termStats = new HashMap<>();
+    for (TermStats ts : tableTerms) {
+      termStats.put(ts.term, ts);
+    }
+    Map<String,CollectionStats> colStats = new HashMap<>();
+    colStats.put("text", new CollectionStats("text", 10, 10, 50, 40));
+    NamedList<Object> nl = new NamedList<>();
+    nl.add(ShardParams.SHARD_NAME, shard);
+    nl.add(SnapshotStatsCache.SNAPSHOT_TERM_STATS_KEY, StatsUtil.termStatsMapToString(termStats));
+    nl.add(SnapshotStatsCache.SNAPSHOT_COL_STATS_KEY, StatsUtil.colStatsMapToString(colStats));
+    SimpleSolrResponse rsp = new SimpleSolrResponse();
+    rsp.setResponse(nl);
+    ShardResponse shardResponse = new ShardResponse();
+    shardResponse.setSolrResponse(rsp);
+    return shardResponse;
+  }
+}
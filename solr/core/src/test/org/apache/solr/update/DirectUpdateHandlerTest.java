@@ -30,8 +30,10 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.store.Directory;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.MapSolrParams;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrEventListener;
 import org.apache.solr.index.TieredMergePolicyFactory;
@@ -214,6 +216,40 @@ public class DirectUpdateHandlerTest extends SolrTestCaseJ4 {
   }
 
 
+  @Test
+  public void testBatchedAppendOnlyAdds() throws Exception {
+    Map<String, Metric> metrics = h.getCoreContainer().getMetricManager()
+        .registry(h.getCore().getCoreMetricManager().getRegistryName()).getMetrics();
+    Meter cumulativeAdds = (Meter) metrics.get("UPDATE.updateHandler.cumulativeAdds");
+    long initialAdds = cumulativeAdds.getCount();
+
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 10; i++) {
+      if (i > 0) json.append(',');
+      json.append("{\"id\":\"batch").append(i).append("\",\"val_i\":").append(i).append('}');
+    }
+    json.append(']');
+    updateJ(json.toString(), params(UpdateParams.OVERWRITE, "false", UpdateParams.ADD_BATCH_SIZE, "4"));
+    assertEquals(10, cumulativeAdds.getCount() - initialAdds);
+    assertU(commit());
+    assertQ(req("q", "id:batch*"), "//*[@numFound='10']");
+
+    // a failing document is reported while the rest of its batch is still indexed
+    String bad = "[{\"id\":\"bad0\"},{\"id\":\"bad1\",\"val_i\":\"not_a_number\"},{\"id\":\"bad2\"}]";
+    ignoreException("not_a_number");
+    try {
+      SolrException e = expectThrows(SolrException.class,
+          () -> updateJ(bad, params(UpdateParams.OVERWRITE, "false", UpdateParams.ADD_BATCH_SIZE, "4")));
+      // the batch is written on finish, but the error names the document that failed
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+      assertTrue(e.getMessage(), e.getMessage().contains("[doc=bad1]"));
+    } finally {
+      unIgnoreException("not_a_number");
+    }
+    assertU(commit());
+    assertQ(req("q", "id:bad*"), "//*[@numFound='2']");
+  }
+
   @Test
   public void testAddRollback() throws Exception {
     // re-init the core
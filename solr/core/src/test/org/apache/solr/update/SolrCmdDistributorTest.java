@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.SocketException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -357,8 +358,99 @@ public class SolrCmdDistributorTest extends BaseDistributedSearchTestCase {
     testDeletes(true, false);
     getRfFromResponseShouldNotCloseTheInputStream();
     testStuckUpdates();
+    testSharedReplicaChannels();
+    testSharedReplicaChannelErrorsStayWithTheirLeaderRequest();
+  }
+
+  private void testSharedReplicaChannels() throws Exception {
+    final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
+    solrclient.commit(true, true);
+    long numFoundBefore = solrclient.query(new SolrQuery("*:*")).getResults().getNumFound();
+
+    System.setProperty(ReplicaUpdateChannels.ENABLED_PROP, "true");
+    UpdateShardHandler channelShardHandler = new UpdateShardHandler(UpdateShardHandlerConfig.DEFAULT);
+    try {
+      ReplicaUpdateChannels channels = channelShardHandler.getReplicaUpdateChannels();
+      assertNotNull(channels);
+
+      ZkNodeProps nodeProps = new ZkNodeProps(ZkStateReader.BASE_URL_PROP, solrclient.getBaseURL(),
+          ZkStateReader.CORE_NAME_PROP, "");
+      List<Node> nodes = Collections.singletonList(new StdNode(new ZkCoreNodeProps(nodeProps)));
+
+      // two concurrent leader requests share the channel to the replica
+      List<String> ids = new ArrayList<>();
+      try (SolrCmdDistributor first = new SolrCmdDistributor(channelShardHandler);
+           SolrCmdDistributor second = new SolrCmdDistributor(channelShardHandler)) {
+        for (int i = 0; i < 20; i++) {
+          for (SolrCmdDistributor cmdDistrib : Arrays.asList(first, second)) {
+            AddUpdateCommand cmd = new AddUpdateCommand(null);
+            String docId = String.valueOf(id.incrementAndGet());
+            ids.add(docId);
+            cmd.solrDoc = sdoc("id", docId);
+            cmdDistrib.distribAdd(cmd, nodes, new ModifiableSolrParams());
+          }
+        }
+        DeleteUpdateCommand dcmd = new DeleteUpdateCommand(null);
+        dcmd.setId(ids.get(0));
+        first.distribDelete(dcmd, nodes, new ModifiableSolrParams());
+
+        first.finish();
+        second.finish();
+        assertEquals(first.getErrors().toString(), 0, first.getErrors().size());
+        assertEquals(second.getErrors().toString(), 0, second.getErrors().size());
+      }
+
+      assertEquals(41, channels.getUpdatesSent());
+      assertTrue("updates should have been batched: " + channels.getBatchesSent(), channels.getBatchesSent() < 41);
+
+      solrclient.commit(true, true);
+      assertEquals(numFoundBefore + 39, solrclient.query(new SolrQuery("*:*")).getResults().getNumFound());
+    } finally {
+      System.clearProperty(ReplicaUpdateChannels.ENABLED_PROP);
+      channelShardHandler.close();
+    }
   }
   
+  private void testSharedReplicaChannelErrorsStayWithTheirLeaderRequest() throws Exception {
+    final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
+
+    System.setProperty(ReplicaUpdateChannels.ENABLED_PROP, "true");
+    UpdateShardHandler channelShardHandler = new UpdateShardHandler(UpdateShardHandlerConfig.DEFAULT);
+    try {
+      ZkNodeProps nodeProps = new ZkNodeProps(ZkStateReader.BASE_URL_PROP, solrclient.getBaseURL(),
+          ZkStateReader.CORE_NAME_PROP, "");
+      List<Node> nodes = Collections.singletonList(new StdNode(new ZkCoreNodeProps(nodeProps)));
+
+      List<String> goodIds = new ArrayList<>();
+      try (SolrCmdDistributor good = new SolrCmdDistributor(channelShardHandler);
+           SolrCmdDistributor bad = new SolrCmdDistributor(channelShardHandler)) {
+        for (int i = 0; i < 20; i++) {
+          AddUpdateCommand cmd = new AddUpdateCommand(null);
+          String docId = String.valueOf(id.incrementAndGet());
+          goodIds.add(docId);
+          cmd.solrDoc = sdoc("id", docId);
+          good.distribAdd(cmd, nodes, new ModifiableSolrParams());
+
+          // the replica rejects this one, possibly in a batch shared with the good updates
+          cmd = new AddUpdateCommand(null);
+          cmd.solrDoc = sdoc("id", String.valueOf(id.incrementAndGet()), "val_i", i == 10 ? "not_a_number" : i);
+          bad.distribAdd(cmd, nodes, new ModifiableSolrParams());
+        }
+        good.finish();
+        bad.finish();
+        assertEquals(good.getErrors().toString(), 0, good.getErrors().size());
+        assertFalse(bad.getErrors().isEmpty());
+      }
+
+      solrclient.commit(true, true);
+      assertEquals(goodIds.size(), solrclient.query(new SolrQuery("{!terms f=id}" + String.join(",", goodIds)))
+          .getResults().getNumFound());
+    } finally {
+      System.clearProperty(ReplicaUpdateChannels.ENABLED_PROP);
+      channelShardHandler.close();
+    }
+  }
+
   private void testDeletes(boolean dbq, boolean withFailures) throws Exception {
     final HttpSolrClient solrclient = (HttpSolrClient) clients.get(0);
     solrclient.commit(true, true);
@@ -20,17 +20,23 @@ import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.cloud.CompositeIdRouter;
 import org.apache.solr.common.cloud.DocRouter;
 import org.apache.solr.common.cloud.PlainIdRouter;
@@ -365,6 +371,91 @@ public class SolrIndexSplitterTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testSegmentKeyIsSharedAcrossReaders() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", String.valueOf(i)));
+    }
+    assertU(commit());
+    assertU(delI("3"));
+    assertU(commit());
+
+    SolrCore core = h.getCore();
+    Directory directory = core.getDirectoryFactory().get(core.getIndexDir(),
+        DirectoryFactory.DirContext.DEFAULT, core.getSolrConfig().indexConfig.lockType);
+    try (DirectoryReader reader1 = DirectoryReader.open(directory);
+         DirectoryReader reader2 = DirectoryReader.open(directory)) {
+      assertEquals(reader1.leaves().size(), reader2.leaves().size());
+      for (int i = 0; i < reader1.leaves().size(); i++) {
+        LeafReader leaf1 = reader1.leaves().get(i).reader();
+        LeafReader leaf2 = reader2.leaves().get(i).reader();
+        // independently opened readers have their own core keys but map to the same segment
+        assertNotSame(leaf1.getCoreCacheHelper().getKey(), leaf2.getCoreCacheHelper().getKey());
+        assertEquals(SolrIndexSplitter.segmentKey(leaf1), SolrIndexSplitter.segmentKey(leaf2));
+      }
+    } finally {
+      core.getDirectoryFactory().release(directory);
+    }
+  }
+
+  @Test
+  public void testLinkSplitAssignsEachDocToOneSubShard() throws Exception {
+    // several segments, some with deletions
+    Set<String> expected = new HashSet<>();
+    for (int segment = 0; segment < 3; segment++) {
+      for (int i = 0; i < 10; i++) {
+        String id = segment + "_" + i;
+        assertU(adoc("id", id));
+        expected.add(id);
+      }
+      assertU(commit());
+    }
+    assertU(delI("0_3"));
+    assertU(delI("1_5"));
+    assertU(delI("2_7"));
+    assertU(commit());
+    expected.remove("0_3");
+    expected.remove("1_5");
+    expected.remove("2_7");
+
+    List<SolrCore> subCores = new ArrayList<>();
+    try {
+      for (File indexDir : Arrays.asList(indexDir1, indexDir2, indexDir3)) {
+        subCores.add(h.getCoreContainer().create("split" + (subCores.size() + 1),
+            ImmutableMap.of("dataDir", indexDir.getAbsolutePath(), "configSet", "cloud-minimal")));
+      }
+
+      LocalSolrQueryRequest request = null;
+      try {
+        request = lrf.makeRequest("q", "dummy");
+        SolrQueryResponse rsp = new SolrQueryResponse();
+        // no ranges: docs are assigned round-robin, so every sub-index must see the same assignment
+        SplitIndexCommand command = new SplitIndexCommand(request, rsp, null, subCores, null,
+            new PlainIdRouter(), null, null, SolrIndexSplitter.SplitMethod.LINK);
+        doSplit(command);
+      } finally {
+        if (request != null) request.close();
+      }
+
+      Set<String> found = new HashSet<>();
+      for (SolrCore subCore : subCores) {
+        @SuppressWarnings("resource")
+        final EmbeddedSolrServer server = new EmbeddedSolrServer(h.getCoreContainer(), subCore.getName());
+        server.commit(true, true);
+        SolrDocumentList docs = server.query(new SolrQuery("*:*").setRows(100)).getResults();
+        assertEquals("sub-shard " + subCore.getName() + " has the wrong number of documents", expected.size() / 3, docs.size());
+        for (SolrDocument doc : docs) {
+          assertTrue(doc.getFieldValue("id") + " is in more than one sub-shard", found.add((String) doc.getFieldValue("id")));
+        }
+      }
+      assertEquals(expected, found);
+    } finally {
+      for (SolrCore subCore : subCores) {
+        h.getCoreContainer().unload(subCore.getName());
+      }
+    }
+  }
+
   private List<DocRouter.Range> getRanges(String id1, String id2) throws UnsupportedEncodingException {
     // find minHash/maxHash hash ranges
     byte[] bytes = id1.getBytes(StandardCharsets.UTF_8);
@@ -45,7 +45,9 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.ContentStreamBase;
 import org.apache.solr.index.NoMergePolicyFactory;
+import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
@@ -659,6 +661,31 @@ public class TestInPlaceUpdatesStandalone extends SolrTestCaseJ4 {
     return currentVersion;
   }
 
+  @Test
+  public void testUpdatingDocValuesFromCsv() throws Exception {
+    addAndGetVersion(sdoc("id", "1", "title_s", "first", "inplace_updatable_float", 41), null);
+    addAndGetVersion(sdoc("id", "2", "title_s", "second", "inplace_updatable_float", 42), null);
+    assertU(commit("softCommit", "false"));
+    int docid1 = getDocId("1");
+    int docid2 = getDocId("2");
+
+    LocalSolrQueryRequest req = (LocalSolrQueryRequest) req("f.inplace_updatable_float.update", "set");
+    req.setContentStreams(Collections.singletonList(
+        new ContentStreamBase.StringStream("id,inplace_updatable_float\n1,200\n2,300\n", "text/csv")));
+    h.query("/update", req);
+    assertU(commit("softCommit", "false"));
+
+    assertQ(req("q", "*:*", "sort", "id asc", "fl", "*,[docid]"),
+        "//*[@numFound='2']",
+        "//result/doc[1]/float[@name='inplace_updatable_float'][.='200.0']",
+        "//result/doc[2]/float[@name='inplace_updatable_float'][.='300.0']",
+        "//result/doc[1]/str[@name='title_s'][.='first']",
+        "//result/doc[2]/str[@name='title_s'][.='second']",
+        "//result/doc[1]/int[@name='[docid]'][.='"+docid1+"']",
+        "//result/doc[2]/int[@name='[docid]'][.='"+docid2+"']"
+        );
+  }
+
   /**
    * Helper method to search for the specified (uniqueKey field) id using <code>fl=[docid]</code> 
    * and return the internal lucene docid.
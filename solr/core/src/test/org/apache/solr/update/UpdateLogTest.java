@@ -221,6 +221,58 @@ public class UpdateLogTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testRecentInputDocumentIsValidatedByVersion() {
+    final BytesRef id = new BytesRef("recent");
+    int oldSize = ulog.recentDocsCacheSize;
+    ulog.recentDocsCacheSize = 10;
+    try {
+      SolrInputDocument doc = sdoc("id", "recent", "title_s", "title1", "_version_", "300");
+      ulogAdd(ulog, null, doc);
+      ulog.cacheRecentInputDocument(id, 300L, doc);
+
+      SolrInputDocument cached = ulog.getRecentInputDocument(id);
+      assertNotNull(cached);
+      assertNotSame(doc, cached);
+      assertEquals("title1", cached.getFieldValue("title_s"));
+
+      // a newer version of the document makes the cached one stale
+      ulogAdd(ulog, null, sdoc("id", "recent", "title_s", "title2", "_version_", "301"));
+      assertNull(ulog.getRecentInputDocument(id));
+    } finally {
+      ulog.recentDocsCacheSize = oldSize;
+    }
+  }
+
+  @Test
+  public void testAtomicUpdateUsesRecentInputDocument() throws Exception {
+    final BytesRef id = new BytesRef("e2e");
+    int oldSize = ulog.recentDocsCacheSize;
+    ulog.recentDocsCacheSize = 10;
+    try {
+      assertU(adoc(sdoc("id", "e2e", "title_s", "title1", "count_i", "1")));
+      // signatureField is indexed but neither stored nor docValues, so realtime get can't return it
+      assertU(adoc(sdoc("id", "e2e", "signatureField", map("set", "secret"), "count_i", map("inc", 1))));
+      assertU(commit());
+
+      SolrInputDocument cached = ulog.getRecentInputDocument(id);
+      assertNotNull(cached);
+      assertEquals(2, ((Number) cached.getFieldValue("count_i")).intValue());
+      assertFalse(cached.containsKey("signatureField"));
+
+      // merged from the cached document; must match what a merge from the index would produce
+      assertU(adoc(sdoc("id", "e2e", "count_i", map("inc", 1))));
+      assertU(commit());
+      assertQ(req("q", "id:e2e", "fl", "id,title_s,count_i"),
+          "//result[@numFound='1']",
+          "//str[@name='title_s'][.='title1']",
+          "//int[@name='count_i'][.='3']");
+      assertQ(req("q", "signatureField:secret"), "//result[@numFound='0']");
+    } finally {
+      ulog.recentDocsCacheSize = oldSize;
+    }
+  }
+
   /**
    * Simulate an add on a given updateLog.
    * <p>
@@ -17,15 +17,22 @@
 package org.apache.solr.update.processor;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.index.NoMergePolicyFactory;
 
 import org.apache.solr.update.UpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
 
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,9 +45,16 @@ public class DocExpirationUpdateProcessorFactoryTest extends UpdateProcessorTest
 
   @BeforeClass
   public static void beforeClass() throws Exception {
+    // segments must not be merged behind testAutomaticDeletesOfWholeSegments' back
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
     initCore(CONFIG_XML, SCHEMA_XML);
   }
 
+  @AfterClass
+  public static void afterClass() {
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
   public void testTTLDefaultsConversion() throws Exception {
     SolrInputDocument d = null;
 
@@ -215,5 +229,97 @@ public class DocExpirationUpdateProcessorFactoryTest extends UpdateProcessorTest
     }
   }
 
+  public void testAutomaticDeletesById() throws Exception {
+
+    UpdateRequestProcessorChain chain = 
+      h.getCore().getUpdateProcessingChain("scheduled-delete-by-id");
+    assertNotNull(chain);
+    RecordingUpdateProcessorFactory recorder = 
+      (RecordingUpdateProcessorFactory) chain.getProcessors().get(1);
+
+    try {
+      recorder.startRecording();
+
+      assertU(adoc("id", "expired_1", "eXpById_tdt", "2000-01-01T00:00:00Z"));
+      assertU(adoc("id", "expired_2", "eXpById_tdt", "2000-01-01T00:00:00Z"));
+      assertU(adoc("id", "not_expired", "eXpById_tdt", "3000-01-01T00:00:00Z"));
+      assertU(commit());
+
+      final Set<String> deletedIds = new HashSet<>();
+      while (deletedIds.size() < 2) {
+        // be generous in how long we wait, some jenkins machines are slooooow
+        UpdateCommand tmp = recorder.commandQueue.poll(30, TimeUnit.SECONDS);
+        assertNotNull("timed out waiting for deletes, got: " + deletedIds, tmp);
+        if (tmp instanceof DeleteUpdateCommand) {
+          DeleteUpdateCommand delete = (DeleteUpdateCommand) tmp;
+          assertTrue("expected delete by id: " + delete, delete.isDeleteById());
+          assertTrue("delete should carry the resolved version: " + delete,
+                     0 != delete.getVersion());
+          deletedIds.add(delete.getId());
+        }
+      }
+      assertEquals(new HashSet<>(Arrays.asList("expired_1", "expired_2")), deletedIds);
+    } finally {
+      recorder.stopRecording();
+    }
+
+    // the periodic soft commit makes the deletes visible
+    assertU(commit());
+    assertQ(req("q", "eXpById_tdt:*"),
+            "//result[@numFound=1]",
+            "//str[@name='id'][.='not_expired']");
+  }
+
+  public void testAutomaticDeletesOfWholeSegments() throws Exception {
+
+    UpdateRequestProcessorChain chain = 
+      h.getCore().getUpdateProcessingChain("scheduled-delete-whole-segments");
+    assertNotNull(chain);
+    DocExpirationUpdateProcessorFactory factory =
+      (DocExpirationUpdateProcessorFactory) chain.getProcessors().get(0);
+    RecordingUpdateProcessorFactory recorder = 
+      (RecordingUpdateProcessorFactory) chain.getProcessors().get(1);
+
+    // a segment whose documents have all expired
+    assertU(adoc("id", "seg_expired_1", "eXpSeg_tdt", "2000-01-01T00:00:00Z"));
+    assertU(adoc("id", "seg_expired_2", "eXpSeg_tdt", "2002-01-01T00:00:00Z"));
+    assertU(commit());
+
+    // a block is always written to a single segment, so the expired child shares its
+    // segment with a parent that has not expired yet.  Its expiration value lies outside
+    // the range of the fully expired segment, so it is left until its segment expires.
+    assertU("<add><doc>" +
+            "<field name=\"id\">seg_not_expired</field>" +
+            "<field name=\"eXpSeg_tdt\">3000-01-01T00:00:00Z</field>" +
+            "<doc><field name=\"id\">seg_expired_child</field>" +
+            "<field name=\"eXpSeg_tdt\">1999-01-01T00:00:00Z</field></doc>" +
+            "</doc></add>");
+    assertU(commit());
+
+    try {
+      recorder.startRecording();
+      factory.deleteExpiredDocsNow();
+
+      // a single delete for the range of the fully expired segment
+      final List<String> deleteQueries = new ArrayList<>();
+      UpdateCommand tmp;
+      while (null != (tmp = recorder.commandQueue.poll())) {
+        if (tmp instanceof DeleteUpdateCommand) {
+          DeleteUpdateCommand delete = (DeleteUpdateCommand) tmp;
+          assertNull(delete.getId());
+          deleteQueries.add(delete.getQuery());
+        }
+      }
+      assertEquals(Collections.singletonList(
+          "{!cache=false}eXpSeg_tdt:[2000-01-01T00:00:00Z TO 2002-01-01T00:00:00Z]"), deleteQueries);
+    } finally {
+      recorder.stopRecording();
+    }
+
+    assertU(commit());
+    assertQ(req("q", "id:seg_expired_*"), "//result[@numFound=0]");
+    assertQ(req("q", "eXpSeg_tdt:*"),
+            "//result[@numFound=2]");
+  }
 
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.UpdateParams;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PipelinedUpdateProcessorTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @Before
+  public void before() throws Exception {
+    clearIndex();
+    assertU(commit());
+  }
+
+  @Test
+  public void testUpdatesOfOneIdKeepRequestOrder() throws Exception {
+    int numIds = 50;
+    int rounds = 4;
+    StringBuilder json = new StringBuilder("[");
+    for (int round = 0; round < rounds; round++) {
+      for (int id = 0; id < numIds; id++) {
+        if (json.length() > 1) json.append(',');
+        json.append("{\"id\":\"").append(id).append("\",\"val_i\":").append(round).append('}');
+      }
+    }
+    json.append(']');
+
+    updateJ(json.toString(), params(UpdateParams.PIPELINE_THREADS, "4", "commit", "true"));
+
+    assertJQ(req("q", "*:*"), "/response/numFound==" + numIds);
+    assertJQ(req("q", "val_i:" + (rounds - 1)), "/response/numFound==" + numIds);
+  }
+
+  @Test
+  public void testDeleteByQueryWaitsForQueuedAdds() throws Exception {
+    String json = "{" +
+        "\"add\":{\"doc\":{\"id\":\"1\",\"val_i\":1}}," +
+        "\"add\":{\"doc\":{\"id\":\"2\",\"val_i\":1}}," +
+        "\"add\":{\"doc\":{\"id\":\"3\",\"val_i\":2}}," +
+        "\"delete\":{\"query\":\"val_i:1\"}," +
+        "\"add\":{\"doc\":{\"id\":\"4\",\"val_i\":1}}," +
+        "\"delete\":{\"id\":\"3\"}," +
+        "\"commit\":{}" +
+        "}";
+
+    updateJ(json, params(UpdateParams.PIPELINE_THREADS, "3"));
+
+    assertJQ(req("q", "*:*", "fl", "id"), "/response/numFound==1", "/response/docs/[0]/id=='4'");
+  }
+
+  @Test
+  public void testWorkersUseTheRequestInfo() throws Exception {
+    int numDocs = 20;
+    StringBuilder json = new StringBuilder("[");
+    for (int id = 0; id < numDocs; id++) {
+      if (json.length() > 1) json.append(',');
+      json.append("{\"id\":\"").append(id).append("\",\"now_dt\":\"NOW\"}");
+    }
+    json.append(']');
+
+    // NOW of the request is only known to the workers through its SolrRequestInfo
+    updateJ(json.toString(), params(UpdateParams.PIPELINE_THREADS, "4", "NOW", "1000000000000", "commit", "true"));
+
+    assertJQ(req("q", "now_dt:\"2001-09-09T01:46:40Z\""), "/response/numFound==" + numDocs);
+  }
+
+  @Test
+  public void testWorkerErrorIsReported() throws Exception {
+    String json = "[{\"id\":\"1\",\"val_i\":1},{\"id\":\"2\",\"val_i\":\"not_a_number\"},{\"id\":\"3\",\"val_i\":3}]";
+
+    ignoreException("not_a_number");
+    try {
+      SolrException e = expectThrows(SolrException.class, () -> updateJ(json, params(UpdateParams.PIPELINE_THREADS, "2")));
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+      // the error of the worker is reported as is, naming the document that failed
+      assertTrue(e.getMessage(), e.getMessage().contains("[doc=2]"));
+      assertTrue(e.getMessage(), e.getMessage().contains("'val_i'='not_a_number'"));
+    } finally {
+      unIgnoreException("not_a_number");
+    }
+    assertU(commit());
+    assertJQ(req("q", "id:2"), "/response/numFound==0");
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.SolrCore;
@@ -182,6 +183,15 @@ public class TolerantUpdateProcessorTest extends UpdateProcessorTestBase {
     
   }
   
+  @Test
+  public void testBatchedAddErrorsAreReportedPerDocument() throws IOException {
+    // the odd ids fail when their batch is written, i.e. while later documents are added or on finish
+    assertAddsSucceedWithErrors("tolerant-chain-max-errors-10", docs.subList(0, 10),
+        params(UpdateParams.OVERWRITE, "false", UpdateParams.ADD_BATCH_SIZE, "4"), "1", "3", "5", "7", "9");
+    assertU(commit());
+    assertQ(req("q","*:*"),"//result[@numFound='5']");
+  }
+
   @Test
   public void testMaxErrorsDefault() throws IOException {
     // by default the TolerantUpdateProcessor accepts all errors, so this batch should succeed with 10 errors.
@@ -399,6 +409,7 @@ public class TolerantUpdateProcessorTest extends UpdateProcessorTestBase {
       for(SolrInputDocument doc:docs) {
         AddUpdateCommand cmd = new AddUpdateCommand(req);
         cmd.solrDoc = doc;
+        cmd.overwrite = requestParams.getBool(UpdateParams.OVERWRITE, true);
         processor.processAdd(cmd);
       }
       processor.finish();
@@ -0,0 +1,711 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SolrClient} for bulk indexing that queues added documents and sends them in batches
+ * through another client, adapting the batch size and the number of concurrent update requests
+ * to how the server copes.
+ * <p>
+ * Batches grow while update requests complete within the target latency, and shrink, along with
+ * the number of concurrent requests, when they don't.  Requests rejected with HTTP 429 or 503
+ * (e.g. by the request rate limiter) halve both and are retried after an exponential back-off.
+ * When the wrapped client split a batch up by shard leader, only the documents of the rejected
+ * leaders are sent again.  Documents a rejected request may already have applied in part (HTTP 503)
+ * are only sent again if doing so is harmless, i.e. none of them has <code>overwrite=false</code>
+ * or is an atomic update that increments or adds to a field.
+ * When the queue is full, adding documents blocks, which pushes back on the producers.
+ * <p>
+ * Wrap a {@link CloudSolrClient} (or {@link CloudHttp2SolrClient}) to have every batch split up
+ * and sent directly to the shard leaders.  Requests other than plain document adds, such as
+ * deletes and commits, wait for the queue to be sent and then go through the wrapped client.
+ * Errors of batches that cannot be sent are passed to {@link #handleError(Throwable)}.
+ *
+ * @lucene.experimental
+ */
+public class AdaptiveUpdateSolrClient extends SolrClient {
+  private static final long serialVersionUID = 1L;
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int POLL_QUEUE_MILLIS = 250;
+  private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+  private final SolrClient client;
+  private final boolean closeClient;
+  private final BlockingQueue<QueuedDocument> queue;
+  private final ExecutorService workers;
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int maxConcurrency;
+  private final long targetLatencyNanos;
+  private final long maxBatchWaitNanos;
+  private final long maxBackoffMillis;
+  private final int maxRetries;
+
+  // adaptive state, guarded by "this"
+  private int batchSize;
+  private int concurrency;
+  private int inFlight;
+  private int consecutiveOverloads;
+  private long backoffUntilNanos;
+  private long pending; // documents queued or being sent
+  private double avgLatencyMillis;
+
+  private final LongAdder docsSent = new LongAdder();
+  private final LongAdder docsFailed = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder overloads = new LongAdder();
+  private final long startNanos = System.nanoTime();
+
+  private volatile boolean closed;
+
+  protected AdaptiveUpdateSolrClient(Builder builder) {
+    this.client = builder.client;
+    this.closeClient = builder.closeClient;
+    this.queue = new ArrayBlockingQueue<>(builder.queueSize);
+    this.minBatchSize = builder.minBatchSize;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.maxConcurrency = builder.maxConcurrency;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(builder.targetLatencyMillis);
+    this.maxBatchWaitNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxBatchWaitMillis);
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+    this.maxRetries = builder.maxRetries;
+    this.batchSize = minBatchSize;
+    this.concurrency = 1;
+
+    this.workers = ExecutorUtil.newMDCAwareFixedThreadPool(maxConcurrency,
+        new SolrNamedThreadFactory("adaptiveUpdateClient"));
+    for (int i = 0; i < maxConcurrency; i++) {
+      workers.execute(this::runWorker);
+    }
+  }
+
+  @Override
+  public NamedList<Object> request(final SolrRequest<?> request, String collection)
+      throws SolrServerException, IOException {
+    if (!isQueueable(request)) {
+      blockUntilFinished();
+      return client.request(request, collection);
+    }
+    final UpdateRequest req = (UpdateRequest) request;
+    try {
+      for (Map.Entry<SolrInputDocument, Map<String, Object>> entry : req.getDocumentsMap().entrySet()) {
+        final Map<String, Object> params = entry.getValue();
+        final Integer commitWithin = params == null ? null : (Integer) params.get(UpdateRequest.COMMIT_WITHIN);
+        final Boolean overwrite = params == null ? null : (Boolean) params.get(UpdateRequest.OVERWRITE);
+        enqueue(new QueuedDocument(collection,
+            commitWithin != null && commitWithin != -1 ? commitWithin : req.getCommitWithin(),
+            overwrite, entry.getKey()));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while queueing documents", e);
+    }
+    final NamedList<Object> dummy = new NamedList<>();
+    dummy.add("NOTE", "the request is processed in a background stream");
+    return dummy;
+  }
+
+  /** Only requests that just add documents are queued; they are re-batched with other documents. */
+  private boolean isQueueable(SolrRequest<?> request) {
+    if (!(request instanceof UpdateRequest)) {
+      return false;
+    }
+    final UpdateRequest req = (UpdateRequest) request;
+    return req.getDocuments() != null && !req.getDocuments().isEmpty()
+        && (req.getDeleteById() == null || req.getDeleteById().isEmpty())
+        && (req.getDeleteByIdMap() == null || req.getDeleteByIdMap().isEmpty())
+        && (req.getDeleteQuery() == null || req.getDeleteQuery().isEmpty())
+        && (req.getParams() == null || req.getParams().iterator().hasNext() == false)
+        && req.getDocIterator() == null;
+  }
+
+  private void enqueue(QueuedDocument doc) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("This client has been closed");
+    }
+    synchronized (this) {
+      pending++;
+    }
+    try {
+      // blocks the producer while the queue is full
+      queue.put(doc);
+    } catch (InterruptedException e) {
+      finished(1);
+      throw e;
+    }
+  }
+
+  private void runWorker() {
+    final List<QueuedDocument> drained = new ArrayList<>();
+    while (!closed || !queue.isEmpty()) {
+      try {
+        final QueuedDocument first = queue.poll(POLL_QUEUE_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        drained.add(first);
+        fillBatch(drained);
+        acquireSlot();
+        try {
+          sendBatch(drained);
+        } finally {
+          releaseSlot();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (!drained.isEmpty()) {
+          docsFailed.add(drained.size());
+          handleError(new IOException("Interrupted before sending " + drained.size() + " documents", e));
+        }
+        break;
+      } finally {
+        if (!drained.isEmpty()) {
+          finished(drained.size());
+          drained.clear();
+        }
+      }
+    }
+  }
+
+  /** Adds queued documents to the batch until it is full or has waited long enough. */
+  private void fillBatch(List<QueuedDocument> batch) throws InterruptedException {
+    final int size = getBatchSize();
+    final long deadline = System.nanoTime() + maxBatchWaitNanos;
+    queue.drainTo(batch, size - batch.size());
+    while (batch.size() < size) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || closed) {
+        break;
+      }
+      final QueuedDocument next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+      queue.drainTo(batch, size - batch.size());
+    }
+  }
+
+  /**
+   * Sends the batch, removing the documents of each request from it once the request has been
+   * sent or has failed, so that only unsent documents are left if interrupted.
+   */
+  private void sendBatch(List<QueuedDocument> batch) throws InterruptedException {
+    // documents going to different collections, or with different commitWithin, need their own request
+    final Map<QueuedDocument, List<QueuedDocument>> requestsByTarget = new LinkedHashMap<>();
+    for (QueuedDocument doc : batch) {
+      requestsByTarget.computeIfAbsent(doc, k -> new ArrayList<>()).add(doc);
+    }
+    batch.clear();
+    requestsByTarget.values().forEach(batch::addAll);
+    for (Map.Entry<QueuedDocument, List<QueuedDocument>> entry : requestsByTarget.entrySet()) {
+      final UpdateRequest req = new UpdateRequest();
+      for (QueuedDocument doc : entry.getValue()) {
+        req.add(doc.doc, doc.overwrite);
+      }
+      req.setCommitWithin(entry.getKey().commitWithin);
+      send(req, entry.getKey().collection);
+
+      final List<QueuedDocument> done = batch.subList(0, entry.getValue().size());
+      finished(done.size());
+      done.clear();
+    }
+  }
+
+  private void send(UpdateRequest req, String collection) throws InterruptedException {
+    for (int attempt = 0; ; attempt++) {
+      final int numDocs = req.getDocuments().size();
+      final long start = System.nanoTime();
+      try {
+        requests.increment();
+        client.request(req, collection);
+        onSuccess(System.nanoTime() - start, numDocs);
+        return;
+      } catch (Exception e) {
+        final Map<UpdateRequest, Throwable> failed = getFailedRequests(req, e);
+        int numFailed = 0;
+        boolean retry = attempt < maxRetries;
+        for (Map.Entry<UpdateRequest, Throwable> entry : failed.entrySet()) {
+          numFailed += entry.getKey().getDocuments().size();
+          retry &= isRetryable(entry.getKey(), entry.getValue());
+        }
+        // the requests of the other shard leaders have been applied
+        docsSent.add(numDocs - numFailed);
+        if (retry) {
+          retries.increment();
+          waitForBackoff(onOverload());
+          final int commitWithin = req.getCommitWithin();
+          req = new UpdateRequest();
+          for (UpdateRequest failedReq : failed.keySet()) {
+            for (Map.Entry<SolrInputDocument, Map<String, Object>> doc : failedReq.getDocumentsMap().entrySet()) {
+              req.add(doc.getKey(), doc.getValue() == null ? null : (Boolean) doc.getValue().get(UpdateRequest.OVERWRITE));
+            }
+          }
+          req.setCommitWithin(commitWithin);
+          continue;
+        }
+        docsFailed.add(numFailed);
+        handleError(e);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the parts of <code>req</code> that failed with <code>e</code>, along with their error:
+   * the requests of the failed shard leaders if the wrapped client split <code>req</code> up,
+   * <code>req</code> itself otherwise.
+   */
+  static Map<UpdateRequest, Throwable> getFailedRequests(UpdateRequest req, Throwable e) {
+    final Map<UpdateRequest, Throwable> failed = new LinkedHashMap<>();
+    if (e instanceof BaseCloudSolrClient.RouteException) {
+      final BaseCloudSolrClient.RouteException re = (BaseCloudSolrClient.RouteException) e;
+      final NamedList<Throwable> throwables = re.getThrowables();
+      for (int i = 0; i < throwables.size(); i++) {
+        final LBSolrClient.Req route = re.getRoutes() == null ? null : re.getRoutes().get(throwables.getName(i));
+        if (route == null || !(route.getRequest() instanceof UpdateRequest)
+            || ((UpdateRequest) route.getRequest()).getDocuments() == null) {
+          // can't tell which documents failed
+          failed.clear();
+          break;
+        }
+        failed.put((UpdateRequest) route.getRequest(), throwables.getVal(i));
+      }
+    }
+    if (failed.isEmpty()) {
+      failed.put(req, e);
+    }
+    return failed;
+  }
+
+  /**
+   * Whether <code>req</code> can be sent again after failing with <code>e</code>.  A request rejected
+   * with HTTP 429 has not been processed at all; one rejected with HTTP 503 may have been applied in
+   * part, so it is only sent again if that is harmless.
+   */
+  static boolean isRetryable(UpdateRequest req, Throwable e) {
+    if (!isOverloaded(e)) {
+      return false;
+    }
+    return isRejectedBeforeProcessing(e) || isIdempotent(req);
+  }
+
+  private static boolean isRejectedBeforeProcessing(Throwable e) {
+    while (e != null) {
+      if (e instanceof SolrException
+          && ((SolrException) e).code() == SolrException.ErrorCode.TOO_MANY_REQUESTS.code) {
+        return true;
+      }
+      e = e.getCause() == e ? null : e.getCause();
+    }
+    return false;
+  }
+
+  /** Whether applying the documents of <code>req</code> twice has the same effect as applying them once. */
+  static boolean isIdempotent(UpdateRequest req) {
+    for (Map.Entry<SolrInputDocument, Map<String, Object>> entry : req.getDocumentsMap().entrySet()) {
+      final Map<String, Object> params = entry.getValue();
+      if (params != null && Boolean.FALSE.equals(params.get(UpdateRequest.OVERWRITE))) {
+        return false; // would be added twice
+      }
+      if (hasCumulativeUpdate(entry.getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether the document, or one of its children, is an atomic update that increments or adds to a field. */
+  private static boolean hasCumulativeUpdate(SolrInputDocument doc) {
+    for (SolrInputField field : doc) {
+      for (Object value : field) {
+        if (value instanceof Map) {
+          final Map<?, ?> op = (Map<?, ?>) value;
+          if (op.containsKey("inc") || op.containsKey("add")) {
+            return true;
+          }
+        } else if (value instanceof SolrInputDocument && hasCumulativeUpdate((SolrInputDocument) value)) {
+          return true;
+        }
+      }
+    }
+    if (doc.hasChildDocuments()) {
+      for (SolrInputDocument child : doc.getChildDocuments()) {
+        if (hasCumulativeUpdate(child)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void waitForBackoff(long backoffMillis) throws InterruptedException {
+    if (log.isDebugEnabled()) {
+      log.debug("Server overloaded, backing off for {}ms", backoffMillis);
+    }
+    Thread.sleep(backoffMillis);
+  }
+
+  /** Whether the server (or one of the shard leaders) rejected the request because it is overloaded. */
+  static boolean isOverloaded(Throwable e) {
+    while (e != null) {
+      if (e instanceof BaseCloudSolrClient.RouteException) {
+        final NamedList<Throwable> throwables = ((BaseCloudSolrClient.RouteException) e).getThrowables();
+        for (int i = 0; i < throwables.size(); i++) {
+          if (isOverloaded(throwables.getVal(i))) {
+            return true;
+          }
+        }
+      }
+      if (e instanceof SolrException) {
+        final int code = ((SolrException) e).code();
+        if (code == SolrException.ErrorCode.TOO_MANY_REQUESTS.code
+            || code == SolrException.ErrorCode.SERVICE_UNAVAILABLE.code) {
+          return true;
+        }
+      }
+      e = e.getCause() == e ? null : e.getCause();
+    }
+    return false;
+  }
+
+  private synchronized void onSuccess(long latencyNanos, int numDocs) {
+    docsSent.add(numDocs);
+    consecutiveOverloads = 0;
+    final double latencyMillis = latencyNanos / 1_000_000.0;
+    avgLatencyMillis = avgLatencyMillis == 0 ? latencyMillis : 0.8 * avgLatencyMillis + 0.2 * latencyMillis;
+    if (latencyNanos <= targetLatencyNanos) {
+      // additive increase
+      batchSize = Math.min(maxBatchSize, batchSize + minBatchSize);
+      if (latencyNanos <= targetLatencyNanos / 2 && concurrency < maxConcurrency) {
+        concurrency++;
+        notifyAll();
+      }
+    } else {
+      // multiplicative decrease, gentler than for rejections
+      batchSize = Math.max(minBatchSize, batchSize * 3 / 4);
+      concurrency = Math.max(1, concurrency - 1);
+    }
+  }
+
+  /** Returns how long to back off before retrying. */
+  private synchronized long onOverload() {
+    overloads.increment();
+    batchSize = Math.max(minBatchSize, batchSize / 2);
+    concurrency = Math.max(1, concurrency / 2);
+    final long backoff = Math.min(maxBackoffMillis, INITIAL_BACKOFF_MILLIS << Math.min(consecutiveOverloads, 20));
+    consecutiveOverloads++;
+    backoffUntilNanos = Math.max(backoffUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff));
+    return backoff;
+  }
+
+  private synchronized void acquireSlot() throws InterruptedException {
+    for (;;) {
+      final long backoff = backoffUntilNanos - System.nanoTime();
+      if (backoff > 0) {
+        TimeUnit.NANOSECONDS.timedWait(this, backoff);
+      } else if (inFlight >= concurrency) {
+        wait(POLL_QUEUE_MILLIS);
+      } else {
+        inFlight++;
+        return;
+      }
+    }
+  }
+
+  private synchronized void releaseSlot() {
+    inFlight--;
+    notifyAll();
+  }
+
+  private synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  private synchronized void finished(int numDocs) {
+    pending -= numDocs;
+    if (pending == 0) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until all documents added so far have been sent (or have failed).
+   */
+  public void blockUntilFinished() throws IOException {
+    synchronized (this) {
+      try {
+        while (pending > 0) {
+          wait(POLL_QUEUE_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for queued documents to be sent", e);
+      }
+    }
+  }
+
+  /**
+   * Called with the error of a batch that could not be sent, after any retries.
+   * Override to track or re-submit failed documents; the default logs the error.
+   */
+  public void handleError(Throwable ex) {
+    log.error("Error sending batch of documents", ex);
+  }
+
+  /** Returns a snapshot of the throughput and queue metrics of this client. */
+  public synchronized Stats getStats() {
+    final long sent = docsSent.sum();
+    final double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+    return new Stats(sent, docsFailed.sum(), requests.sum(), retries.sum(), overloads.sum(),
+        queue.size(), pending, batchSize, concurrency, avgLatencyMillis,
+        elapsedSeconds > 0 ? sent / elapsedSeconds : 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      blockUntilFinished();
+    } finally {
+      closed = true;
+      ExecutorUtil.shutdownAndAwaitTermination(workers);
+      if (closeClient) {
+        client.close();
+      }
+    }
+  }
+
+  private static final class QueuedDocument {
+    final String collection;
+    final int commitWithin;
+    final Boolean overwrite;
+    final SolrInputDocument doc;
+
+    QueuedDocument(String collection, int commitWithin, Boolean overwrite, SolrInputDocument doc) {
+      this.collection = collection;
+      this.commitWithin = commitWithin;
+      this.overwrite = overwrite;
+      this.doc = doc;
+    }
+
+    // equality is by target, so documents sharing a request can be grouped
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof QueuedDocument)) return false;
+      final QueuedDocument that = (QueuedDocument) o;
+      return commitWithin == that.commitWithin && Objects.equals(collection, that.collection);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(collection, commitWithin);
+    }
+  }
+
+  /**
+   * A point in time view of the metrics of an {@link AdaptiveUpdateSolrClient}.
+   */
+  public static class Stats {
+    private final long docsSent;
+    private final long docsFailed;
+    private final long requests;
+    private final long retries;
+    private final long overloads;
+    private final int queueSize;
+    private final long pending;
+    private final int batchSize;
+    private final int concurrency;
+    private final double avgLatencyMillis;
+    private final double docsPerSecond;
+
+    Stats(long docsSent, long docsFailed, long requests, long retries, long overloads, int queueSize,
+          long pending, int batchSize, int concurrency, double avgLatencyMillis, double docsPerSecond) {
+      this.docsSent = docsSent;
+      this.docsFailed = docsFailed;
+      this.requests = requests;
+      this.retries = retries;
+      this.overloads = overloads;
+      this.queueSize = queueSize;
+      this.pending = pending;
+      this.batchSize = batchSize;
+      this.concurrency = concurrency;
+      this.avgLatencyMillis = avgLatencyMillis;
+      this.docsPerSecond = docsPerSecond;
+    }
+
+    /** Documents successfully sent. */
+    public long getDocsSent() { return docsSent; }
+    /** Documents whose batch failed, see {@link AdaptiveUpdateSolrClient#handleError(Throwable)}. */
+    public long getDocsFailed() { return docsFailed; }
+    /** Update requests sent, including retries. */
+    public long getRequests() { return requests; }
+    /** Update requests retried after the server was overloaded. */
+    public long getRetries() { return retries; }
+    /** Update requests rejected with HTTP 429 or 503. */
+    public long getOverloads() { return overloads; }
+    /** Documents waiting in the queue. */
+    public int getQueueSize() { return queueSize; }
+    /** Documents queued or being sent. */
+    public long getPending() { return pending; }
+    /** Current target number of documents per batch. */
+    public int getBatchSize() { return batchSize; }
+    /** Current number of update requests allowed in flight. */
+    public int getConcurrency() { return concurrency; }
+    /** Moving average of update request latency. */
+    public double getAvgLatencyMillis() { return avgLatencyMillis; }
+    /** Documents sent per second since the client was created. */
+    public double getDocsPerSecond() { return docsPerSecond; }
+
+    @Override
+    public String toString() {
+      return "Stats{docsSent=" + docsSent + ", docsFailed=" + docsFailed + ", requests=" + requests
+          + ", retries=" + retries + ", overloads=" + overloads + ", queueSize=" + queueSize
+          + ", pending=" + pending + ", batchSize=" + batchSize + ", concurrency=" + concurrency
+          + ", avgLatencyMillis=" + avgLatencyMillis + ", docsPerSecond=" + docsPerSecond + "}";
+    }
+  }
+
+  public static class Builder {
+    protected SolrClient client;
+    protected boolean closeClient;
+    protected int queueSize = 10000;
+    protected int minBatchSize = 10;
+    protected int maxBatchSize = 1000;
+    protected int maxConcurrency = 4;
+    protected long targetLatencyMillis = 1000;
+    protected long maxBatchWaitMillis = 100;
+    protected long maxBackoffMillis = 30000;
+    protected int maxRetries = 5;
+
+    /**
+     * @param client the client batches are sent through, typically a {@link CloudSolrClient}
+     * @param closeClient whether closing the created client also closes <code>client</code>
+     */
+    public Builder(SolrClient client, boolean closeClient) {
+      this.client = Objects.requireNonNull(client);
+      this.closeClient = closeClient;
+    }
+
+    /**
+     * The maximum number of documents queued before adding documents blocks.  Defaults to 10000.
+     */
+    public Builder withQueueSize(int queueSize) {
+      if (queueSize <= 0) {
+        throw new IllegalArgumentException("queueSize must be a positive integer.");
+      }
+      this.queueSize = queueSize;
+      return this;
+    }
+
+    /**
+     * The range the number of documents per batch is adapted in.  Batches start at the minimum
+     * and grow by it while the target latency is met.  Defaults to 10 - 1000.
+     */
+    public Builder withBatchSize(int minBatchSize, int maxBatchSize) {
+      if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+        throw new IllegalArgumentException("batch sizes must be positive, with min <= max.");
+      }
+      this.minBatchSize = minBatchSize;
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * The maximum number of concurrent update requests.  Concurrency starts at 1 and grows while
+     * requests complete in under half the target latency.  Defaults to 4.
+     */
+    public Builder withMaxConcurrency(int maxConcurrency) {
+      if (maxConcurrency <= 0) {
+        throw new IllegalArgumentException("maxConcurrency must be a positive integer.");
+      }
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    /**
+     * The update request latency batches and concurrency are adapted to.  Defaults to 1 second.
+     */
+    public Builder withTargetLatency(long targetLatency, TimeUnit unit) {
+      this.targetLatencyMillis = unit.toMillis(targetLatency);
+      if (targetLatencyMillis <= 0) {
+        throw new IllegalArgumentException("targetLatency must be positive.");
+      }
+      return this;
+    }
+
+    /**
+     * How long a partial batch waits for more documents before being sent.  Defaults to 100ms.
+     */
+    public Builder withMaxBatchWait(long maxBatchWait, TimeUnit unit) {
+      this.maxBatchWaitMillis = unit.toMillis(maxBatchWait);
+      return this;
+    }
+
+    /**
+     * How often, and for how long at most, a batch rejected with HTTP 429 or 503 is retried
+     * after backing off.  Defaults to 5 retries and 30 seconds.
+     */
+    public Builder withRetries(int maxRetries, long maxBackoff, TimeUnit unit) {
+      if (maxRetries < 0) {
+        throw new IllegalArgumentException("maxRetries must not be negative.");
+      }
+      this.maxRetries = maxRetries;
+      this.maxBackoffMillis = unit.toMillis(maxBackoff);
+      return this;
+    }
+
+    /**
+     * Create a {@link AdaptiveUpdateSolrClient} based on the provided configuration options.
+     */
+    public AdaptiveUpdateSolrClient build() {
+      return new AdaptiveUpdateSolrClient(this);
+    }
+  }
+}
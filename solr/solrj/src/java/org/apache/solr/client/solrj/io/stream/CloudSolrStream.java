@@ -48,6 +48,7 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.routing.RoutedAliasCollectionPruner;
 import org.apache.solr.common.cloud.Aliases;
 import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.Slice;
@@ -326,6 +327,16 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   }
 
   public static Slice[] getSlices(String collectionName, ZkStateReader zkStateReader, boolean checkAlias) throws IOException {
+    return getSlices(collectionName, zkStateReader, checkAlias, null);
+  }
+
+  /**
+   * Like {@link #getSlices(String, ZkStateReader, boolean)}, but the collections of time routed aliases
+   * are narrowed down to those that may match the range filters of <code>requestParams</code>.
+   * @see RoutedAliasCollectionPruner
+   */
+  public static Slice[] getSlices(String collectionName, ZkStateReader zkStateReader, boolean checkAlias,
+                                  SolrParams requestParams) throws IOException {
     ClusterState clusterState = zkStateReader.getClusterState();
 
     // check for alias or collection
@@ -338,6 +349,9 @@ public class CloudSolrStream extends TupleStream implements Expressible {
       List<String> collections = (aliases != null)
           ? aliases.resolveAliases(col)  // if not an alias, returns collectionName
           : Collections.singletonList(collectionName);
+      if (requestParams != null && aliases != null && aliases.isRoutedAlias(col)) {
+        collections = RoutedAliasCollectionPruner.prune(aliases, col, collections, requestParams);
+      }
       allCollections.addAll(collections);
     }
 
@@ -148,7 +148,7 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
     CloudSolrClient cloudSolrClient = solrClientCache.getCloudSolrClient(zkHost);
     ZkStateReader zkStateReader = cloudSolrClient.getZkStateReader();
     ClusterState clusterState = zkStateReader.getClusterState();
-    Slice[] slices = CloudSolrStream.getSlices(collection, zkStateReader, true);
+    Slice[] slices = CloudSolrStream.getSlices(collection, zkStateReader, true, requestParams);
     Set<String> liveNodes = clusterState.getLiveNodes();
 
     RequestReplicaListTransformerGenerator requestReplicaListTransformerGenerator;
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.solr.client.solrj.RoutedAliasTypes;
+import org.apache.solr.common.cloud.Aliases;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+
+import static org.apache.solr.common.params.CollectionAdminParams.ROUTER_PREFIX;
+
+/**
+ * Narrows the collections a request against a time routed alias (or a dimensional routed alias
+ * with a time dimension) is sent to, down to those whose time span can contain matching documents.
+ * <p>
+ * Only plain range queries on the time router field are considered: <code>fq</code> params of the
+ * form <code>field:[A TO B]</code>, and such top level <code>AND</code> clauses of a <code>q</code>
+ * that starts with <code>{!lucene}</code>.  Any other <code>q</code> is ignored, even with a
+ * <code>defType</code> param, since the request handler may default to or impose another query
+ * parser.  Bounds may be ISO-8601 instants, <code>*</code>, or <code>NOW</code> based date math.
+ * Anything else is ignored, so the collection list is only ever narrowed when that is certainly safe.
+ */
+public class RoutedAliasCollectionPruner {
+
+  private static final String TIME_SEPARATOR = RoutedAliasTypes.TIME.getSeparatorPrefix();
+  private static final String DIMENSIONAL = "Dimensional[";
+  private static final String ROUTER_NAME = ROUTER_PREFIX + "name";
+  private static final String ROUTER_FIELD = ROUTER_PREFIX + "field";
+  // the only way a request can be sure that its q is parsed by the standard query parser
+  private static final String LUCENE_LOCAL_PARAMS = "{!lucene}";
+
+  /** Slack given to bounds relative to <code>NOW</code> when the request does not specify <code>NOW</code> */
+  static final long NOW_SLACK_MS = 60_000L;
+
+  // must be able to parse the collection names of TimeRoutedAlias
+  private static final DateTimeFormatter COLLECTION_DATE_FORMAT = new DateTimeFormatterBuilder()
+      .append(DateTimeFormatter.ISO_LOCAL_DATE).appendPattern("[_HH[_mm[_ss]]]")
+      .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+      .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+      .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+      .toFormatter(Locale.ROOT).withZone(ZoneOffset.UTC);
+
+  private static final Pattern RANGE_QUERY =
+      Pattern.compile("\\+?([^\\s:\\[{]+):\\s*([\\[{])\\s*(\\S+)\\s+TO\\s+(\\S+?)\\s*([\\]}])");
+  private static final Pattern DATE_MATH_OP = Pattern.compile("([+-]\\d+|/)([A-Za-z]+)");
+
+  private RoutedAliasCollectionPruner() {
+  }
+
+  /**
+   * Returns the subset of <code>collections</code> (the resolved collections of <code>aliasName</code>)
+   * that may hold documents matching the range filters of <code>params</code>, in their original order.
+   * Returns <code>collections</code> itself when nothing can be pruned.  Never returns an empty list.
+   */
+  public static List<String> prune(Aliases aliases, String aliasName, List<String> collections, SolrParams params) {
+    if (collections.size() < 2 || params == null) {
+      return collections;
+    }
+    final String routerField = getTimeRouterField(aliases.getCollectionAliasProperties(aliasName));
+    if (routerField == null) {
+      return collections;
+    }
+
+    final Long fixedNow = params.getLong(CommonParams.NOW);
+    final long now = fixedNow != null ? fixedNow : System.currentTimeMillis();
+    final long slack = fixedNow != null ? 0L : NOW_SLACK_MS;
+    final String tz = params.get(CommonParams.TZ);
+    final TimeZone timeZone = tz == null ? TimeZone.getTimeZone(ZoneOffset.UTC) : TimeZone.getTimeZone(tz);
+
+    final long[] range = {Long.MIN_VALUE, Long.MAX_VALUE};
+    final String[] filters = params.getParams(CommonParams.FQ);
+    if (filters != null) {
+      for (String fq : filters) {
+        narrow(range, fq, routerField, now, slack, timeZone);
+      }
+    }
+    final String q = params.get(CommonParams.Q);
+    if (q != null && q.startsWith(LUCENE_LOCAL_PARAMS)) {
+      for (String clause : splitTopLevelAnd(q.substring(LUCENE_LOCAL_PARAMS.length()))) {
+        narrow(range, clause, routerField, now, slack, timeZone);
+      }
+    }
+    if (range[0] == Long.MIN_VALUE && range[1] == Long.MAX_VALUE) {
+      return collections;
+    }
+
+    // in a dimensional alias every combination of the other dimensions has its own time spans
+    final Map<String,TreeSet<Long>> startsByDimensions = new HashMap<>();
+    for (String collection : collections) {
+      final Instant start = parseCollectionStart(collection);
+      if (start != null) {
+        startsByDimensions.computeIfAbsent(getOtherDimensions(collection), k -> new TreeSet<>())
+            .add(start.toEpochMilli());
+      }
+    }
+    final List<String> result = new ArrayList<>(collections.size());
+    for (String collection : collections) {
+      final Instant start = parseCollectionStart(collection);
+      if (start == null) {
+        result.add(collection);
+        continue;
+      }
+      // a collection holds documents from its start up to the start of the next one
+      final Long end = startsByDimensions.get(getOtherDimensions(collection)).higher(start.toEpochMilli());
+      if (start.toEpochMilli() <= range[1] && (end == null || end > range[0])) {
+        result.add(collection);
+      }
+    }
+    if (result.size() == collections.size()) {
+      return collections;
+    }
+    if (result.isEmpty()) {
+      // nothing can match; any single collection gives the (empty) answer
+      result.add(collections.get(0));
+    }
+    return result;
+  }
+
+  /** Returns the time router field of a routed alias, or null if it has no time dimension. */
+  static String getTimeRouterField(Map<String,String> props) {
+    final String type = props.get(ROUTER_NAME);
+    if (type == null) {
+      return null;
+    }
+    if (RoutedAliasTypes.TIME.name().equalsIgnoreCase(type)) {
+      return props.get(ROUTER_FIELD);
+    }
+    if (type.startsWith(DIMENSIONAL) && type.endsWith("]")) {
+      final String[] types = type.substring(DIMENSIONAL.length(), type.length() - 1).split(",");
+      for (int i = 0; i < types.length; i++) {
+        if (RoutedAliasTypes.TIME.name().equalsIgnoreCase(types[i].trim())) {
+          return props.get(ROUTER_PREFIX + i + ".field");
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Returns the start of the time span of a routed alias collection, or null if it has none. */
+  static Instant parseCollectionStart(String collection) {
+    final int idx = collection.lastIndexOf(TIME_SEPARATOR);
+    if (idx < 0) {
+      return null;
+    }
+    String dateTimePart = collection.substring(idx + TIME_SEPARATOR.length());
+    final int end = dateTimePart.indexOf("__"); // a following dimension
+    if (end >= 0) {
+      dateTimePart = dateTimePart.substring(0, end);
+    }
+    try {
+      return COLLECTION_DATE_FORMAT.parse(dateTimePart, Instant::from);
+    } catch (DateTimeException e) {
+      return null;
+    }
+  }
+
+  /** Returns the name of a routed alias collection without its time span. */
+  static String getOtherDimensions(String collection) {
+    final int idx = collection.lastIndexOf(TIME_SEPARATOR);
+    if (idx < 0) {
+      return collection;
+    }
+    final int end = collection.indexOf("__", idx + TIME_SEPARATOR.length()); // a following dimension
+    return collection.substring(0, idx) + (end < 0 ? "" : collection.substring(end));
+  }
+
+  private static void narrow(long[] range, String query, String routerField,
+                             long now, long slack, TimeZone timeZone) {
+    final Matcher m = RANGE_QUERY.matcher(stripParens(query.trim()));
+    if (!m.matches() || !routerField.equals(m.group(1))) {
+      return;
+    }
+    final Long lower = parseBound(m.group(3), now, slack, timeZone, true);
+    final Long upper = parseBound(m.group(4), now, slack, timeZone, false);
+    if (lower == null || upper == null) {
+      return; // unparseable
+    }
+    range[0] = Math.max(range[0], lower);
+    range[1] = Math.min(range[1], upper);
+  }
+
+  /**
+   * Parses a range bound as epoch millis, widened by <code>slack</code> if relative to NOW.
+   * Returns MIN/MAX_VALUE for <code>*</code> and null if it can't be parsed.
+   */
+  static Long parseBound(String bound, long now, long slack, TimeZone timeZone, boolean lower) {
+    if (bound.length() > 1 && bound.startsWith("\"") && bound.endsWith("\"")) {
+      bound = bound.substring(1, bound.length() - 1);
+    }
+    if ("*".equals(bound)) {
+      return lower ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+    try {
+      final String math;
+      ZonedDateTime value;
+      if (bound.startsWith("NOW")) {
+        value = Instant.ofEpochMilli(now).atZone(timeZone.toZoneId());
+        math = bound.substring("NOW".length());
+      } else {
+        final int z = bound.indexOf('Z');
+        if (z < 0) {
+          return null;
+        }
+        value = Instant.parse(bound.substring(0, z + 1)).atZone(timeZone.toZoneId());
+        math = bound.substring(z + 1);
+        slack = 0L;
+      }
+      final Matcher m = DATE_MATH_OP.matcher(math);
+      int pos = 0;
+      while (m.find() && m.start() == pos) {
+        final ChronoUnit unit = parseUnit(m.group(2));
+        if (unit == null) {
+          return null;
+        }
+        if ("/".equals(m.group(1))) {
+          value = round(value, unit);
+        } else {
+          value = value.plus(Long.parseLong(m.group(1)), unit);
+        }
+        pos = m.end();
+      }
+      if (pos != math.length()) {
+        return null;
+      }
+      final long millis = value.toInstant().toEpochMilli();
+      return lower ? millis - slack : millis + slack;
+    } catch (DateTimeException | ArithmeticException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static ChronoUnit parseUnit(String unit) {
+    switch (unit.toUpperCase(Locale.ROOT)) {
+      case "YEAR": case "YEARS": return ChronoUnit.YEARS;
+      case "MONTH": case "MONTHS": return ChronoUnit.MONTHS;
+      case "DAY": case "DAYS": case "DATE": return ChronoUnit.DAYS;
+      case "HOUR": case "HOURS": return ChronoUnit.HOURS;
+      case "MINUTE": case "MINUTES": return ChronoUnit.MINUTES;
+      case "SECOND": case "SECONDS": return ChronoUnit.SECONDS;
+      case "MILLI": case "MILLIS": case "MILLISECOND": case "MILLISECONDS": return ChronoUnit.MILLIS;
+      default: return null;
+    }
+  }
+
+  private static ZonedDateTime round(ZonedDateTime value, ChronoUnit unit) {
+    switch (unit) {
+      case YEARS: return value.withDayOfYear(1).truncatedTo(ChronoUnit.DAYS);
+      case MONTHS: return value.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+      default: return value.truncatedTo(unit);
+    }
+  }
+
+  private static String stripParens(String query) {
+    while (query.length() > 1 && query.charAt(0) == '(' && query.charAt(query.length() - 1) == ')'
+        && splitTopLevel(query.substring(1, query.length() - 1)) != null) {
+      query = query.substring(1, query.length() - 1).trim();
+    }
+    return query;
+  }
+
+  /**
+   * Splits a query on its top level <code>AND</code> operators.  Returns no clauses if the query
+   * has local params or a top level <code>OR</code>, since its clauses are not all required then.
+   */
+  static List<String> splitTopLevelAnd(String q) {
+    q = stripParens(q.trim());
+    if (q.startsWith("{!")) {
+      return new ArrayList<>();
+    }
+    final List<String> clauses = splitTopLevel(q);
+    return clauses == null ? new ArrayList<>() : clauses;
+  }
+
+  /** Returns the top level AND clauses, or null if unbalanced or a top level OR is present. */
+  private static List<String> splitTopLevel(String q) {
+    final List<String> clauses = new ArrayList<>();
+    int depth = 0;
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < q.length(); i++) {
+      final char c = q.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        quoted = !quoted;
+      } else if (quoted) {
+        continue;
+      } else if (c == '(' || c == '[' || c == '{') {
+        depth++;
+      } else if (c == ')' || c == ']' || c == '}') {
+        if (--depth < 0) {
+          return null;
+        }
+      } else if (depth == 0 && Character.isWhitespace(c)) {
+        if (q.startsWith("OR", i + 1) || q.startsWith("||", i + 1)) {
+          return null;
+        }
+        final int len = q.startsWith("AND", i + 1) ? 3 : q.startsWith("&&", i + 1) ? 2 : -1;
+        if (len > 0 && i + 1 + len < q.length() && Character.isWhitespace(q.charAt(i + 1 + len))) {
+          clauses.add(q.substring(start, i).trim());
+          start = i + 1 + len;
+          i = start - 1;
+        }
+      }
+    }
+    if (depth != 0 || quoted) {
+      return null;
+    }
+    clauses.add(q.substring(start).trim());
+    return clauses;
+  }
+}
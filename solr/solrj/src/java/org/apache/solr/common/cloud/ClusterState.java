@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -226,11 +227,22 @@ public class ClusterState implements JSONWriter.Writable {
    * @return the ClusterState
    */
   public static ClusterState createFromJson(int version, byte[] bytes, Set<String> liveNodes) {
+    return createFromJson(version, bytes, liveNodes, null);
+  }
+
+  /**
+   * Like {@link #createFromJson(int, byte[], Set)}, but shards and replicas of the collection that are unchanged
+   * from {@code previous} reuse its existing {@link Slice} and {@link Replica} instances.
+   *
+   * @param previous an earlier state of one of the collections in 'bytes', or null
+   */
+  public static ClusterState createFromJson(int version, byte[] bytes, Set<String> liveNodes, DocCollection previous) {
     if (bytes == null || bytes.length == 0) {
       return new ClusterState(liveNodes, Collections.<String, DocCollection>emptyMap());
     }
     @SuppressWarnings({"unchecked"})
     Map<String, Object> stateMap = (Map<String, Object>) Utils.fromJSON(bytes);
+    reuseUnchangedSlices(stateMap, previous);
     return createFromCollectionMap(version, stateMap, liveNodes);
   }
 
@@ -246,9 +258,19 @@ public class ClusterState implements JSONWriter.Writable {
    * @param zkClient ZK client
    * @return the ClusterState
    */
-  @SuppressWarnings({"unchecked"})
   @Deprecated
   public static ClusterState createFromJsonSupportingLegacyConfigName(int version, byte[] bytes, Set<String> liveNodes, String coll, SolrZkClient zkClient) {
+    return createFromJsonSupportingLegacyConfigName(version, bytes, liveNodes, coll, zkClient, null);
+  }
+
+  /**
+   * Like {@link #createFromJsonSupportingLegacyConfigName(int, byte[], Set, String, SolrZkClient)}, but reusing
+   * the unchanged shards and replicas of {@code previous}, an earlier state of the collection (may be null).
+   */
+  @SuppressWarnings({"unchecked"})
+  @Deprecated
+  public static ClusterState createFromJsonSupportingLegacyConfigName(int version, byte[] bytes, Set<String> liveNodes, String coll, SolrZkClient zkClient,
+                                                                      DocCollection previous) {
     if (bytes == null || bytes.length == 0) {
       return new ClusterState(liveNodes, Collections.emptyMap());
     }
@@ -275,9 +297,66 @@ public class ClusterState implements JSONWriter.Writable {
         }
       }
     }
+    reuseUnchangedSlices(stateMap, previous);
     return createFromCollectionMap(version, stateMap, liveNodes);
   }
 
+  /**
+   * Replaces the shards and replicas of a freshly parsed collection that are unchanged since {@code previous}
+   * with the existing {@link Slice} and {@link Replica} instances, which are immutable. A state.json update then only
+   * builds objects for the shards that actually changed, and watchers can tell unchanged shards by identity.
+   * Not done for per-replica-state collections, whose replica states don't live in state.json.
+   */
+  @SuppressWarnings({"unchecked"})
+  private static void reuseUnchangedSlices(Map<String, Object> stateMap, DocCollection previous) {
+    if (previous == null || previous.isPerReplicaState()) return;
+    Object collObj = stateMap.get(previous.getName());
+    if (!(collObj instanceof Map)
+        || Boolean.parseBoolean(String.valueOf(((Map<String, Object>) collObj).get(DocCollection.PER_REPLICA_STATE)))) return;
+    Object sliceObjs = ((Map<String, Object>) collObj).get(DocCollection.SHARDS);
+    if (!(sliceObjs instanceof Map)) return;
+    int reused = 0;
+    for (Entry<String, Object> sliceEntry : ((Map<String, Object>) sliceObjs).entrySet()) {
+      Slice oldSlice = previous.getSlice(sliceEntry.getKey());
+      if (oldSlice == null || !(sliceEntry.getValue() instanceof Map)) continue;
+      Map<String, Object> sliceProps = (Map<String, Object>) sliceEntry.getValue();
+      Object replicaObjs = sliceProps.get(Slice.REPLICAS);
+      int unchangedReplicas = 0;
+      int numReplicas = 0;
+      if (replicaObjs instanceof Map) {
+        for (Entry<String, Object> replicaEntry : ((Map<String, Object>) replicaObjs).entrySet()) {
+          numReplicas++;
+          Replica oldReplica = oldSlice.getReplica(replicaEntry.getKey());
+          if (oldReplica != null && replicaEntry.getValue() instanceof Map
+              && sameProperties((Map<String, Object>) replicaEntry.getValue(), oldReplica.getProperties(), ZkStateReader.BASE_URL_PROP)) {
+            replicaEntry.setValue(oldReplica);
+            unchangedReplicas++;
+          }
+        }
+      }
+      if (unchangedReplicas == numReplicas && numReplicas == oldSlice.getReplicas().size()
+          && sameProperties(sliceProps, oldSlice.getProperties(), Slice.REPLICAS)) {
+        sliceEntry.setValue(oldSlice);
+        reused++;
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("collection {}: reused {} of {} shards from version {}", previous.getName(), reused,
+          ((Map<String, Object>) sliceObjs).size(), previous.getZNodeVersion());
+    }
+  }
+
+  /** Compares parsed JSON properties with those of an existing object, ignoring one key. */
+  private static boolean sameProperties(Map<String, Object> parsed, Map<String, Object> existing, String ignoredKey) {
+    int compared = 0;
+    for (Entry<String, Object> e : parsed.entrySet()) {
+      if (ignoredKey.equals(e.getKey())) continue;
+      if (!Objects.equals(e.getValue(), existing.get(e.getKey()))) return false;
+      compared++;
+    }
+    return compared == existing.size() - (existing.containsKey(ignoredKey) ? 1 : 0);
+  }
+
   public static ClusterState createFromCollectionMap(int version, Map<String, Object> stateMap, Set<String> liveNodes) {
     Map<String,CollectionRef> collections = new LinkedHashMap<>(stateMap.size());
     for (Entry<String, Object> entry : stateMap.entrySet()) {
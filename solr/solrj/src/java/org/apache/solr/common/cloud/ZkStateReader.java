@@ -164,6 +164,11 @@ public class ZkStateReader implements SolrCloseable {
    */
   private final ConcurrentHashMap<String, DocCollection> watchedCollectionStates = new ConcurrentHashMap<>();
 
+  /**
+   * The state.json each watched collection state was last parsed from, to skip parsing it again when unchanged.
+   */
+  private final ConcurrentHashMap<String, ParsedCollectionState> parsedCollectionStates = new ConcurrentHashMap<>();
+
   /**
    * "Interesting" but not actively watched Collections.
    */
@@ -1430,12 +1435,28 @@ public class ZkStateReader implements SolrCloseable {
         Stat stat = new Stat();
         byte[] data = zkClient.getData(collectionPath, watcher, stat, true);
 
+        // state.json unchanged since the state we're watching: no need to parse it again. The creation id tells
+        // a re-created state.json at the same version apart. Not done for per-replica state collections, whose
+        // replica states may have changed without state.json changing.
+        DocCollection previous = watchedCollectionStates.get(coll);
+        ParsedCollectionState parsed = parsedCollectionStates.get(coll);
+        if (previous != null && parsed != null && parsed.state == previous && parsed.czxid == stat.getCzxid()
+            && previous.getZNodeVersion() == stat.getVersion() && !previous.isPerReplicaState()) {
+          return previous;
+        }
+
         // This factory method can detect a missing configName and supply it by reading it from the old ZK location.
         // TODO in Solr 10 remove that factory method
-        ClusterState state = ClusterState.createFromJsonSupportingLegacyConfigName(stat.getVersion(), data, Collections.emptySet(), coll, zkClient);
+        // Shards and replicas unchanged since the state we're watching are reused rather than rebuilt.
+        ClusterState state = ClusterState.createFromJsonSupportingLegacyConfigName(stat.getVersion(), data, Collections.emptySet(), coll, zkClient,
+            previous);
 
         ClusterState.CollectionRef collectionRef = state.getCollectionStates().get(coll);
-        return collectionRef == null ? null : collectionRef.get();
+        DocCollection newState = collectionRef == null ? null : collectionRef.get();
+        if (newState != null && watcher != null) {
+          parsedCollectionStates.put(coll, new ParsedCollectionState(newState, stat.getCzxid()));
+        }
+        return newState;
       } catch (KeeperException.NoNodeException e) {
         if (watcher != null) {
           // Leave an exists watch in place in case a state.json is created later.
@@ -1453,6 +1474,16 @@ public class ZkStateReader implements SolrCloseable {
     }
   }
 
+  private static class ParsedCollectionState {
+    final DocCollection state;
+    final long czxid;
+
+    ParsedCollectionState(DocCollection state, long czxid) {
+      this.state = state;
+      this.czxid = czxid;
+    }
+  }
+
   public static String getCollectionPathRoot(String coll) {
     return COLLECTIONS_ZKNODE + "/" + coll;
   }
@@ -1507,6 +1538,7 @@ public class ZkStateReader implements SolrCloseable {
         v.coreRefCount--;
       if (v.canBeRemoved()) {
         watchedCollectionStates.remove(collection);
+        parsedCollectionStates.remove(collection);
         lazyCollectionStates.put(collection, new LazyCollectionRef(collection));
         reconstructState.set(true);
         return null;
@@ -1788,6 +1820,7 @@ public class ZkStateReader implements SolrCloseable {
       v.stateWatchers.remove(watcher);
       if (v.canBeRemoved()) {
         watchedCollectionStates.remove(collection);
+        parsedCollectionStates.remove(collection);
         lazyCollectionStates.put(collection, new LazyCollectionRef(collection));
         reconstructState.set(true);
         return null;
@@ -1819,6 +1852,7 @@ public class ZkStateReader implements SolrCloseable {
     if (newState == null) {
       log.debug("Removing cached collection state for [{}]", coll);
       watchedCollectionStates.remove(coll);
+      parsedCollectionStates.remove(coll);
       return true;
     }
 
@@ -1859,6 +1893,7 @@ public class ZkStateReader implements SolrCloseable {
     // Resolve race with unregisterCore.
     if (!collectionWatches.containsKey(coll)) {
       watchedCollectionStates.remove(coll);
+      parsedCollectionStates.remove(coll);
       log.debug("Removing uninteresting collection [{}]", coll);
     }
 
@@ -97,6 +97,31 @@ public interface ShardParams {
 
   /** Force a single-pass distributed query? (true/false) */
   String DISTRIB_SINGLE_PASS = "distrib.singlePass";
+
+  /**
+   * Use a single-pass distributed query automatically when 'fl' only lists stored fields
+   * and rows times the number of shards doesn't exceed this value (default 0, disabled).
+   * An explicit {@value #DISTRIB_SINGLE_PASS} param takes precedence.
+   */
+  String DISTRIB_SINGLE_PASS_MAX_ROWS = "distrib.singlePass.maxRows";
+
+  /** Use the coordinator's shard response cache, if configured, for this request? (true/false, default true) */
+  String SHARDS_CACHE = "shards.cache";
+
+  /**
+   * Asks a shard to report its index version in the response header under the same name,
+   * used to validate the coordinator's shard response cache.
+   */
+  String SHARDS_CACHE_VERSION = "shards.cache.version";
+
+  /**
+   * Index version of the response the coordinator has cached for a shard request. If it is still the shard's
+   * version, the shard doesn't execute the request and sets {@value #SHARDS_CACHE_NOT_MODIFIED} in the header.
+   */
+  String SHARDS_CACHE_IF_VERSION = "shards.cache.ifVersion";
+
+  /** Response header flag telling the coordinator that its cached response is still current. */
+  String SHARDS_CACHE_NOT_MODIFIED = "shards.cache.notModified";
   
   /**
    * Throw an error from search requests when the {@value #SHARDS_TOLERANT} param
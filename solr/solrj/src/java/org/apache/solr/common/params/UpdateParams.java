@@ -74,4 +74,17 @@ public interface UpdateParams
    * be done "In-Place" with out re-indexing the entire document.
    */
   public static final String REQUIRE_PARTIAL_DOC_UPDATES_INPLACE = "update.partial.requireInPlace";
+
+  /**
+   * Number of worker threads that process the documents of a single update request while the
+   * request thread keeps parsing. Values less than 2 (the default) process documents on the request thread.
+   */
+  public static final String PIPELINE_THREADS = "update.pipelineThreads";
+
+  /**
+   * Maximum number of documents added with <code>overwrite=false</code> that are buffered and written to
+   * the index together. Values less than 2 (the default) write every document as soon as it is processed.
+   * Ignored by cores with an update log, which write every document as soon as it is versioned and logged.
+   */
+  public static final String ADD_BATCH_SIZE = "update.addBatchSize";
 }
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+public class AdaptiveUpdateSolrClientTest extends SolrTestCase {
+
+  /** Records the update requests it receives, rejecting the first ones with the given error code. */
+  private static class RecordingClient extends SolrClient {
+    final List<UpdateRequest> received = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger rejections;
+    final int errorCode;
+
+    RecordingClient(int rejections, int errorCode) {
+      this.rejections = new AtomicInteger(rejections);
+      this.errorCode = errorCode;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest<?> request, String collection) {
+      final RuntimeException rejection = reject((UpdateRequest) request);
+      if (rejection != null) {
+        throw rejection;
+      }
+      received.add((UpdateRequest) request);
+      return new NamedList<>();
+    }
+
+    /** Returns the error to reject the request with, or null to accept it. */
+    RuntimeException reject(UpdateRequest request) {
+      if (rejections.getAndDecrement() > 0) {
+        return new SolrException(SolrException.ErrorCode.getErrorCode(errorCode), "rejected");
+      }
+      return null;
+    }
+
+    int docsReceived() {
+      synchronized (received) {
+        return received.stream().mapToInt(r -> r.getDocuments() == null ? 0 : r.getDocuments().size()).sum();
+      }
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static SolrInputDocument doc(int id) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField("id", Integer.toString(id));
+    return doc;
+  }
+
+  @Test
+  public void testBatchesDocuments() throws Exception {
+    RecordingClient recorder = new RecordingClient(0, 0);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient.Builder(recorder, true)
+        .withBatchSize(5, 50)
+        .withMaxBatchWait(50, TimeUnit.MILLISECONDS)
+        .build()) {
+      for (int i = 0; i < 200; i++) {
+        client.add("collection1", doc(i));
+      }
+      client.blockUntilFinished();
+
+      assertEquals(200, recorder.docsReceived());
+      assertTrue("documents should have been batched, requests: " + recorder.received.size(),
+          recorder.received.size() < 200);
+      for (UpdateRequest req : recorder.received) {
+        assertTrue(req.getDocuments().size() <= 50);
+      }
+      AdaptiveUpdateSolrClient.Stats stats = client.getStats();
+      assertEquals(200, stats.getDocsSent());
+      assertEquals(0, stats.getDocsFailed());
+      assertEquals(0, stats.getPending());
+      assertTrue("batches should grow while the target latency is met: " + stats, stats.getBatchSize() > 5);
+    }
+  }
+
+  @Test
+  public void testRetriesWhenOverloaded() throws Exception {
+    RecordingClient recorder = new RecordingClient(2, 429);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient.Builder(recorder, true)
+        .withRetries(3, 200, TimeUnit.MILLISECONDS)
+        .build()) {
+      client.add("collection1", doc(1));
+      client.blockUntilFinished();
+
+      assertEquals(1, recorder.docsReceived());
+      AdaptiveUpdateSolrClient.Stats stats = client.getStats();
+      assertEquals(2, stats.getOverloads());
+      assertEquals(2, stats.getRetries());
+      assertEquals(1, stats.getDocsSent());
+      assertEquals(0, stats.getDocsFailed());
+    }
+  }
+
+  @Test
+  public void testGivesUpAfterMaxRetries() throws Exception {
+    RecordingClient recorder = new RecordingClient(Integer.MAX_VALUE, 503);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    AdaptiveUpdateSolrClient.Builder builder = new AdaptiveUpdateSolrClient.Builder(recorder, true)
+        .withRetries(1, 10, TimeUnit.MILLISECONDS);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient(builder) {
+      @Override
+      public void handleError(Throwable ex) {
+        errors.add(ex);
+      }
+    }) {
+      client.add("collection1", doc(1));
+      client.blockUntilFinished();
+
+      assertEquals(0, recorder.docsReceived());
+      assertEquals(1, errors.size());
+      assertEquals(503, ((SolrException) errors.get(0)).code());
+      AdaptiveUpdateSolrClient.Stats stats = client.getStats();
+      assertEquals(1, stats.getDocsFailed());
+      assertEquals(1, stats.getRetries());
+    }
+  }
+
+  @Test
+  public void testKeepsPerDocumentParams() throws Exception {
+    RecordingClient recorder = new RecordingClient(0, 0);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient.Builder(recorder, true).build()) {
+      UpdateRequest req = new UpdateRequest();
+      req.add(doc(1), 500, false);
+      req.add(doc(2));
+      client.request(req, "collection1");
+      client.blockUntilFinished();
+
+      assertEquals(2, recorder.docsReceived());
+      for (UpdateRequest received : recorder.received) {
+        for (Map.Entry<SolrInputDocument, Map<String, Object>> entry : received.getDocumentsMap().entrySet()) {
+          final Object overwrite = entry.getValue() == null ? null : entry.getValue().get(UpdateRequest.OVERWRITE);
+          if ("1".equals(entry.getKey().getFieldValue("id"))) {
+            assertEquals(500, received.getCommitWithin());
+            assertEquals(Boolean.FALSE, overwrite);
+          } else {
+            assertEquals(-1, received.getCommitWithin());
+            assertNull(overwrite);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRetriesOnlyRejectedRoutes() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    RecordingClient recorder = new RecordingClient(0, 0) {
+      @Override
+      RuntimeException reject(UpdateRequest request) {
+        if (attempts.getAndIncrement() > 0) {
+          return null;
+        }
+        // the leader of doc 1 applied its part, the one of doc 2 was unavailable
+        UpdateRequest route1 = new UpdateRequest().add(request.getDocuments().get(0));
+        UpdateRequest route2 = new UpdateRequest().add(request.getDocuments().get(1));
+        Map<String, LBSolrClient.Req> routes = new LinkedHashMap<>();
+        routes.put("http://leader1", new LBSolrClient.Req(route1, Collections.singletonList("http://leader1")));
+        routes.put("http://leader2", new LBSolrClient.Req(route2, Collections.singletonList("http://leader2")));
+        NamedList<Throwable> throwables = new NamedList<>();
+        throwables.add("http://leader2", new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "busy"));
+        return new BaseCloudSolrClient.RouteException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, throwables, routes);
+      }
+    };
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient.Builder(recorder, true)
+        .withBatchSize(2, 2)
+        .withMaxConcurrency(1)
+        .withMaxBatchWait(1, TimeUnit.SECONDS)
+        .withRetries(3, 10, TimeUnit.MILLISECONDS)
+        .build()) {
+      client.add("collection1", Arrays.asList(doc(1), doc(2)));
+      client.blockUntilFinished();
+
+      assertEquals(1, recorder.received.size());
+      assertEquals("2", recorder.received.get(0).getDocuments().get(0).getFieldValue("id"));
+      AdaptiveUpdateSolrClient.Stats stats = client.getStats();
+      assertEquals(2, stats.getDocsSent());
+      assertEquals(1, stats.getRetries());
+      assertEquals(0, stats.getDocsFailed());
+    }
+  }
+
+  @Test
+  public void testDoesNotResendCumulativeUpdatesThatMayHaveBeenApplied() throws Exception {
+    RecordingClient recorder = new RecordingClient(1, 503);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    AdaptiveUpdateSolrClient.Builder builder = new AdaptiveUpdateSolrClient.Builder(recorder, true)
+        .withRetries(3, 10, TimeUnit.MILLISECONDS);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient(builder) {
+      @Override
+      public void handleError(Throwable ex) {
+        errors.add(ex);
+      }
+    }) {
+      SolrInputDocument inc = doc(1);
+      inc.addField("count_i", Collections.singletonMap("inc", 1));
+      client.add("collection1", inc);
+      client.blockUntilFinished();
+
+      assertEquals(0, recorder.docsReceived());
+      assertEquals(1, errors.size());
+      AdaptiveUpdateSolrClient.Stats stats = client.getStats();
+      assertEquals(0, stats.getRetries());
+      assertEquals(1, stats.getDocsFailed());
+    }
+  }
+
+  @Test
+  public void testIsIdempotent() {
+    assertTrue(AdaptiveUpdateSolrClient.isIdempotent(new UpdateRequest().add(doc(1))));
+    assertFalse(AdaptiveUpdateSolrClient.isIdempotent(new UpdateRequest().add(doc(1), false)));
+    SolrInputDocument set = doc(2);
+    set.addField("title_s", Collections.singletonMap("set", "title"));
+    assertTrue(AdaptiveUpdateSolrClient.isIdempotent(new UpdateRequest().add(set)));
+    SolrInputDocument add = doc(3);
+    add.addField("tags_ss", Collections.singletonMap("add", "tag"));
+    assertFalse(AdaptiveUpdateSolrClient.isIdempotent(new UpdateRequest().add(add)));
+
+    // a rejected request has not been processed, so it can be resent regardless
+    UpdateRequest req = new UpdateRequest().add(add);
+    assertTrue(AdaptiveUpdateSolrClient.isRetryable(req,
+        new SolrException(SolrException.ErrorCode.TOO_MANY_REQUESTS, "busy")));
+    assertFalse(AdaptiveUpdateSolrClient.isRetryable(req,
+        new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "busy")));
+  }
+
+  @Test
+  public void testOtherRequestsWaitForQueue() throws Exception {
+    RecordingClient recorder = new RecordingClient(0, 0);
+    try (AdaptiveUpdateSolrClient client = new AdaptiveUpdateSolrClient.Builder(recorder, true).build()) {
+      for (int i = 0; i < 20; i++) {
+        client.add("collection1", doc(i));
+      }
+      client.deleteById("collection1", "1");
+
+      // the delete is sent after all queued documents
+      UpdateRequest last = recorder.received.get(recorder.received.size() - 1);
+      assertEquals(Collections.singletonList("1"), last.getDeleteById());
+      assertEquals(20, recorder.docsReceived());
+    }
+  }
+
+  @Test
+  public void testIsOverloaded() {
+    assertTrue(AdaptiveUpdateSolrClient.isOverloaded(
+        new SolrException(SolrException.ErrorCode.TOO_MANY_REQUESTS, "busy")));
+    assertTrue(AdaptiveUpdateSolrClient.isOverloaded(
+        new IOException(new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "busy"))));
+    assertFalse(AdaptiveUpdateSolrClient.isOverloaded(
+        new SolrException(SolrException.ErrorCode.BAD_REQUEST, "bad")));
+    assertFalse(AdaptiveUpdateSolrClient.isOverloaded(new IOException("down")));
+  }
+
+  @Test
+  public void testBuilderValidation() {
+    RecordingClient recorder = new RecordingClient(0, 0);
+    expectThrows(IllegalArgumentException.class,
+        () -> new AdaptiveUpdateSolrClient.Builder(recorder, true).withBatchSize(10, 5));
+    expectThrows(IllegalArgumentException.class,
+        () -> new AdaptiveUpdateSolrClient.Builder(recorder, true).withMaxConcurrency(0));
+    expectThrows(IllegalArgumentException.class,
+        () -> new AdaptiveUpdateSolrClient.Builder(recorder, true).withQueueSize(0));
+  }
+}
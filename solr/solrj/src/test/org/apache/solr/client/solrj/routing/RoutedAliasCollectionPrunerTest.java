@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.cloud.Aliases;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Test;
+
+public class RoutedAliasCollectionPrunerTest extends SolrTestCase {
+
+  private static final String ALIAS = "tra";
+  private static final List<String> COLLECTIONS = Arrays.asList(
+      "tra__TRA__2021-01-03", "tra__TRA__2021-01-02", "tra__TRA__2021-01-01");
+
+  private final Aliases aliases = Aliases.EMPTY
+      .cloneWithCollectionAlias(ALIAS, String.join(",", COLLECTIONS))
+      .cloneWithCollectionAliasProperties(ALIAS, Map.of("router.name", "time", "router.field", "ts_dt"));
+
+  private List<String> prune(String... params) {
+    final ModifiableSolrParams p = new ModifiableSolrParams();
+    for (int i = 0; i < params.length; i += 2) {
+      p.add(params[i], params[i + 1]);
+    }
+    return RoutedAliasCollectionPruner.prune(aliases, ALIAS, aliases.resolveAliases(ALIAS), p);
+  }
+
+  @Test
+  public void testFilterQueryRanges() {
+    assertEquals(Arrays.asList("tra__TRA__2021-01-02"),
+        prune("q", "*:*", "fq", "ts_dt:[2021-01-02T05:00:00Z TO 2021-01-02T06:00:00Z]"));
+    assertEquals(Arrays.asList("tra__TRA__2021-01-03", "tra__TRA__2021-01-02"),
+        prune("fq", "ts_dt:[2021-01-02T00:00:00Z TO *]"));
+    // the newest collection has no upper end
+    assertEquals(Arrays.asList("tra__TRA__2021-01-03"),
+        prune("fq", "ts_dt:[2025-01-01T00:00:00Z TO *]"));
+    // multiple filters intersect
+    assertEquals(Arrays.asList("tra__TRA__2021-01-02"),
+        prune("fq", "ts_dt:[* TO 2021-01-02T12:00:00Z]", "fq", "ts_dt:{2021-01-02T00:00:00Z TO *]"));
+    // nothing can match, but we still need a collection to ask
+    assertEquals(1, prune("fq", "ts_dt:[2000-01-01T00:00:00Z TO 2000-01-02T00:00:00Z]").size());
+  }
+
+  @Test
+  public void testDateMathRelativeToNow() {
+    final long now = Instant.parse("2021-01-02T12:30:00Z").toEpochMilli();
+    assertEquals(Arrays.asList("tra__TRA__2021-01-02"),
+        prune("NOW", Long.toString(now), "fq", "ts_dt:[NOW-1HOUR TO NOW]"));
+    assertEquals(Arrays.asList("tra__TRA__2021-01-03", "tra__TRA__2021-01-02"),
+        prune("NOW", Long.toString(now), "fq", "ts_dt:[NOW/DAY TO NOW+1DAY]"));
+    assertEquals(Arrays.asList("tra__TRA__2021-01-02", "tra__TRA__2021-01-01"),
+        prune("NOW", Long.toString(now), "fq", "ts_dt:[NOW/DAY-1DAY TO NOW]"));
+  }
+
+  @Test
+  public void testStandardQueryClauses() {
+    assertEquals(Arrays.asList("tra__TRA__2021-01-01"),
+        prune("q", "{!lucene}foo:bar AND ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    assertEquals(Arrays.asList("tra__TRA__2021-01-01"),
+        prune("q", "{!lucene}(ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]) && (a:b OR c:d)"));
+    // not every clause is required
+    assertEquals(COLLECTIONS,
+        prune("q", "{!lucene}foo:bar OR ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    // the handler may default to or impose another query parser, e.g. edismax
+    assertEquals(COLLECTIONS,
+        prune("q", "ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    assertEquals(COLLECTIONS,
+        prune("q", "ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]", "defType", "lucene"));
+    // other query parsers
+    assertEquals(COLLECTIONS,
+        prune("q", "{!edismax}ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+  }
+
+  @Test
+  public void testIgnoresWhatItCannotParse() {
+    assertEquals(COLLECTIONS, prune("fq", "other_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    assertEquals(COLLECTIONS, prune("fq", "{!tag=t}ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    assertEquals(COLLECTIONS, prune("fq", "-ts_dt:[2021-01-01T00:00:00Z TO 2021-01-01T23:59:59Z]"));
+    assertEquals(COLLECTIONS, prune("fq", "ts_dt:[2021-01-01 TO 2021-01-01T23:59:59Z]"));
+    assertEquals(COLLECTIONS, prune("fq", "ts_dt:[NOW-1FORTNIGHT TO NOW]"));
+  }
+
+  @Test
+  public void testDimensionalAliasWithTimeDimension() {
+    final List<String> collections = Arrays.asList(
+        "dra__CRA__a__TRA__2021-01-02", "dra__CRA__a__TRA__2021-01-01",
+        "dra__CRA__b__TRA__2021-01-02", "dra__CRA__b__TRA__2021-01-01");
+    final Aliases dra = Aliases.EMPTY
+        .cloneWithCollectionAlias("dra", String.join(",", collections))
+        .cloneWithCollectionAliasProperties("dra", Map.of(
+            "router.name", "Dimensional[category,time]",
+            "router.0.field", "cat_s",
+            "router.1.field", "ts_dt"));
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("fq", "ts_dt:[2021-01-01T10:00:00Z TO 2021-01-01T11:00:00Z]");
+    assertEquals(Arrays.asList("dra__CRA__a__TRA__2021-01-01", "dra__CRA__b__TRA__2021-01-01"),
+        RoutedAliasCollectionPruner.prune(dra, "dra", collections, params));
+  }
+
+  @Test
+  public void testDimensionalAliasWithDifferentTimeSpansPerCategory() {
+    // category b was only added on 2021-01-03, so its collection spans what a's two collections do
+    final List<String> collections = Arrays.asList(
+        "dra__CRA__a__TRA__2021-01-05", "dra__CRA__a__TRA__2021-01-03", "dra__CRA__a__TRA__2021-01-01",
+        "dra__CRA__b__TRA__2021-01-01");
+    final Aliases dra = Aliases.EMPTY
+        .cloneWithCollectionAlias("dra", String.join(",", collections))
+        .cloneWithCollectionAliasProperties("dra", Map.of(
+            "router.name", "Dimensional[category,time]",
+            "router.0.field", "cat_s",
+            "router.1.field", "ts_dt"));
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("fq", "ts_dt:[2021-01-04T10:00:00Z TO 2021-01-04T11:00:00Z]");
+    assertEquals(Arrays.asList("dra__CRA__a__TRA__2021-01-03", "dra__CRA__b__TRA__2021-01-01"),
+        RoutedAliasCollectionPruner.prune(dra, "dra", collections, params));
+
+    // the time dimension may come first too
+    assertEquals("dra__CRA__a", RoutedAliasCollectionPruner.getOtherDimensions("dra__TRA__2021-01-01__CRA__a"));
+    assertEquals("dra__CRA__a", RoutedAliasCollectionPruner.getOtherDimensions("dra__CRA__a__TRA__2021-01-01"));
+  }
+
+  @Test
+  public void testCategoryAliasIsNotPruned() {
+    assertNull(RoutedAliasCollectionPruner.getTimeRouterField(Map.of("router.name", "category", "router.field", "cat_s")));
+    assertNull(RoutedAliasCollectionPruner.parseCollectionStart("cra__CRA__foo"));
+  }
+}